@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.diskmanager.cache.impl.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.diskmanager.cache.CacheFileManager;
+import com.biglybt.core.diskmanager.cache.CacheFileManagerException;
+import com.biglybt.core.diskmanager.cache.CacheFileManagerFactory;
+import com.biglybt.core.diskmanager.cache.CacheFileManagerStats;
+import com.biglybt.core.diskmanager.cache.CacheFileOwner;
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.torrent.TOTorrentFactory;
+import com.biglybt.core.torrent.TOTorrentFile;
+import com.biglybt.core.util.AETemporaryFileHandler;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.test.BenchmarkRunner;
+
+/**
+ * Times block reads through the disk cache for a file whose data is already held in the read
+ * cache, compared with the same reads bypassing the cache (which will be served from the OS
+ * page cache after the first pass). The cache is enabled for reads and sized to hold the
+ * region read.
+ *
+ * Usage: CacheFileBenchmark [-out results.json] [-baseline results.json] [-quick]
+ */
+
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class
+CacheFileBenchmark
+{
+	private static final int	FILE_SIZE		= 32*1024*1024;
+	private static final int	PIECE_SIZE		= 256*1024;
+	private static final int	HOT_REGION		= 8*1024*1024;
+	private static final int	CACHE_MB		= 32;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		try{
+			BenchmarkRunner	runner = BenchmarkRunner.create( args );
+
+			runner.run( CacheFileBenchmark.class );
+
+			runner.complete( "CacheFileBenchmark" );
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	@State( Scope.Thread )
+	public static class
+	CachedFile
+	{
+		@Param({ "16", "64" })
+		public int	kb;
+
+		File				dir;
+		CacheFileManager	manager;
+		CacheFile			cache_file;
+		DirectByteBuffer	buffer;
+		int					block_size;
+		int					blocks;
+		int					pos;
+
+		long	cache_reads_before;
+		long	file_reads_before;
+
+		@Setup
+		public void
+		setup()
+
+			throws Exception
+		{
+				// must be set before the cache manager singleton is created
+
+			COConfigurationManager.setParameter( "diskmanager.perf.cache.enable", true );
+			COConfigurationManager.setParameter( "diskmanager.perf.cache.enable.read", true );
+			COConfigurationManager.setParameter( "diskmanager.perf.cache.size", CACHE_MB );
+
+			dir = AETemporaryFileHandler.createTempDir();
+
+			File	data_file = new File( dir, "data.bin" );
+
+			try ( RandomAccessFile raf = new RandomAccessFile( data_file, "rw" )){
+
+				byte[]	chunk = new byte[1024*1024];
+
+				Random	random = new Random( 5678 );
+
+				for ( int i=0;i<FILE_SIZE/chunk.length;i++){
+
+					random.nextBytes( chunk );
+
+					raf.write( chunk );
+				}
+			}
+
+			TOTorrent	torrent =
+				TOTorrentFactory.createFromFileOrDirWithFixedPieceLength(
+					data_file, new URL( "http://localhost:6969/announce" ), PIECE_SIZE ).create();
+
+			final TOTorrentFile	torrent_file = torrent.getFiles()[0];
+
+			manager = CacheFileManagerFactory.getSingleton();
+
+			cache_file =
+				manager.createFile(
+					new CacheFileOwner()
+					{
+						@Override
+						public String
+						getCacheFileOwnerName()
+						{
+							return( "CacheFileBenchmark" );
+						}
+
+						@Override
+						public TOTorrentFile
+						getCacheFileTorrentFile()
+						{
+							return( torrent_file );
+						}
+
+						@Override
+						public File
+						getCacheFileControlFileDir()
+						{
+							return( dir );
+						}
+
+						@Override
+						public int
+						getCacheMode()
+						{
+							return( CacheFileOwner.CACHE_MODE_NORMAL );
+						}
+					},
+					data_file,
+					CacheFile.CT_LINEAR,
+					false );
+
+			cache_file.setAccessMode( CacheFile.CF_READ );
+
+			block_size	= kb*1024;
+			blocks		= HOT_REGION / block_size;
+
+			buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, block_size );
+
+				// first pass pulls the region into the cache
+
+			for ( int i=0;i<blocks;i++){
+
+				buffer.clear( DirectByteBuffer.SS_OTHER );
+
+				cache_file.read( buffer, (long)i*block_size, CacheFile.CP_READ_CACHE );
+			}
+
+			CacheFileManagerStats	stats = manager.getStats();
+
+			cache_reads_before	= stats.getCacheReadCount();
+			file_reads_before	= stats.getFileReadCount();
+		}
+
+		@TearDown
+		public void
+		tearDown()
+
+			throws Exception
+		{
+			CacheFileManagerStats	stats = manager.getStats();
+
+			System.out.println(
+				"    cache reads=" + ( stats.getCacheReadCount() - cache_reads_before ) +
+				", file reads=" + ( stats.getFileReadCount() - file_reads_before ));
+
+			buffer.returnToPool();
+
+			try{
+				cache_file.close();
+
+			}finally{
+
+				FileUtil.recursiveDelete( dir );
+			}
+		}
+
+		int
+		nextBlock()
+		{
+				// stride through the blocks so consecutive reads don't share a cache entry
+
+			return(( pos++ * 7 ) % blocks );
+		}
+	}
+
+	@Benchmark
+	public void
+	readHit(
+		CachedFile	file )
+
+		throws CacheFileManagerException
+	{
+		int	block = file.nextBlock();
+
+		file.buffer.clear( DirectByteBuffer.SS_OTHER );
+
+		file.cache_file.read( file.buffer, (long)block*file.block_size, CacheFile.CP_READ_CACHE );
+	}
+
+	@Benchmark
+	public void
+	readNoCache(
+		CachedFile	file )
+
+		throws CacheFileManagerException
+	{
+		int	block = file.nextBlock();
+
+		file.buffer.clear( DirectByteBuffer.SS_OTHER );
+
+		file.cache_file.read( file.buffer, (long)block*file.block_size, CacheFile.CP_NONE );
+	}
+}
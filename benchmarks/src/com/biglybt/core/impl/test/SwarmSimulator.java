@@ -0,0 +1,651 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.impl.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.biglybt.core.security.SESecurityManager;
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.torrent.TOTorrentFactory;
+import com.biglybt.core.util.AETemporaryFileHandler;
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.util.JSONUtils;
+
+/**
+ * Measures whole-client transfer performance without the internet. One seed and a number of
+ * leechers, each a full core in its own JVM ({@link SwarmSimulatorNode}) with its own config
+ * directory and listen port, share a synthetic torrent over localhost. Peers are injected
+ * directly so no tracker or DHT is involved.
+ *
+ * The torrent data comes from a seeded random generator, so a given set of options always
+ * produces the same torrent. Once every member is up they are started together and the run
+ * reports how long each leecher took to complete, along with the CPU time, allocation, GC and
+ * lock contention of every member between the start and the last completion.
+ *
+ * Usage: SwarmSimulator [-leechers 4] [-size 64] [-pieces 256] [-seed 1] [-seedrate KB/s]
+ *                       [-port 45100] [-timeout 600] [-jvm "args"] [-dir workdir] [-keep]
+ *                       [-out results.json]
+ *
+ * The piece size is the total size over the piece count rounded up to a power of two, at
+ * least 16KB. Limiting the seed's upload rate with -seedrate makes the leechers trade pieces
+ * among themselves rather than all getting everything straight from the seed. Member logs are left in the working directory, which is a temporary one that
+ * is deleted afterwards unless -dir or -keep is given.
+ */
+
+public class
+SwarmSimulator
+{
+	private static final long	READY_TIMEOUT	= 120*1000;
+	private static final long	STOP_TIMEOUT	= 30*1000;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		boolean	ok = false;
+
+		try{
+			Map<String,String>	options = new HashMap<>();
+
+			for ( int i=0;i<args.length;i++){
+
+				if ( args[i].startsWith( "-" )){
+
+					options.put( args[i].substring( 1 ), i+1<args.length&&!args[i+1].startsWith( "-" )?args[++i]:"" );
+				}
+			}
+
+			ok = new SwarmSimulator( options ).run();
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+
+		SESecurityManager.exitVM( ok?0:1 );
+	}
+
+	private final Map<String,String>	options;
+
+	private final int		num_leechers;
+	private final long		size;
+	private final int		num_pieces;
+	private final long		random_seed;
+	private final int		seed_rate;
+	private final int		base_port;
+	private final long		timeout;
+
+	private
+	SwarmSimulator(
+		Map<String,String>	_options )
+	{
+		options	= _options;
+
+		num_leechers	= getInt( "leechers", 4 );
+		size			= getInt( "size", 64 )*1024L*1024;
+		num_pieces		= getInt( "pieces", 256 );
+		random_seed		= getInt( "seed", 1 );
+		seed_rate		= getInt( "seedrate", 0 );
+		base_port		= getInt( "port", 45100 );
+		timeout			= getInt( "timeout", 600 )*1000L;
+	}
+
+	private int
+	getInt(
+		String		name,
+		int			def )
+	{
+		String	value = options.get( name );
+
+		return( value==null||value.length()==0?def:Integer.parseInt( value ));
+	}
+
+	private boolean
+	run()
+
+		throws Throwable
+	{
+		String	dir_option = options.get( "dir" );
+
+		boolean	keep = dir_option != null || options.containsKey( "keep" );
+
+		File	dir = dir_option==null?AETemporaryFileHandler.createTempDir():new File( dir_option );
+
+		dir.mkdirs();
+
+		List<Node>	nodes = new ArrayList<>();
+
+		try{
+			File	seed_data = new File( dir, "node0" + File.separator + "data" );
+
+			File	data_file = createData( seed_data );
+
+			long	piece_length = 16*1024;
+
+			while( piece_length*num_pieces < size ){
+
+				piece_length <<= 1;
+			}
+
+			TOTorrent	torrent =
+				TOTorrentFactory.createFromFileOrDirWithFixedPieceLength(
+					data_file, new URL( "http://127.0.0.1:1/announce" ), piece_length ).create();
+
+			File	torrent_file = new File( dir, "swarm.torrent" );
+
+			torrent.serialiseToBEncodedFile( torrent_file );
+
+			System.out.println(
+				"Swarm: 1 seed, " + num_leechers + " leechers, " + size/(1024*1024) + "MB in " +
+				torrent.getNumberOfPieces() + " pieces of " + piece_length/1024 + "KB" );
+
+			StringBuilder	ports = new StringBuilder();
+
+			for ( int i=0;i<=num_leechers;i++){
+
+				ports.append( i==0?"":"," ).append( base_port + i );
+			}
+
+			for ( int i=0;i<=num_leechers;i++){
+
+				nodes.add( new Node( i, new File( dir, "node" + i ), torrent_file, ports.toString()));
+			}
+
+			for ( Node node: nodes ){
+
+				if ( !node.waitForReady( READY_TIMEOUT )){
+
+					System.out.println( "Node " + node.index + " failed to start, see " + node.log_file );
+
+					return( false );
+				}
+			}
+
+			long	start = SystemTime.getMonotonousTime();
+
+			for ( Node node: nodes ){
+
+				node.send( "start" );
+			}
+
+			boolean	complete = true;
+
+			for ( Node node: nodes ){
+
+				if ( node.index > 0 ){
+
+					long	remaining = timeout - ( SystemTime.getMonotonousTime() - start );
+
+					if ( !node.waitForComplete( remaining )){
+
+						System.out.println( "Node " + node.index + " didn't complete, see " + node.log_file );
+
+						complete = false;
+
+						break;
+					}
+				}
+			}
+
+			long	elapsed = SystemTime.getMonotonousTime() - start;
+
+			for ( Node node: nodes ){
+
+				node.send( "stop" );
+			}
+
+			for ( Node node: nodes ){
+
+				node.waitForStats( STOP_TIMEOUT );
+			}
+
+			Map<String,Object>	results = report( torrent, piece_length, nodes, elapsed, complete );
+
+			String	out = options.get( "out" );
+
+			if ( out != null && out.length() > 0 ){
+
+				try ( PrintWriter pw = new PrintWriter( new OutputStreamWriter( new FileOutputStream( out ), "UTF-8" ))){
+
+					pw.println( JSONUtils.encodeToJSON( results ));
+				}
+
+				System.out.println( "Results written to " + out );
+			}
+
+			return( complete );
+
+		}finally{
+
+			for ( Node node: nodes ){
+
+				node.destroy();
+			}
+
+			if ( !keep ){
+
+				FileUtil.recursiveDelete( dir );
+			}
+		}
+	}
+
+	private File
+	createData(
+		File		data_dir )
+
+		throws Throwable
+	{
+		data_dir.mkdirs();
+
+		File	file = new File( data_dir, "swarm-" + size/(1024*1024) + "MB-" + random_seed + ".dat" );
+
+		Random	random = new Random( random_seed );
+
+		byte[]	buffer = new byte[1024*1024];
+
+		try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" )){
+
+			for ( long done=0;done<size;done+=buffer.length){
+
+				random.nextBytes( buffer );
+
+				raf.write( buffer, 0, (int)Math.min( buffer.length, size - done ));
+			}
+		}
+
+		return( file );
+	}
+
+	private Map<String,Object>
+	report(
+		TOTorrent		torrent,
+		long			piece_length,
+		List<Node>		nodes,
+		long			elapsed,
+		boolean			complete )
+	{
+		Map<String,Object>	results = new LinkedHashMap<>();
+
+		results.put( "version", Constants.BIGLYBT_VERSION );
+		results.put( "time", System.currentTimeMillis());
+		results.put( "java", System.getProperty( "java.version" ));
+		results.put( "os", System.getProperty( "os.name" ) + " " + System.getProperty( "os.arch" ));
+		results.put( "processors", (long)Runtime.getRuntime().availableProcessors());
+		results.put( "leechers", (long)num_leechers );
+		results.put( "size", size );
+		results.put( "pieces", (long)torrent.getNumberOfPieces());
+		results.put( "piece_length", piece_length );
+		results.put( "seed", random_seed );
+		results.put( "seed_rate", (long)seed_rate );
+		results.put( "complete", complete );
+		results.put( "elapsed_ms", elapsed );
+
+		long	received		= 0;
+		long	completion_max	= 0;
+		long	completion_sum	= 0;
+
+		long[]	totals = new long[8];
+
+		String[]	total_names = { "cpu_ms", "alloc_bytes", "gc_count", "gc_ms", "blocked_count", "blocked_ms", "waited_count", "waited_ms" };
+
+		List<Object>	node_results = new ArrayList<>();
+
+		System.out.println( "node  role     complete(ms)  recv(MB)  sent(MB)  cpu(ms)  alloc(MB)  gc(ms)  blocked(n/ms)  waited(n/ms)" );
+
+		for ( Node node: nodes ){
+
+			Map<String,Object>	stats = node.stats==null?new LinkedHashMap<String,Object>():node.stats;
+
+			stats.put( "node", (long)node.index );
+
+			if ( node.completion_time >= 0 ){
+
+				stats.put( "completion_ms", node.completion_time );
+
+				completion_max	 = Math.max( completion_max, node.completion_time );
+				completion_sum	+= node.completion_time;
+			}
+
+			if ( node.index > 0 ){
+
+				received += getLong( stats, "bytes_received" );
+			}
+
+			for ( int i=0;i<totals.length;i++){
+
+				totals[i] += getLong( stats, total_names[i] );
+			}
+
+			node_results.add( stats );
+
+			System.out.println( String.format(
+				"%-5d %-8s %12s  %8.1f  %8.1f  %7d  %9.1f  %6d  %6d/%-6d  %6d/%d",
+				node.index,
+				node.index==0?"seed":"leecher",
+				node.completion_time<0?"-":String.valueOf( node.completion_time ),
+				getLong( stats, "bytes_received" )/(1024*1024.0),
+				getLong( stats, "bytes_sent" )/(1024*1024.0),
+				getLong( stats, "cpu_ms" ),
+				getLong( stats, "alloc_bytes" )/(1024*1024.0),
+				getLong( stats, "gc_ms" ),
+				getLong( stats, "blocked_count" ),
+				getLong( stats, "blocked_ms" ),
+				getLong( stats, "waited_count" ),
+				getLong( stats, "waited_ms" )));
+		}
+
+		results.put( "nodes", node_results );
+
+		double	received_mb = received/(1024*1024.0);
+		double	elapsed_secs = Math.max( 1, elapsed )/1000.0;
+
+		results.put( "completion_max_ms", completion_max );
+		results.put( "completion_mean_ms", num_leechers==0?0:completion_sum/num_leechers );
+		results.put( "received_bytes", received );
+
+		for ( int i=0;i<totals.length;i++){
+
+			results.put( "total_" + total_names[i], totals[i] );
+		}
+
+		double	cpu_per_mb		= received_mb==0?0:totals[0]/received_mb;
+		double	alloc_per_sec	= totals[1]/(1024*1024.0)/elapsed_secs;
+		double	alloc_per_mb	= received_mb==0?0:totals[1]/(1024*1024.0)/received_mb;
+
+		results.put( "cpu_ms_per_mb", cpu_per_mb );
+		results.put( "alloc_mb_per_sec", alloc_per_sec );
+		results.put( "alloc_mb_per_mb", alloc_per_mb );
+
+		System.out.println(
+			"Swarm complete in " + completion_max + "ms (mean " + results.get( "completion_mean_ms" ) + "ms), " +
+			String.format( "%.1f", received_mb/elapsed_secs ) + "MB/s across the swarm" );
+
+		System.out.println(
+			"CPU " + String.format( "%.2f", cpu_per_mb ) + "ms/MB, allocation " +
+			String.format( "%.1f", alloc_per_sec ) + "MB/s (" + String.format( "%.2f", alloc_per_mb ) + "MB/MB), " +
+			"blocked " + totals[4] + " times for " + totals[5] + "ms, waited " + totals[6] + " times for " + totals[7] + "ms" );
+
+		return( results );
+	}
+
+	private static long
+	getLong(
+		Map<String,Object>	map,
+		String				name )
+	{
+		Object	o = map.get( name );
+
+		return( o instanceof Number?((Number)o).longValue():0 );
+	}
+
+	private class
+	Node
+	{
+		final int		index;
+		final File		log_file;
+
+		private final Process		process;
+		private final PrintWriter	writer;
+
+		private boolean				ready;
+		private boolean				failed;
+		long						completion_time = -1;
+		Map<String,Object>			stats;
+
+		private
+		Node(
+			int			_index,
+			File		node_dir,
+			File		torrent_file,
+			String		ports )
+
+			throws Throwable
+		{
+			index	= _index;
+
+			File	config_dir = new File( node_dir, "config" );
+
+			config_dir.mkdirs();
+
+			log_file = new File( node_dir, "node.log" );
+
+			List<String>	command = new ArrayList<>();
+
+			command.add( System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java" );
+
+			String	jvm = options.get( "jvm" );
+
+			if ( jvm != null ){
+
+				for ( String arg: jvm.trim().split( "\\s+" )){
+
+					if ( arg.length() > 0 ){
+
+						command.add( arg );
+					}
+				}
+			}
+
+			command.add( "-Dazureus.config.path=" + config_dir.getAbsolutePath());
+			command.add( "-Duser.home=" + node_dir.getAbsolutePath());
+			command.add( "-cp" );
+			command.add( System.getProperty( "java.class.path" ));
+			command.add( SwarmSimulatorNode.class.getName());
+			command.add( "-torrent" );
+			command.add( torrent_file.getAbsolutePath());
+			command.add( "-data" );
+			command.add( new File( node_dir, "data" ).getAbsolutePath());
+			command.add( "-port" );
+			command.add( String.valueOf( base_port + index ));
+			command.add( "-peers" );
+			command.add( ports );
+
+			if ( index == 0 ){
+
+				command.add( "-seeding" );
+
+				if ( seed_rate > 0 ){
+
+					command.add( "-upload" );
+					command.add( String.valueOf( seed_rate ));
+				}
+			}
+
+			ProcessBuilder	pb = new ProcessBuilder( command );
+
+			pb.redirectErrorStream( true );
+
+			process = pb.start();
+
+			writer = new PrintWriter( new OutputStreamWriter( process.getOutputStream(), "UTF-8" ), true );
+
+			new AEThread2( "SwarmSimulator:node" + index, true )
+			{
+				@Override
+				public void
+				run()
+				{
+					read();
+				}
+			}.start();
+		}
+
+		private void
+		read()
+		{
+			try ( 	BufferedReader	reader	= new BufferedReader( new InputStreamReader( process.getInputStream(), "UTF-8" ));
+					PrintWriter		log		= new PrintWriter( new OutputStreamWriter( new FileOutputStream( log_file ), "UTF-8" ))){
+
+				while( true ){
+
+					String	line = reader.readLine();
+
+					if ( line == null ){
+
+						break;
+					}
+
+					log.println( line );
+
+					if ( line.startsWith( SwarmSimulatorNode.PREFIX )){
+
+						handle( line.substring( SwarmSimulatorNode.PREFIX.length()));
+					}
+				}
+			}catch( Throwable e ){
+
+				e.printStackTrace();
+
+			}finally{
+
+				synchronized( this ){
+
+					failed = true;
+
+					notifyAll();
+				}
+			}
+		}
+
+		private synchronized void
+		handle(
+			String		line )
+		{
+			if ( line.startsWith( "READY" )){
+
+				ready = true;
+
+			}else if ( line.startsWith( "COMPLETE " )){
+
+				completion_time = Long.parseLong( line.substring( 9 ).trim());
+
+				System.out.println( "Leecher " + index + " complete in " + completion_time + "ms" );
+
+			}else if ( line.startsWith( "STATS " )){
+
+				@SuppressWarnings("unchecked")
+				Map<String,Object>	decoded = JSONUtils.decodeJSON( line.substring( 6 ));
+
+				stats = decoded;
+
+			}else if ( line.startsWith( "FAILED" )){
+
+				failed = true;
+			}
+
+			notifyAll();
+		}
+
+		private void
+		send(
+			String		command )
+		{
+			writer.println( command );
+		}
+
+		private synchronized boolean
+		waitForReady(
+			long		millis )
+
+			throws InterruptedException
+		{
+			long	end = SystemTime.getMonotonousTime() + millis;
+
+			while( !ready && !failed ){
+
+				long	remaining = end - SystemTime.getMonotonousTime();
+
+				if ( remaining <= 0 ){
+
+					break;
+				}
+
+				wait( remaining );
+			}
+
+			return( ready );
+		}
+
+		private synchronized boolean
+		waitForComplete(
+			long		millis )
+
+			throws InterruptedException
+		{
+			long	end = SystemTime.getMonotonousTime() + millis;
+
+			while( completion_time < 0 && !failed ){
+
+				long	remaining = end - SystemTime.getMonotonousTime();
+
+				if ( remaining <= 0 ){
+
+					break;
+				}
+
+				wait( remaining );
+			}
+
+			return( completion_time >= 0 );
+		}
+
+		private synchronized void
+		waitForStats(
+			long		millis )
+
+			throws InterruptedException
+		{
+			long	end = SystemTime.getMonotonousTime() + millis;
+
+			while( stats == null && !failed ){
+
+				long	remaining = end - SystemTime.getMonotonousTime();
+
+				if ( remaining <= 0 ){
+
+					break;
+				}
+
+				wait( remaining );
+			}
+		}
+
+		private void
+		destroy()
+		{
+			process.destroy();
+		}
+	}
+}
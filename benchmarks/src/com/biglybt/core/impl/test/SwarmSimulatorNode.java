@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.impl.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.biglybt.core.Core;
+import com.biglybt.core.CoreFactory;
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
+import com.biglybt.core.download.DownloadManager;
+import com.biglybt.core.global.GlobalManager;
+import com.biglybt.core.peer.PEPeer;
+import com.biglybt.core.peer.PEPeerManager;
+import com.biglybt.core.security.SESecurityManager;
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.pif.PluginManager;
+import com.biglybt.pif.PluginManagerDefaults;
+import com.biglybt.util.JSONUtils;
+
+/**
+ * One member of a {@link SwarmSimulator} swarm, run in its own JVM with its own config
+ * directory. Starts a core with the network plugins disabled, adds the swarm's torrent and
+ * then follows commands from the simulator on stdin:
+ *
+ *   start	start the download and keep connecting to the other members on localhost
+ *   stop	report resource usage since the start and exit
+ *
+ * Everything for the simulator is written to stdout as lines starting with {@link #PREFIX};
+ * anything else written there is just logged by the simulator.
+ *
+ * Usage: SwarmSimulatorNode -torrent file -data dir -port port -peers port,port,... [-seeding] [-upload KB/s]
+ */
+
+public class
+SwarmSimulatorNode
+{
+	public static final String	PREFIX = "SWARM ";
+
+	private static final String[]	DISABLED_PLUGINS = {
+		PluginManagerDefaults.PID_DHT,
+		PluginManagerDefaults.PID_DHT_TRACKER,
+		PluginManagerDefaults.PID_UPNP,
+		PluginManagerDefaults.PID_CORE_UPDATE_CHECKER,
+		PluginManagerDefaults.PID_CORE_PATCH_CHECKER,
+		PluginManagerDefaults.PID_PLATFORM_CHECKER,
+		PluginManagerDefaults.PID_PLUGIN_UPDATE_CHECKER,
+		PluginManagerDefaults.PID_LOCAL_TRACKER,
+		PluginManagerDefaults.PID_NET_STATUS,
+		PluginManagerDefaults.PID_BUDDY,
+		PluginManagerDefaults.PID_RSS,
+	};
+
+	private static final long	CONNECT_PERIOD	= 1000;
+
+	private final boolean		seeding;
+	private final int			port;
+	private final int[]			peer_ports;
+	private final int			upload_limit;
+
+	private DownloadManager		download;
+
+	private volatile boolean	started;
+	private volatile long		start_time;
+	private volatile boolean	stopping;
+
+	private long				start_cpu;
+	private Map<Long,Long>		start_thread_alloc;
+	private Map<Long,long[]>	start_thread_contention;
+	private long				start_gc_count;
+	private long				start_gc_time;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		try{
+			Map<String,String>	options = new HashMap<>();
+
+			for ( int i=0;i<args.length;i++){
+
+				if ( args[i].startsWith( "-" )){
+
+					options.put( args[i].substring( 1 ), i+1<args.length&&!args[i+1].startsWith( "-" )?args[++i]:"" );
+				}
+			}
+
+			String[]	bits = options.get( "peers" ).split( "," );
+
+			int[]	peer_ports = new int[bits.length];
+
+			for ( int i=0;i<bits.length;i++){
+
+				peer_ports[i] = Integer.parseInt( bits[i].trim());
+			}
+
+			String	upload = options.get( "upload" );
+
+			new SwarmSimulatorNode(
+					options.containsKey( "seeding" ),
+					Integer.parseInt( options.get( "port" )),
+					peer_ports,
+					upload==null||upload.length()==0?0:Integer.parseInt( upload )).run( new File( options.get( "torrent" )), new File( options.get( "data" )));
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+
+			send( "FAILED " + e );
+		}
+
+		SESecurityManager.exitVM( 1 );
+	}
+
+	private
+	SwarmSimulatorNode(
+		boolean		_seeding,
+		int			_port,
+		int[]		_peer_ports,
+		int			_upload_limit )
+	{
+		seeding			= _seeding;
+		port			= _port;
+		peer_ports		= _peer_ports;
+		upload_limit	= _upload_limit;
+	}
+
+	private void
+	run(
+		File		torrent_file,
+		File		data_dir )
+
+		throws Throwable
+	{
+		for ( String pid: DISABLED_PLUGINS ){
+
+			PluginManager.getDefaults().setDefaultPluginEnabled( pid, false );
+		}
+
+		COConfigurationManager.setParameter( ConfigKeys.Connection.ICFG_TCP_LISTEN_PORT, port );
+		COConfigurationManager.setParameter( ConfigKeys.Connection.ICFG_UDP_LISTEN_PORT, port );
+		COConfigurationManager.setParameter( ConfigKeys.Connection.ICFG_UDP_NON_DATA_LISTEN_PORT, port );
+
+			// every member is on 127.0.0.1
+
+		COConfigurationManager.setParameter( ConfigKeys.Transfer.BCFG_ALLOW_SAME_IP_PEERS, true );
+
+			// members are LAN local to each other so the LAN limit is the one that applies
+
+		if ( upload_limit > 0 ){
+
+			COConfigurationManager.setParameter( ConfigKeys.Transfer.ICFG_MAX_UPLOAD_SPEED_KBS, upload_limit );
+			COConfigurationManager.setParameter( ConfigKeys.Transfer.ICFG_MAX_LAN_UPLOAD_SPEED_K_BS, upload_limit );
+		}
+
+		COConfigurationManager.setParameter( "update.start", false );
+		COConfigurationManager.setParameter( "update.periodic", false );
+
+		Core	core = CoreFactory.create();
+
+		core.start();
+
+		GlobalManager	gm = core.getGlobalManager();
+
+		data_dir.mkdirs();
+
+		download =
+			gm.addDownloadManager(
+				torrent_file.getAbsolutePath(), null, data_dir.getAbsolutePath(),
+				seeding?DownloadManager.STATE_WAITING:DownloadManager.STATE_STOPPED,
+				true, seeding, null );
+
+		if ( download == null ){
+
+			throw( new Exception( "Failed to add " + torrent_file ));
+		}
+
+		if ( seeding ){
+
+			download.setForceStart( true );
+
+			while( download.getState() != DownloadManager.STATE_SEEDING ){
+
+				if ( download.getState() == DownloadManager.STATE_ERROR ){
+
+					throw( new Exception( "Seed failed: " + download.getErrorDetails()));
+				}
+
+				Thread.sleep( 100 );
+			}
+		}
+
+		send( "READY " + port );
+
+		BufferedReader	reader = new BufferedReader( new InputStreamReader( System.in ));
+
+		while( true ){
+
+			String	line = reader.readLine();
+
+			if ( line == null || line.equals( "stop" )){
+
+				stop();
+
+				break;
+
+			}else if ( line.equals( "start" )){
+
+				start();
+			}
+		}
+	}
+
+	private void
+	start()
+	{
+		startUsage();
+
+		start_time	= SystemTime.getMonotonousTime();
+		started		= true;
+
+		if ( !seeding ){
+
+			download.setForceStart( true );
+
+			if ( download.getState() == DownloadManager.STATE_STOPPED ){
+
+				download.setStateWaiting();
+			}
+		}
+
+		new AEThread2( "SwarmSimulatorNode", true )
+		{
+			@Override
+			public void
+			run()
+			{
+				boolean	complete = seeding;
+
+				long	last_connect = 0;
+
+				while( !stopping ){
+
+					try{
+						long	now = SystemTime.getMonotonousTime();
+
+						if ( !complete && download.isDownloadComplete( false )){
+
+							complete = true;
+
+							send( "COMPLETE " + ( now - start_time ));
+						}
+
+						PEPeerManager	pm = download.getPeerManager();
+
+						if ( pm != null && now - last_connect >= CONNECT_PERIOD ){
+
+							last_connect = now;
+
+							connect( pm );
+						}
+
+						Thread.sleep( 20 );
+
+					}catch( Throwable e ){
+
+						e.printStackTrace();
+					}
+				}
+			}
+		}.start();
+	}
+
+		/**
+		 * (Re)connects to every other member that we aren't connected to. A connection fails
+		 * if the other end hasn't started its download yet, so this keeps trying
+		 */
+
+	private void
+	connect(
+		PEPeerManager	pm )
+	{
+		Set<Integer>	connected = new HashSet<>();
+
+		for ( PEPeer peer: pm.getPeers()){
+
+			connected.add( peer.getTCPListenPort());
+			connected.add( peer.getPort());
+		}
+
+		for ( int p: peer_ports ){
+
+			if ( p != port && !connected.contains( p )){
+
+				pm.addPeer( "127.0.0.1", p, 0, false, null );
+			}
+		}
+	}
+
+	private void
+	stop()
+	{
+		stopping = true;
+
+		Map<String,Object>	stats = new LinkedHashMap<>();
+
+		stats.put( "seeding", seeding );
+		stats.put( "port", (long)port );
+		stats.put( "bytes_received", download.getStats().getSessionDataBytesReceived());
+		stats.put( "bytes_sent", download.getStats().getSessionDataBytesSent());
+
+		if ( started ){
+
+			stats.put( "elapsed_ms", SystemTime.getMonotonousTime() - start_time );
+
+			addUsage( stats );
+		}
+
+		send( "STATS " + JSONUtils.encodeToJSON( stats ));
+
+		System.out.flush();
+
+		SESecurityManager.exitVM( 0 );
+	}
+
+	private void
+	startUsage()
+	{
+		ThreadMXBean	threads = ManagementFactory.getThreadMXBean();
+
+		if ( threads.isThreadContentionMonitoringSupported()){
+
+			threads.setThreadContentionMonitoringEnabled( true );
+		}
+
+		start_cpu					= getProcessCPUTime();
+		start_thread_alloc			= getThreadAllocations();
+		start_thread_contention		= getThreadContention();
+
+		long[]	gc = getGCStats();
+
+		start_gc_count	= gc[0];
+		start_gc_time	= gc[1];
+	}
+
+	private void
+	addUsage(
+		Map<String,Object>	stats )
+	{
+		long	cpu = getProcessCPUTime();
+
+		if ( cpu >= 0 && start_cpu >= 0 ){
+
+			stats.put( "cpu_ms", ( cpu - start_cpu )/1000000 );
+		}
+
+			// threads that exited in the meantime are lost, the core's main ones live throughout
+
+		Map<Long,Long>	alloc = getThreadAllocations();
+
+		if ( alloc != null && start_thread_alloc != null ){
+
+			long	total = 0;
+
+			for ( Map.Entry<Long,Long> entry: alloc.entrySet()){
+
+				Long	before = start_thread_alloc.get( entry.getKey());
+
+				total += entry.getValue() - ( before==null?0:before );
+			}
+
+			stats.put( "alloc_bytes", total );
+		}
+
+		long[]	contention = new long[4];
+
+		for ( Map.Entry<Long,long[]> entry: getThreadContention().entrySet()){
+
+			long[]	now		= entry.getValue();
+			long[]	before	= start_thread_contention.get( entry.getKey());
+
+			for ( int i=0;i<4;i++){
+
+				contention[i] += now[i] - ( before==null?0:before[i] );
+			}
+		}
+
+		stats.put( "blocked_count", contention[0] );
+		stats.put( "blocked_ms", contention[1] );
+		stats.put( "waited_count", contention[2] );
+		stats.put( "waited_ms", contention[3] );
+
+		long[]	gc = getGCStats();
+
+		stats.put( "gc_count", gc[0] - start_gc_count );
+		stats.put( "gc_ms", gc[1] - start_gc_time );
+	}
+
+	private static long
+	getProcessCPUTime()
+	{
+		try{
+			Class<?>	c = Class.forName( "com.sun.management.OperatingSystemMXBean" );
+
+			Method	m = c.getMethod( "getProcessCpuTime" );
+
+			return((Long)m.invoke( ManagementFactory.getOperatingSystemMXBean()));
+
+		}catch( Throwable e ){
+
+				// not available, fall back to the live threads
+
+			ThreadMXBean	threads = ManagementFactory.getThreadMXBean();
+
+			long	total = 0;
+
+			for ( long id: threads.getAllThreadIds()){
+
+				long	t = threads.getThreadCpuTime( id );
+
+				if ( t > 0 ){
+
+					total += t;
+				}
+			}
+
+			return( total );
+		}
+	}
+
+	private static Map<Long,Long>
+	getThreadAllocations()
+	{
+		try{
+			Class<?>	c = Class.forName( "com.sun.management.ThreadMXBean" );
+
+			Method	m = c.getMethod( "getThreadAllocatedBytes", long[].class );
+
+			ThreadMXBean	threads = ManagementFactory.getThreadMXBean();
+
+			long[]	ids		= threads.getAllThreadIds();
+			long[]	bytes	= (long[])m.invoke( threads, (Object)ids );
+
+			Map<Long,Long>	result = new HashMap<>();
+
+			for ( int i=0;i<ids.length;i++){
+
+				if ( bytes[i] >= 0 ){
+
+					result.put( ids[i], bytes[i] );
+				}
+			}
+
+			return( result );
+
+		}catch( Throwable e ){
+
+			return( null );
+		}
+	}
+
+	private static Map<Long,long[]>
+	getThreadContention()
+	{
+		ThreadMXBean	threads = ManagementFactory.getThreadMXBean();
+
+		Map<Long,long[]>	result = new HashMap<>();
+
+		for ( ThreadInfo info: threads.getThreadInfo( threads.getAllThreadIds())){
+
+			if ( info != null ){
+
+				result.put(
+					info.getThreadId(),
+					new long[]{ info.getBlockedCount(), Math.max( 0, info.getBlockedTime()), info.getWaitedCount(), Math.max( 0, info.getWaitedTime())});
+			}
+		}
+
+		return( result );
+	}
+
+	private static long[]
+	getGCStats()
+	{
+		long	count	= 0;
+		long	time	= 0;
+
+		for ( GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()){
+
+			count	+= Math.max( 0, gc.getCollectionCount());
+			time	+= Math.max( 0, gc.getCollectionTime());
+		}
+
+		return( new long[]{ count, time });
+	}
+
+	private static void
+	send(
+		String		str )
+	{
+		synchronized( System.out ){
+
+			System.out.println( PREFIX + str );
+
+			System.out.flush();
+		}
+	}
+}
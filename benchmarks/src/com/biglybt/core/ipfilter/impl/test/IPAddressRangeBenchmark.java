@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.ipfilter.impl.test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biglybt.core.ipfilter.impl.IPAddressRangeManagerV4;
+import com.biglybt.core.ipfilter.impl.IpRangeV4Impl;
+import com.biglybt.core.util.test.BenchmarkRunner;
+
+/**
+ * Times IPAddressRangeManagerV4 lookups of random addresses against random range sets of
+ * blocklist-like sizes, and the rebuild of the merged range array.
+ *
+ * Usage: IPAddressRangeBenchmark [-out results.json] [-baseline results.json] [-quick]
+ */
+
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class
+IPAddressRangeBenchmark
+{
+	public static void
+	main(
+		String[]	args )
+	{
+		try{
+			BenchmarkRunner	runner = BenchmarkRunner.create( args );
+
+			runner.run( IPAddressRangeBenchmark.class );
+
+			runner.complete( "IPAddressRangeBenchmark" );
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	public static abstract class
+	RangeState
+	{
+		IpRangeV4Impl[]	range_array;
+		RangeManager	manager;
+		Inet4Address[]	addresses;
+		int				pos;
+
+		void
+		load(
+			int		num_ranges )
+
+			throws UnknownHostException
+		{
+			Random	random = new Random( num_ranges );
+
+			range_array = new IpRangeV4Impl[num_ranges];
+
+			int[]	starts = new int[num_ranges];
+
+			for ( int i=0;i<num_ranges;i++){
+
+				int	start	= random.nextInt();
+				int	end		= start + random.nextInt( 4096 );
+
+				if ( end < start ){
+
+					end = start;
+				}
+
+				starts[i] = start;
+
+				range_array[i] = new IpRangeV4Impl( "range " + i, start, end, true );
+			}
+
+			manager = new RangeManager( range_array );
+
+			addresses = new Inet4Address[4096];
+
+			for ( int i=0;i<addresses.length;i++){
+
+				byte[]	bytes = new byte[4];
+
+				if ( i%4 == 0 ){
+
+						// make sure some lookups hit
+
+					int	ip = starts[random.nextInt( num_ranges )];
+
+					bytes[0] = (byte)( ip >> 24 );
+					bytes[1] = (byte)( ip >> 16 );
+					bytes[2] = (byte)( ip >> 8 );
+					bytes[3] = (byte)ip;
+
+				}else{
+
+					random.nextBytes( bytes );
+				}
+
+				addresses[i] = (Inet4Address)InetAddress.getByAddress( bytes );
+			}
+
+			manager.isInRange( addresses[0] );	// force the initial build
+		}
+	}
+
+	@State( Scope.Thread )
+	public static class
+	Ranges
+		extends RangeState
+	{
+		@Param({ "1000", "100000", "500000" })
+		public int	ranges;
+
+		@Setup
+		public void
+		setup()
+
+			throws UnknownHostException
+		{
+			load( ranges );
+		}
+	}
+
+		// rebuilding the largest set takes too long to be worth timing
+
+	@State( Scope.Thread )
+	public static class
+	BuildRanges
+		extends RangeState
+	{
+		@Param({ "1000", "100000" })
+		public int	ranges;
+
+		@Setup
+		public void
+		setup()
+
+			throws UnknownHostException
+		{
+			load( ranges );
+		}
+	}
+
+	@Benchmark
+	public Object
+	lookup(
+		Ranges		state )
+	{
+		return( state.manager.isInRange( state.addresses[state.pos++ & ( state.addresses.length - 1 )]));
+	}
+
+	@Benchmark
+	public Object
+	build(
+		BuildRanges	state )
+	{
+		RangeManager	fresh = new RangeManager( state.range_array );
+
+		return( fresh.isInRange( state.addresses[0] ));
+	}
+
+	private static class
+	RangeManager
+		extends IPAddressRangeManagerV4
+	{
+		private
+		RangeManager(
+			IpRangeV4Impl[]	ranges )
+		{
+			for ( IpRangeV4Impl r: ranges ){
+
+				addRange( r );
+			}
+		}
+	}
+}
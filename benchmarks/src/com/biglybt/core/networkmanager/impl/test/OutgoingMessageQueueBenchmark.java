@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.networkmanager.impl.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.biglybt.core.networkmanager.OutgoingMessageQueue;
+import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.networkmanager.impl.OutgoingMessageQueueImpl;
+import com.biglybt.core.networkmanager.impl.OutgoingMessageQueueLockFree;
+import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTCancel;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTHave;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTMessageEncoder;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTPiece;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTRequest;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+
+/**
+ * Compares the locked and lock-free outgoing message queues with a number of producer threads
+ * adding a mix of have/request/cancel/piece messages while a single writer thread delivers them
+ * to a transport that accepts everything, in the way the peer control and write controller threads
+ * use a connection's queue.
+ *
+ * Usage: OutgoingMessageQueueBenchmark [producers] [messages per producer] [rounds]
+ */
+
+public class
+OutgoingMessageQueueBenchmark
+{
+	private static final int	DELIVER_MAX_BYTES	= 64*1024;
+	private static final int	PIECE_SIZE			= 1024;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		int	producers	= args.length>0?Integer.parseInt( args[0] ):4;
+		int	messages	= args.length>1?Integer.parseInt( args[1] ):200000;
+		int	rounds		= args.length>2?Integer.parseInt( args[2] ):5;
+
+		try{
+			for ( int round=0;round<rounds;round++){
+
+					// first round is warm-up
+
+				String	prefix = round==0?"warmup ":"";
+
+				System.out.println( prefix + "locked:    " + run( new OutgoingMessageQueueImpl( new BTMessageEncoder()), producers, messages ));
+				System.out.println( prefix + "lock-free: " + run( new OutgoingMessageQueueLockFree( new BTMessageEncoder()), producers, messages ));
+			}
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	private static String
+	run(
+		final OutgoingMessageQueue	queue,
+		int							producers,
+		final int					messages )
+
+		throws Exception
+	{
+		final AtomicLong	sent_count	= new AtomicLong();
+		final AtomicLong	add_nanos	= new AtomicLong();
+
+		queue.setTransport( createTransport());
+
+		queue.registerQueueListener(
+			new OutgoingMessageQueue.MessageQueueListener()
+			{
+				@Override
+				public boolean messageAdded( Message message ){ return( true ); }
+				@Override
+				public void messageQueued( Message message ){}
+				@Override
+				public void messageRemoved( Message message ){}
+				@Override
+				public void messageSent( Message message ){ sent_count.incrementAndGet(); }
+				@Override
+				public void protocolBytesSent( int byte_count ){}
+				@Override
+				public void dataBytesSent( int byte_count ){}
+				@Override
+				public void flush(){}
+			});
+
+		final long	total = (long)producers*messages;
+
+		Thread[]	threads = new Thread[producers];
+
+		long	start = System.nanoTime();
+
+		for ( int i=0;i<producers;i++){
+
+			final int	producer_num = i;
+
+			threads[i] =
+				new Thread( "OMQBenchmark:producer" )
+				{
+					@Override
+					public void
+					run()
+					{
+						long	nanos = 0;
+
+						for ( int j=0;j<messages;j++){
+
+							Message	message = createMessage( producer_num, j );
+
+							long	t = System.nanoTime();
+
+							queue.addMessage( message, false );
+
+							nanos += System.nanoTime() - t;
+						}
+
+						add_nanos.addAndGet( nanos );
+					}
+				};
+
+			threads[i].start();
+		}
+
+		long	delivers = 0;
+
+		while( sent_count.get() < total ){
+
+			int[]	written = queue.deliverToTransport( DELIVER_MAX_BYTES, false, false );
+
+			delivers++;
+
+			if ( written[0] + written[1] == 0 ){
+
+				Thread.yield();
+			}
+		}
+
+		long	elapsed = System.nanoTime() - start;
+
+		for ( Thread t: threads ){
+
+			t.join();
+		}
+
+		queue.destroy();
+
+		return( "messages=" + total + ", elapsed=" + ( elapsed/1000000 ) + "ms, rate=" + ( total*1000000000L/Math.max( 1, elapsed )) +
+				"/sec, add=" + ( add_nanos.get()/total ) + "ns/msg, delivers=" + delivers );
+	}
+
+	static Message
+	createMessage(
+		int		producer,
+		int		num )
+	{
+		int	type = num % 20;
+
+		if ( type < 12 ){
+
+			return( new BTHave( num, (byte)1 ));
+
+		}else if ( type < 18 ){
+
+			return( new BTRequest( num, producer*16384, 16384, (byte)1 ));
+
+		}else if ( type == 18 ){
+
+			return( new BTCancel( num, producer*16384, 16384, (byte)1 ));
+
+		}else{
+
+			DirectByteBuffer	data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_BT_PIECE, PIECE_SIZE );
+
+			return( new BTPiece( num, 0, data, (byte)1 ));
+		}
+	}
+
+		/**
+		 * A transport that swallows everything written to it
+		 */
+
+	private static Transport
+	createTransport()
+	{
+		return((Transport)Proxy.newProxyInstance(
+			Transport.class.getClassLoader(),
+			new Class<?>[]{ Transport.class },
+			new InvocationHandler()
+			{
+				@Override
+				public Object
+				invoke(
+					Object		proxy,
+					Method		method,
+					Object[]	args )
+				{
+					String	name = method.getName();
+
+					if ( name.equals( "write" )){
+
+						ByteBuffer[]	buffers = (ByteBuffer[])args[0];
+						int				offset	= (Integer)args[1];
+						int				length	= (Integer)args[2];
+
+						long	written = 0;
+
+						for ( int i=offset;i<offset+length;i++){
+
+							written += buffers[i].remaining();
+
+							buffers[i].position( buffers[i].limit());
+						}
+
+						return( written );
+
+					}else if ( name.equals( "getMssSize" )){
+
+						return( 1460 );
+					}
+
+					Class<?>	type = method.getReturnType();
+
+					if ( type == boolean.class ){
+
+						return( name.equals( "isReadyForWrite" ));
+
+					}else if ( type == int.class ){
+
+						return( 0 );
+
+					}else if ( type == long.class ){
+
+						return( 0L );
+					}
+
+					return( null );
+				}
+			}));
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.networkmanager.impl.test;
+
+import java.nio.ByteBuffer;
+
+import com.biglybt.core.networkmanager.impl.TransportCipher;
+
+/**
+ * Throughput of the RC4 implementations available to PHE connections for a range of buffer sizes,
+ * on heap and direct buffers and decrypting in place (source and target views of the same
+ * direct buffer, which is what the stream read path does). Also reports which implementation the
+ * automatic selection settles on.
+ *
+ * Usage: TransportCipherBenchmark [total MB per run] [rounds]
+ */
+
+public class
+TransportCipherBenchmark
+{
+	private static final int[]	SIZES = { 64, 1024, 16*1024, 64*1024 };
+
+	public static void
+	main(
+		String[]	args )
+	{
+		int	total_mb	= args.length>0?Integer.parseInt( args[0] ):32;
+		int	rounds		= args.length>1?Integer.parseInt( args[1] ):3;
+
+		try{
+			System.out.println( "selected: " + TransportCipher.RC4_IMPL_NAMES[ TransportCipher.getRC4Implementation()]);
+
+			for ( int round=0;round<rounds;round++){
+
+				String	prefix = round==0?"warmup ":"";
+
+				for ( int size: SIZES ){
+
+					for ( int impl=TransportCipher.RC4_IMPL_INTERNAL;impl<=TransportCipher.RC4_IMPL_JCE;impl++ ){
+
+						String	name = TransportCipher.RC4_IMPL_NAMES[impl];
+
+						try{
+							System.out.println(
+								prefix + name + ", size=" + size +
+								": heap=" + run( impl, size, total_mb, false, false ) +
+								"MB/s, direct=" + run( impl, size, total_mb, true, false ) +
+								"MB/s, in-place=" + run( impl, size, total_mb, true, true ) + "MB/s" );
+
+						}catch( Throwable e ){
+
+							System.out.println( prefix + name + ": unavailable - " + e );
+						}
+					}
+				}
+			}
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	private static long
+	run(
+		int			impl,
+		int			size,
+		int			total_mb,
+		boolean		direct,
+		boolean		in_place )
+
+		throws Exception
+	{
+		TestCipher	cipher = new TestCipher( impl, "TransportCipherBench".getBytes());
+
+		ByteBuffer	source = direct?ByteBuffer.allocateDirect( size ):ByteBuffer.allocate( size );
+		ByteBuffer	target = in_place?source:( direct?ByteBuffer.allocateDirect( size ):ByteBuffer.allocate( size ));
+
+		long	total	= (long)total_mb*1024*1024;
+		long	iters	= Math.max( 1, total/size );
+
+		long	start = System.nanoTime();
+
+		for ( long i=0;i<iters;i++){
+
+			source.clear();
+
+			if ( in_place ){
+
+				ByteBuffer	view = source.duplicate();
+
+				cipher.crypt( source, view );
+
+			}else{
+
+				target.clear();
+
+				cipher.crypt( source, target );
+			}
+		}
+
+		long	elapsed = System.nanoTime() - start;
+
+		return( iters*size*1000000000L/Math.max( 1, elapsed )/(1024*1024));
+	}
+
+	private static class
+	TestCipher
+		extends TransportCipher
+	{
+		TestCipher(
+			int		impl,
+			byte[]	key )
+
+			throws Exception
+		{
+			super( impl, key );
+		}
+
+		void
+		crypt(
+			ByteBuffer	source,
+			ByteBuffer	target )
+
+			throws Exception
+		{
+			update( source, target );
+		}
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.piecepicker.impl.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biglybt.core.disk.DiskManagerFileInfo;
+import com.biglybt.core.disk.DiskManagerPiece;
+import com.biglybt.core.disk.impl.DiskManagerHelper;
+import com.biglybt.core.disk.impl.DiskManagerPieceImpl;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceList;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceMap;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceMapEntry;
+import com.biglybt.core.peer.PEPeer;
+import com.biglybt.core.peer.PEPeerStats;
+import com.biglybt.core.peer.PEPiece;
+import com.biglybt.core.peer.impl.PEPeerControl;
+import com.biglybt.core.peer.impl.PEPeerTransport;
+import com.biglybt.core.peermanager.piecepicker.PiecePicker;
+import com.biglybt.core.peermanager.piecepicker.PiecePickerFactory;
+import com.biglybt.core.peermanager.piecepicker.util.BitFlags;
+import com.biglybt.core.util.AENetworkClassifier;
+import com.biglybt.core.util.test.BenchmarkRunner;
+
+/**
+ * Times request allocation by the piece picker over synthetic swarms. The disk manager, peer
+ * manager and peers are proxies around real disk manager pieces: every piece is wanted, each peer has a random share of the
+ * pieces (so availability varies from piece to piece) and the peers never accept a request,
+ * so every round goes through candidate selection for every peer rather than running out of
+ * blocks to ask for. The proxy calls are part of the times, so they are only comparable with
+ * other runs of this benchmark.
+ *
+ * Usage: PiecePickerBenchmark [-out results.json] [-baseline results.json] [-quick]
+ */
+
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class
+PiecePickerBenchmark
+{
+	private static final int	PIECE_SIZE	= 256*1024;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		try{
+			BenchmarkRunner	runner = BenchmarkRunner.create( args );
+
+			runner.run( PiecePickerBenchmark.class );
+
+			runner.complete( "PiecePickerBenchmark" );
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	@State( Scope.Thread )
+	public static class
+	Swarm
+	{
+		@Param({ "1000", "10000" })
+		public int	pieces;
+
+		@Param({ "50", "500" })
+		public int	peers;
+
+		PiecePicker	picker;
+
+		@Setup
+		public void
+		setup()
+		{
+			picker = createPicker( pieces, peers, 1234 + pieces + peers );
+		}
+	}
+
+	@Benchmark
+	public void
+	allocate(
+		Swarm		swarm )
+	{
+		swarm.picker.updateAvailability();
+
+		swarm.picker.allocateRequests();
+	}
+
+	private static PiecePicker
+	createPicker(
+		int		num_pieces,
+		int		num_peers,
+		long	seed )
+	{
+		Random	random = new Random( seed );
+
+		final long	total_length = (long)num_pieces*PIECE_SIZE;
+
+		final DiskManagerFileInfo	file =
+			(DiskManagerFileInfo)mock( DiskManagerFileInfo.class,
+				"getLength",			total_length,
+				"getNbPieces",			num_pieces,
+				"getFirstPieceNumber",	0,
+				"getLastPieceNumber",	num_pieces - 1 );
+
+		final DMPieceMapEntry	entry =
+			(DMPieceMapEntry)mock( DMPieceMapEntry.class,
+				"getFile",				file,
+				"getLength",			PIECE_SIZE );
+
+		final DMPieceList	list =
+			(DMPieceList)mock( DMPieceList.class,
+				"size",					1,
+				"get",					entry );
+
+		final DMPieceMap	map =
+			(DMPieceMap)mock( DMPieceMap.class,
+				"getPieceList",			list );
+
+		final DiskManagerPiece[]	dm_pieces = new DiskManagerPiece[num_pieces];
+
+		DiskManagerHelper	disk_manager =
+			(DiskManagerHelper)mock( DiskManagerHelper.class,
+				"getPieces",				dm_pieces,
+				"getNbPieces",				num_pieces,
+				"getFiles",					new DiskManagerFileInfo[]{ file },
+				"getPieceMap",				map,
+				"getPieceList",				list,
+				"getTotalLength",			total_length,
+				"getRemaining",				total_length,
+				"getRemainingExcludingDND",	total_length,
+				"getPieceLength",			PIECE_SIZE );
+
+			// the real pieces so the picker's scans over them aren't dominated by proxy calls
+
+		for ( int i=0;i<num_pieces;i++){
+
+			dm_pieces[i] = new DiskManagerPieceImpl( disk_manager, i, PIECE_SIZE );
+		}
+
+		final PEPiece[]	pe_pieces = new PEPiece[num_pieces];
+
+		final List<PEPeer>	peers = new ArrayList<>( num_peers );
+
+		PEPeerControl	peer_control =
+			(PEPeerControl)mock( PEPeerControl.class,
+				"getDiskManager",	disk_manager,
+				"getPieces",		pe_pieces,
+				"getPeers",			peers,
+				"getNbPeers",		num_peers,
+				"addPiece",
+					new Answer()
+					{
+						@Override
+						public Object
+						answer(
+							Object[]	args )
+						{
+							pe_pieces[(Integer)args[1]] = (PEPiece)args[0];
+
+							return( null );
+						}
+					});
+
+		for ( int i=0;i<num_peers;i++){
+
+				// a mix of seeds and peers with anything from a few percent of the pieces up
+
+			boolean[]	have = new boolean[num_pieces];
+
+			double	fraction = random.nextInt( 4 )==0?1:random.nextDouble();
+
+			for ( int j=0;j<num_pieces;j++){
+
+				have[j] = random.nextDouble() < fraction;
+			}
+
+			PEPeerStats	stats =
+				(PEPeerStats)mock( PEPeerStats.class,
+					"getDataReceiveRate",		(long)random.nextInt( 500*1024 ),
+					"getSmoothDataReceiveRate",	(long)random.nextInt( 500*1024 ),
+					"getDataSendRate",			(long)random.nextInt( 100*1024 ));
+
+			peers.add(
+				(PEPeer)mock( PEPeerTransport.class,
+					"getStats",			stats,
+					"getAvailable",		new BitFlags( have ),
+					"getPeerState",		PEPeer.TRANSFERING,
+					"isDownloadPossible",	true,
+					"getMaxNbRequests",	-1,
+					"getLastPiece",		-1,
+					"getNetwork",		AENetworkClassifier.AT_PUBLIC,
+					"getIp",			"10.0." + ( i/250 ) + "." + ( i%250 + 1 )));
+		}
+
+		return( PiecePickerFactory.create( peer_control ));
+	}
+
+	private interface
+	Answer
+	{
+		public Object
+		answer(
+			Object[]	args );
+	}
+
+		/**
+		 * Proxy for the interface returning the given values by method name, and the
+		 * type's default for anything else
+		 */
+
+	private static Object
+	mock(
+		Class<?>	type,
+		Object...	name_values )
+	{
+		final Map<String,Object>	values = new HashMap<>();
+
+		for ( int i=0;i<name_values.length;i+=2 ){
+
+			values.put((String)name_values[i], name_values[i+1] );
+		}
+
+		return( Proxy.newProxyInstance(
+			PiecePickerBenchmark.class.getClassLoader(),
+			new Class<?>[]{ type },
+			new InvocationHandler()
+			{
+				@Override
+				public Object
+				invoke(
+					Object		proxy,
+					Method		method,
+					Object[]	args )
+				{
+					String	name = method.getName();
+
+					Object	value = values.get( name );
+
+					if ( value instanceof Answer ){
+
+						return(((Answer)value).answer( args ));
+
+					}else if ( value != null ){
+
+						return( value );
+
+					}else if ( name.equals( "hashCode" )){
+
+						return( System.identityHashCode( proxy ));
+
+					}else if ( name.equals( "equals" )){
+
+						return( proxy == args[0] );
+					}
+
+					return( defaultValue( method ));
+				}
+			}));
+	}
+
+	private static Object
+	defaultValue(
+		Method		method )
+	{
+		Class<?>	type = method.getReturnType();
+
+		if ( type == boolean.class ){
+
+			return( false );
+
+		}else if ( type == long.class ){
+
+			return( 0L );
+
+		}else if ( type == int.class ){
+
+			return( 0 );
+
+		}else if ( type == float.class ){
+
+			return( 0f );
+
+		}else if ( type == double.class ){
+
+			return( 0d );
+
+		}else if ( type == short.class ){
+
+			return((short)0 );
+
+		}else if ( type == byte.class ){
+
+			return((byte)0 );
+
+		}else if ( type == char.class ){
+
+			return((char)0 );
+
+		}else if ( type == String.class ){
+
+			return( "" );
+		}
+
+		return( null );
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.unchoker.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.biglybt.core.peer.PEPeer;
+import com.biglybt.core.peer.PEPeerStats;
+import com.biglybt.core.peer.impl.PEPeerTransport;
+import com.biglybt.core.peermanager.unchoker.Unchoker;
+import com.biglybt.core.peermanager.unchoker.UnchokerFactory;
+import com.biglybt.core.peermanager.unchoker.UnchokerPeerSelector;
+import com.biglybt.core.peermanager.unchoker.UnchokerUtil;
+
+/**
+ * Compares the insertion sort used by the unchokers with the bounded heap selector for picking
+ * the top slots out of swarms of various sizes (checking both give the same order), then times
+ * full seeding and downloading unchoke rounds over peers with random rates.
+ *
+ * Usage: UnchokerBenchmark [slots] [rounds]
+ */
+
+public class
+UnchokerBenchmark
+{
+	private static final int[]	PEER_COUNTS = { 50, 500, 1000, 5000 };
+
+	public static void
+	main(
+		String[]	args )
+	{
+		int	slots	= args.length>0?Integer.parseInt( args[0] ):8;
+		int	rounds	= args.length>1?Integer.parseInt( args[1] ):3;
+
+		try{
+			for ( int round=0;round<rounds;round++){
+
+				String	prefix = round==0?"warmup ":"";
+
+				for ( int num_peers: PEER_COUNTS ){
+
+					ArrayList<PEPeer>	peers = createPeers( num_peers, 1234 + num_peers );
+
+					System.out.println( prefix + "peers=" + num_peers + ", slots=" + slots + ": " + compareSelection( peers, slots ));
+
+					System.out.println( prefix + "peers=" + num_peers + ", all ordered: " + compareSelection( peers, num_peers ));
+
+					System.out.println(
+						prefix + "peers=" + num_peers +
+						": seeding round=" + timeUnchoker( true, peers, slots ) +
+						"us, downloading round=" + timeUnchoker( false, peers, slots ) + "us" );
+				}
+			}
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	private static String
+	compareSelection(
+		ArrayList<PEPeer>	peers,
+		int					k )
+	{
+		int	iters = Math.max( 10, 2000000/(peers.size()*Math.min( k, 64 )));
+
+		long[]	values = new long[peers.size()];
+
+		for ( int i=0;i<values.length;i++){
+
+			values[i] = peers.get(i).getStats().getDataSendRate();
+		}
+
+		ArrayList<PEPeer>	legacy = null;
+
+		long	start = System.nanoTime();
+
+		for ( int it=0;it<iters;it++){
+
+			legacy = new ArrayList<>();
+
+			long[]	bests = new long[k];
+
+			for ( int i=0;i<values.length;i++){
+
+				UnchokerUtil.updateLargestValueFirstSort( values[i], bests, peers.get(i), legacy, 0 );
+			}
+		}
+
+		long	legacy_nanos = ( System.nanoTime() - start )/iters;
+
+		UnchokerPeerSelector	selector = new UnchokerPeerSelector();
+
+		ArrayList<PEPeer>	selected = null;
+
+		start = System.nanoTime();
+
+		for ( int it=0;it<iters;it++){
+
+			selected = new ArrayList<>();
+
+			selector.reset( k );
+
+			for ( int i=0;i<values.length;i++){
+
+				selector.offer( values[i], peers.get(i));
+			}
+
+			selector.drainTo( selected, true );
+		}
+
+		long	heap_nanos = ( System.nanoTime() - start )/iters;
+
+		return( "insertion=" + legacy_nanos/1000 + "us, heap=" + heap_nanos/1000 + "us, same order=" + legacy.equals( selected ));
+	}
+
+	private static long
+	timeUnchoker(
+		boolean				seeding,
+		ArrayList<PEPeer>	peers,
+		int					slots )
+	{
+		Unchoker	unchoker = UnchokerFactory.getSingleton().getUnchoker( seeding );
+
+		int	iters = Math.max( 10, 200000/peers.size());
+
+		long	start = System.nanoTime();
+
+		for ( int it=0;it<iters;it++){
+
+			unchoker.calculateUnchokes( slots, peers, it%3 == 0, false, false );
+
+			UnchokerUtil.performChokes( unchoker.getChokes(), unchoker.getUnchokes());
+		}
+
+		return(( System.nanoTime() - start )/iters/1000 );
+	}
+
+	private static ArrayList<PEPeer>
+	createPeers(
+		int		num,
+		long	seed )
+	{
+		Random	random = new Random( seed );
+
+		ArrayList<PEPeer>	peers = new ArrayList<>( num );
+
+		for ( int i=0;i<num;i++){
+
+				// a few rates repeat so ties get exercised
+
+			long	send_rate		= random.nextInt( 8 )==0?4096:random.nextInt( 200*1024 );
+			long	receive_rate	= random.nextInt( 200*1024 );
+			long	sent			= random.nextInt( 64 )*1024L*1024;
+			long	received		= random.nextInt( 64 )*1024L*1024;
+
+			peers.add( createPeer( createStats( send_rate, receive_rate, sent, received )));
+		}
+
+		return( peers );
+	}
+
+	private static PEPeerStats
+	createStats(
+		final long		send_rate,
+		final long		receive_rate,
+		final long		sent,
+		final long		received )
+	{
+		return((PEPeerStats)Proxy.newProxyInstance(
+			UnchokerBenchmark.class.getClassLoader(),
+			new Class<?>[]{ PEPeerStats.class },
+			new InvocationHandler()
+			{
+				@Override
+				public Object
+				invoke(
+					Object		proxy,
+					Method		method,
+					Object[]	args )
+				{
+					String	name = method.getName();
+
+					if ( name.equals( "getDataSendRate" )){
+
+						return( send_rate );
+
+					}else if ( name.equals( "getSmoothDataReceiveRate" ) || name.equals( "getDataReceiveRate" )){
+
+						return( receive_rate );
+
+					}else if ( name.equals( "getTotalDataBytesSent" )){
+
+						return( sent );
+
+					}else if ( name.equals( "getTotalDataBytesReceived" )){
+
+						return( received );
+					}
+
+					return( defaultValue( method ));
+				}
+			}));
+	}
+
+	private static PEPeer
+	createPeer(
+		final PEPeerStats	stats )
+	{
+		return((PEPeer)Proxy.newProxyInstance(
+			UnchokerBenchmark.class.getClassLoader(),
+			new Class<?>[]{ PEPeerTransport.class },
+			new InvocationHandler()
+			{
+				private boolean	choked		= true;
+				private boolean	optimistic;
+
+				@Override
+				public Object
+				invoke(
+					Object		proxy,
+					Method		method,
+					Object[]	args )
+				{
+					String	name = method.getName();
+
+					if ( name.equals( "getStats" )){
+
+						return( stats );
+
+					}else if ( name.equals( "getPeerState" )){
+
+						return( PEPeer.TRANSFERING );
+
+					}else if ( name.equals( "isInterested" ) || name.equals( "isInteresting" )){
+
+						return( true );
+
+					}else if ( name.equals( "isChokedByMe" )){
+
+						return( choked );
+
+					}else if ( name.equals( "sendChoke" )){
+
+						choked = true;
+
+					}else if ( name.equals( "sendUnChoke" )){
+
+						choked = false;
+
+					}else if ( name.equals( "isOptimisticUnchoke" )){
+
+						return( optimistic );
+
+					}else if ( name.equals( "setOptimisticUnchoke" )){
+
+						optimistic = (Boolean)args[0];
+
+					}else if ( name.equals( "hashCode" )){
+
+						return( System.identityHashCode( proxy ));
+
+					}else if ( name.equals( "equals" )){
+
+						return( proxy == args[0] );
+
+					}else if ( name.equals( "getIp" )){
+
+						return( "127.0.0.1" );
+					}
+
+					return( defaultValue( method ));
+				}
+			}));
+	}
+
+	private static Object
+	defaultValue(
+		Method		method )
+	{
+		Class<?>	type = method.getReturnType();
+
+		if ( type == boolean.class ){
+
+			return( false );
+
+		}else if ( type == long.class ){
+
+			return( 0L );
+
+		}else if ( type == int.class ){
+
+			return( 0 );
+
+		}else if ( type == float.class ){
+
+			return( 0f );
+
+		}else if ( type == double.class ){
+
+			return( 0d );
+
+		}else if ( type == short.class ){
+
+			return((short)0 );
+
+		}else if ( type == byte.class ){
+
+			return((byte)0 );
+
+		}else if ( type == char.class ){
+
+			return((char)0 );
+		}
+
+		return( null );
+	}
+}
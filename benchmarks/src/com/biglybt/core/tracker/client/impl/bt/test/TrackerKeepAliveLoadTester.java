@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.tracker.client.impl.bt.test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.biglybt.core.tracker.client.impl.bt.TrackerLoadTester;
+import com.biglybt.core.util.Constants;
+
+/**
+ * Drives a local tracker over persistent HTTP/1.1 connections, pipelining a number of
+ * announces on each before reading the replies back.
+ *
+ * Usage: TrackerKeepAliveLoadTester &lt;port&gt; &lt;connections&gt; &lt;requests per connection&gt; &lt;pipeline depth&gt;
+ */
+
+public class
+TrackerKeepAliveLoadTester
+	extends TrackerLoadTester
+{
+	private static final String	NL = "\r\n";
+
+	private final int	port;
+
+	private final AtomicLong	total_replies		= new AtomicLong();
+	private final AtomicLong	total_keep_alives	= new AtomicLong();
+	private final AtomicLong	total_reconnects	= new AtomicLong();
+
+	public
+	TrackerKeepAliveLoadTester(
+		int			_port,
+		int			connections,
+		final int	requests_per_connection,
+		final int	pipeline_depth )
+
+		throws Exception
+	{
+		port	= _port;
+
+		Thread[]	threads = new Thread[connections];
+
+		long	start = System.currentTimeMillis();
+
+		for ( int i=0;i<connections;i++){
+
+			final int	connection_num = i;
+
+			threads[i] =
+				new Thread( "TrackerKeepAliveLoadTester:" + i )
+				{
+					@Override
+					public void
+					run()
+					{
+						try{
+							runConnection( connection_num, requests_per_connection, pipeline_depth );
+
+						}catch( Throwable e ){
+
+							e.printStackTrace();
+						}
+					}
+				};
+
+			threads[i].start();
+		}
+
+		for ( Thread t: threads ){
+
+			t.join();
+		}
+
+		long	elapsed = Math.max( 1, System.currentTimeMillis() - start );
+
+		System.out.println(
+			"replies=" + total_replies.get() + ", keep-alive=" + total_keep_alives.get() + ", reconnects=" + total_reconnects.get() +
+			", elapsed=" + elapsed + "ms, rate=" + ( total_replies.get()*1000/elapsed ) + "/sec" );
+	}
+
+	private void
+	runConnection(
+		int		connection_num,
+		int		requests,
+		int		pipeline_depth )
+
+		throws IOException
+	{
+		byte[]	hash = generate20BytesHash( connection_num + 1 );
+
+		Socket			socket	= null;
+		OutputStream	os		= null;
+		InputStream		is		= null;
+
+		try{
+			int	sent	= 0;
+
+			while( sent < requests ){
+
+				if ( socket == null ){
+
+					socket = new Socket( "127.0.0.1", port );
+
+					socket.setTcpNoDelay( true );
+
+					os = socket.getOutputStream();
+					is = new BufferedInputStream( socket.getInputStream());
+				}
+
+				int	batch = Math.min( pipeline_depth, requests - sent );
+
+				StringBuilder	sb = new StringBuilder( batch*256 );
+
+				for ( int i=0;i<batch;i++){
+
+					byte[]	peer_id = generate20BytesHash( sent + i + 1 );
+
+					sb.append( "GET /announce?info_hash=" ).append( encode( hash ));
+					sb.append( "&peer_id=" ).append( encode( peer_id ));
+					sb.append( "&port=" ).append( 6881 + (( sent + i ) % 1000 ));
+					sb.append( "&uploaded=0&downloaded=0&left=0&numwant=50&no_peer_id=1&compact=1" );
+					sb.append( " HTTP/1.1" ).append( NL );
+					sb.append( "Host: 127.0.0.1:" ).append( port ).append( NL ).append( NL );
+				}
+
+				os.write( sb.toString().getBytes( Constants.BYTE_ENCODING_CHARSET ));
+
+				os.flush();
+
+				boolean	keep_alive	= true;
+				int		answered	= 0;
+
+					// once the server says it is closing nothing more will come back, whatever
+					// is left of the batch is sent again on a new connection
+
+				while( keep_alive && answered < batch ){
+
+					keep_alive = readReply( is );
+
+					answered++;
+
+					total_replies.incrementAndGet();
+
+					if ( keep_alive ){
+
+						total_keep_alives.incrementAndGet();
+					}
+				}
+
+				sent += answered;
+
+				if ( !keep_alive ){
+
+					socket.close();
+
+					socket = null;
+
+					total_reconnects.incrementAndGet();
+				}
+			}
+		}finally{
+
+			if ( socket != null ){
+
+				socket.close();
+			}
+		}
+	}
+
+		/**
+		 * @return false if the server indicated that it will close the connection
+		 */
+
+	private boolean
+	readReply(
+		InputStream		is )
+
+		throws IOException
+	{
+		StringBuilder	header = new StringBuilder( 256 );
+
+		while( true ){
+
+			int	b = is.read();
+
+			if ( b == -1 ){
+
+				throw( new IOException( "Premature end of stream" ));
+			}
+
+			header.append((char)b );
+
+			int	len = header.length();
+
+			if ( 	len >= 4 &&
+					header.charAt( len-4 ) == '\r' && header.charAt( len-3 ) == '\n' &&
+					header.charAt( len-2 ) == '\r' && header.charAt( len-1 ) == '\n' ){
+
+				break;
+			}
+		}
+
+		String	lc_header = header.toString().toLowerCase();
+
+		int	pos = lc_header.indexOf( "content-length:" );
+
+		if ( pos == -1 ){
+
+			throw( new IOException( "Content-Length missing" ));
+		}
+
+		int	content_length = Integer.parseInt( lc_header.substring( pos + 15, lc_header.indexOf( NL, pos )).trim());
+
+		for ( int i=0;i<content_length;i++){
+
+			if ( is.read() == -1 ){
+
+				throw( new IOException( "Premature end of stream" ));
+			}
+		}
+
+		return( !lc_header.contains( "connection: close" ));
+	}
+
+	private static String
+	encode(
+		byte[]	bytes )
+
+		throws IOException
+	{
+		return( URLEncoder.encode( new String( bytes, Constants.BYTE_ENCODING_CHARSET ), Constants.BYTE_ENCODING_CHARSET.name()).replaceAll("\\+", "%20"));
+	}
+
+	public static void
+	main(
+		String[]	args )
+	{
+		if ( args.length < 4 ){
+
+			System.out.println( "Usage: TrackerKeepAliveLoadTester <port> <connections> <requests per connection> <pipeline depth>" );
+
+			return;
+		}
+
+		try{
+			new TrackerKeepAliveLoadTester(
+					Integer.parseInt( args[0] ),
+					Integer.parseInt( args[1] ),
+					Integer.parseInt( args[2] ),
+					Integer.parseInt( args[3] ));
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.util.Statistics;
+
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.util.JSONUtils;
+
+/**
+ * Runs JMH benchmark classes for the benchmark mains and keeps the results so they can be written
+ * out as JSON and compared with the results of a previous run. The measuring is left to JMH, which
+ * runs each benchmark in a forked VM with warmup iterations that are thrown away, using the
+ * iteration settings annotated on the benchmark class. The mean time per operation, its error (JMH's
+ * 99.9% confidence interval) and the fastest and slowest iteration are kept.
+ *
+ * Options understood by {@link #create(String[])}:
+ *
+ *   -out &lt;file&gt;         write the results as JSON
+ *   -baseline &lt;file&gt;    compare with results written by an earlier run
+ *   -threshold &lt;pct&gt;    slowdown over the baseline reported as a regression (default 10)
+ *   -filter &lt;text&gt;      only run benchmark methods whose name contains the text
+ *   -quick              one short warmup and three short iterations, for a smoke test
+ *   -&lt;name&gt; &lt;value&gt;     any other option is passed to the forked VMs, where benchmarks read it with getOption
+ */
+
+public class
+BenchmarkRunner
+{
+	private static final String	OPTION_PROPERTY_PREFIX	= "biglybt.benchmark.";
+
+	private static final Set<String>	RUNNER_OPTIONS = new HashSet<>( Arrays.asList( "out", "baseline", "threshold", "filter", "quick" ));
+
+	private final Map<String,String>	options;
+
+	private final String	filter;
+
+	private final List<Map<String,Object>>	results = new ArrayList<>();
+
+	public static BenchmarkRunner
+	create(
+		String[]	args )
+	{
+		Map<String,String>	options = new HashMap<>();
+
+		for ( int i=0;i<args.length;i++){
+
+			String	arg = args[i];
+
+			if ( arg.startsWith( "-" )){
+
+				String	name = arg.substring( 1 );
+
+				if ( i+1 < args.length && !args[i+1].startsWith( "-" )){
+
+					options.put( name, args[++i] );
+
+				}else{
+
+					options.put( name, "" );
+				}
+			}
+		}
+
+		return( new BenchmarkRunner( options ));
+	}
+
+	public
+	BenchmarkRunner(
+		Map<String,String>	_options )
+	{
+		options	= _options;
+
+		filter	= options.get( "filter" );
+	}
+
+		/**
+		 * For use by the benchmarks, which run in a VM forked by JMH
+		 *
+		 * @return the value of the -name option given to the runner, null if there wasn't one
+		 */
+
+	public static String
+	getOption(
+		String		name )
+	{
+		return( System.getProperty( OPTION_PROPERTY_PREFIX + name ));
+	}
+
+	public void
+	run(
+		Class<?>...		benchmark_classes )
+
+		throws RunnerException
+	{
+		ChainedOptionsBuilder	builder = new OptionsBuilder();
+
+		for ( Class<?> c: benchmark_classes ){
+
+			String	regex = "^" + Pattern.quote( c.getName()) + "\\.";
+
+			if ( filter != null && filter.length() > 0 ){
+
+				regex += "[^.]*" + Pattern.quote( filter );
+			}
+
+			builder.include( regex );
+		}
+
+		List<String>	jvm_args = new ArrayList<>();
+
+		for ( Map.Entry<String,String> entry: options.entrySet()){
+
+			if ( !RUNNER_OPTIONS.contains( entry.getKey())){
+
+				jvm_args.add( "-D" + OPTION_PROPERTY_PREFIX + entry.getKey() + "=" + entry.getValue());
+			}
+		}
+
+		if ( !jvm_args.isEmpty()){
+
+			builder.jvmArgsAppend( jvm_args.toArray( new String[ jvm_args.size()]));
+		}
+
+		if ( options.containsKey( "quick" )){
+
+			builder.warmupIterations( 1 ).warmupTime( TimeValue.milliseconds( 100 ));
+
+			builder.measurementIterations( 3 ).measurementTime( TimeValue.milliseconds( 100 ));
+		}
+
+		builder.shouldFailOnError( true );
+
+		for ( RunResult run: new Runner( builder.build()).run()){
+
+			addResult( run );
+		}
+	}
+
+	private void
+	addResult(
+		RunResult	run )
+	{
+		BenchmarkParams	params = run.getParams();
+
+			// Class.method(param=value,...), the package adds nothing but noise
+
+		String	benchmark = params.getBenchmark();
+
+		StringBuilder	name = new StringBuilder( benchmark.substring( benchmark.lastIndexOf( '.', benchmark.lastIndexOf( '.' ) - 1 ) + 1 ));
+
+		Collection<String>	keys = params.getParamsKeys();
+
+		if ( !keys.isEmpty()){
+
+			name.append( '(' );
+
+			boolean	first = true;
+
+			for ( String key: keys ){
+
+				if ( !first ){
+
+					name.append( ',' );
+				}
+
+				first = false;
+
+				name.append( key ).append( '=' ).append( params.getParam( key ));
+			}
+
+			name.append( ')' );
+		}
+
+		Result<?>	primary = run.getPrimaryResult();
+
+		Statistics	stats = primary.getStatistics();
+
+		double	error = primary.getScoreError();
+
+		Map<String,Object>	result = new LinkedHashMap<>();
+
+		result.put( "name", name.toString());
+		result.put( "ns_per_op", round( primary.getScore()));
+		result.put( "error_ns", round( Double.isNaN( error )?0:error ));
+		result.put( "min_ns", round( stats.getMin()));
+		result.put( "max_ns", round( stats.getMax()));
+		result.put( "iterations", stats.getN());
+
+		results.add( result );
+	}
+
+		/**
+		 * Writes the results to the -out file and compares them with the -baseline file if
+		 * those options were given
+		 *
+		 * @return false if the baseline comparison found a regression
+		 */
+
+	public boolean
+	complete(
+		String		suite )
+
+		throws IOException
+	{
+		String	out = options.get( "out" );
+
+		if ( out != null && out.length() > 0 ){
+
+			writeJSON( new File( out ), suite );
+
+			System.out.println( "Results written to " + out );
+		}
+
+		String	baseline = options.get( "baseline" );
+
+		if ( baseline != null && baseline.length() > 0 ){
+
+			String	threshold = options.get( "threshold" );
+
+			return( compare( new File( baseline ), threshold==null||threshold.length()==0?10:Double.parseDouble( threshold )));
+		}
+
+		return( true );
+	}
+
+	public void
+	writeJSON(
+		File		file,
+		String		suite )
+
+		throws IOException
+	{
+		Map<String,Object>	map = new LinkedHashMap<>();
+
+		map.put( "suite", suite );
+		map.put( "version", Constants.BIGLYBT_VERSION );
+		map.put( "time", System.currentTimeMillis());
+		map.put( "java", System.getProperty( "java.version" ));
+		map.put( "vm", System.getProperty( "java.vm.name" ));
+		map.put( "os", System.getProperty( "os.name" ) + " " + System.getProperty( "os.arch" ));
+		map.put( "processors", (long)Runtime.getRuntime().availableProcessors());
+		map.put( "results", results );
+
+		try ( PrintWriter pw = new PrintWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ))){
+
+			pw.println( JSONUtils.encodeToJSON( map ));
+		}
+	}
+
+	public boolean
+	compare(
+		File		baseline_file,
+		double		threshold_percent )
+
+		throws IOException
+	{
+		Map<?,?>	baseline = JSONUtils.decodeJSON( FileUtil.readFileAsString( baseline_file, -1, "UTF-8" ));
+
+		if ( baseline == null || !( baseline.get( "results" ) instanceof List )){
+
+			throw( new IOException( "No results in " + baseline_file ));
+		}
+
+		Map<String,Double>	old_results = new HashMap<>();
+
+		for ( Object o: (List<?>)baseline.get( "results" )){
+
+			Map<?,?>	m = (Map<?,?>)o;
+
+			old_results.put((String)m.get( "name" ), ((Number)m.get( "ns_per_op" )).doubleValue());
+		}
+
+		System.out.println( "Compared with " + baseline_file + " (version " + baseline.get( "version" ) + ")" );
+
+		boolean	ok = true;
+
+		for ( Map<String,Object> result: results ){
+
+			String	name = (String)result.get( "name" );
+
+			Double	old = old_results.get( name );
+
+			if ( old == null || old <= 0 ){
+
+				continue;
+			}
+
+			double	now		= (Double)result.get( "ns_per_op" );
+			double	change	= ( now - old ) * 100 / old;
+
+				// only call it a regression if the slowdown is clear of this run's own noise
+
+			boolean	regression = change > threshold_percent && now - (Double)result.get( "error_ns" ) > old;
+
+			if ( regression ){
+
+				ok = false;
+			}
+
+			System.out.println(
+				pad( name, 48 ) + format( old ) + " -> " + format( now ) + " ns/op  " +
+				( change>=0?"+":"" ) + String.format( "%.1f", change ) + "%" + ( regression?"  REGRESSION":"" ));
+		}
+
+		return( ok );
+	}
+
+	private static Double
+	round(
+		double	d )
+	{
+		return( Math.round( d*100 ) / 100.0 );
+	}
+
+	private static String
+	format(
+		double	d )
+	{
+		return( d<10?String.format( "%.2f", d ):d<1000?String.format( "%.1f", d ):String.format( "%.0f", d ));
+	}
+
+	private static String
+	pad(
+		String	str,
+		int		len )
+	{
+		StringBuilder	sb = new StringBuilder( str );
+
+		while( sb.length() < len ){
+
+			sb.append( ' ' );
+		}
+
+		return( sb.append( ' ' ).toString());
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util.test;
+
+import com.biglybt.core.diskmanager.cache.impl.test.CacheFileBenchmark;
+import com.biglybt.core.ipfilter.impl.test.IPAddressRangeBenchmark;
+import com.biglybt.core.peermanager.piecepicker.impl.test.PiecePickerBenchmark;
+import com.biglybt.core.security.SESecurityManager;
+
+/**
+ * Runs all the core hot path benchmarks and writes a single set of results, so a build can be
+ * compared with the results kept from an earlier release:
+ *
+ *   java -cp benchmarks/target/benchmarks.jar com.biglybt.core.util.test.CoreBenchmarks -out 2.6.0.json
+ *   java -cp benchmarks/target/benchmarks.jar com.biglybt.core.util.test.CoreBenchmarks -baseline 2.6.0.json -out current.json
+ *
+ * The run exits with status 1 if any benchmark regressed against the baseline by more than
+ * the threshold. See {@link BenchmarkRunner} for the options.
+ */
+
+public class
+CoreBenchmarks
+{
+	public static void
+	main(
+		String[]	args )
+	{
+		boolean	ok = false;
+
+		try{
+			BenchmarkRunner	runner = BenchmarkRunner.create( args );
+
+			runner.run(
+				CoreUtilBenchmark.class,
+				IPAddressRangeBenchmark.class,
+				PiecePickerBenchmark.class,
+				CacheFileBenchmark.class );
+
+			ok = runner.complete( "CoreBenchmarks" );
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+
+		SESecurityManager.exitVM( ok?0:1 );
+	}
+}
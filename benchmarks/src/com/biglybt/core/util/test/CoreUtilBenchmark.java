@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.util.BDecoder;
+import com.biglybt.core.util.BEncoder;
+import com.biglybt.core.util.ConcurrentHasher;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.LightHashMap;
+import com.biglybt.core.util.SHA1Hasher;
+import com.biglybt.core.util.bloom.BloomFilter;
+import com.biglybt.core.util.bloom.BloomFilterFactory;
+
+/**
+ * Benchmarks for the util hot paths: bencoding of torrents, piece hashing, the direct buffer
+ * pool, the bloom filters and LightHashMap against HashMap.
+ *
+ * The torrents decoded are those in the -torrents directory if given, otherwise a synthetic
+ * multi-file torrent is used.
+ *
+ * Usage: CoreUtilBenchmark [-torrents dir] [-out results.json] [-baseline results.json] [-quick]
+ */
+
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class
+CoreUtilBenchmark
+{
+	private static final int	BLOOM_ENTRIES	= 10000;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		try{
+			BenchmarkRunner	runner = BenchmarkRunner.create( args );
+
+			runner.run( CoreUtilBenchmark.class );
+
+			runner.complete( "CoreUtilBenchmark" );
+
+		}catch( Throwable e ){
+
+			e.printStackTrace();
+		}
+	}
+
+	@State( Scope.Benchmark )
+	public static class
+	Torrents
+	{
+		byte[][]					encoded;
+		List<Map<String,Object>>	decoded;
+
+		@Setup
+		public void
+		setup()
+
+			throws IOException
+		{
+			List<byte[]>	torrents = new ArrayList<>();
+
+			String	dir = BenchmarkRunner.getOption( "torrents" );
+
+			if ( dir != null ){
+
+				File[]	files = new File( dir ).listFiles();
+
+				if ( files != null ){
+
+					for ( File f: files ){
+
+						if ( f.getName().endsWith( ".torrent" )){
+
+							torrents.add( FileUtil.readFileAsByteArray( f ));
+						}
+					}
+				}
+			}
+
+			if ( torrents.isEmpty()){
+
+				torrents.add( BEncoder.encode( createSyntheticTorrent( 1000, 4096 )));
+			}
+
+			long	total = 0;
+
+			for ( byte[] t: torrents ){
+
+				total += t.length;
+			}
+
+			encoded = torrents.toArray( new byte[torrents.size()][] );
+
+			decoded = new ArrayList<>();
+
+			for ( byte[] t: encoded ){
+
+				decoded.add( BDecoder.decode( t ));
+			}
+
+			System.out.println( encoded.length + " torrent" + ( encoded.length==1?"":"s" ) + ", " + total/1024 + "KB" );
+		}
+	}
+
+	@Benchmark
+	public Object
+	bdecode(
+		Torrents	torrents )
+
+		throws IOException
+	{
+		Object	last = null;
+
+		for ( byte[] t: torrents.encoded ){
+
+			last = BDecoder.decode( t );
+		}
+
+		return( last );
+	}
+
+	@Benchmark
+	public Object
+	bencode(
+		Torrents	torrents )
+
+		throws IOException
+	{
+		Object	last = null;
+
+		for ( Map<String,Object> m: torrents.decoded ){
+
+			last = BEncoder.encode( m );
+		}
+
+		return( last );
+	}
+
+	private static Map<String,Object>
+	createSyntheticTorrent(
+		int		num_files,
+		int		num_pieces )
+	{
+		Random	random = new Random( 1234 );
+
+		Map<String,Object>	info = new HashMap<>();
+
+		info.put( "name", "synthetic".getBytes());
+		info.put( "piece length", 256*1024L );
+
+		byte[]	pieces = new byte[num_pieces*20];
+
+		random.nextBytes( pieces );
+
+		info.put( "pieces", pieces );
+
+		List<Object>	files = new ArrayList<>();
+
+		for ( int i=0;i<num_files;i++){
+
+			Map<String,Object>	file = new HashMap<>();
+
+			List<Object>	path = new ArrayList<>();
+
+			path.add(( "folder " + ( i/50 )).getBytes());
+			path.add(( "file number " + i + ".dat" ).getBytes());
+
+			file.put( "path", path );
+			file.put( "length", (long)random.nextInt( 1024*1024*1024 ));
+
+			files.add( file );
+		}
+
+		info.put( "files", files );
+
+		Map<String,Object>	torrent = new HashMap<>();
+
+		torrent.put( "announce", "http://tracker.example.com:6969/announce".getBytes());
+		torrent.put( "creation date", 1500000000L );
+		torrent.put( "comment", "synthetic benchmark torrent".getBytes());
+		torrent.put( "info", info );
+
+		return( torrent );
+	}
+
+	@State( Scope.Thread )
+	public static class
+	Hashing
+	{
+		@Param({ "16", "256", "1024" })
+		public int	kb;
+
+		ByteBuffer	buffer;
+		SHA1Hasher	hasher;
+
+		@Setup
+		public void
+		setup()
+		{
+			buffer = ByteBuffer.allocate( kb*1024 );
+
+			new Random( kb*1024 ).nextBytes( buffer.array());
+
+			hasher = new SHA1Hasher();
+		}
+	}
+
+	@Benchmark
+	public byte[]
+	sha1Hash(
+		Hashing		hashing )
+	{
+		hashing.buffer.clear();
+
+		return( hashing.hasher.calculateHash( hashing.buffer ));
+	}
+
+	@Benchmark
+	public byte[]
+	concurrentHasherRequest(
+		Hashing		hashing )
+	{
+		hashing.buffer.clear();
+
+		return( ConcurrentHasher.getSingleton().addRequest( hashing.buffer, TOTorrent.TT_V1, hashing.kb*1024, -1 ).getResult());
+	}
+
+	@State( Scope.Thread )
+	public static class
+	BufferSize
+	{
+		@Param({ "1", "16", "128" })
+		public int	kb;
+	}
+
+	@Benchmark
+	public void
+	directBufferPoolGetReturn(
+		BufferSize	size )
+	{
+		DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, size.kb*1024 );
+
+		buffer.returnToPool();
+	}
+
+		/**
+		 * A filter loaded with random keys, along with as many keys that were never added. Loading
+		 * reports the filter's false positive rate against the memory used
+		 */
+
+	public static abstract class
+	BloomState
+	{
+		BloomFilter	filter;
+		byte[][]	present;
+		byte[][]	absent;
+		int			pos;
+
+		void
+		load(
+			String		type )
+		{
+			int	slot_bits;
+
+			if ( type.equals( "addonly" )){
+
+				filter		= BloomFilterFactory.createAddOnly( BLOOM_ENTRIES*10 );
+				slot_bits	= 1;
+
+			}else if ( type.equals( "addremove4" )){
+
+				filter		= BloomFilterFactory.createAddRemove4Bit( BLOOM_ENTRIES*10 );
+				slot_bits	= 4;
+
+			}else if ( type.equals( "addremove8" )){
+
+				filter		= BloomFilterFactory.createAddRemove8Bit( BLOOM_ENTRIES*10 );
+				slot_bits	= 8;
+
+			}else if ( type.equals( "blocked4" )){
+
+				filter		= BloomFilterFactory.createBlockedAddRemove4Bit( BLOOM_ENTRIES*10 );
+				slot_bits	= 4;
+
+			}else if ( type.equals( "cuckoo" )){
+
+				filter		= BloomFilterFactory.createCuckoo( BLOOM_ENTRIES );
+				slot_bits	= 16;
+
+			}else{
+
+				throw( new IllegalArgumentException( type ));
+			}
+
+			Random	random = new Random( 4321 );
+
+			present	= new byte[BLOOM_ENTRIES][];
+			absent	= new byte[BLOOM_ENTRIES][];
+
+			for ( int i=0;i<BLOOM_ENTRIES;i++){
+
+				present[i]	= new byte[20];
+				absent[i]	= new byte[20];
+
+				random.nextBytes( present[i] );
+				random.nextBytes( absent[i] );
+
+				filter.add( present[i] );
+			}
+
+			int		probes			= BLOOM_ENTRIES*10;
+			int		false_positives = 0;
+			byte[]	probe			= new byte[20];
+
+			for ( int i=0;i<probes;i++){
+
+				random.nextBytes( probe );
+
+				if ( filter.contains( probe )){
+
+					false_positives++;
+				}
+			}
+
+			System.out.println(
+				"bloom." + type + ": " + String.format( "%.1f", (double)filter.getSize()*slot_bits/BLOOM_ENTRIES ) + " bits/entry, false positives " +
+				String.format( "%.4f", false_positives*100.0/probes ) + "%" );
+		}
+	}
+
+	@State( Scope.Thread )
+	public static class
+	Bloom
+		extends BloomState
+	{
+		@Param({ "addonly", "addremove4", "addremove8", "blocked4", "cuckoo" })
+		public String	type;
+
+		@Setup
+		public void
+		setup()
+		{
+			load( type );
+		}
+	}
+
+	@State( Scope.Thread )
+	public static class
+	RemovableBloom
+		extends BloomState
+	{
+		@Param({ "addremove4", "addremove8", "blocked4", "cuckoo" })
+		public String	type;
+
+		@Setup
+		public void
+		setup()
+		{
+			load( type );
+		}
+	}
+
+	@Benchmark
+	public boolean
+	bloomContains(
+		Bloom		bloom )
+	{
+		int	i = bloom.pos++ % bloom.present.length;
+
+		return( bloom.filter.contains( bloom.present[i] ) && bloom.filter.contains( bloom.absent[i] ));
+	}
+
+	@Benchmark
+	public int
+	bloomAddRemove(
+		RemovableBloom	bloom )
+	{
+		byte[]	key = bloom.absent[bloom.pos++ % bloom.absent.length];
+
+		bloom.filter.add( key );
+
+		return( bloom.filter.remove( key ));
+	}
+
+	@State( Scope.Thread )
+	public static class
+	Maps
+	{
+		@Param({ "lighthashmap", "hashmap" })
+		public String	type;
+
+		@Param({ "4", "16", "128" })
+		public int		size;
+
+		Map<String,Object>	map;
+		String[]			keys;
+		int					pos;
+
+		@Setup
+		public void
+		setup()
+		{
+			map = type.equals( "lighthashmap" )?new LightHashMap<String,Object>():new HashMap<String,Object>();
+
+			keys = new String[size];
+
+			for ( int i=0;i<size;i++){
+
+				keys[i] = "key" + i;
+
+				map.put( keys[i], keys[i] );
+			}
+		}
+	}
+
+	@Benchmark
+	public Object
+	mapGet(
+		Maps		maps )
+	{
+		return( maps.map.get( maps.keys[maps.pos++ % maps.keys.length] ));
+	}
+
+	@Benchmark
+	public Object
+	mapPutRemove(
+		Maps		maps )
+	{
+		String	k = maps.keys[maps.pos++ % maps.keys.length];
+
+		maps.map.remove( k );
+
+		return( maps.map.put( k, k ));
+	}
+
+	@Benchmark
+	public Object
+	mapIterate(
+		Maps		maps )
+	{
+		Object	last = null;
+
+		for ( Map.Entry<String,Object> e: maps.map.entrySet()){
+
+			last = e.getValue();
+		}
+
+		return( last );
+	}
+}
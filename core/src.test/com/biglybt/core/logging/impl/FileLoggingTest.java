@@ -0,0 +1,167 @@
+package com.biglybt.core.logging.impl;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileLoggingTest
+{
+	private static final int LOGGERS = 16;
+	private static final int PER_LOGGER = 20000;
+
+	@Test
+	public void switchingAsyncOffLosesAndReordersNothing() throws Exception {
+		File dir = Files.createTempDirectory("filelogging").toFile();
+
+		FileLogging logging = createLogging(dir);
+
+		setAsync(logging, true);
+
+		Thread[] loggers = startLoggers(logging);
+
+		for (int i = 0; i < 20; i++) {
+			Thread.sleep(5);
+
+			setAsync(logging, i % 2 == 1);
+		}
+
+		join(loggers);
+
+		setAsync(logging, false);
+
+		checkLog(dir);
+	}
+
+	@Test
+	public void closingLosesAndReordersNothing() throws Exception {
+		File dir = Files.createTempDirectory("filelogging").toFile();
+
+		FileLogging logging = createLogging(dir);
+
+		setAsync(logging, true);
+
+		Thread[] loggers = startLoggers(logging);
+
+		Thread.sleep(20);
+
+		try {
+			FileLogging.setClosing();
+
+			join(loggers);
+
+			checkLog(dir);
+		} finally {
+			// closing is global and one way, put it back for anything else running in this VM
+
+			Field closing = FileLogging.class.getDeclaredField("closing");
+
+			closing.setAccessible(true);
+			closing.setBoolean(null, false);
+
+			setAsync(logging, false);
+		}
+	}
+
+	private static FileLogging createLogging(File dir) throws Exception {
+		FileLogging logging = new FileLogging();
+
+		// just what logToFile needs, initialize() would hook the global logger and config
+
+		setField(logging, "bLogToFile", true);
+		setField(logging, "sLogDir", dir.getAbsolutePath());
+		setField(logging, "iLogFileMaxMB", 256);
+		setField(logging, "format", new SimpleDateFormat(""));
+
+		Method checkAndSwapLog = FileLogging.class.getDeclaredMethod("checkAndSwapLog");
+
+		checkAndSwapLog.setAccessible(true);
+		checkAndSwapLog.invoke(logging);
+
+		return logging;
+	}
+
+	private static Thread[] startLoggers(FileLogging logging) throws Exception {
+		Method logToFile = FileLogging.class.getDeclaredMethod("logToFile", String.class);
+
+		logToFile.setAccessible(true);
+
+		CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] loggers = new Thread[LOGGERS];
+
+		for (int t = 0; t < LOGGERS; t++) {
+			final int logger = t;
+
+			loggers[t] = new Thread(() -> {
+				try {
+					start.await();
+
+					for (int i = 0; i < PER_LOGGER; i++) {
+						logToFile.invoke(logging, logger + " " + i + "\n");
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+
+			loggers[t].start();
+		}
+
+		start.countDown();
+
+		return loggers;
+	}
+
+	private static void join(Thread[] threads) throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	private static void checkLog(File dir) throws Exception {
+		String text = new String(Files.readAllBytes(new File(dir, FileLogging.LOG_FILE_NAME).toPath()),
+				StandardCharsets.UTF_8);
+
+		if (text.startsWith("\uFEFF")) {
+			text = text.substring(1);
+		}
+
+		String[] lines = text.split("\n");
+
+		assertThat(lines.length).isEqualTo(LOGGERS * PER_LOGGER);
+
+		int[] next = new int[LOGGERS];
+
+		for (String line : lines) {
+			String[] bits = line.split(" ");
+
+			int logger = Integer.parseInt(bits[0]);
+
+			assertThat(Integer.parseInt(bits[1])).isEqualTo(next[logger]);
+
+			next[logger]++;
+		}
+	}
+
+	private static void setAsync(FileLogging logging, boolean enable) throws Exception {
+		Method setAsync = FileLogging.class.getDeclaredMethod("setAsync", boolean.class);
+
+		setAsync.setAccessible(true);
+		setAsync.invoke(logging, enable);
+	}
+
+	private static void setField(FileLogging logging, String name, Object value) throws Exception {
+		Field field = FileLogging.class.getDeclaredField(name);
+
+		field.setAccessible(true);
+		field.set(logging, value);
+	}
+}
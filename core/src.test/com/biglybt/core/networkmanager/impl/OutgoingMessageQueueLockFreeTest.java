@@ -0,0 +1,204 @@
+package com.biglybt.core.networkmanager.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.networkmanager.RawMessage;
+import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.util.DirectByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutgoingMessageQueueLockFreeTest
+{
+	private static final int PRODUCERS = 4;
+	private static final int PER_PRODUCER = 20000;
+
+	@Test
+	public void messagesFromConcurrentProducersKeepTheirOrder() throws Exception {
+		// the inbox only holds 32 messages so the producers keep overflowing it while the
+		// consumer is busy delivering, which exercises the locked fallback in addMessage
+
+		for (int round = 0; round < 5; round++) {
+			ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+			OutgoingMessageQueueLockFree queue = new OutgoingMessageQueueLockFree(
+					message -> new RawMessage[] { ((TestMessage) message).encode() });
+
+			queue.setTransport(createTransport(sent));
+
+			CountDownLatch start = new CountDownLatch(1);
+
+			AtomicInteger running = new AtomicInteger(PRODUCERS);
+
+			Thread[] producers = new Thread[PRODUCERS];
+
+			for (int p = 0; p < PRODUCERS; p++) {
+				final int producer = p;
+
+				producers[p] = new Thread(() -> {
+					try {
+						start.await();
+
+						for (int i = 0; i < PER_PRODUCER; i++) {
+							queue.addMessage(new TestMessage(producer, i), false);
+						}
+					} catch (InterruptedException e) {
+					} finally {
+						running.decrementAndGet();
+					}
+				});
+
+				producers[p].start();
+			}
+
+			start.countDown();
+
+			while (running.get() > 0) {
+				queue.deliverToTransport(Integer.MAX_VALUE, false, false);
+			}
+
+			for (Thread producer : producers) {
+				producer.join();
+			}
+
+			while (queue.getTotalSize() > 0) {
+				queue.deliverToTransport(Integer.MAX_VALUE, false, false);
+			}
+
+			ByteBuffer received = ByteBuffer.wrap(sent.toByteArray());
+
+			assertThat(received.remaining()).isEqualTo(PRODUCERS * PER_PRODUCER * 12);
+
+			int[] next = new int[PRODUCERS];
+
+			while (received.hasRemaining()) {
+				assertThat(received.getInt()).isEqualTo(8);
+
+				int producer = received.getInt();
+				int sequence = received.getInt();
+
+				assertThat(sequence).isEqualTo(next[producer]);
+
+				next[producer]++;
+			}
+		}
+	}
+
+	private static Transport createTransport(ByteArrayOutputStream sent) {
+		InvocationHandler handler = (proxy, method, args) -> {
+			String name = method.getName();
+
+			if (name.equals("write")) {
+				ByteBuffer[] buffers = (ByteBuffer[]) args[0];
+				int offset = (Integer) args[1];
+				int length = (Integer) args[2];
+
+				long written = 0;
+
+				for (int i = offset; i < offset + length; i++) {
+					while (buffers[i].hasRemaining()) {
+						sent.write(buffers[i].get());
+
+						written++;
+					}
+				}
+
+				return written;
+			}
+
+			if (name.equals("getMssSize")) {
+				return 1460;
+			}
+
+			if (name.equals("isReadyForWrite")) {
+				return true;
+			}
+
+			throw new UnsupportedOperationException(name);
+		};
+
+		return (Transport) Proxy.newProxyInstance(Transport.class.getClassLoader(),
+				new Class<?>[] { Transport.class }, handler);
+	}
+
+	private static class TestMessage
+		implements Message
+	{
+		final int producer;
+		final int sequence;
+
+		TestMessage(int producer, int sequence) {
+			this.producer = producer;
+			this.sequence = sequence;
+		}
+
+		RawMessage encode() {
+			ByteBuffer buffer = ByteBuffer.allocate(12);
+
+			buffer.putInt(8);
+			buffer.putInt(producer);
+			buffer.putInt(sequence);
+			buffer.flip();
+
+			return new RawMessageImpl(this, new DirectByteBuffer[] { new DirectByteBuffer(buffer) },
+					RawMessage.PRIORITY_NORMAL, false, new Message[0]);
+		}
+
+		@Override
+		public String getID() {
+			return "test";
+		}
+
+		@Override
+		public byte[] getIDBytes() {
+			return getID().getBytes();
+		}
+
+		@Override
+		public String getFeatureID() {
+			return "test";
+		}
+
+		@Override
+		public int getFeatureSubID() {
+			return 0;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getType() {
+			return TYPE_PROTOCOL_PAYLOAD;
+		}
+
+		@Override
+		public String getDescription() {
+			return "test " + producer + "/" + sequence;
+		}
+
+		@Override
+		public DirectByteBuffer[] getData() {
+			return new DirectByteBuffer[0];
+		}
+
+		@Override
+		public Message deserialize(DirectByteBuffer data, byte version) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void destroy() {
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package com.biglybt.core.networkmanager.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.networkmanager.RawMessage;
+import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.util.DirectByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransportHelperFilterStreamTest
+{
+	private static final byte[] MASK = "TransportHelperFilterStreamTestMask".getBytes();
+
+	@Test
+	public void removingAndReorderingAfterShortWriteKeepsTheStreamIntact() throws Exception {
+		Random random = new Random(2468);
+
+		for (int round = 0; round < 500; round++) {
+			ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+			int[] accept = { 0 };
+
+			TransportHelperFilterStream filter = new TransportHelperFilterStreamXOR(createHelper(sent, accept), MASK);
+
+			OutgoingMessageQueueImpl queue = new OutgoingMessageQueueImpl(
+					message -> new RawMessage[] { ((TestMessage) message).encode() });
+
+			queue.setTransport(createTransport(filter));
+
+			Map<Integer, TestMessage> added = new HashMap<>();
+
+			int numMessages = 2 + random.nextInt(8);
+
+			for (int i = 0; i < numMessages; i++) {
+				TestMessage message = new TestMessage(i, random.nextInt(3000), RawMessage.PRIORITY_NORMAL, random);
+
+				added.put(i, message);
+
+				queue.addMessage(message, false);
+			}
+
+			// short (possibly zero length) write part way through the batch
+
+			accept[0] = random.nextInt(queue.getTotalSize());
+
+			queue.deliverToTransport(Integer.MAX_VALUE, false, false);
+
+			// remove whatever the queue lets us and put an urgent message in front of the rest
+
+			List<Integer> removed = new ArrayList<>();
+
+			for (TestMessage message : new ArrayList<>(added.values())) {
+				if (random.nextBoolean() && queue.removeMessage(message, false)) {
+					removed.add(message.id);
+
+					added.remove(message.id);
+				}
+			}
+
+			TestMessage urgent = new TestMessage(numMessages, random.nextInt(100), RawMessage.PRIORITY_HIGH, random);
+
+			added.put(urgent.id, urgent);
+
+			queue.addMessage(urgent, false);
+
+			accept[0] = Integer.MAX_VALUE;
+
+			for (int i = 0; i < 10 && (queue.getTotalSize() > 0 || filter.hasBufferedWrite()); i++) {
+				queue.deliverToTransport(Integer.MAX_VALUE, false, false);
+			}
+
+			assertThat(queue.getTotalSize()).isEqualTo(0);
+			assertThat(filter.hasBufferedWrite()).isFalse();
+
+			// decrypt what went out and check it splits back into exactly the surviving messages
+
+			byte[] stream = sent.toByteArray();
+
+			for (int i = 0; i < stream.length; i++) {
+				stream[i] ^= MASK[i % MASK.length];
+			}
+
+			ByteBuffer received = ByteBuffer.wrap(stream);
+
+			int previousNormal = -1;
+
+			while (received.hasRemaining()) {
+				assertThat(received.remaining()).isGreaterThanOrEqualTo(5);
+
+				int length = received.getInt();
+				int id = received.get() & 0xff;
+
+				TestMessage message = added.remove(id);
+
+				assertThat(message).isNotNull();
+				assertThat(removed).doesNotContain(id);
+				assertThat(length).isEqualTo(1 + message.payload.length);
+
+				byte[] payload = new byte[length - 1];
+
+				received.get(payload);
+
+				assertThat(payload).isEqualTo(message.payload);
+
+				if (message.priority == RawMessage.PRIORITY_NORMAL) {
+					assertThat(id).isGreaterThan(previousNormal);
+
+					previousNormal = id;
+				}
+			}
+
+			assertThat(added).isEmpty();
+		}
+	}
+
+	private static TransportHelper createHelper(ByteArrayOutputStream sent, int[] accept) {
+		InvocationHandler handler = (proxy, method, args) -> {
+			String name = method.getName();
+
+			if (name.equals("write") && args.length == 2) {
+				ByteBuffer buffer = (ByteBuffer) args[0];
+
+				int count = Math.min(buffer.remaining(), accept[0]);
+
+				for (int i = 0; i < count; i++) {
+					sent.write(buffer.get());
+				}
+
+				accept[0] -= count;
+
+				return count;
+			}
+
+			if (name.equals("hasDelayedWrite")) {
+				return false;
+			}
+
+			throw new UnsupportedOperationException(name);
+		};
+
+		return (TransportHelper) Proxy.newProxyInstance(TransportHelper.class.getClassLoader(),
+				new Class<?>[] { TransportHelper.class }, handler);
+	}
+
+	private static Transport createTransport(TransportHelperFilter filter) {
+		InvocationHandler handler = (proxy, method, args) -> {
+			if (method.getName().equals("write")) {
+				return filter.write((ByteBuffer[]) args[0], (Integer) args[1], (Integer) args[2]);
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		};
+
+		return (Transport) Proxy.newProxyInstance(Transport.class.getClassLoader(),
+				new Class<?>[] { Transport.class }, handler);
+	}
+
+	private static class TestMessage
+		implements Message
+	{
+		final int id;
+		final int priority;
+		final byte[] payload;
+
+		TestMessage(int id, int payloadLength, int priority, Random random) {
+			this.id = id;
+			this.priority = priority;
+
+			payload = new byte[payloadLength];
+
+			random.nextBytes(payload);
+		}
+
+		RawMessage encode() {
+			ByteBuffer header = ByteBuffer.allocate(5);
+
+			header.putInt(1 + payload.length);
+			header.put((byte) id);
+			header.flip();
+
+			DirectByteBuffer[] raw = payload.length == 0
+					? new DirectByteBuffer[] { new DirectByteBuffer(header) }
+					: new DirectByteBuffer[] { new DirectByteBuffer(header), new DirectByteBuffer(ByteBuffer.wrap(payload.clone())) };
+
+			return new RawMessageImpl(this, raw, priority, false, new Message[0]);
+		}
+
+		@Override
+		public String getID() {
+			return "test";
+		}
+
+		@Override
+		public byte[] getIDBytes() {
+			return getID().getBytes();
+		}
+
+		@Override
+		public String getFeatureID() {
+			return "test";
+		}
+
+		@Override
+		public int getFeatureSubID() {
+			return 0;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getType() {
+			return TYPE_PROTOCOL_PAYLOAD;
+		}
+
+		@Override
+		public String getDescription() {
+			return "test " + id;
+		}
+
+		@Override
+		public DirectByteBuffer[] getData() {
+			return new DirectByteBuffer[0];
+		}
+
+		@Override
+		public Message deserialize(DirectByteBuffer data, byte version) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void destroy() {
+		}
+	}
+}
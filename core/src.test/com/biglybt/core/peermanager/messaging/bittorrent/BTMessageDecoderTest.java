@@ -0,0 +1,547 @@
+package com.biglybt.core.peermanager.messaging.bittorrent;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.peermanager.messaging.MessageManager;
+import com.biglybt.core.util.DirectByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BTMessageDecoderTest
+{
+	private static final byte[] HANDSHAKE_PROTOCOL = "BitTorrent protocol".getBytes();
+
+	static {
+		if (MessageManager.getSingleton().lookupMessage(BTMessage.ID_BT_CHOKE_BYTES) == null) {
+			BTMessageFactory.init();
+		}
+	}
+
+	@Test
+	public void bulkReadsDecodeTheSameMessagesAsSingleReads() throws Exception {
+		for (long seed = 0; seed < 20; seed++) {
+			Stream stream = createStream(new Random(seed), 400);
+
+			List<String> single = decodeAll(stream, false, new Random(seed));
+			List<String> bulk = decodeAll(stream, true, new Random(seed));
+
+			assertThat(single).isEqualTo(stream.expected);
+			assertThat(bulk).isEqualTo(stream.expected);
+		}
+	}
+
+	@Test
+	public void pauseMidBatchHoldsTheRestUntilResumed() throws Exception {
+		// a handshake pauses the decoder, the bulk read has already taken everything after it off the transport
+
+		Random random = new Random(1);
+
+		Stream stream = new Stream();
+
+		stream.add(bitfield(random));
+
+		for (int i = 0; i < 10; i++) {
+			stream.add(have(i));
+		}
+
+		stream.add(handshake(random));
+
+		int resumed_from = stream.expected.size();
+
+		stream.add(simple(BTMessage.SUBID_BT_UNCHOKE));
+		stream.add(request(random));
+		stream.add(keepAlive());
+		stream.add(have(99));
+
+		boolean old_bulk = setBulkReadEnabled(true);
+
+		try {
+			TestTransport transport = new TestTransport(stream.bytes());
+
+			transport.arrived = transport.data.length;
+
+			BTMessageDecoder decoder = new BTMessageDecoder();
+
+			List<String> decoded = new ArrayList<>();
+
+			int read = decoder.performStreamDecode(transport.proxy, Integer.MAX_VALUE);
+
+			collect(decoder, decoded);
+
+			assertThat(read).isEqualTo(transport.data.length);
+			assertThat(decoded).isEqualTo(stream.expected.subList(0, resumed_from));
+
+			// paused, so nothing more is decoded even though the bytes are held
+
+			decoder.performStreamDecode(transport.proxy, Integer.MAX_VALUE);
+
+			assertThat(decoder.removeDecodedMessages()).isNull();
+			assertThat(transport.ready_for_read.get()).isEqualTo(0);
+
+			decoder.resumeDecoding();
+
+			// nothing more will arrive on the transport so resuming has to ask for another read
+
+			assertThat(transport.ready_for_read.get()).isEqualTo(1);
+
+			assertThat(decoder.performStreamDecode(transport.proxy, Integer.MAX_VALUE)).isEqualTo(0);
+
+			collect(decoder, decoded);
+
+			assertThat(decoded).isEqualTo(stream.expected);
+
+			assertThat(decoder.destroy().remaining()).isEqualTo(0);
+		} finally {
+			setBulkReadEnabled(old_bulk);
+		}
+	}
+
+	@Test
+	public void destroyReturnsTheUndecodedBytes() throws Exception {
+		for (int mode = 0; mode < 2; mode++) {
+			boolean old_bulk = setBulkReadEnabled(mode == 1);
+
+			try {
+				for (long seed = 0; seed < 50; seed++) {
+					Random random = new Random(seed);
+
+					Stream stream = createStream(random, 60);
+
+					byte[] data = stream.bytes();
+
+					TestTransport transport = new TestTransport(data);
+
+					BTMessageDecoder decoder = new BTMessageDecoder();
+
+					int stop_at = random.nextInt(data.length);
+
+					List<String> decoded = new ArrayList<>();
+
+					while (transport.position < stop_at) {
+						transport.arrived = Math.min(stop_at, transport.arrived + 1 + random.nextInt(20000));
+
+						decoder.performStreamDecode(transport.proxy, 1 + random.nextInt(40000));
+
+						if (collect(decoder, decoded)) {
+							if (random.nextBoolean()) {
+								break;  // destroy with anything read past the handshake still held
+							}
+
+							decoder.resumeDecoding();
+						}
+					}
+
+					int consumed = 0;
+
+					for (int i = 0; i < decoded.size(); i++) {
+						consumed += stream.lengths.get(i);
+					}
+
+					assertThat(decoded).isEqualTo(stream.expected.subList(0, decoded.size()));
+
+					ByteBuffer unused = decoder.destroy();
+
+					byte[] unused_bytes = new byte[unused.remaining()];
+
+					unused.get(unused_bytes);
+
+					assertThat(unused_bytes).isEqualTo(Arrays.copyOfRange(data, consumed, transport.position));
+				}
+			} finally {
+				setBulkReadEnabled(old_bulk);
+			}
+		}
+	}
+
+	private static List<String> decodeAll(Stream stream, boolean bulk, Random random) throws Exception {
+		boolean old_bulk = setBulkReadEnabled(bulk);
+
+		try {
+			TestTransport transport = new TestTransport(stream.bytes());
+
+			BTMessageDecoder decoder = new BTMessageDecoder();
+
+			List<String> decoded = new ArrayList<>();
+
+			int total = 0;
+
+			int idle = 0;
+
+			while (decoded.size() < stream.expected.size()) {
+				transport.arrived = Math.min(transport.data.length, transport.arrived + 1 + random.nextInt(20000));
+
+				int read = decoder.performStreamDecode(transport.proxy, 1 + random.nextInt(40000));
+
+				total += read;
+
+				int before = decoded.size();
+
+				if (collect(decoder, decoded)) {
+					decoder.resumeDecoding();
+				}
+
+				idle = read == 0 && decoded.size() == before ? idle + 1 : 0;
+
+				assertThat(idle).isLessThan(1000);
+			}
+
+			assertThat(total).isEqualTo(transport.data.length);
+
+			if (bulk) {
+				assertThat(transport.bulk_reads.get()).isGreaterThan(0);
+			} else {
+				assertThat(transport.bulk_reads.get()).isEqualTo(0);
+			}
+
+			decoder.destroy();
+
+			return decoded;
+		} finally {
+			setBulkReadEnabled(old_bulk);
+		}
+	}
+
+	/**
+	 * @return whether a handshake was decoded, which pauses the decoder (anything read along with it,
+	 * a keep-alive for instance, can still follow it in the same batch)
+	 */
+	private static boolean collect(BTMessageDecoder decoder, List<String> decoded) {
+		Message[] messages = decoder.removeDecodedMessages();
+
+		boolean paused = false;
+
+		if (messages != null) {
+			for (Message message : messages) {
+				decoded.add(describe(message));
+
+				paused |= message.getID().equals(BTMessage.ID_BT_HANDSHAKE);
+			}
+		}
+
+		return paused;
+	}
+
+	private static String describe(Message message) {
+		StringBuilder sb = new StringBuilder(message.getID());
+
+		sb.append(':');
+
+		for (DirectByteBuffer buffer : message.getData()) {
+			ByteBuffer bb = buffer.getBuffer(DirectByteBuffer.SS_MSG).duplicate();
+
+			while (bb.hasRemaining()) {
+				sb.append(Integer.toHexString(bb.get() & 0xff)).append(',');
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static boolean setBulkReadEnabled(boolean enabled) throws Exception {
+		Field field = BTMessageDecoder.class.getDeclaredField("bulk_read_enabled");
+
+		field.setAccessible(true);
+
+		boolean old = field.getBoolean(null);
+
+		field.setBoolean(null, enabled);
+
+		return old;
+	}
+
+	private static Stream createStream(Random random, int count) {
+		Stream stream = new Stream();
+
+		// bulk reads only start once a normal message has been seen
+
+		stream.add(bitfield(random));
+
+		for (int i = 0; i < count; i++) {
+			int type = random.nextInt(12);
+
+			switch (type) {
+				case 0:
+					stream.add(simple(BTMessage.SUBID_BT_CHOKE));
+					break;
+				case 1:
+					stream.add(simple(BTMessage.SUBID_BT_UNCHOKE));
+					break;
+				case 2:
+					stream.add(simple(BTMessage.SUBID_BT_INTERESTED));
+					break;
+				case 3:
+					stream.add(simple(BTMessage.SUBID_BT_UNINTERESTED));
+					break;
+				case 4:
+					stream.add(have(random.nextInt(100000)));
+					break;
+				case 5:
+					stream.add(request(random));
+					break;
+				case 6:
+					stream.add(cancel(random));
+					break;
+				case 7:
+					stream.add(bitfield(random));
+					break;
+				case 8:
+				case 9:
+					stream.add(piece(random));
+					break;
+				case 10:
+					stream.add(keepAlive());
+					break;
+				default:
+					if (random.nextInt(4) == 0) {
+						stream.add(handshake(random));
+					} else {
+						stream.add(have(random.nextInt(100)));
+					}
+					break;
+			}
+		}
+
+		return stream;
+	}
+
+	private static Encoded simple(int id) {
+		ByteBuffer bb = message(1, id);
+
+		return new Encoded(bb, "");
+	}
+
+	private static Encoded have(int number) {
+		ByteBuffer bb = message(5, BTMessage.SUBID_BT_HAVE);
+
+		bb.putInt(number);
+
+		return new Encoded(bb, hex(bb, 5, 4));
+	}
+
+	private static Encoded request(Random random) {
+		return requestOrCancel(BTMessage.SUBID_BT_REQUEST, random);
+	}
+
+	private static Encoded cancel(Random random) {
+		return requestOrCancel(BTMessage.SUBID_BT_CANCEL, random);
+	}
+
+	private static Encoded requestOrCancel(int id, Random random) {
+		ByteBuffer bb = message(13, id);
+
+		bb.putInt(random.nextInt(10000));
+		bb.putInt(random.nextInt(64) * 16384);
+		bb.putInt(16384);
+
+		return new Encoded(bb, hex(bb, 5, 12));
+	}
+
+	private static Encoded bitfield(Random random) {
+		int length = 1 + random.nextInt(300);
+
+		ByteBuffer bb = message(1 + length, BTMessage.SUBID_BT_BITFIELD);
+
+		byte[] bits = new byte[length];
+
+		random.nextBytes(bits);
+
+		bb.put(bits);
+
+		return new Encoded(bb, hex(bb, 5, length));
+	}
+
+	private static Encoded piece(Random random) {
+		int length = random.nextBoolean() ? 16384 : 1 + random.nextInt(20000);
+
+		ByteBuffer bb = message(9 + length, BTMessage.SUBID_BT_PIECE);
+
+		bb.putInt(random.nextInt(10000));
+		bb.putInt(random.nextInt(64) * 16384);
+
+		byte[] block = new byte[length];
+
+		random.nextBytes(block);
+
+		bb.put(block);
+
+		return new Encoded(bb, hex(bb, 5, 8 + length));
+	}
+
+	private static Encoded keepAlive() {
+		ByteBuffer bb = ByteBuffer.allocate(4);
+
+		bb.putInt(0);
+
+		return new Encoded(bb, BTMessage.ID_BT_KEEP_ALIVE, "");
+	}
+
+	private static Encoded handshake(Random random) {
+		ByteBuffer bb = ByteBuffer.allocate(68);
+
+		bb.put((byte) HANDSHAKE_PROTOCOL.length);
+		bb.put(HANDSHAKE_PROTOCOL);
+
+		byte[] rest = new byte[48];
+
+		random.nextBytes(rest);
+
+		rest[28] = 1;  // non-zero peer id
+
+		bb.put(rest);
+
+		return new Encoded(bb, BTMessage.ID_BT_HANDSHAKE, hex(bb, 0, 68));
+	}
+
+	private static ByteBuffer message(int length, int id) {
+		ByteBuffer bb = ByteBuffer.allocate(4 + length);
+
+		bb.putInt(length);
+		bb.put((byte) id);
+
+		return bb;
+	}
+
+	private static String hex(ByteBuffer bb, int offset, int length) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < length; i++) {
+			sb.append(Integer.toHexString(bb.get(offset + i) & 0xff)).append(',');
+		}
+
+		return sb.toString();
+	}
+
+	private static String idFor(int sub_id) {
+		switch (sub_id) {
+			case BTMessage.SUBID_BT_CHOKE:
+				return BTMessage.ID_BT_CHOKE;
+			case BTMessage.SUBID_BT_UNCHOKE:
+				return BTMessage.ID_BT_UNCHOKE;
+			case BTMessage.SUBID_BT_INTERESTED:
+				return BTMessage.ID_BT_INTERESTED;
+			case BTMessage.SUBID_BT_UNINTERESTED:
+				return BTMessage.ID_BT_UNINTERESTED;
+			case BTMessage.SUBID_BT_HAVE:
+				return BTMessage.ID_BT_HAVE;
+			case BTMessage.SUBID_BT_BITFIELD:
+				return BTMessage.ID_BT_BITFIELD;
+			case BTMessage.SUBID_BT_REQUEST:
+				return BTMessage.ID_BT_REQUEST;
+			case BTMessage.SUBID_BT_PIECE:
+				return BTMessage.ID_BT_PIECE;
+			case BTMessage.SUBID_BT_CANCEL:
+				return BTMessage.ID_BT_CANCEL;
+			default:
+				throw new IllegalArgumentException("unexpected id " + sub_id);
+		}
+	}
+
+	private static class Encoded
+	{
+		final byte[] bytes;
+		final String description;
+
+		Encoded(ByteBuffer bb, String payload) {
+			this(bb, idFor(bb.get(4)), payload);
+		}
+
+		Encoded(ByteBuffer bb, String id, String payload) {
+			bytes = bb.array();
+			description = id + ":" + payload;
+		}
+	}
+
+	private static class Stream
+	{
+		final List<byte[]> parts = new ArrayList<>();
+		final List<String> expected = new ArrayList<>();
+		final List<Integer> lengths = new ArrayList<>();
+
+		void add(Encoded encoded) {
+			parts.add(encoded.bytes);
+			expected.add(encoded.description);
+			lengths.add(encoded.bytes.length);
+		}
+
+		byte[] bytes() {
+			int total = 0;
+
+			for (byte[] part : parts) {
+				total += part.length;
+			}
+
+			ByteBuffer bb = ByteBuffer.allocate(total);
+
+			for (byte[] part : parts) {
+				bb.put(part);
+			}
+
+			return bb.array();
+		}
+	}
+
+	/**
+	 * Hands out the stream up to however much has 'arrived' so far.
+	 */
+	private static class TestTransport
+	{
+		final byte[] data;
+		final AtomicInteger ready_for_read = new AtomicInteger();
+		final AtomicInteger bulk_reads = new AtomicInteger();
+		final Transport proxy;
+
+		int arrived;
+		int position;
+
+		TestTransport(byte[] data) {
+			this.data = data;
+
+			proxy = (Transport) Proxy.newProxyInstance(Transport.class.getClassLoader(), new Class<?>[] { Transport.class },
+				(instance, method, args) -> {
+					switch (method.getName()) {
+						case "read":
+							return read((ByteBuffer[]) args[0], (Integer) args[1], (Integer) args[2]);
+						case "setReadyForRead":
+							ready_for_read.incrementAndGet();
+							return null;
+						case "toString":
+							return "TestTransport";
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		}
+
+		long read(ByteBuffer[] buffers, int offset, int length) {
+			if (buffers.length == 1) {
+				bulk_reads.incrementAndGet();  // the normal decode always passes its payload and length buffers
+			}
+
+			long total = 0;
+
+			for (int i = offset; i < offset + length; i++) {
+				ByteBuffer bb = buffers[i];
+
+				int n = Math.min(bb.remaining(), arrived - position);
+
+				bb.put(data, position, n);
+
+				position += n;
+				total += n;
+			}
+
+			return total;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.biglybt.core.peermanager.unchoker;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.peer.PEPeer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UnchokerPeerSelectorTest
+{
+
+	@Test
+	public void selectionMatchesInsertionSortIncludingTies() {
+		Random random = new Random(5678);
+
+		// one selector across all rounds to cover reuse after drainTo
+
+		UnchokerPeerSelector selector = new UnchokerPeerSelector();
+
+		for (int round = 0; round < 300; round++) {
+			int numPeers = random.nextInt(200);
+			int k = random.nextInt(numPeers + 10);
+
+			// a narrow value range gives plenty of ties
+
+			int valueRange = 1 + random.nextInt(round % 2 == 0 ? 5 : 100000);
+
+			List<PEPeer> peers = new ArrayList<>();
+			long[] values = new long[numPeers];
+
+			for (int i = 0; i < numPeers; i++) {
+				peers.add(createPeer(i));
+				values[i] = random.nextInt(valueRange);
+			}
+
+			ArrayList<PEPeer> expected = new ArrayList<>();
+
+			long[] bests = new long[k];
+
+			for (int i = 0; i < numPeers; i++) {
+				UnchokerUtil.updateLargestValueFirstSort(values[i], bests, peers.get(i), expected, 0);
+			}
+
+			boolean largestFirst = random.nextBoolean();
+
+			selector.reset(k);
+
+			for (int i = 0; i < numPeers; i++) {
+				selector.offer(values[i], peers.get(i));
+			}
+
+			assertThat(selector.size()).isEqualTo(expected.size());
+
+			ArrayList<PEPeer> selected = new ArrayList<>();
+
+			selector.drainTo(selected, largestFirst);
+
+			if (!largestFirst) {
+				Collections.reverse(expected);
+			}
+
+			assertThat(selected)
+					.describedAs("round %d, peers=%d, k=%d", round, numPeers, k)
+					.isEqualTo(expected);
+
+			assertThat(selector.size()).isZero();
+		}
+	}
+
+	@Test
+	public void drainToAppendsToExistingEntries() {
+		PEPeer existing = createPeer(-1);
+		PEPeer low = createPeer(0);
+		PEPeer high = createPeer(1);
+
+		UnchokerPeerSelector selector = new UnchokerPeerSelector();
+
+		selector.reset(2);
+		selector.offer(10, low);
+		selector.offer(20, high);
+
+		ArrayList<PEPeer> list = new ArrayList<>();
+		list.add(existing);
+
+		selector.drainTo(list, true);
+
+		List<PEPeer> expected = new ArrayList<>();
+		expected.add(existing);
+		expected.add(high);
+		expected.add(low);
+
+		assertThat(list).isEqualTo(expected);
+	}
+
+	private static PEPeer createPeer(final int id) {
+		return (PEPeer) Proxy.newProxyInstance(PEPeer.class.getClassLoader(),
+				new Class<?>[] { PEPeer.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						switch (method.getName()) {
+							case "equals":
+								return proxy == args[0];
+							case "hashCode":
+								return id;
+							case "toString":
+								return "peer " + id;
+							default:
+								throw new UnsupportedOperationException(method.getName());
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,100 @@
+package com.biglybt.core.speedmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeerSetRangeIndexTest
+{
+
+	@Test
+	public void lookupMatchesLinearScanOverRandomOverlappingCidrs() {
+		Random random = new Random(4321);
+
+		for (int round = 0; round < 50; round++) {
+			int numSets = 1 + random.nextInt(12);
+
+			long[][][] setRanges = new long[numSets][][];
+
+			List<Long> probes = new ArrayList<>();
+
+			for (int s = 0; s < numSets; s++) {
+				int numRanges = random.nextInt(8);
+
+				setRanges[s] = new long[numRanges][];
+
+				for (int r = 0; r < numRanges; r++) {
+					// keep the addresses within a small block so the CIDRs overlap across sets
+
+					int prefix = 16 + random.nextInt(17);
+
+					long mask = (0xffffffffL << (32 - prefix)) & 0xffffffffL;
+
+					long start = (0x0a000000L | random.nextInt(1 << 16)) & mask;
+					long end = start | (~mask & 0xffffffffL);
+
+					setRanges[s][r] = new long[] { start, end };
+
+					probes.add(start);
+					probes.add(end);
+					probes.add(start - 1);
+					probes.add(end + 1);
+				}
+			}
+
+			for (int i = 0; i < 200; i++) {
+				probes.add(0x0a000000L | random.nextInt(1 << 16));
+			}
+
+			probes.add(0L);
+			probes.add(0xffffffffL);
+
+			PeerSetRangeIndex index = new PeerSetRangeIndex(setRanges);
+
+			assertThat(index.isFor(setRanges)).isTrue();
+
+			for (long address : probes) {
+				assertThat(Arrays.toString(index.lookup(address)))
+						.describedAs("sets containing %d in round %d", address, round)
+						.isEqualTo(Arrays.toString(linearScan(setRanges, address)));
+			}
+		}
+	}
+
+	@Test
+	public void isForComparesRangeArrayIdentity() {
+		long[][][] setRanges = { { { 1, 10 } }, { { 5, 20 } } };
+
+		PeerSetRangeIndex index = new PeerSetRangeIndex(setRanges);
+
+		assertThat(index.isFor(new long[][][] { setRanges[0], setRanges[1] })).isTrue();
+		assertThat(index.isFor(new long[][][] { setRanges[0], { { 5, 20 } } })).isFalse();
+		assertThat(index.isFor(new long[][][] { setRanges[0] })).isFalse();
+	}
+
+	private static int[] linearScan(long[][][] setRanges, long address) {
+		List<Integer> sets = new ArrayList<>();
+
+		for (int s = 0; s < setRanges.length; s++) {
+			for (long[] range : setRanges[s]) {
+				if (range[0] <= address && address <= range[1]) {
+					sets.add(s);
+					break;
+				}
+			}
+		}
+
+		int[] result = new int[sets.size()];
+
+		for (int i = 0; i < result.length; i++) {
+			result[i] = sets.get(i);
+		}
+
+		return result;
+	}
+}
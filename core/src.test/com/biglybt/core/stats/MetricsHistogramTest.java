@@ -0,0 +1,179 @@
+package com.biglybt.core.stats;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsHistogramTest
+{
+
+	@Test
+	public void everyValueFallsInsideItsBucketWithinOneEighth() {
+		Random random = new Random(2468);
+
+		for (int i = 0; i < 200000; i++) {
+			// spread the values over every magnitude, not just the top of the long range
+
+			long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+
+			checkBucket(value);
+		}
+
+		for (int exp = 0; exp < 63; exp++) {
+			long power = 1L << exp;
+
+			checkBucket(power - 1);
+			checkBucket(power);
+			checkBucket(power + 1);
+		}
+
+		checkBucket(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void bucketsAreContiguousAndIncreasing() {
+		assertThat(MetricsHistogram.getBucketUpperBound(0)).isZero();
+
+		for (int bucket = 1; bucket < MetricsHistogram.NUM_BUCKETS; bucket++) {
+			long lower = MetricsHistogram.getBucketUpperBound(bucket - 1) + 1;
+
+			assertThat(MetricsHistogram.getBucket(lower))
+					.describedAs("first value of bucket %d", bucket)
+					.isEqualTo(bucket);
+		}
+
+		assertThat(MetricsHistogram.getBucketUpperBound(MetricsHistogram.NUM_BUCKETS - 1))
+				.isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void snapshotMatchesExactStatistics() {
+		Random random = new Random(1357);
+
+		MetricsHistogram histogram = new MetricsHistogram("test");
+
+		long[] values = new long[10000];
+
+		long sum = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			// latency-like: mostly small with a long tail
+
+			long value = (long) Math.exp(random.nextDouble() * 14);
+
+			values[i] = value;
+			sum += value;
+
+			histogram.record(value);
+		}
+
+		Arrays.sort(values);
+
+		MetricsHistogram.Snapshot snap = histogram.getSnapshot();
+
+		assertThat(snap.getCount()).isEqualTo((long) values.length);
+		assertThat(snap.getSum()).isEqualTo(sum);
+		assertThat(snap.getMax()).isEqualTo(values[values.length - 1]);
+		assertThat(snap.getMean()).isEqualTo(sum / values.length);
+
+		for (double percentile : new double[] { 1, 10, 50, 90, 99, 99.9, 100 }) {
+			int rank = (int) Math.ceil(values.length * percentile / 100);
+
+			long exact = values[Math.max(1, rank) - 1];
+
+			long reported = snap.getPercentile(percentile);
+
+			assertThat(reported)
+					.describedAs("p%s, exact %d", percentile, exact)
+					.isBetween(exact, exact + exact / 8);
+		}
+
+		long limit = (1L << 10) - 1;
+
+		long expectedAtOrBelow = 0;
+
+		for (long value : values) {
+			if (value <= limit) {
+				expectedAtOrBelow++;
+			}
+		}
+
+		assertThat(snap.getCountAtOrBelow(limit)).isEqualTo(expectedAtOrBelow);
+	}
+
+	@Test
+	public void negativeValuesAreRecordedAsZero() {
+		MetricsHistogram histogram = new MetricsHistogram("test");
+
+		histogram.record(-5);
+
+		MetricsHistogram.Snapshot snap = histogram.getSnapshot();
+
+		assertThat(snap.getCount()).isEqualTo(1L);
+		assertThat(snap.getSum()).isZero();
+		assertThat(snap.getPercentile(50)).isZero();
+	}
+
+	@Test
+	public void emptySnapshotIsAllZero() {
+		MetricsHistogram.Snapshot snap = new MetricsHistogram("test").getSnapshot();
+
+		assertThat(snap.getCount()).isZero();
+		assertThat(snap.getMean()).isZero();
+		assertThat(snap.getPercentile(99)).isZero();
+	}
+
+	@Test
+	public void concurrentRecordingLosesNothing() throws Exception {
+		final MetricsHistogram histogram = new MetricsHistogram("test");
+		final MetricsCounter counter = new MetricsCounter("test");
+
+		final int threads = 8;
+		final int perThread = 50000;
+
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final int seed = t;
+
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+
+					for (int i = 0; i < perThread; i++) {
+						histogram.record(random.nextInt(1000));
+						counter.add(2);
+					}
+				}
+			};
+
+			workers[t].start();
+		}
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertThat(histogram.getSnapshot().getCount()).isEqualTo((long) threads * perThread);
+		assertThat(counter.getValue()).isEqualTo(2L * threads * perThread);
+	}
+
+	private static void checkBucket(long value) {
+		int bucket = MetricsHistogram.getBucket(value);
+
+		assertThat(bucket).describedAs("bucket of %d", value).isBetween(0, MetricsHistogram.NUM_BUCKETS - 1);
+
+		long upper = MetricsHistogram.getBucketUpperBound(bucket);
+		long lower = bucket == 0 ? 0 : MetricsHistogram.getBucketUpperBound(bucket - 1) + 1;
+
+		assertThat(lower <= value && value <= upper)
+				.describedAs("%d within [%d, %d] of bucket %d", value, lower, upper, bucket)
+				.isTrue();
+
+		assertThat(upper - lower).describedAs("width of bucket %d", bucket).isLessThan(Math.max(1, lower / 8));
+	}
+}
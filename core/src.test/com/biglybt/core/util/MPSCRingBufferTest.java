@@ -0,0 +1,98 @@
+package com.biglybt.core.util;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MPSCRingBufferTest
+{
+	private static final int PRODUCERS = 4;
+	private static final int PER_PRODUCER = 200000;
+
+	@Test
+	public void eachProducersElementsArriveInOrder() throws Exception {
+		MPSCRingBuffer<long[]> ring = new MPSCRingBuffer<>(16);
+
+		CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] producers = new Thread[PRODUCERS];
+
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+
+			producers[p] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				for (int i = 0; i < PER_PRODUCER; i++) {
+					long[] item = { producer, i };
+
+					while (!ring.offer(item)) {
+						Thread.yield();
+					}
+				}
+			});
+
+			producers[p].start();
+		}
+
+		start.countDown();
+
+		int[] next = new int[PRODUCERS];
+
+		int received = 0;
+
+		while (received < PRODUCERS * PER_PRODUCER) {
+			long[] item = ring.poll();
+
+			if (item == null) {
+				Thread.yield();
+
+				continue;
+			}
+
+			int producer = (int) item[0];
+
+			assertThat(item[1]).isEqualTo(next[producer]);
+
+			next[producer]++;
+
+			received++;
+		}
+
+		for (Thread producer : producers) {
+			producer.join();
+		}
+
+		assertThat(ring.poll()).isNull();
+		assertThat(ring.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void offerFailsOnlyWhenFull() {
+		MPSCRingBuffer<Integer> ring = new MPSCRingBuffer<>(5);
+
+		assertThat(ring.getCapacity()).isEqualTo(8);
+
+		for (int i = 0; i < 8; i++) {
+			assertThat(ring.offer(i)).isTrue();
+		}
+
+		assertThat(ring.offer(8)).isFalse();
+		assertThat(ring.size()).isEqualTo(8);
+
+		assertThat(ring.poll()).isEqualTo(0);
+		assertThat(ring.offer(8)).isTrue();
+
+		for (int i = 1; i <= 8; i++) {
+			assertThat(ring.poll()).isEqualTo(i);
+		}
+
+		assertThat(ring.poll()).isNull();
+	}
+}
@@ -0,0 +1,201 @@
+package com.biglybt.core.util.bloom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.util.BDecoder;
+import com.biglybt.core.util.BEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BloomFilterTest
+{
+	private static final int ENTRIES = 5000;
+
+	@Test
+	public void blockedFilterHasNoFalseNegativesAndSurvivesRemoval() throws Exception {
+		checkFilter(BloomFilterFactory.createBlockedAddRemove4Bit(ENTRIES * 10), 0.02);
+	}
+
+	@Test
+	public void cuckooFilterHasNoFalseNegativesAndSurvivesRemoval() throws Exception {
+		checkFilter(BloomFilterFactory.createCuckoo(ENTRIES), 0.001);
+	}
+
+	@Test
+	public void cuckooCountsDuplicatesAndRemovesOneCopyAtATime() {
+		BloomFilter filter = BloomFilterFactory.createCuckoo(100);
+
+		byte[] key = "duplicate".getBytes();
+
+		assertThat(filter.add(key)).isEqualTo(1);
+		assertThat(filter.add(key)).isEqualTo(2);
+		assertThat(filter.add(key)).isEqualTo(3);
+
+		assertThat(filter.count(key)).isEqualTo(3);
+		assertThat(filter.getEntryCount()).isEqualTo(1);
+
+		assertThat(filter.remove(key)).isEqualTo(2);
+		assertThat(filter.remove(key)).isEqualTo(1);
+		assertThat(filter.contains(key)).isTrue();
+
+		assertThat(filter.remove(key)).isZero();
+		assertThat(filter.contains(key)).isFalse();
+		assertThat(filter.getEntryCount()).isZero();
+	}
+
+	@Test
+	public void overfilledCuckooNeverGivesFalseNegatives() throws Exception {
+		// far more keys than the filter is sized for, so the stash fills and the filter saturates
+
+		BloomFilter filter = BloomFilterFactory.createCuckoo(200);
+
+		List<byte[]> keys = randomKeys(new Random(99), 2000);
+
+		for (byte[] key : keys) {
+			filter.add(key);
+		}
+
+		for (byte[] key : keys) {
+			assertThat(filter.contains(key)).isTrue();
+			assertThat(filter.count(key)).isGreaterThan(0);
+		}
+
+		assertThat(filter.getString().contains("saturated")).isTrue();
+
+		BloomFilter copy = roundTrip(filter);
+
+		for (byte[] key : keys) {
+			assertThat(copy.contains(key)).isTrue();
+		}
+
+		filter.clear();
+
+		assertThat(filter.getString().contains("saturated")).isFalse();
+		assertThat(filter.contains(keys.get(0))).isFalse();
+	}
+
+	@Test
+	public void slightlyOverfilledCuckooKeepsExactRemovalViaTheStash() throws Exception {
+		BloomFilter filter = BloomFilterFactory.createCuckoo(1000);
+
+		// just past the slot count so a few fingerprints end up in the stash without saturating
+
+		List<byte[]> keys = randomKeys(new Random(7), filter.getSize() + 8);
+
+		for (byte[] key : keys) {
+			filter.add(key);
+		}
+
+		assertThat(filter.getString().contains("saturated")).isFalse();
+
+		BloomFilter copy = roundTrip(filter);
+
+		for (BloomFilter f : new BloomFilter[] { filter, copy }) {
+			for (byte[] key : keys) {
+				assertThat(f.contains(key)).isTrue();
+			}
+
+			for (byte[] key : keys) {
+				f.remove(key);
+			}
+
+			assertThat(f.getEntryCount()).isZero();
+			assertThat(f.getString().contains("overflow=0")).isTrue();
+		}
+	}
+
+	private static void checkFilter(BloomFilter filter, double maxFalsePositiveRate) throws Exception {
+		Random random = new Random(31337);
+
+		List<byte[]> keys = randomKeys(random, ENTRIES);
+
+		for (byte[] key : keys) {
+			filter.add(key);
+		}
+
+		for (byte[] key : keys) {
+			assertThat(filter.contains(key)).describedAs("added key present").isTrue();
+		}
+
+		// keys that look present already when added aren't counted, so this is approximate
+
+		assertThat(filter.getEntryCount()).isBetween((int) (ENTRIES * (1 - maxFalsePositiveRate)), ENTRIES);
+
+		List<byte[]> others = randomKeys(random, 20000);
+
+		int falsePositives = 0;
+
+		for (byte[] key : others) {
+			if (filter.contains(key)) {
+				falsePositives++;
+			}
+		}
+
+		assertThat((double) falsePositives / others.size())
+				.describedAs("false positive rate")
+				.isLessThan(maxFalsePositiveRate);
+
+		// serialise via bencoding as the filters are persisted that way
+
+		BloomFilter copy = roundTrip(filter);
+
+		assertThat(copy.getClass()).isEqualTo(filter.getClass());
+		assertThat(copy.getEntryCount()).isEqualTo(filter.getEntryCount());
+
+		for (byte[] key : keys) {
+			assertThat(copy.contains(key)).describedAs("key present after round trip").isTrue();
+		}
+
+		for (byte[] key : others) {
+			assertThat(copy.contains(key)).isEqualTo(filter.contains(key));
+		}
+
+		// remove half, the rest must still all be there
+
+		for (int i = 0; i < keys.size(); i += 2) {
+			filter.remove(keys.get(i));
+		}
+
+		for (int i = 1; i < keys.size(); i += 2) {
+			assertThat(filter.contains(keys.get(i))).describedAs("kept key present").isTrue();
+		}
+
+		int stillPresent = 0;
+
+		for (int i = 0; i < keys.size(); i += 2) {
+			if (filter.contains(keys.get(i))) {
+				stillPresent++;
+			}
+		}
+
+		assertThat((double) stillPresent / (ENTRIES / 2))
+				.describedAs("removed keys still reported")
+				.isLessThan(maxFalsePositiveRate * 2);
+	}
+
+	private static BloomFilter roundTrip(BloomFilter filter) throws Exception {
+		Map<String, Object> map = new HashMap<>(filter.serialiseToMap());
+
+		return BloomFilterFactory.deserialiseFromMap(BDecoder.decode(BEncoder.encode(map)));
+	}
+
+	private static List<byte[]> randomKeys(Random random, int count) {
+		List<byte[]> keys = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			byte[] key = new byte[20];
+
+			random.nextBytes(key);
+
+			keys.add(key);
+		}
+
+		return keys;
+	}
+}
@@ -0,0 +1,153 @@
+package com.biglybt.plugin.startstoprules.defaultplugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SeedingRankIndexTest
+{
+
+	@Test
+	public void incrementalOrderMatchesFullSortAfterRandomMutations() {
+		Random random = new Random(1234);
+
+		SeedingRankIndex<Entry> index = new SeedingRankIndex<>(new Entry[0]);
+
+		List<Entry> entries = new ArrayList<>();
+
+		for (int i = 0; i < 500; i++) {
+			Entry entry = new Entry(i, random);
+			entries.add(entry);
+			index.add(entry);
+		}
+
+		int nextPosition = entries.size();
+
+		for (int cycle = 0; cycle < 200; cycle++) {
+			// a few entries change per cycle so the index stays on its incremental path,
+			// including tie-break only changes that leave the rank alone
+
+			int changes = random.nextInt(8);
+
+			for (int i = 0; i < changes; i++) {
+				Entry entry = entries.get(random.nextInt(entries.size()));
+
+				switch (random.nextInt(4)) {
+					case 0:
+						entry.rank = random.nextInt(5);
+						break;
+					case 1:
+						entry.firstPriority = !entry.firstPriority;
+						break;
+					case 2:
+						entry.peers = random.nextInt(5);
+						break;
+					default:
+						entry.shareRatio = random.nextInt(5);
+						break;
+				}
+			}
+
+			if (random.nextInt(10) == 0) {
+				Entry removed = entries.remove(random.nextInt(entries.size()));
+				index.remove(removed);
+			}
+
+			if (random.nextInt(10) == 0) {
+				Entry added = new Entry(nextPosition++, random);
+				entries.add(added);
+				index.add(added);
+			}
+
+			List<Entry> expected = new ArrayList<>(entries);
+
+			Collections.sort(expected, Entry.LIVE_ORDER);
+
+			assertThat(Arrays.asList(index.getSorted(0)))
+					.describedAs("order after cycle %d", cycle)
+					.isEqualTo(expected);
+		}
+	}
+
+	private static class Entry
+		implements SeedingRankIndex.SortKeyed<Entry>
+	{
+		static final Comparator<Entry> LIVE_ORDER = new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return o1.compare(o1.firstPriority, o1.rank, o1.peers, o1.shareRatio,
+						o2.firstPriority, o2.rank, o2.peers, o2.shareRatio, o2.position);
+			}
+		};
+
+		final int position;
+
+		boolean firstPriority;
+		int rank;
+		int peers;
+		int shareRatio;
+
+		boolean keyFirstPriority;
+		int keyRank;
+		int keyPeers;
+		int keyShareRatio;
+
+		Entry(int position, Random random) {
+			this.position = position;
+			firstPriority = random.nextInt(10) == 0;
+			rank = random.nextInt(5);
+			peers = random.nextInt(5);
+			shareRatio = random.nextInt(5);
+		}
+
+		@Override
+		public boolean captureSortKey() {
+			boolean changed = keyFirstPriority != firstPriority || keyRank != rank
+					|| keyPeers != peers || keyShareRatio != shareRatio;
+
+			keyFirstPriority = firstPriority;
+			keyRank = rank;
+			keyPeers = peers;
+			keyShareRatio = shareRatio;
+
+			return changed;
+		}
+
+		@Override
+		public int compareSortKey(Entry other) {
+			return compare(keyFirstPriority, keyRank, keyPeers, keyShareRatio,
+					other.keyFirstPriority, other.keyRank, other.keyPeers, other.keyShareRatio,
+					other.position);
+		}
+
+		// same shape as DefaultRankCalculator: FP first, rank desc, peers desc, share ratio asc, position asc
+
+		private int compare(boolean fp, int rank, int peers, int shareRatio,
+				boolean otherFp, int otherRank, int otherPeers, int otherShareRatio,
+				int otherPosition) {
+			if (fp != otherFp)
+				return fp ? -1 : 1;
+
+			int value = otherRank - rank;
+			if (value != 0)
+				return value;
+
+			value = otherPeers - peers;
+			if (value != 0)
+				return value;
+
+			value = shareRatio - otherShareRatio;
+			if (value != 0)
+				return value;
+
+			return position - otherPosition;
+		}
+	}
+}
@@ -539,6 +539,16 @@ COConfigurationManager
 		ConfigurationManager.getInstance().save();
 	}
 
+		/**
+		 * Synchronously writes any save that async saving has deferred, for use during closedown
+		 */
+
+	public static void
+	flushPendingSave()
+	{
+		ConfigurationManager.getInstance().flushPendingSave();
+	}
+
 		/**
 		 * Mark as needing a save but not immediately - use when potentially needing a large number of saves that aren't
 		 * absolutely required to be immediately persisted
@@ -47,6 +47,9 @@ public final class ConfigKeys {
 		public static final String BCFG_PEERCONTROL_UDP_PUBLIC_ENABLE = "peercontrol.udp.public.enable";
 		public static final String BCFG_PEERCONTROL_PREFER_UDP = "peercontrol.prefer.udp";
 		public static final String BCFG_PEERCONTROL_PREFER_IPV6_CONNECTIONS = "peercontrol.prefer.ipv6";
+		public static final String BCFG_NETWORK_OUTGOING_QUEUE_LOCK_FREE = "network.outgoing.queue.lock.free";
+		public static final String ICFG_NETWORK_TRANSPORT_RC4_IMPL = "network.transport.rc4.impl";
+		public static final String BCFG_NETWORK_BT_DECODER_BULK_READ = "network.bt.decoder.bulk.read";
 		public static final String BCFG_HTTP_DATA_LISTEN_PORT_ENABLE = "HTTP.Data.Listen.Port.Enable";
 		public static final String ICFG_HTTP_DATA_LISTEN_PORT = "HTTP.Data.Listen.Port";
 		public static final String ICFG_HTTP_DATA_LISTEN_PORT_OVERRIDE = "HTTP.Data.Listen.Port.Override";
@@ -170,6 +173,7 @@ public final class ConfigKeys {
 		public static final String BCFG_FILE_DELETE_INCLUDE_FILES_OUTSIDE_SAVE_DIR = "File.delete.include_files_outside_save_dir";
 		public static final String BCFG_DELETE_PARTIAL_FILES_ON_LIBRARY_REMOVAL = "Delete Partial Files On Library Removal";
 		public static final String BCFG_USE_CONFIG_FILE_BACKUPS = "Use Config File Backups";
+		public static final String BCFG_CONFIG_SAVE_ASYNC = "config.save.async.enable";
 		public static final String BCFG_MOVE_COMPLETED_WHEN_DONE = "Move Completed When Done";
 		public static final String SCFG_COMPLETED_FILES_DIRECTORY = "Completed Files Directory";
 		public static final String BCFG_MOVE_TORRENT_WHEN_DONE = "Move Torrent When Done";
@@ -195,6 +199,7 @@ public final class ConfigKeys {
 		public static final String BCFG_DISKMANAGER_ONE_OP_PER_FS = "diskmanager.one.op.per.fs";
 		public static final String BCFG_DISKMANAGER_HASHCHECKING_MAX_ACTIVE = "diskmanager.hashchecking.maxactive";
 		public static final String BCFG_DISKMANAGER_PERF_CACHE_ENABLE = "diskmanager.perf.cache.enable";
+		public static final String BCFG_TORRENT_COMPACT_INACTIVE = "torrent.compact.inactive.enable";
 		public static final String ICFG_DISKMANAGER_PERF_CACHE_SIZE = "diskmanager.perf.cache.size";
 		public static final String ICFG_FILE_MAX_OPEN = "File Max Open";
 		public static final String ICFG_DISKMANAGER_PERF_WRITE_MAXMB = "diskmanager.perf.write.maxmb";
@@ -251,8 +256,12 @@ public final class ConfigKeys {
 		public static final String SCFG_LOGGING_DIR = "Logging Dir";
 		public static final String ICFG_LOGGING_MAX_SIZE = "Logging Max Size";
 		public static final String SCFG_LOGGING_TIMESTAMP = "Logging Timestamp";
+		public static final String BCFG_LOGGING_ASYNC = "Logging Async";
 		public static final String BCFG_LOGGER_DEBUG_FILES_FORCE = "Logger.DebugFiles.Enabled.Force";
 		public static final String ICFG_LOGGER_DEBUG_FILES_SIZE_KB = "Logger.DebugFiles.SizeKB";
+		public static final String BCFG_LOGGER_PROFILER_ENABLE = "Logger.Profiler.Enabled";
+		public static final String ICFG_LOGGER_PROFILER_PERIOD = "Logger.Profiler.PeriodMillis";
+		public static final String SCFG_LOGGER_PROFILER_THREADS = "Logger.Profiler.Threads";
 	}
 
 	public static class Security {
@@ -293,6 +302,7 @@ public final class ConfigKeys {
 		public static final String SCFG_ON_SEEDING_COMPLETE_DO = "On Seeding Complete Do";
 		public static final String SCFG_ON_SEEDING_COMPLETE_SCRIPT = "On Seeding Complete Script";
 		public static final String BCFG_PREVENT_SLEEP_FP_SEEDING = "Prevent Sleep FP Seeding";
+		public static final String ICFG_STARTUP_DOWNLOAD_LOAD_THREADS = "startup.download.load.threads";
 	}
 
 	public static class Stats {
@@ -304,9 +314,12 @@ public final class ConfigKeys {
 		public static final String ICFG_STATS_PERIOD = "Stats Period";
 		public static final String BCFG_STATS_EXPORT_PEER_DETAILS = "Stats Export Peer Details";
 		public static final String BCFG_STATS_EXPORT_FILE_DETAILS = "Stats Export File Details";
+		public static final String BCFG_STATS_METRICS_ENABLE = "Stats Metrics Enable";
+		public static final String SCFG_STATS_METRICS_FILE = "Stats Metrics File";
 		public static final String BCFG_LONG_TERM_STATS_ENABLE = "long.term.stats.enable";
 		public static final String ICFG_LONG_TERM_STATS_WEEKSTART = "long.term.stats.weekstart";
 		public static final String ICFG_LONG_TERM_STATS_MONTHSTART = "long.term.stats.monthstart";
+		public static final String BCFG_LONG_TERM_STATS_SERIES_ENABLE = "long.term.stats.series.enable";
 	}
 
 
@@ -333,6 +346,9 @@ public final class ConfigKeys {
 		public static final String ICFG_TRACKER_CLIENT_READ_TIMEOUT = "Tracker Client Read Timeout";
 		public static final String ICFG_TRACKER_CLIENT_CLOSEDOWN_TIMEOUT = "Tracker Client Closedown Timeout";
 		public static final String ICFG_TRACKER_CLIENT_CONCURRENT_ANNOUNCE = "Tracker Client Concurrent Announce";
+		public static final String ICFG_TRACKER_CLIENT_CONCURRENT_ANNOUNCE_PER_HOST = "Tracker Client Concurrent Announce Per Host";
+		public static final String ICFG_TRACKER_CLIENT_ANNOUNCE_SPACING_PER_HOST = "Tracker Client Announce Spacing Per Host";
+		public static final String BCFG_TRACKER_CLIENT_HTTP_KEEP_ALIVE = "Tracker Client HTTP Keep Alive";
 		public static final String BCFG_TRACKER_KEY_ENABLE_CLIENT = "Tracker Key Enable Client";
 		public static final String BCFG_TRACKER_SEPARATE_PEER_I_DS = "Tracker Separate Peer IDs";
 		public static final String BCFG_TRACKER_PORT_ENABLE = "Tracker Port Enable";
@@ -362,6 +378,7 @@ public final class ConfigKeys {
 		public static final String ICFG_TRACKER_SCRAPE_CACHE = "Tracker Scrape Cache";
 		public static final String ICFG_TRACKER_ANNOUNCE_CACHE_MIN_PEERS = "Tracker Announce Cache Min Peers";
 		public static final String ICFG_TRACKER_ANNOUNCE_CACHE = "Tracker Announce Cache";
+		public static final String BCFG_TRACKER_ANNOUNCE_COMPACT_REPLY_ENABLE = "Tracker Announce Compact Reply Enable";
 		public static final String ICFG_TRACKER_MAX_PEERS_RETURNED = "Tracker Max Peers Returned";
 		public static final String ICFG_TRACKER_MAX_SEEDS_RETAINED = "Tracker Max Seeds Retained";
 		public static final String BCFG_TRACKER_NAT_CHECK_ENABLE = "Tracker NAT Check Enable";
@@ -379,6 +396,9 @@ public final class ConfigKeys {
 		public static final String ICFG_TRACKER_MAX_THREADS = "Tracker Max Threads";
 		public static final String BCFG_TRACKER_TCP_NON_BLOCKING = "Tracker TCP NonBlocking";
 		public static final String ICFG_TRACKER_TCP_NON_BLOCKING_CONC_MAX = "Tracker TCP NonBlocking Conc Max";
+		public static final String BCFG_TRACKER_TCP_NON_BLOCKING_KEEP_ALIVE = "Tracker TCP NonBlocking Keep Alive";
+		public static final String ICFG_TRACKER_TCP_NON_BLOCKING_SELECT_THREADS = "Tracker TCP NonBlocking Select Threads";
+		public static final String BCFG_TRACKER_TCP_NON_BLOCKING_INLINE_PROCESSING = "Tracker TCP NonBlocking Inline Processing";
 	}
 
 	public static class Transfer {
@@ -395,6 +415,9 @@ public final class ConfigKeys {
 		public static final String ICFG_MAX_UPLOADS = "Max Uploads";
 		public static final String BCFG_ENABLE_SEEDINGONLY_MAXUPLOADS = "enable.seedingonly.maxuploads";
 		public static final String ICFG_MAX_UPLOADS_SEEDING = "Max Uploads Seeding";
+		public static final String BCFG_UPLOAD_SLOTS_GLOBAL_SEEDING_ENABLE = "upload.slots.global.seeding.enable";
+		public static final String ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_MAX = "upload.slots.global.seeding.max";
+		public static final String ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_SLOT_KBS = "upload.slots.global.seeding.slot.kbs";
 		public static final String ICFG_MAX_PEER_CONNECTIONS_PER_TORRENT = "Max.Peer.Connections.Per.Torrent";
 		public static final String BCFG_MAX_PEER_CONNECTIONS_PER_TORRENT_WHEN_SEEDING_ENABLE = "Max.Peer.Connections.Per.Torrent.When.Seeding.Enable";
 		public static final String ICFG_MAX_PEER_CONNECTIONS_PER_TORRENT_WHEN_SEEDING = "Max.Peer.Connections.Per.Torrent.When.Seeding";
@@ -411,6 +434,7 @@ public final class ConfigKeys {
 		public static final String BCFG_USE_LAZY_BITFIELD = "Use Lazy Bitfield";
 		public static final String BCFG_PEERCONTROL_HIDE_PIECE = "peercontrol.hide.piece";
 		public static final String BCFG_PEERCONTROL_HIDE_PIECE_DS = "peercontrol.hide.piece.ds";
+		public static final String ICFG_PEERCONTROL_SCHEDULER_PARALLEL_THREADS = "peercontrol.scheduler.parallel.threads";
 		public static final String BCFG_PRIORITIZE_FIRST_PIECE = "Prioritize First Piece";
 		public static final String BCFG_PRIORITIZE_FIRST_PIECE_FORCE = "Prioritize First Piece Force";
 		public static final String BCFG_PRIORITIZE_MOST_COMPLETED_FILES = "Prioritize Most Completed Files";
@@ -71,7 +71,7 @@ public class ConfigurationDefaults {
   private static final Long FALSE	= ZERO;
   private static final Long TRUE	= ONE;
 
-  private static ConfigurationDefaults configdefaults;
+  private static volatile ConfigurationDefaults configdefaults;
   private static final AEMonitor				class_mon	= new AEMonitor( "ConfigDef");
 
   private ConcurrentHashMapWrapper<String,Object> def = null;
@@ -96,6 +96,13 @@ public class ConfigurationDefaults {
   public static ConfigurationDefaults
   getInstance()
   {
+	ConfigurationDefaults result = configdefaults;
+
+	if ( result != null ){
+
+		return( result );
+	}
+
   	try{
   		class_mon.enter();
 
@@ -179,10 +186,14 @@ public class ConfigurationDefaults {
 
     def.put( "File Max Open", new Long(50));
     def.put( "Use Config File Backups", TRUE);
+    def.put( ConfigKeys.File.BCFG_CONFIG_SAVE_ASYNC, FALSE );
 
     def.put( "Max Uploads", new Long(4) );
     def.put( "Max Uploads Seeding", new Long(4));
     def.put( "enable.seedingonly.maxuploads", FALSE );
+    def.put( ConfigKeys.Transfer.BCFG_UPLOAD_SLOTS_GLOBAL_SEEDING_ENABLE, FALSE );
+    def.put( ConfigKeys.Transfer.ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_MAX, ZERO );	// 0 -> derive from upload limit
+    def.put( ConfigKeys.Transfer.ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_SLOT_KBS, Long.valueOf( 16 ));
     def.put( "max.uploads.when.busy.inc.min.secs", new Long( 30 ));
     def.put( "Max Download Speed KBs", ZERO );
     def.put( "Down Rate Limits Include Protocol", TRUE );
@@ -288,6 +299,7 @@ public class ConfigurationDefaults {
     def.put("Prevent Sleep Tag", "" );
 
     def.put("Auto Restart When Idle", ZERO );
+    def.put( ConfigKeys.StartupShutdown.ICFG_STARTUP_DOWNLOAD_LOAD_THREADS, ZERO );
 
     def.put( "Download History Enabled", TRUE );
 
@@ -335,6 +347,7 @@ public class ConfigurationDefaults {
     def.put("Logging Dir", "");
     def.put("Logging Timestamp", "HH:mm:ss.SSS");
     def.put("Logging Max Size", new Long(5));
+    def.put( ConfigKeys.Logging.BCFG_LOGGING_ASYNC, FALSE );
 
     //final int[] logTypes = { LogEvent.LT_INFORMATION, LogEvent.LT_WARNING, LogEvent.LT_ERROR };
 	  final int[] logTypes = { 0, 1, 3 }; // direct numbers in case LogEvent causes initialization loops
@@ -349,6 +362,9 @@ public class ConfigurationDefaults {
     def.put("Logger.DebugFiles.Enabled", TRUE);
     def.put("Logger.DebugFiles.SizeKB", 256 );
     def.put("Logger.DebugFiles.Enabled.Force", FALSE );
+    def.put( ConfigKeys.Logging.BCFG_LOGGER_PROFILER_ENABLE, FALSE );
+    def.put( ConfigKeys.Logging.ICFG_LOGGER_PROFILER_PERIOD, 50 );
+    def.put( ConfigKeys.Logging.SCFG_LOGGER_PROFILER_THREADS, "ReadController,WriteController,DiskAccessController,PeerControlScheduler,PRUDPPacketHandler" );
     def.put("Logging Enable UDP Transport", FALSE);
 
 
@@ -475,8 +491,11 @@ public class ConfigurationDefaults {
     def.put( "Stats Period", new Long(StatsWriterPeriodic.DEFAULT_SLEEP_PERIOD) );
     def.put( "Stats Dir", "" );
     def.put( "Stats File", StatsWriterPeriodic.DEFAULT_STATS_FILE_NAME );
+    def.put( ConfigKeys.Stats.BCFG_STATS_METRICS_ENABLE, FALSE );
+    def.put( ConfigKeys.Stats.SCFG_STATS_METRICS_FILE, "" );
     def.put( "long.term.stats.enable", TRUE );
     def.put( "long.term.stats.weekstart", Calendar.SUNDAY );
+    def.put( ConfigKeys.Stats.BCFG_LONG_TERM_STATS_SERIES_ENABLE, FALSE );
     def.put( "Stats Smoothing Secs", new Long( 2*60 ));
     def.put( "File.Torrent.AutoSkipExtensions", "" );
     def.put( "File.Torrent.AutoSkipFiles", "" );
@@ -496,6 +515,9 @@ public class ConfigurationDefaults {
     def.put( "Tracker Client Read Timeout", SIXTY );
     def.put( ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_CLOSEDOWN_TIMEOUT, 20L );
     def.put( ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_CONCURRENT_ANNOUNCE, 32 );
+    def.put( ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_CONCURRENT_ANNOUNCE_PER_HOST, 4 );
+    def.put( ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_ANNOUNCE_SPACING_PER_HOST, 50 );
+    def.put( ConfigKeys.Tracker.BCFG_TRACKER_CLIENT_HTTP_KEEP_ALIVE, TRUE );
 	def.put( "Tracker Client Send OS and Java Version", FALSE);
 	def.put( "Tracker Client Show Warnings", TRUE);
 	def.put( "Tracker Client Min Announce Interval", ZERO);
@@ -524,6 +546,7 @@ public class ConfigurationDefaults {
     def.put( "Tracker Scrape Cache", new Long( TRTrackerServer.DEFAULT_SCRAPE_CACHE_PERIOD ) );
     def.put( "Tracker Announce Cache", new Long( TRTrackerServer.DEFAULT_ANNOUNCE_CACHE_PERIOD ) );
     def.put( "Tracker Announce Cache Min Peers", new Long( TRTrackerServer.DEFAULT_ANNOUNCE_CACHE_PEER_THRESHOLD ) );
+    def.put( ConfigKeys.Tracker.BCFG_TRACKER_ANNOUNCE_COMPACT_REPLY_ENABLE, TRUE );
     def.put( "Tracker Poll Interval Min", new Long( TRTrackerServer.DEFAULT_MIN_RETRY_DELAY) );
     def.put( "Tracker Poll Interval Max", new Long( TRTrackerServer.DEFAULT_MAX_RETRY_DELAY) );
     def.put( "Tracker Poll Seed Interval Mult", new Long(1));
@@ -546,6 +569,9 @@ public class ConfigurationDefaults {
     def.put( "Tracker TCP NonBlocking Restrict Request Types", TRUE);
     def.put( "Tracker TCP NonBlocking Conc Max", new Long(2048));
     def.put( "Tracker TCP NonBlocking Immediate Close", FALSE );
+    def.put( ConfigKeys.Tracker.BCFG_TRACKER_TCP_NON_BLOCKING_KEEP_ALIVE, TRUE );
+    def.put( ConfigKeys.Tracker.ICFG_TRACKER_TCP_NON_BLOCKING_SELECT_THREADS, Long.valueOf(1) );
+    def.put( ConfigKeys.Tracker.BCFG_TRACKER_TCP_NON_BLOCKING_INLINE_PROCESSING, TRUE );
 
     def.put( "Tracker Client Scrape Enable", TRUE);
     def.put( "Tracker Client Scrape Total Disable", FALSE );
@@ -616,6 +642,7 @@ public class ConfigurationDefaults {
     def.put( "Tracker UDP Probe Enable", TRUE );
     def.put( "Tracker Client Enable TCP", TRUE );
     def.put( "Tracker DNS Records Enable", TRUE );
+    def.put( ConfigKeys.File.BCFG_TORRENT_COMPACT_INACTIVE, FALSE );
     def.put( "diskmanager.perf.cache.enable", TRUE);
     def.put( "diskmanager.perf.cache.enable.read", FALSE);
     def.put( "diskmanager.perf.cache.enable.write", TRUE);
@@ -644,8 +671,12 @@ public class ConfigurationDefaults {
     def.put( "peercontrol.udp.probe.enable", FALSE );
     def.put( "peercontrol.hide.piece", FALSE );
     def.put( "peercontrol.scheduler.use.priorities", TRUE );
+    def.put( ConfigKeys.Transfer.ICFG_PEERCONTROL_SCHEDULER_PARALLEL_THREADS, ZERO );
     def.put( "peercontrol.prefer.udp", FALSE );
     def.put( ConfigKeys.Connection.BCFG_PEERCONTROL_PREFER_IPV6_CONNECTIONS, FALSE );
+    def.put( ConfigKeys.Connection.BCFG_NETWORK_OUTGOING_QUEUE_LOCK_FREE, FALSE );
+    def.put( ConfigKeys.Connection.ICFG_NETWORK_TRANSPORT_RC4_IMPL, Long.valueOf( -1 ));	// auto
+    def.put( ConfigKeys.Connection.BCFG_NETWORK_BT_DECODER_BULK_READ, FALSE );
 
     def.put( "File.truncate.if.too.large", FALSE);
     def.put( "Enable System Tray", TRUE);
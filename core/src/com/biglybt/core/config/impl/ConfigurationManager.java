@@ -25,6 +25,7 @@ import com.biglybt.core.config.COConfigurationListener;
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.COConfigurationManager.ParameterVerifier;
 import com.biglybt.core.config.COConfigurationManager.ResetToDefaultsListener;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.config.PriorityParameterListener;
 import com.biglybt.core.security.CryptoManager;
@@ -45,7 +46,7 @@ ConfigurationManager
 	public static final String CONFIG_FILENAME = "biglybt.config";
 
 	private static ConfigurationManager 	config_temp = null;
-  private static ConfigurationManager 	config 		= null;
+  private static volatile ConfigurationManager 	config 		= null;
   private static final AEMonitor				class_mon	= new AEMonitor( "ConfigMan:class" );
 
 
@@ -71,6 +72,22 @@ ConfigurationManager
 			  },
 			  30*1000 );
 
+  	// async saving: save requests are coalesced into a single write made on a background thread
+  	// a short while later, pending writes are flushed by core stop (and a shutdown hook as a backstop)
+
+  private static final int	ASYNC_SAVE_DELAY	= 2*1000;
+
+  private volatile boolean		async_save;
+  private volatile boolean		save_pending;
+  private volatile boolean		save_scheduled;
+  private Thread				save_shutdown_hook;
+  private final Object			save_lock	= new Object();
+
+  private final AsyncDispatcher	save_dispatcher = new AsyncDispatcher( "ConfigSave", 5000 );
+
+  private long	async_save_requests;
+  private long	async_save_writes;
+
   private final ParameterListener
 	exportable_parameter_listener =
 		new ParameterListener() {
@@ -90,6 +107,15 @@ ConfigurationManager
 
 
   public static ConfigurationManager getInstance() {
+	  	// hot path for parameter reads, no locking once initialised
+
+	ConfigurationManager result = config;
+
+	if ( result != null ){
+
+		return( result );
+	}
+
   	try{
   		class_mon.enter();
 
@@ -179,6 +205,68 @@ ConfigurationManager
 	 loadExportedParameters();
 
 	 AEDiagnostics.addWeakEvidenceGenerator( this );
+
+	 addParameterListener(
+		ConfigKeys.File.BCFG_CONFIG_SAVE_ASYNC,
+		new ParameterListener()
+		{
+			@Override
+			public void
+			parameterChanged(
+				String name )
+			{
+				setAsyncSave( getBooleanParameter( ConfigKeys.File.BCFG_CONFIG_SAVE_ASYNC ));
+			}
+		});
+
+	 setAsyncSave( getBooleanParameter( ConfigKeys.File.BCFG_CONFIG_SAVE_ASYNC ));
+  }
+
+  private void
+  setAsyncSave(
+	boolean		enable )
+  {
+	  synchronized( save_lock ){
+
+		  if ( enable == async_save ){
+
+			  return;
+		  }
+
+		  async_save = enable;
+
+		  try{
+			  if ( enable ){
+
+				  save_shutdown_hook =
+					  new Thread( "ConfigSave:shutdown" )
+					  {
+						  @Override
+						  public void
+						  run()
+						  {
+							  flushPendingSave();
+						  }
+					  };
+
+				  Runtime.getRuntime().addShutdownHook( save_shutdown_hook );
+
+			  }else if ( save_shutdown_hook != null ){
+
+				  Runtime.getRuntime().removeShutdownHook( save_shutdown_hook );
+
+				  save_shutdown_hook = null;
+			  }
+		  }catch( Throwable e ){
+
+			  	// already shutting down or hooks not permitted, core stop still flushes
+		  }
+	  }
+
+	  if ( !enable ){
+
+		  flushPendingSave();
+	  }
   }
 
   public void load(String filename)
@@ -263,20 +351,30 @@ ConfigurationManager
 		return;
 	}
 
-	/**
-	 * Note - propertiesMap isn't synchronised! We'll clone the map
-	 * now, because we need to modify it. The BEncoding code will
-	 * create a new map object (TreeMap) because it needs to be
-	 * sorted, so we might as well do it here too.
-	 */
-	TreeMap<String,Object> properties_clone = propertiesMap.toTreeMap();
+	synchronized( save_lock ){
 
-	// Remove any transient parameters.
-	if (!this.transient_properties.isEmpty()) {
-		properties_clone.keySet().removeAll(this.transient_properties);
-	}
+			// serialise snapshot and write so an older snapshot can never overwrite a newer one
+
+		if ( filename.equals( CONFIG_FILENAME )){
 
-  	FileUtil.writeResilientConfigFile( filename, properties_clone );
+			save_pending = false;
+		}
+
+		/**
+		 * Note - propertiesMap isn't synchronised! We'll clone the map
+		 * now, because we need to modify it. The BEncoding code will
+		 * create a new map object (TreeMap) because it needs to be
+		 * sorted, so we might as well do it here too.
+		 */
+		TreeMap<String,Object> properties_clone = propertiesMap.toTreeMap();
+
+		// Remove any transient parameters.
+		if (!this.transient_properties.isEmpty()) {
+			properties_clone.keySet().removeAll(this.transient_properties);
+		}
+
+	  	FileUtil.writeResilientConfigFile( filename, properties_clone );
+	}
 
   	List<COConfigurationListener>	listeners_copy;
 
@@ -311,13 +409,96 @@ ConfigurationManager
   }
 
   public void save() {
-    save(CONFIG_FILENAME);
+	if ( async_save ){
+
+		requestAsyncSave();
+
+	}else{
+
+		save(CONFIG_FILENAME);
+	}
+  }
+
+  private void
+  requestAsyncSave()
+  {
+	  synchronized( save_lock ){
+
+		  save_pending = true;
+
+		  async_save_requests++;
+
+		  if ( save_scheduled ){
+
+			  return;
+		  }
+
+		  save_scheduled = true;
+	  }
+
+		// fixed delay from the first request rather than pushing back on each one so a steady
+		// stream of changes still gets written regularly
+
+	  SimpleTimer.addEvent(
+		"ConfigSave",
+		SystemTime.getOffsetTime( ASYNC_SAVE_DELAY ),
+		new TimerEventPerformer()
+		{
+			@Override
+			public void
+			perform(
+				TimerEvent event )
+			{
+				save_dispatcher.dispatch(
+					new AERunnable()
+					{
+						@Override
+						public void
+						runSupport()
+						{
+							synchronized( save_lock ){
+
+								save_scheduled = false;
+
+								if ( !save_pending ){
+
+									return;
+								}
+
+								async_save_writes++;
+							}
+
+							save( CONFIG_FILENAME );
+						}
+					});
+			}
+		});
+  }
+
+	/**
+	 * Writes out any save deferred by async saving, synchronously
+	 */
+
+  public void
+  flushPendingSave()
+  {
+	  if ( save_pending ){
+
+		  save( CONFIG_FILENAME );
+	  }
   }
 
 	public void
 	setDirty()
 	{
-		dirty_dispatcher.dispatch();
+		if ( async_save ){
+
+			requestAsyncSave();
+
+		}else{
+
+			dirty_dispatcher.dispatch();
+		}
 	}
 
 	public boolean
@@ -1387,6 +1568,8 @@ ConfigurationManager
 
 			writer.println( "version=" + Constants.BIGLYBT_VERSION + ", subver=" + Constants.SUBVERSION );
 
+			writer.println( "save: async=" + async_save + ", pending=" + save_pending + ", requests=" + async_save_requests + ", writes=" + async_save_writes );
+
 			writer.println( "System Properties" );
 
 			try{
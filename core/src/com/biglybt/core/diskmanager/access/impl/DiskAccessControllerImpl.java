@@ -29,6 +29,7 @@ import com.biglybt.core.diskmanager.access.DiskAccessControllerStats;
 import com.biglybt.core.diskmanager.access.DiskAccessRequest;
 import com.biglybt.core.diskmanager.access.DiskAccessRequestListener;
 import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.stats.CoreStats;
 import com.biglybt.core.stats.CoreStatsProvider;
 import com.biglybt.core.util.Debug;
@@ -65,7 +66,8 @@ DiskAccessControllerImpl
 					read_aggregation_request_limit,
 					read_aggregation_byte_limit,
 					_max_read_threads,
-					_max_read_mb );
+					_max_read_mb,
+					CoreMetrics.getHistogram( CoreMetrics.MT_DISK_READ_LATENCY ));
 
 		write_dispatcher 	=
 			new DiskAccessControllerInstance(
@@ -74,7 +76,8 @@ DiskAccessControllerImpl
 					write_aggregation_request_limit,
 					write_aggregation_byte_limit,
 					_max_write_threads,
-					_max_write_mb );
+					_max_write_mb,
+					CoreMetrics.getHistogram( CoreMetrics.MT_DISK_WRITE_LATENCY ));
 
 		Set	types = new HashSet();
 
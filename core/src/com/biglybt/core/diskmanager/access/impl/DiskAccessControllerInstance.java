@@ -23,6 +23,8 @@ import java.util.*;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.stats.CoreMetrics;
+import com.biglybt.core.stats.MetricsHistogram;
 import com.biglybt.core.torrent.TOTorrent;
 import com.biglybt.core.util.*;
 
@@ -56,6 +58,8 @@ DiskAccessControllerInstance
 	long			io_time;
 	long			io_count;
 
+	final MetricsHistogram	io_latency;
+
 	private final requestDispatcher[]	dispatchers;
 
 	private long		last_check		= 0;
@@ -81,15 +85,18 @@ DiskAccessControllerInstance
 
 	public
 	DiskAccessControllerInstance(
-		String	_name,
-		boolean	_enable_aggregation,
-		int		_aggregation_request_limit,
-		int		_aggregation_byte_limit,
-		int		_max_threads,
-		int		_max_mb )
+		String				_name,
+		boolean				_enable_aggregation,
+		int					_aggregation_request_limit,
+		int					_aggregation_byte_limit,
+		int					_max_threads,
+		int					_max_mb,
+		MetricsHistogram	_io_latency )
 	{
 		name				= _name;
 
+		io_latency			= _io_latency;
+
 		enable_aggregation			= _enable_aggregation;
 		aggregation_request_limit	= _aggregation_request_limit;
 		aggregation_byte_limit		= _aggregation_byte_limit;
@@ -694,6 +701,11 @@ DiskAccessControllerInstance
 
 														releaseSpaceAllowance( r );
 													}
+
+													if ( CoreMetrics.isEnabled()){
+
+														io_latency.record(( io_end - io_start )/1000 );
+													}
 												}
 											}else if ( request != null ){
 
@@ -710,6 +722,11 @@ DiskAccessControllerInstance
 
 													total_single_bytes += request.getSize();
 
+													if ( CoreMetrics.isEnabled()){
+
+														io_latency.record(( io_end - io_start )/1000 );
+													}
+
 													releaseSpaceAllowance( request );
 												}
 
@@ -20,6 +20,7 @@
 package com.biglybt.core.download;
 
 import java.io.File;
+import java.util.List;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
@@ -76,6 +77,20 @@ DownloadManagerStateFactory
 		DownloadManagerStateImpl.saveGlobalStateCache();
 	}
 
+	public static int
+	prefetchDownloadStates(
+		List<byte[]>	hashes,
+		int				threads )
+	{
+		return( DownloadManagerStateImpl.prefetchDownloadStates( hashes, threads ));
+	}
+
+	public static int
+	getGlobalStateCacheHits()
+	{
+		return( DownloadManagerStateImpl.getGlobalStateCacheHits());
+	}
+
 	public static void
 	discardGlobalStateCache()
 	{
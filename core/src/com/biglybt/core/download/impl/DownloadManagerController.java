@@ -2533,6 +2533,13 @@ DownloadManagerController
 		return( download_manager.getTrackerScrapeResponse());
 	}
 
+	@Override
+	public long
+	getAllTimeDataBytesSent()
+	{
+		return( download_manager.getStats().getTotalDataBytesSent());
+	}
+
 	@Override
 	public String
 	getTrackerClientExtensions()
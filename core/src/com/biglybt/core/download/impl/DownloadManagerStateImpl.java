@@ -266,6 +266,12 @@ DownloadManagerStateImpl
 	private static final Map					global_state_cache			= new HashMap();
 	private static final ArrayList			global_state_cache_wrappers	= new ArrayList();
 
+		// prefetches in load order, guarded by itself. prefetch_window limits how many are read
+		// ahead of the loader so decoded states don't pile up in memory
+
+	private static final LinkedHashMap<HashWrapper,StatePrefetch>	prefetched_states	= new LinkedHashMap<>();
+	private static AESemaphore										prefetch_window;
+
 	private static final CopyOnWriteMap<String,CopyOnWriteList<DownloadManagerStateAttributeListener>> global_listeners_read_map_cow  = new CopyOnWriteMap<>();
 	private static final CopyOnWriteMap<String,CopyOnWriteList<DownloadManagerStateAttributeListener>> global_listeners_write_map_cow = new CopyOnWriteMap<>();
 
@@ -439,7 +445,12 @@ DownloadManagerStateImpl
 
 					}else{
 
-						saved_state = TorrentUtils.readDelegateFromFile( saved_file, discard_pieces );
+						saved_state = getPrefetchedState( torrent_hash );
+
+						if ( saved_state == null ){
+
+							saved_state = TorrentUtils.readDelegateFromFile( saved_file, discard_pieces );
+						}
 					}
 
 				}catch( Throwable e ){
@@ -672,9 +683,204 @@ DownloadManagerStateImpl
 		}
 	}
 
+		/**
+		 * Starts reading the saved state of the given downloads on a bounded pool so that the
+		 * subsequent sequential loads, in the same order, find them already decoded. Downloads that
+		 * will be built from the global state cache are skipped as they don't need their state file
+		 * until first use. Only a window of threads*4 states is read ahead of the loader, anything
+		 * the loader skips over is dropped as it passes and the rest by discardGlobalStateCache
+		 * @return number of reads scheduled
+		 */
+
+	public static int
+	prefetchDownloadStates(
+		List<byte[]>	hashes,
+		int				threads )
+	{
+		final List<StatePrefetch>	todo = new ArrayList<>();
+
+		synchronized( prefetched_states ){
+
+			if ( prefetch_window != null ){
+
+				return( 0 );
+			}
+
+			for ( int i=0;i<hashes.size();i++){
+
+				byte[]	hash = hashes.get(i);
+
+				HashWrapper	hw = new HashWrapper( hash );
+
+				if ( global_state_cache.containsKey( hw ) || prefetched_states.containsKey( hw )){
+
+					continue;
+				}
+
+					// same as the sequential load which starts discarding once enough states are loaded
+
+				StatePrefetch	prefetch = new StatePrefetch( getStateFile( hash ), i > 32, todo.size());
+
+				prefetched_states.put( hw, prefetch );
+
+				todo.add( prefetch );
+			}
+
+			if ( todo.isEmpty()){
+
+				return( 0 );
+			}
+
+			prefetch_window = new AESemaphore( "DownloadStatePrefetch", Math.max( 1, threads )*4 );
+		}
+
+		final AESemaphore	window	= prefetch_window;
+		final ThreadPool	pool 	= new ThreadPool( "DownloadStatePrefetch", Math.max( 1, threads ), true );
+
+		new AEThread2( "DownloadStatePrefetch:feeder", true )
+		{
+			@Override
+			public void
+			run()
+			{
+				for ( final StatePrefetch prefetch: todo ){
+
+					if ( prefetch.isCancelled()){
+
+						continue;
+					}
+
+					window.reserve();
+
+					synchronized( prefetched_states ){
+
+						if ( prefetch_window != window ){
+
+							return;
+						}
+
+						if ( prefetch.isCancelled()){
+
+								// taken or skipped by the loader while we waited
+
+							window.release();
+
+							continue;
+						}
+
+						prefetch.submitted = true;
+					}
+
+					pool.run(
+						new AERunnable()
+						{
+							@Override
+							public void
+							runSupport()
+							{
+								prefetch.read();
+							}
+						});
+				}
+			}
+		}.start();
+
+		return( todo.size());
+	}
+
+	private static TorrentUtils.ExtendedTorrent
+	getPrefetchedState(
+		byte[]		torrent_hash )
+	{
+		StatePrefetch	prefetch;
+
+		synchronized( prefetched_states ){
+
+			if ( prefetched_states.isEmpty()){
+
+				return( null );
+			}
+
+			prefetch = prefetched_states.remove( new HashWrapper( torrent_hash ));
+
+			if ( prefetch == null ){
+
+				return( null );
+			}
+
+				// the loader has passed anything queued before this one, free them up
+
+			for ( Iterator<StatePrefetch> it = prefetched_states.values().iterator();it.hasNext();){
+
+				StatePrefetch	skipped = it.next();
+
+				if ( skipped.seq > prefetch.seq ){
+
+					break;
+				}
+
+				it.remove();
+
+				discardPrefetch( skipped );
+			}
+
+			if ( !prefetch.submitted ){
+
+					// loader got ahead of the reads, it'll do this one itself
+
+				prefetch.cancel();
+
+				return( null );
+			}
+
+			prefetch_window.release();
+		}
+
+			// failures return null and the caller reads the file again to get the usual error handling
+
+		return( prefetch.get());
+	}
+
+	private static void
+	discardPrefetch(
+		StatePrefetch	prefetch )
+	{
+		prefetch.cancel();
+
+		if ( prefetch.submitted && prefetch_window != null ){
+
+			prefetch_window.release();
+		}
+	}
+
+	public static int
+	getGlobalStateCacheHits()
+	{
+		return( global_state_cache_wrappers.size());
+	}
+
 	public static void
 	discardGlobalStateCache()
 	{
+		synchronized( prefetched_states ){
+
+			for ( StatePrefetch prefetch: prefetched_states.values()){
+
+				prefetch.cancel();
+			}
+
+			prefetched_states.clear();
+
+			if ( prefetch_window != null ){
+
+					// let the feeder see it's finished
+
+				prefetch_window.releaseForever();
+
+				prefetch_window = null;
+			}
+		}
+
 		getGlobalStateFile().delete();
 
 		for ( int i=0;i<global_state_cache_wrappers.size();i++){
@@ -1290,6 +1496,8 @@ DownloadManagerStateImpl
 			}
 
 			FileUtil.newFile( ACTIVE_DIR, state_file + ".bak" ).delete();
+
+			TorrentUtils.deletePiecesFile( target_state_file );
 			
 			File	dir = FileUtil.newFile( ACTIVE_DIR, hash_str );
 
@@ -3572,6 +3780,80 @@ DownloadManagerStateImpl
 		}
 	}
 
+	private static class
+	StatePrefetch
+	{
+		private final File			file;
+		private final boolean		discard_pieces;
+		private final int			seq;
+
+		private final AESemaphore	sem = new AESemaphore( "StatePrefetch" );
+
+		private volatile boolean	cancelled;
+
+			// guarded by prefetched_states
+
+		private boolean				submitted;
+
+		private volatile TorrentUtils.ExtendedTorrent	result;
+
+		private
+		StatePrefetch(
+			File		_file,
+			boolean		_discard_pieces,
+			int			_seq )
+		{
+			file			= _file;
+			discard_pieces	= _discard_pieces;
+			seq				= _seq;
+		}
+
+		private void
+		read()
+		{
+			try{
+				if ( !cancelled && file.exists()){
+
+					result = TorrentUtils.readDelegateFromFile( file, discard_pieces );
+
+					if ( cancelled ){
+
+						result = null;
+					}
+				}
+			}catch( Throwable e ){
+
+			}finally{
+
+				sem.releaseForever();
+			}
+		}
+
+		private boolean
+		isCancelled()
+		{
+			return( cancelled );
+		}
+
+		private void
+		cancel()
+		{
+			cancelled = true;
+
+				// drop anything already decoded, nobody is going to take it
+
+			result = null;
+		}
+
+		private TorrentUtils.ExtendedTorrent
+		get()
+		{
+			sem.reserve();
+
+			return( result );
+		}
+	}
+
 	protected static class
 	CachedStateWrapper
 		extends 	LogRelation
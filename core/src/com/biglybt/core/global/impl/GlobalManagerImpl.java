@@ -59,6 +59,8 @@ import com.biglybt.core.peer.PEPeerManager;
 import com.biglybt.core.peermanager.control.PeerControlSchedulerFactory;
 import com.biglybt.core.speedmanager.SpeedManager;
 import com.biglybt.core.speedmanager.impl.SpeedManagerImpl;
+import com.biglybt.core.stats.CoreStats;
+import com.biglybt.core.stats.CoreStatsProvider;
 import com.biglybt.core.tag.*;
 import com.biglybt.core.tag.impl.TagDownloadWithState;
 import com.biglybt.core.tag.impl.TagTypeWithState;
@@ -226,6 +228,75 @@ public class GlobalManagerImpl
 	}
 
 
+		// startup phase timings, only written by loadDownloads
+
+	static volatile long	startup_download_count;
+	static volatile long	startup_download_cached_count;
+	static volatile long	startup_download_prefetch_count;
+	static volatile long	startup_download_state_cache_time;
+	static volatile long	startup_download_config_read_time;
+	static volatile long	startup_download_load_time;
+	static volatile long	startup_download_total_time;
+
+	static{
+		Set<String>	types = new HashSet<>();
+
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_COUNT );
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_CACHED_COUNT );
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_PREFETCH_COUNT );
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_STATE_CACHE_TIME );
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_CONFIG_READ_TIME );
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_LOAD_TIME );
+		types.add( CoreStats.ST_STARTUP_DOWNLOAD_TOTAL_TIME );
+
+		CoreStats.registerProvider(
+			types,
+			new CoreStatsProvider()
+			{
+				@Override
+				public void
+				updateStats(
+					Set<String>			types,
+					Map<String,Object>	values )
+				{
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_COUNT )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_COUNT, startup_download_count );
+					}
+
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_CACHED_COUNT )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_CACHED_COUNT, startup_download_cached_count );
+					}
+
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_PREFETCH_COUNT )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_PREFETCH_COUNT, startup_download_prefetch_count );
+					}
+
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_STATE_CACHE_TIME )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_STATE_CACHE_TIME, startup_download_state_cache_time );
+					}
+
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_CONFIG_READ_TIME )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_CONFIG_READ_TIME, startup_download_config_read_time );
+					}
+
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_LOAD_TIME )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_LOAD_TIME, startup_download_load_time );
+					}
+
+					if ( types.contains( CoreStats.ST_STARTUP_DOWNLOAD_TOTAL_TIME )){
+
+						values.put( CoreStats.ST_STARTUP_DOWNLOAD_TOTAL_TIME, startup_download_total_time );
+					}
+				}
+			});
+	}
+
 	private Object								managers_lock		= new Object();
 	private volatile DownloadManager[] 			managers_list_cow	= new DownloadManager[0];
 	final Map<HashWrapper,DownloadManager>		manager_hash_map	= new ConcurrentHashMap<>();
@@ -2551,9 +2622,15 @@ public class GlobalManagerImpl
 	  }
 
 
+	  long	start_time = SystemTime.getMonotonousTime();
+
 	  try{
 		  DownloadManagerStateFactory.loadGlobalStateCache();
 
+		  long	cache_loaded_time = SystemTime.getMonotonousTime();
+
+		  startup_download_state_cache_time = cache_loaded_time - start_time;
+
 		  int triggerOnCount = 2;
 		  ArrayList<DownloadManager> downloadsAdded = new ArrayList<>();
 		  lastListenerUpdate = 0;
@@ -2564,6 +2641,10 @@ public class GlobalManagerImpl
 
 			  Map map = FileUtil.readResilientConfigFile("downloads.config");
 
+			  long	config_read_time = SystemTime.getMonotonousTime();
+
+			  startup_download_config_read_time = config_read_time - cache_loaded_time;
+
 			  ArrayList pause_data = (ArrayList)map.get( "pause_data" );
 
 			  boolean debug = Boolean.getBoolean("debug");
@@ -2581,6 +2662,31 @@ public class GlobalManagerImpl
 				  //New way, downloads stored in a list
 				  iter = downloads.iterator();
 				  nbDownloads = downloads.size();
+
+				  int	load_threads = COConfigurationManager.getIntParameter( ConfigKeys.StartupShutdown.ICFG_STARTUP_DOWNLOAD_LOAD_THREADS );
+
+				  if ( load_threads > 0 ){
+
+						// downloads not covered by the state cache have to decode their state file
+						// before they can be created, read those ahead in parallel
+
+					  List<byte[]>	hashes = new ArrayList<>( nbDownloads );
+
+					  for ( Object o: downloads ){
+
+						  if ( o instanceof Map ){
+
+							  byte[] hash = (byte[])((Map)o).get( "torrent_hash" );
+
+							  if ( hash != null ){
+
+								  hashes.add( hash );
+							  }
+						  }
+					  }
+
+					  startup_download_prefetch_count = DownloadManagerStateFactory.prefetchDownloadStates( hashes, load_threads );
+				  }
 			  }
 			  int currentDownload = 0;
 			  while (iter.hasNext()) {
@@ -2679,6 +2785,10 @@ public class GlobalManagerImpl
 			  // Someone could have mucked with the config file and set weird positions,
 			  // so fix them up.
 			  fixUpDownloadManagerPositions();
+
+			  startup_download_load_time	= SystemTime.getMonotonousTime() - config_read_time;
+			  startup_download_count		= managers_list_cow.length;
+
 			  Logger.log(new LogEvent(LOGID, "Loaded " + managers_list_cow.length + " torrents"));
 
 		  }catch( Throwable e ){
@@ -2695,7 +2805,11 @@ public class GlobalManagerImpl
 
 	  }finally{
 
+		  startup_download_cached_count = DownloadManagerStateFactory.getGlobalStateCacheHits();
+
 		  DownloadManagerStateFactory.discardGlobalStateCache();
+
+		  startup_download_total_time = SystemTime.getMonotonousTime() - start_time;
 	  }
   }
 
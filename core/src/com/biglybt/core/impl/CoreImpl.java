@@ -1597,6 +1597,8 @@ CoreImpl
 
 				COConfigurationManager.save();
 
+				COConfigurationManager.flushPendingSave();
+
 				wait_and_return = true;
 
 			}else{
@@ -1954,6 +1956,10 @@ CoreImpl
 
 			AEDiagnostics.markClean();
 
+				// async config saving defers writes, get them out while we know we're still running
+
+			COConfigurationManager.flushPendingSave();
+
 			if (Logger.isEnabled())
 				Logger.log(new LogEvent(LOGID, "Stop operation completes"));
 
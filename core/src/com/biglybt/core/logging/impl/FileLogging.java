@@ -25,15 +25,21 @@ import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import com.biglybt.core.config.COConfigurationListener;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.config.impl.ConfigurationManager;
 import com.biglybt.core.logging.*;
+import com.biglybt.core.util.AESemaphore;
+import com.biglybt.core.util.AEThread2;
 import com.biglybt.core.util.Debug;
 import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.MPSCRingBuffer;
 import com.biglybt.core.util.SystemProperties;
 
 /**
@@ -53,7 +59,7 @@ public class FileLogging implements ILogEventListener {
 
 	private static final String CFG_ENABLELOGTOFILE = "Logging Enable";
 
-	private static boolean closing;
+	private static volatile boolean closing;
 	private static volatile boolean closing_taking_too_long;
 
 	protected static void
@@ -62,6 +68,15 @@ public class FileLogging implements ILogEventListener {
 		synchronized( Logger.class ) {
 		
 			closing	= true;
+
+			FileLogging	async = async_instance;
+
+			if ( async != null ){
+
+					// get everything queued out now, from here on writes are synchronous
+
+				async.writeAllQueued();
+			}
 		}
 	}
 	
@@ -82,7 +97,52 @@ public class FileLogging implements ILogEventListener {
 
 	// List of components we don't log.
 	// Array represents LogTypes (info, warning, error)
-	private final ArrayList[] ignoredComponents = new ArrayList[3];
+	// Replaced as a whole when the config changes so readers never see it half built
+	private volatile List<Set<LogIDs>> ignoredComponents = createIgnoredComponents();
+
+		// async mode: log() only queues the text and its time, a single writer thread formats the
+		// timestamps and writes the queue out in batches, handling rotation once per batch. If the
+		// ring fills the producer makes room itself under the usual lock and retries, a record is
+		// never written around the queue while anything queued before it could still be waiting
+
+	private static final int ASYNC_QUEUE_SIZE		= 8192;
+	private static final int ASYNC_IDLE_WAIT		= 250;
+
+	private static volatile FileLogging	async_instance;
+
+	private volatile boolean	async_enabled;
+
+	private final MPSCRingBuffer<LogRecord>	async_queue = new MPSCRingBuffer<>( ASYNC_QUEUE_SIZE );
+	private final AESemaphore				async_sem	= new AESemaphore( "FileLogging:async" );
+	private volatile boolean				async_writer_waiting;
+	private boolean							async_writer_running;
+
+	private static class
+	LogRecord
+	{
+		final long		time;
+		final String	text;
+
+		LogRecord(
+			long		_time,
+			String		_text )
+		{
+			time	= _time;
+			text	= _text;
+		}
+	}
+
+	private static List<Set<LogIDs>>
+	createIgnoredComponents()
+	{
+		List<Set<LogIDs>> result = new ArrayList<>(3);
+
+		for (int i = 0; i < 3; i++) {
+			result.add(new HashSet<>());
+		}
+
+		return( result );
+	}
 
 	private final ArrayList listeners = new ArrayList();
 
@@ -91,10 +151,6 @@ public class FileLogging implements ILogEventListener {
 		final ConfigurationManager config = ConfigurationManager.getInstance();
 		boolean overrideLog = System.getProperty(SystemProperties.SYSPROP_OVERRIDELOG) != null;
 
-		for (int i = 0; i < ignoredComponents.length; i++) {
-			ignoredComponents[i] = new ArrayList();
-		}
-
 		if (!overrideLog) {
 			config.addListener(new COConfigurationListener() {
 				@Override
@@ -111,6 +167,132 @@ public class FileLogging implements ILogEventListener {
 				FileLogging.this.reloadLogToFileParam();
 			}
 		});
+
+		config.addParameterListener(ConfigKeys.Logging.BCFG_LOGGING_ASYNC, new ParameterListener() {
+			@Override
+			public void parameterChanged(String parameterName) {
+				setAsync(config.getBooleanParameter(ConfigKeys.Logging.BCFG_LOGGING_ASYNC));
+			}
+		});
+
+		setAsync(config.getBooleanParameter(ConfigKeys.Logging.BCFG_LOGGING_ASYNC));
+	}
+
+	private void setAsync(boolean enable) {
+		synchronized (Logger.class) {
+			if (enable == async_enabled) {
+				return;
+			}
+
+			async_enabled = enable;
+
+			if (!enable) {
+				// anything still queued goes out now, later events are written directly
+				async_instance = null;
+				writeAllQueued();
+				async_sem.release();
+				return;
+			}
+
+			async_instance = this;
+
+			if (async_writer_running) {
+				return;
+			}
+
+			async_writer_running = true;
+		}
+
+		new AEThread2("FileLogging:writer") {
+			@Override
+			public void run() {
+				runWriter();
+			}
+		}.start();
+	}
+
+	private void runWriter() {
+		try {
+			while (true) {
+				synchronized (Logger.class) {
+					if (!async_enabled) {
+						async_writer_running = false;
+						return;
+					}
+
+					writeQueued();
+				}
+
+				// producers only signal when we say we're waiting, recheck after saying so to
+				// avoid missing an event that was queued just before
+
+				async_writer_waiting = true;
+
+				if (async_queue.isEmpty()) {
+					async_sem.reserve(ASYNC_IDLE_WAIT);
+				}
+
+				async_writer_waiting = false;
+			}
+		} catch (Throwable e) {
+			synchronized (Logger.class) {
+				async_writer_running = false;
+				async_enabled = false;
+				async_instance = null;
+			}
+
+			Debug.out(e);
+		}
+	}
+
+	/**
+	 * Writes out whatever is queued, stopping at a record another thread is still in the middle of
+	 * queueing. Logger.class must be held
+	 * @return false if there was nothing to write
+	 */
+	private boolean writeQueued() {
+		LogRecord record = async_queue.poll();
+
+		if (record == null) {
+			return false;
+		}
+
+		Date date = new Date();
+
+		while (record != null) {
+			if (logFilePrinter != null && !closing_taking_too_long) {
+				date.setTime(record.time);
+				logFilePrinter.print(format.format(date));
+				logFilePrinter.print(record.text);
+			}
+
+			record = async_queue.poll();
+		}
+
+		if (logFilePrinter != null) {
+			logFilePrinter.flush();
+		}
+
+		checkAndSwapLog();
+
+		return true;
+	}
+
+	/**
+	 * Writes out everything queued, waiting for records still being queued. Only for use once
+	 * async mode is off or closing has started, otherwise producers could keep it going.
+	 * Logger.class must be held
+	 */
+	private void writeAllQueued() {
+		while (true) {
+			writeQueued();
+
+			if (async_queue.isEmpty()) {
+				return;
+			}
+
+			Thread.yield();
+		}
 	}
 
 	/**
@@ -152,9 +334,7 @@ public class FileLogging implements ILogEventListener {
 				iLogFileMaxMB = 2;
 				timeStampFormat = "HH:mm:ss.SSS ";
 
-				for (int i = 0; i < ignoredComponents.length; i++) {
-					ignoredComponents[i].clear();
-				}
+				ignoredComponents = createIgnoredComponents();
 
 				reloadLogToFileParam();
 			} else {
@@ -166,21 +346,23 @@ public class FileLogging implements ILogEventListener {
 
 				timeStampFormat = config.getStringParameter("Logging Timestamp")+" ";
 
-				for (int i = 0; i < ignoredComponents.length; i++) {
-					ignoredComponents[i].clear();
+				List<Set<LogIDs>> ignored = createIgnoredComponents();
+				for (int i = 0; i < ignored.size(); i++) {
 					int logType = indexToLogType(i);
 					for (int j = 0; j < configurableLOGIDs.length; j++) {
 						if (!config.getBooleanParameter("bLog." + logType + "."
 								+ configurableLOGIDs[j]))
-							ignoredComponents[i].add(configurableLOGIDs[j]);
+							ignored.get(i).add(configurableLOGIDs[j]);
 					}
 				}
+				ignoredComponents = ignored;
 			}
 
 			synchronized (Logger.class) {
 				// Create the date format first *before* we do checkAndSwapLog,
 				// just in case we end up invoking logToFile...
 				format = new SimpleDateFormat(timeStampFormat);
+				writeQueued();
 				checkAndSwapLog();
 			}
 
@@ -194,14 +376,62 @@ public class FileLogging implements ILogEventListener {
 		if (!bLogToFile || closing_taking_too_long )
 			return;
 
-		String dateStr = format.format(new Date());
+		if (async_enabled && !closing) {
+			LogRecord record = new LogRecord(System.currentTimeMillis(), str);
+
+			if (async_queue.offer(record)) {
+				if (async_enabled && !closing) {
+					if (async_writer_waiting) {
+						async_sem.release();
+					}
+					return;
+				}
+
+				// setClosing or setAsync(false) ran while we were queueing and its drain may have
+				// missed the record. Nothing else polls the queue from now on so drain it again
+				// under the same lock, the flags are volatile so this can't miss the change
+
+				synchronized (Logger.class) {
+					writeAllQueued();
+				}
+
+				return;
+			}
+
+			synchronized (Logger.class) {
+				if (async_enabled && !closing) {
+					// queue full. Holding the lock makes us the writer so make room and retry,
+					// writing the record directly could overtake our own earlier ones if the
+					// drain stops at a record another thread is still queueing
+
+					while (!async_queue.offer(record)) {
+						if (!writeQueued()) {
+							Thread.yield();
+						}
+					}
+
+					writeQueued();
+
+					if (async_writer_waiting) {
+						async_sem.release();
+					}
+
+					return;
+				}
+			}
+
+			// async was switched off meanwhile, fall through and write it ourselves
+		}
 
 		synchronized (Logger.class) {
 
+			writeAllQueued();
+
 			// exception handling is done by FileWriter
 			if(logFilePrinter != null)
 			{
-				logFilePrinter.print(dateStr);
+				// format is only ever used under the lock, SimpleDateFormat isn't thread safe
+				logFilePrinter.print(format.format(new Date()));
 				logFilePrinter.print(str);
 				logFilePrinter.flush();
 				
@@ -323,7 +553,8 @@ public class FileLogging implements ILogEventListener {
 	private int lastWidth = DEFPADDING;
 	@Override
 	public void log(LogEvent event) {
-		if (ignoredComponents[logTypeToIndex(event.entryType)]
+		// filter before anything is formatted
+		if (ignoredComponents.get(logTypeToIndex(event.entryType))
 				.contains(event.logID))
 			return;
 
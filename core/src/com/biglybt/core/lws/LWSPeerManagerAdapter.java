@@ -276,6 +276,15 @@ LWSPeerManagerAdapter
 		return( null );
 	}
 
+	@Override
+	public long
+	getAllTimeDataBytesSent()
+	{
+			// no persistent stats for light weight seeds
+
+		return( 0 );
+	}
+
 	@Override
 	public String
 	getTrackerClientExtensions()
@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
 
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.networkmanager.*;
 import com.biglybt.core.peermanager.messaging.MessageStreamDecoder;
 import com.biglybt.core.peermanager.messaging.MessageStreamEncoder;
@@ -55,7 +57,9 @@ NetworkConnectionImpl
 
   private int		enhanced_partition_id = -1;
   
-  final OutgoingMessageQueueImpl outgoing_message_queue;
+  private static final boolean	LOCK_FREE_OUTGOING_QUEUE = COConfigurationManager.getBooleanParameter( ConfigKeys.Connection.BCFG_NETWORK_OUTGOING_QUEUE_LOCK_FREE );
+
+  final OutgoingMessageQueue outgoing_message_queue;
   private final IncomingMessageQueueImpl incoming_message_queue;
 
   Transport	transport;
@@ -86,7 +90,7 @@ NetworkConnectionImpl
 
 
     is_connected = false;
-    outgoing_message_queue = new OutgoingMessageQueueImpl( encoder );
+    outgoing_message_queue = createOutgoingMessageQueue( encoder );
     incoming_message_queue = new IncomingMessageQueueImpl( decoder, this );
   }
 
@@ -104,13 +108,27 @@ NetworkConnectionImpl
     connection_endpoint = transport.getTransportEndpoint().getProtocolEndpoint().getConnectionEndpoint();
     is_incoming		= true;
     is_connected 	= true;
-    outgoing_message_queue = new OutgoingMessageQueueImpl( encoder );
+    outgoing_message_queue = createOutgoingMessageQueue( encoder );
     outgoing_message_queue.setTransport( transport );
     incoming_message_queue = new IncomingMessageQueueImpl( decoder, this );
 
     transport.bindConnection( this );
   }
 
+  private static OutgoingMessageQueue
+  createOutgoingMessageQueue(
+	MessageStreamEncoder	encoder )
+  {
+	  if ( LOCK_FREE_OUTGOING_QUEUE ){
+
+		  return( new OutgoingMessageQueueLockFree( encoder ));
+
+	  }else{
+
+		  return( new OutgoingMessageQueueImpl( encoder ));
+	  }
+  }
+
 
   @Override
   public ConnectionEndpoint
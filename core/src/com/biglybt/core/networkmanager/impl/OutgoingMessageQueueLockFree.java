@@ -0,0 +1,1380 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.networkmanager.impl;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.biglybt.core.networkmanager.NetworkManager;
+import com.biglybt.core.networkmanager.OutgoingMessageQueue;
+import com.biglybt.core.networkmanager.RawMessage;
+import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.peermanager.messaging.MessageStreamEncoder;
+import com.biglybt.core.util.AEMonitor;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.MPSCRingBuffer;
+import com.biglybt.core.util.TimeFormatter;
+
+/**
+ * Outbound peer message queue with the same ordering rules as {@link OutgoingMessageQueueImpl}
+ * but where adding a message doesn't contend with delivery. Added messages go into a lock-free
+ * ring and are moved into per-priority lanes by whoever next holds the queue monitor (normally the
+ * write controller as part of delivery), so the common add only takes the monitor when the message
+ * displaces others (e.g. choke/unchoke) or the ring is full.
+ *
+ * A message that has been partly written is held separately from the lanes and always goes out
+ * first, which gives the "don't insert in front of a half-sent message" rule for free.
+ */
+
+public class
+OutgoingMessageQueueLockFree
+	implements OutgoingMessageQueue
+{
+	private static final int	INBOX_SIZE	= 32;
+
+	private static final int	LANE_COUNT	= RawMessage.PRIORITY_HIGH + 1;
+
+	private final MPSCRingBuffer<RawMessage>	inbox	= new MPSCRingBuffer<>( INBOX_SIZE );
+
+	private final ArrayDeque<RawMessage>[]		lanes;
+
+	private RawMessage		in_progress;
+	private int				queued;
+
+	private final AEMonitor	queue_mon	= new AEMonitor( "OutgoingMessageQueue:queue" );
+
+		// send list is built and consumed under queue_mon
+
+	private final ArrayList<RawMessage>		send_list = new ArrayList<>();
+
+	private ArrayList<NotificationItem> 	delayed_notifications 	= new ArrayList<>();
+	private ArrayList<NotificationItem> 	spare_notifications		= new ArrayList<>();
+	private final AEMonitor 				delayed_notifications_mon = new AEMonitor( "OutgoingMessageQueue:DN" );
+
+	private volatile ArrayList<MessageQueueListener> listeners 		= new ArrayList<>();  //copied-on-write
+	private final AEMonitor 				listeners_mon			= new AEMonitor( "OutgoingMessageQueue:L");
+
+	private final AtomicInteger	total_size		= new AtomicInteger();
+	private final AtomicInteger	total_data_size	= new AtomicInteger();
+
+	private boolean					priority_boost = false;
+	private volatile RawMessage 	urgent_message = null;
+	private volatile boolean 		destroyed = false;
+
+	private MessageStreamEncoder stream_encoder;
+	private Transport transport;
+
+	private volatile int percent_complete = -1;
+
+	private boolean	trace;
+
+	private WeakReference<ByteBuffer[]> 	rawBufferCache 		= new WeakReference<>(null);
+	private WeakReference<int[]> 			origPositionsCache 	= new WeakReference<>(null);
+
+	@SuppressWarnings("unchecked")
+	public
+	OutgoingMessageQueueLockFree(
+		MessageStreamEncoder 	_stream_encoder )
+	{
+		stream_encoder = _stream_encoder;
+
+		lanes = (ArrayDeque<RawMessage>[])new ArrayDeque<?>[ LANE_COUNT ];
+
+		for ( int i=0;i<LANE_COUNT;i++){
+
+			lanes[i] = new ArrayDeque<>();
+		}
+	}
+
+	@Override
+	public void
+	setTransport(
+		Transport		_transport )
+	{
+		transport 	= _transport;
+	}
+
+	@Override
+	public int
+	getMssSize()
+	{
+		return( transport==null?NetworkManager.getMinMssSize():transport.getMssSize());
+	}
+
+	@Override
+	public void
+	setEncoder(
+		MessageStreamEncoder 	_stream_encoder )
+	{
+		stream_encoder = _stream_encoder;
+	}
+
+	@Override
+	public MessageStreamEncoder
+	getEncoder()
+	{
+		return( stream_encoder );
+	}
+
+	@Override
+	public int
+	getPercentDoneOfCurrentMessage()
+	{
+		return( percent_complete );
+	}
+
+	@Override
+	public void
+	destroy()
+	{
+		destroyed = true;
+
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+			RawMessage	msg;
+
+			while(( msg = pollFirst()) != null ){
+
+				msg.destroy();
+			}
+		}finally{
+
+			queue_mon.exit();
+		}
+
+		total_size.set( 0 );
+		total_data_size.set( 0 );
+		listeners = new ArrayList<>();
+		percent_complete = -1;
+		urgent_message = null;
+	}
+
+	@Override
+	public boolean
+	isDestroyed()
+	{
+		return( destroyed );
+	}
+
+	@Override
+	public int
+	getTotalSize()
+	{
+		return( total_size.get());
+	}
+
+	@Override
+	public int
+	getDataQueuedBytes()
+	{
+		return( total_data_size.get());
+	}
+
+	@Override
+	public int
+	getProtocolQueuedBytes()
+	{
+		return( total_size.get() - total_data_size.get());
+	}
+
+	@Override
+	public boolean
+	getPriorityBoost()
+	{
+		return( priority_boost );
+	}
+
+	@Override
+	public void
+	setPriorityBoost(
+		boolean	boost )
+	{
+		priority_boost = boost;
+	}
+
+	@Override
+	public boolean
+	isBlocked()
+	{
+		if ( transport == null ){
+
+			return( false );
+		}
+
+		return( !transport.isReadyForWrite( null ));
+	}
+
+	@Override
+	public boolean
+	hasUrgentMessage()
+	{
+		return( urgent_message != null );
+	}
+
+	@Override
+	public Message
+	peekFirstMessage()
+	{
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+			if ( in_progress != null ){
+
+				return( in_progress );
+			}
+
+			for ( int i=LANE_COUNT-1;i>=0;i--){
+
+				RawMessage	msg = lanes[i].peekFirst();
+
+				if ( msg != null ){
+
+					return( msg );
+				}
+			}
+
+			return( null );
+
+		}finally{
+
+			queue_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	addMessage(
+		Message 	message,
+		boolean 	manual_listener_notify )
+	{
+		ArrayList<MessageQueueListener> list_ref = listeners;
+
+		boolean allowed = true;
+
+		for ( int i=0; i < list_ref.size(); i++ ){
+
+			allowed = allowed && list_ref.get( i ).messageAdded( message );
+		}
+
+		if ( !allowed ){
+
+			return;
+		}
+
+		RawMessage[] rmesgs = stream_encoder.encodeMessage( message );
+
+		if ( destroyed ){
+
+			for ( RawMessage rmesg: rmesgs ){
+
+				rmesg.destroy();
+			}
+
+			return;
+		}
+
+		for ( RawMessage rmesg: rmesgs ){
+
+			Message[]	to_remove = rmesg.messagesToRemove();
+
+			if ( to_remove != null ){
+
+				removeMessagesOfType( to_remove, manual_listener_notify );
+			}
+
+			int	remaining = getRemaining( rmesg );
+
+			total_size.addAndGet( remaining );
+
+			if ( rmesg.getType() == Message.TYPE_DATA_PAYLOAD ){
+
+				total_data_size.addAndGet( remaining );
+			}
+
+				// set before publishing so that delivery can't complete the message and clear the
+				// flag before we set it
+
+			if ( rmesg.isNoDelay()){
+
+				urgent_message = rmesg;
+			}
+
+			if ( !inbox.offer( rmesg )){
+
+				try{
+					queue_mon.enter();
+
+						// holding queue_mon makes us the consumer so make room and retry. Enqueuing
+						// directly would overtake our own earlier messages if the drain stops at a
+						// slot another producer has claimed but not yet published
+
+					while( !inbox.offer( rmesg )){
+
+						if ( !drainInbox()){
+
+							Thread.yield();
+						}
+					}
+
+					drainInbox();
+
+				}finally{
+
+					queue_mon.exit();
+				}
+			}
+
+			if ( destroyed ){
+
+					// raced with destroy, make sure nothing is left behind
+
+				destroy();
+
+				return;
+			}
+
+			if ( manual_listener_notify ){
+
+				addNotification( NotificationItem.MESSAGE_ADDED, rmesg, 0 );
+
+			}else{
+
+				ArrayList<MessageQueueListener> listeners_ref = listeners;
+
+				for ( int j=0; j < listeners_ref.size(); j++ ){
+
+					listeners_ref.get( j ).messageQueued( rmesg.getBaseMessage());
+				}
+			}
+		}
+	}
+
+	private static int
+	getRemaining(
+		RawMessage		msg )
+	{
+		DirectByteBuffer[] payload = msg.getRawData();
+
+		int	remaining = 0;
+
+		for ( int i=0; i < payload.length; i++ ){
+
+			remaining += payload[i].remaining( DirectByteBuffer.SS_NET );
+		}
+
+		return( remaining );
+	}
+
+		/**
+		 * must be called with queue_mon held
+		 * @return true if anything was moved from the inbox
+		 */
+
+	private boolean
+	drainInbox()
+	{
+		RawMessage	msg;
+
+		boolean	drained = false;
+
+		while(( msg = inbox.poll()) != null ){
+
+			enqueue( msg );
+
+			drained = true;
+		}
+
+		return( drained );
+	}
+
+	private void
+	enqueue(
+		RawMessage		msg )
+	{
+		int	priority = msg.getPriority();
+
+		if ( priority < 0 ){
+
+			priority = 0;
+
+		}else if ( priority >= LANE_COUNT ){
+
+			priority = LANE_COUNT - 1;
+		}
+
+		lanes[priority].addLast( msg );
+
+		queued++;
+	}
+
+	private RawMessage
+	pollFirst()
+	{
+		if ( in_progress != null ){
+
+			RawMessage msg = in_progress;
+
+			in_progress = null;
+
+			return( msg );
+		}
+
+		for ( int i=LANE_COUNT-1;i>=0;i--){
+
+			RawMessage	msg = lanes[i].pollFirst();
+
+			if ( msg != null ){
+
+				queued--;
+
+				return( msg );
+			}
+		}
+
+		return( null );
+	}
+
+	private boolean
+	isEmpty()
+	{
+		return( in_progress == null && queued == 0 );
+	}
+
+	private void
+	removed(
+		RawMessage		msg )
+	{
+		if ( msg == urgent_message ){
+
+			urgent_message = null;
+		}
+
+		int remaining = getRemaining( msg );
+
+		total_size.addAndGet( -remaining );
+
+		if ( msg.getType() == Message.TYPE_DATA_PAYLOAD ){
+
+			total_data_size.addAndGet( -remaining );
+		}
+
+		queued--;
+	}
+
+	@Override
+	public void
+	removeMessagesOfType(
+		Message[] 	message_types,
+		boolean 	manual_listener_notify )
+	{
+		if ( message_types == null ){
+
+			return;
+		}
+
+		ArrayList<RawMessage> messages_removed = null;
+
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+				// the in-progress message is half-sent so is never removed
+
+			for ( int l=LANE_COUNT-1;l>=0;l--){
+
+				if ( lanes[l].isEmpty()){
+
+					continue;
+				}
+
+				for ( Iterator<RawMessage> it = lanes[l].iterator(); it.hasNext(); ){
+
+					RawMessage msg = it.next();
+
+					for ( int t=0; t < message_types.length; t++ ){
+
+						if ( 	message_types[t].getID().equals( msg.getID()) &&
+								msg.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ){
+
+							it.remove();
+
+							removed( msg );
+
+							if ( manual_listener_notify ){
+
+								addNotification( NotificationItem.MESSAGE_REMOVED, msg, 0 );
+
+							}else{
+
+								if ( messages_removed == null ){
+
+									messages_removed = new ArrayList<>();
+								}
+
+								messages_removed.add( msg );
+							}
+
+							break;
+						}
+					}
+				}
+			}
+
+			if ( isEmpty()){
+
+				percent_complete = -1;
+			}
+		}finally{
+
+			queue_mon.exit();
+		}
+
+		if ( messages_removed != null ){
+
+			ArrayList<MessageQueueListener> listeners_ref = listeners;
+
+			for ( int x=0; x < messages_removed.size(); x++ ){
+
+				RawMessage msg = messages_removed.get( x );
+
+				for ( int i=0; i < listeners_ref.size(); i++ ){
+
+					listeners_ref.get( i ).messageRemoved( msg.getBaseMessage());
+				}
+
+				msg.destroy();
+			}
+		}
+	}
+
+	@Override
+	public boolean
+	removeMessage(
+		Message 	message,
+		boolean 	manual_listener_notify )
+	{
+		RawMessage msg_removed = null;
+
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+			if ( in_progress != null && message.equals( in_progress.getBaseMessage())){
+
+					// half-sent, leave it
+
+				return( false );
+			}
+
+outer:
+			for ( int l=LANE_COUNT-1;l>=0;l--){
+
+				for ( Iterator<RawMessage> it = lanes[l].iterator(); it.hasNext(); ){
+
+					RawMessage raw = it.next();
+
+					if ( message.equals( raw.getBaseMessage())){
+
+						if ( raw.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ){
+
+							it.remove();
+
+							removed( raw );
+
+							msg_removed = raw;
+						}
+
+						break outer;
+					}
+				}
+			}
+
+			if ( isEmpty()){
+
+				percent_complete = -1;
+			}
+		}finally{
+
+			queue_mon.exit();
+		}
+
+		if ( msg_removed != null ){
+
+			if ( manual_listener_notify ){
+
+				addNotification( NotificationItem.MESSAGE_REMOVED, msg_removed, 0 );
+
+			}else{
+
+				ArrayList<MessageQueueListener> listeners_ref = listeners;
+
+				for ( int i=0; i < listeners_ref.size(); i++ ){
+
+					listeners_ref.get( i ).messageRemoved( msg_removed.getBaseMessage());
+				}
+
+				msg_removed.destroy();
+			}
+
+			return( true );
+		}
+
+		return( false );
+	}
+
+	@Override
+	public int[]
+	deliverToTransport(
+		int 		max_bytes,
+		boolean 	protocol_is_free,
+		boolean 	manual_listener_notify )
+
+		throws IOException
+	{
+		if ( max_bytes < 1 ){
+
+			if ( !protocol_is_free ){
+
+				Debug.out( "max_bytes < 1: " +max_bytes );
+
+				return( new int[2] );
+			}
+
+			max_bytes = 0;	// in case it was negative
+		}
+
+		if ( transport == null ){
+
+			throw( new IOException( "not ready to deliver data" ));
+		}
+
+		int data_written 		= 0;
+		int protocol_written 	= 0;
+
+			// common case is a single message completing, only allocate for more
+
+		RawMessage				first_sent		= null;
+		ArrayList<RawMessage> 	others_sent		= null;
+
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+			if ( !isEmpty()){
+
+				send_list.clear();
+
+				int buffer_limit 		= 64;
+
+				ByteBuffer[] raw_buffers 	= rawBufferCache.get();
+
+				if ( raw_buffers == null ){
+
+					raw_buffers = new ByteBuffer[buffer_limit];
+
+					rawBufferCache = new WeakReference<>(raw_buffers);
+
+				}else{
+
+					buffer_limit = raw_buffers.length;
+
+					Arrays.fill(raw_buffers, null);
+				}
+
+				int[] orig_positions	= origPositionsCache.get();
+
+				if ( orig_positions == null || orig_positions.length != buffer_limit ){
+
+					orig_positions = new int[buffer_limit];
+
+					origPositionsCache = new WeakReference<>(orig_positions);
+				}
+
+				int buffer_count	= 0;
+
+				int total_sofar_excluding_free 	= 0;
+				int total_to_write				= 0;
+
+					// walk the partly sent message and then the lanes in place, only the messages
+					// that fit in the byte budget make it into the send list
+
+				RawMessage				message	= in_progress;
+				int						lane	= LANE_COUNT - 1;
+				Iterator<RawMessage>	lane_it	= lanes[lane].iterator();
+
+outer:
+				while( true ){
+
+					if ( message == null ){
+
+						while( !lane_it.hasNext()){
+
+							if ( --lane < 0 ){
+
+								break outer;
+							}
+
+							lane_it = lanes[lane].iterator();
+						}
+
+						message = lane_it.next();
+					}
+
+					send_list.add( message );
+
+					boolean msg_is_free = message.getType() == Message.TYPE_PROTOCOL_PAYLOAD && protocol_is_free;
+
+					DirectByteBuffer[] payloads = message.getRawData();
+
+					for ( int x=0; x < payloads.length; x++ ){
+
+						ByteBuffer buff = payloads[x].getBuffer( DirectByteBuffer.SS_NET );
+
+						raw_buffers[buffer_count] = buff;
+
+						orig_positions[buffer_count] = buff.position();
+
+						buffer_count++;
+
+						int rem = buff.remaining();
+
+						total_to_write += rem;
+
+						if ( !msg_is_free ){
+
+							total_sofar_excluding_free += rem;
+
+							if ( total_sofar_excluding_free >= max_bytes ){
+
+								break outer;
+							}
+						}
+
+						if ( buffer_count == buffer_limit ){
+
+							int	new_buffer_limit	= buffer_limit * 2;
+
+							ByteBuffer[] 	new_raw_buffers 	= new ByteBuffer[new_buffer_limit];
+							int[]		 	new_orig_positions	= new int[new_buffer_limit];
+
+							System.arraycopy( raw_buffers, 0, new_raw_buffers, 0, buffer_limit );
+							System.arraycopy( orig_positions, 0, new_orig_positions, 0, buffer_limit );
+
+							raw_buffers 		= new_raw_buffers;
+							orig_positions		= new_orig_positions;
+
+							buffer_limit 		= new_buffer_limit;
+
+							rawBufferCache 		= new WeakReference<>(raw_buffers);
+							origPositionsCache 	= new WeakReference<>(orig_positions);
+						}
+					}
+
+					message = null;
+				}
+
+				ByteBuffer last_buff = raw_buffers[buffer_count - 1 ];
+
+				int orig_last_limit = last_buff.limit();
+
+				if ( total_sofar_excluding_free > max_bytes ){
+
+					int reduce_by = total_sofar_excluding_free - max_bytes;
+
+					last_buff.limit( orig_last_limit - reduce_by );
+
+					total_to_write -= reduce_by;
+				}
+
+				if ( total_to_write <= 0 ){
+
+					last_buff.limit( orig_last_limit );
+
+					send_list.clear();
+
+					return( new int[2] );
+				}
+
+				try{
+					transport.write( raw_buffers, 0, buffer_count );
+
+				}finally{
+
+					last_buff.limit( orig_last_limit );
+				}
+
+				int pos = 0;
+
+				boolean	stop = false;
+
+				for ( int m=0;m<send_list.size() && !stop;m++ ){
+
+					RawMessage msg = send_list.get( m );
+
+					DirectByteBuffer[] payloads = msg.getRawData();
+
+					for ( int x=0; x < payloads.length; x++ ){
+
+						ByteBuffer bb = payloads[x].getBuffer( DirectByteBuffer.SS_NET );
+
+						int bytes_written = (bb.limit() - bb.remaining()) - orig_positions[ pos ];
+
+						total_size.addAndGet( -bytes_written );
+
+						if ( msg.getType() == Message.TYPE_DATA_PAYLOAD ){
+
+							total_data_size.addAndGet( -bytes_written );
+						}
+
+						if ( x > 0 && msg.getType() == Message.TYPE_DATA_PAYLOAD ){  //assumes the first buffer is message header
+
+							data_written += bytes_written;
+
+						}else{
+
+							protocol_written += bytes_written;
+						}
+
+						if ( bb.hasRemaining()){  //still data left to send in this message
+
+							stop = true;
+
+							int message_size 	= 0;
+							int written 		= 0;
+
+							for ( int i=0; i < payloads.length; i++ ){
+
+								ByteBuffer buff = payloads[i].getBuffer( DirectByteBuffer.SS_NET );
+
+								message_size += buff.limit();
+
+								if ( i < x ){
+
+									written += buff.limit();
+
+								}else if ( i == x ){
+
+									written += buff.position();
+								}
+							}
+
+							percent_complete = (written * 100) / message_size;
+
+							if ( written > 0 && msg != in_progress ){
+
+									// partly written so it must go out next whatever gets added. everything
+									// in front of it has gone so it is at the head of its lane
+
+								RawMessage head = pollFirst();
+
+								if ( head != msg ){
+
+									Debug.out( "Outgoing queue inconsistent" );
+								}
+
+								in_progress = msg;
+							}
+
+							break;
+
+						}else if ( x == payloads.length - 1 ){  //last payload buffer of message is empty
+
+							if ( msg == urgent_message ){
+
+								urgent_message = null;
+							}
+
+							pollFirst();
+
+							percent_complete = -1;  //reset send percentage
+
+							if ( manual_listener_notify ){
+
+								addNotification( NotificationItem.MESSAGE_SENT, msg, 0 );
+
+							}else if ( first_sent == null ){
+
+								first_sent = msg;
+
+							}else{
+
+								if ( others_sent == null ){
+
+									others_sent = new ArrayList<>();
+								}
+
+								others_sent.add( msg );
+							}
+						}
+
+						pos++;
+
+						if ( pos >= buffer_count ){
+
+							stop = true;
+
+							break;
+						}
+					}
+				}
+
+				send_list.clear();
+			}
+		}finally{
+
+			queue_mon.exit();
+		}
+
+		// we can have messages that end up getting serialised as 0 bytes (for http
+		// connections for example) - we still need to notify them of being sent...
+
+		if ( data_written + protocol_written > 0 || first_sent != null ){
+
+			if ( trace ){
+
+				TimeFormatter.milliTrace( "omq:deliver: " + (data_written + protocol_written) + ", q=" + queued + "/" + total_size.get());
+			}
+
+			if ( manual_listener_notify ){
+
+				if ( data_written > 0 ){
+
+					addNotification( NotificationItem.DATA_BYTES_SENT, null, data_written );
+				}
+
+				if ( protocol_written > 0 ){
+
+					addNotification( NotificationItem.PROTOCOL_BYTES_SENT, null, protocol_written );
+				}
+			}else{
+
+				ArrayList<MessageQueueListener> listeners_ref = listeners;
+
+				int num_listeners = listeners_ref.size();
+
+				for ( int i=0; i < num_listeners; i++ ){
+
+					MessageQueueListener listener = listeners_ref.get( i );
+
+					if ( data_written > 0 )  listener.dataBytesSent( data_written );
+					if ( protocol_written > 0 )  listener.protocolBytesSent( protocol_written );
+
+					if ( first_sent != null ){
+
+						listener.messageSent( first_sent.getBaseMessage());
+
+						if ( others_sent != null ){
+
+							for ( int x=0; x < others_sent.size(); x++ ){
+
+								listener.messageSent( others_sent.get( x ).getBaseMessage());
+							}
+						}
+					}
+				}
+
+					// destroy once all listeners have seen them
+
+				if ( first_sent != null ){
+
+					first_sent.destroy();
+
+					if ( others_sent != null ){
+
+						for ( int x=0; x < others_sent.size(); x++ ){
+
+							others_sent.get( x ).destroy();
+						}
+					}
+				}
+			}
+		}else{
+
+			if ( trace ){
+
+				TimeFormatter.milliTrace( "omq:deliver: 0, q=" + queued + "/" + total_size.get());
+			}
+		}
+
+		return( new int[]{ data_written, protocol_written });
+	}
+
+	@Override
+	public void
+	flush()
+	{
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+			if ( isEmpty()){
+
+				return;
+			}
+
+			boolean	first = true;
+
+			if ( in_progress != null ){
+
+				in_progress.setNoDelay();
+
+				urgent_message = in_progress;
+
+				first = false;
+			}
+
+			for ( int l=LANE_COUNT-1;l>=0;l--){
+
+				for ( RawMessage msg: lanes[l] ){
+
+					msg.setNoDelay();
+
+					if ( first ){
+
+						urgent_message = msg;
+
+						first = false;
+					}
+				}
+			}
+		}finally{
+
+			queue_mon.exit();
+		}
+
+		ArrayList<MessageQueueListener> list_ref = listeners;
+
+		for ( int i=0; i < list_ref.size(); i++ ){
+
+			list_ref.get( i ).flush();
+		}
+	}
+
+		/**
+		 * Adjacent byte count notifications of the same type are merged rather than queued separately
+		 */
+
+	private void
+	addNotification(
+		int				type,
+		RawMessage		message,
+		int				byte_count )
+	{
+		try{
+			delayed_notifications_mon.enter();
+
+			if ( message == null ){
+
+				int	num = delayed_notifications.size();
+
+				if ( num > 0 ){
+
+					NotificationItem	last = delayed_notifications.get( num-1 );
+
+					if ( last.type == type ){
+
+						last.byte_count += byte_count;
+
+						return;
+					}
+				}
+			}
+
+			NotificationItem item = new NotificationItem( type );
+
+			item.message	= message;
+			item.byte_count	= byte_count;
+
+			delayed_notifications.add( item );
+
+		}finally{
+
+			delayed_notifications_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	doListenerNotifications()
+	{
+		ArrayList<NotificationItem> notifications;
+
+		try{
+			delayed_notifications_mon.enter();
+
+			if ( delayed_notifications.size() == 0 ){
+
+				return;
+			}
+
+				// swap in the spare list rather than copying
+
+			notifications = delayed_notifications;
+
+			delayed_notifications = spare_notifications==null?new ArrayList<NotificationItem>():spare_notifications;
+
+			spare_notifications = null;
+
+		}finally{
+
+			delayed_notifications_mon.exit();
+		}
+
+		ArrayList<MessageQueueListener> listeners_ref = listeners;
+
+		for ( int j=0; j < notifications.size(); j++ ){
+
+			NotificationItem item = notifications.get( j );
+
+			switch( item.type ){
+
+				case NotificationItem.MESSAGE_ADDED:
+					for ( int i=0; i < listeners_ref.size(); i++ ){
+						listeners_ref.get( i ).messageQueued( item.message.getBaseMessage());
+					}
+					break;
+
+				case NotificationItem.MESSAGE_REMOVED:
+					for ( int i=0; i < listeners_ref.size(); i++ ){
+						listeners_ref.get( i ).messageRemoved( item.message.getBaseMessage());
+					}
+					item.message.destroy();
+					break;
+
+				case NotificationItem.MESSAGE_SENT:
+					for ( int i=0; i < listeners_ref.size(); i++ ){
+						listeners_ref.get( i ).messageSent( item.message.getBaseMessage());
+					}
+					item.message.destroy();
+					break;
+
+				case NotificationItem.PROTOCOL_BYTES_SENT:
+					for ( int i=0; i < listeners_ref.size(); i++ ){
+						listeners_ref.get( i ).protocolBytesSent( item.byte_count );
+					}
+					break;
+
+				case NotificationItem.DATA_BYTES_SENT:
+					for ( int i=0; i < listeners_ref.size(); i++ ){
+						listeners_ref.get( i ).dataBytesSent( item.byte_count );
+					}
+					break;
+
+				default:
+					Debug.out( "NotificationItem.type unknown :" + item.type );
+			}
+		}
+
+		notifications.clear();
+
+		try{
+			delayed_notifications_mon.enter();
+
+			if ( spare_notifications == null ){
+
+				spare_notifications = notifications;
+			}
+		}finally{
+
+			delayed_notifications_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	setTrace(
+		boolean	on )
+	{
+		trace	= on;
+
+		transport.setTrace( on );
+	}
+
+	@Override
+	public String
+	getQueueTrace()
+	{
+		StringBuilder trace = new StringBuilder();
+
+		trace.append( "**** OUTGOING QUEUE TRACE ****\n" );
+
+		try{
+			queue_mon.enter();
+
+			drainInbox();
+
+			int position = queued + (in_progress==null?0:1) - 1;
+
+			if ( in_progress != null ){
+
+				position = appendTrace( trace, in_progress, position );
+			}
+
+			for ( int l=LANE_COUNT-1;l>=0;l--){
+
+				for ( RawMessage raw: lanes[l] ){
+
+					position = appendTrace( trace, raw, position );
+				}
+			}
+		}finally{
+
+			queue_mon.exit();
+		}
+
+		return( trace.toString());
+	}
+
+	private static int
+	appendTrace(
+		StringBuilder	trace,
+		RawMessage		raw,
+		int				position )
+	{
+		int pos 	= raw.getRawData()[0].position(DirectByteBuffer.SS_NET);
+		int length 	= raw.getRawData()[0].limit( DirectByteBuffer.SS_NET );
+
+		trace.append( "[#")
+			.append(position)
+			.append(" ")
+			.append(pos)
+			.append(":")
+			.append(length)
+			.append("]: ")
+			.append(raw.getID())
+			.append(" [")
+			.append(raw.getDescription())
+			.append("]")
+			.append("\n" );
+
+		return( position - 1 );
+	}
+
+	@Override
+	public void
+	registerQueueListener(
+		MessageQueueListener 	listener )
+	{
+		try{
+			listeners_mon.enter();
+
+			ArrayList<MessageQueueListener> new_list = new ArrayList<>( listeners.size() + 1 );
+
+			new_list.addAll( listeners );
+
+			new_list.add( listener );
+
+			listeners = new_list;
+
+		}finally{
+
+			listeners_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	cancelQueueListener(
+		MessageQueueListener 	listener )
+	{
+		try{
+			listeners_mon.enter();
+
+			ArrayList<MessageQueueListener> new_list = new ArrayList<>( listeners );
+
+			new_list.remove( listener );
+
+			listeners = new_list;
+
+		}finally{
+
+			listeners_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	notifyOfExternallySentMessage(
+		Message 	message )
+	{
+		ArrayList<MessageQueueListener> listeners_ref = listeners;
+
+		DirectByteBuffer[] buffs = message.getData();
+
+		int size = 0;
+
+		for ( int i=0; i < buffs.length; i++ ){
+
+			size += buffs[i].remaining( DirectByteBuffer.SS_NET );
+		}
+
+		for ( int i=0; i < listeners_ref.size(); i++ ){
+
+			MessageQueueListener listener = listeners_ref.get( i );
+
+			listener.messageSent( message );
+
+			if ( message.getType() == Message.TYPE_DATA_PAYLOAD ){
+
+				listener.dataBytesSent( size );
+
+			}else{
+
+				listener.protocolBytesSent( size );
+			}
+		}
+	}
+
+	private static class
+	NotificationItem
+	{
+		private static final int MESSAGE_ADDED        = 0;
+		private static final int MESSAGE_REMOVED      = 1;
+		private static final int MESSAGE_SENT         = 2;
+		private static final int DATA_BYTES_SENT      = 3;
+		private static final int PROTOCOL_BYTES_SENT  = 4;
+
+		final int 	type;
+		RawMessage 	message;
+		int 		byte_count = 0;
+
+		NotificationItem(
+			int 	notification_type )
+		{
+			type = notification_type;
+		}
+	}
+}
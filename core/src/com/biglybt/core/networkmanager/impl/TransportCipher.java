@@ -22,6 +22,7 @@ package com.biglybt.core.networkmanager.impl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
@@ -30,15 +31,31 @@ import org.gudy.bouncycastle.crypto.CipherParameters;
 import org.gudy.bouncycastle.crypto.engines.RC4Engine;
 import org.gudy.bouncycastle.crypto.params.KeyParameter;
 
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.util.Debug;
 
 public class
 TransportCipher
 {
-	private static boolean	internal_rc4	= true;	// force internal as we want 160 bit and JCE no supports it
+	public static final int	RC4_IMPL_AUTO			= -1;
+	public static final int	RC4_IMPL_INTERNAL		= 0;
+	public static final int	RC4_IMPL_BOUNCY_CASTLE	= 1;
+	public static final int	RC4_IMPL_JCE			= 2;
 
-	private Cipher		cipher;
-	private RC4Engine	rc4_engine;
+	public static final String[]	RC4_IMPL_NAMES = { "internal", "bouncycastle", "jce" };
+
+	private static final byte[]	RC4_TEST_KEY	= "TransportCipherTest!".getBytes();	// 160 bit
+
+	private static final Object	rc4_impl_lock	= new Object();
+
+	private static int		rc4_impl	= -2;
+
+	private Cipher				cipher;
+	private RC4Engine			rc4_engine;
+	private TransportCipherRC4	rc4;
+
+	private byte[]		scratch;
 
 	public
 	TransportCipher(
@@ -63,27 +80,7 @@ TransportCipher
 	{
 	    if ( algorithm.equals( "RC4" )){
 
-	    	if ( !internal_rc4 ){
-
-	    		try{
-	    	    	cipher = Cipher.getInstance( algorithm );
-
-	    	    	cipher.init( mode, key_spec );
-
-	    		}catch( Throwable e ){
-
-	    			internal_rc4	= true;
-	    		}
-	    	}
-
-	    	if ( internal_rc4 ){
-
-	    		rc4_engine	= new RC4Engine();
-
-	    		CipherParameters	params = new KeyParameter(key_spec.getEncoded());
-
-	    		rc4_engine.init( mode == Cipher.ENCRYPT_MODE, params );
-	    	}
+	    	initRC4( getRC4Implementation(), mode, key_spec.getEncoded());
 
 	    	//System.out.println( "RC4 key: " + ByteFormatter.encodeString( key_spec.getEncoded()));
 
@@ -102,6 +99,207 @@ TransportCipher
 	    }
 	}
 
+		/**
+		 * Test constructor for a specific RC4 implementation, without the initial discard
+		 */
+
+	protected
+	TransportCipher(
+		int			impl,
+		byte[]		key )
+
+		throws Exception
+	{
+		initRC4( impl, Cipher.ENCRYPT_MODE, key );
+	}
+
+	private void
+	initRC4(
+		int			impl,
+		int			mode,
+		byte[]		key )
+
+		throws Exception
+	{
+		if ( impl == RC4_IMPL_JCE ){
+
+			cipher = Cipher.getInstance( "RC4" );
+
+			cipher.init( mode, new SecretKeySpec( key, "RC4" ));
+
+		}else if ( impl == RC4_IMPL_BOUNCY_CASTLE ){
+
+    		rc4_engine	= new RC4Engine();
+
+    		CipherParameters	params = new KeyParameter( key );
+
+    		rc4_engine.init( mode == Cipher.ENCRYPT_MODE, params );
+
+		}else{
+
+			rc4 = new TransportCipherRC4( key );
+		}
+	}
+
+		/**
+		 * Which RC4 implementation to use. Unless one is configured each available candidate is
+		 * checked against the bouncycastle engine (what we've always used) and timed on a direct
+		 * buffer, and the quickest one that produces the right key stream wins. Anything that fails
+		 * or disagrees is never used.
+		 */
+
+	public static int
+	getRC4Implementation()
+	{
+		synchronized( rc4_impl_lock ){
+
+			if ( rc4_impl != -2 ){
+
+				return( rc4_impl );
+			}
+
+			int	configured = COConfigurationManager.getIntParameter( ConfigKeys.Connection.ICFG_NETWORK_TRANSPORT_RC4_IMPL );
+
+			if ( configured >= RC4_IMPL_INTERNAL && configured <= RC4_IMPL_JCE && checkRC4Implementation( configured )){
+
+				rc4_impl = configured;
+
+			}else{
+
+				rc4_impl = selectRC4Implementation();
+			}
+
+			return( rc4_impl );
+		}
+	}
+
+	private static int
+	selectRC4Implementation()
+	{
+		int		best		= RC4_IMPL_BOUNCY_CASTLE;
+		long	best_time	= Long.MAX_VALUE;
+
+		for ( int impl=RC4_IMPL_INTERNAL;impl<=RC4_IMPL_JCE;impl++){
+
+			if ( !checkRC4Implementation( impl )){
+
+				continue;
+			}
+
+			try{
+				long	elapsed = timeRC4Implementation( impl, 128*1024, 4 );
+
+				if ( elapsed < best_time ){
+
+					best		= impl;
+					best_time	= elapsed;
+				}
+			}catch( Throwable e ){
+			}
+		}
+
+		return( best );
+	}
+
+	private static boolean
+	checkRC4Implementation(
+		int		impl )
+	{
+		try{
+			byte[]	data = new byte[8*1024+17];
+
+			for ( int i=0;i<data.length;i++){
+
+				data[i] = (byte)i;
+			}
+
+			RC4Engine	reference = new RC4Engine();
+
+			reference.init( true, new KeyParameter( RC4_TEST_KEY ));
+
+			byte[]	expected = new byte[data.length];
+
+			reference.processBytes( data, 0, data.length, expected, 0 );
+
+			TransportCipher	cipher = new TransportCipher( impl, RC4_TEST_KEY );
+
+				// do it in uneven pieces through direct buffers to check that state carries across
+
+			ByteBuffer	source = ByteBuffer.allocateDirect( data.length );
+			ByteBuffer	target = ByteBuffer.allocateDirect( data.length );
+
+			source.put( data );
+
+			source.flip();
+
+			int	chunk = 1;
+
+			while( source.hasRemaining()){
+
+				int	limit = source.limit();
+
+				source.limit( Math.min( limit, source.position() + chunk ));
+
+				cipher.update( source, target );
+
+				source.limit( limit );
+
+				chunk = chunk*3 + 1;
+			}
+
+			target.flip();
+
+			byte[]	actual = new byte[data.length];
+
+			target.get( actual );
+
+			return( Arrays.equals( expected, actual ));
+
+		}catch( Throwable e ){
+
+			return( false );
+		}
+	}
+
+		/**
+		 * @return nanos taken for the best of the rounds
+		 */
+
+	protected static long
+	timeRC4Implementation(
+		int		impl,
+		int		size,
+		int		rounds )
+
+		throws Exception
+	{
+		TransportCipher	cipher = new TransportCipher( impl, RC4_TEST_KEY );
+
+		ByteBuffer	source = ByteBuffer.allocateDirect( size );
+		ByteBuffer	target = ByteBuffer.allocateDirect( size );
+
+		long	best = Long.MAX_VALUE;
+
+		for ( int i=0;i<rounds;i++){
+
+			source.clear();
+			target.clear();
+
+			long	start = System.nanoTime();
+
+			cipher.update( source, target );
+
+			long	elapsed = System.nanoTime() - start;
+
+			if ( elapsed < best ){
+
+				best = elapsed;
+			}
+		}
+
+		return( best );
+	}
+
 	protected byte[]
 	update(
 		byte[]	data )
@@ -127,6 +325,12 @@ TransportCipher
 
 			result = cipher.update( data, offset, length );
 
+		}else if ( rc4 != null ){
+
+			result = new byte[length];
+
+			rc4.processBytes( data, offset, length, result, 0 );
+
 		}else{
 
 			result = new byte[length];
@@ -137,6 +341,11 @@ TransportCipher
 		return( result );
    	}
 
+		/**
+		 * Processes all of the source's remaining bytes into the target without intermediate
+		 * copies where possible. The two can be views of the same memory to crypt in place.
+		 */
+
 	protected void
 	update(
 		ByteBuffer	source_buffer,
@@ -145,33 +354,53 @@ TransportCipher
 		throws IOException
 	{
 		try{
-			// TODO: 1.5 supports update( ByteBuffer, ByteBuffer )
+			if ( !source_buffer.hasRemaining()){
+
+				return;
+			}
 
-			byte[]	source_bytes;
-			int		offset;
-			int		length	= source_buffer.remaining();
+			if ( rc4 != null ){
 
-			if ( source_buffer.hasArray()){
+				rc4.process( source_buffer, target_buffer );
 
-				source_bytes 	= source_buffer.array();
+			}else if ( cipher != null ){
 
-				offset			= source_buffer.arrayOffset() + source_buffer.position();
+				cipher.update( source_buffer, target_buffer );
 
 			}else{
 
-				source_bytes 	= new byte[length];
+				int	length = source_buffer.remaining();
 
-				offset			= 0;
+				if ( source_buffer.hasArray() && target_buffer.hasArray()){
 
-				source_buffer.get( source_bytes );
-			}
+					rc4_engine.processBytes(
+						source_buffer.array(), source_buffer.arrayOffset() + source_buffer.position(), length,
+						target_buffer.array(), target_buffer.arrayOffset() + target_buffer.position());
+
+					source_buffer.position( source_buffer.position() + length );
+					target_buffer.position( target_buffer.position() + length );
+
+				}else{
+
+					if ( scratch == null ){
 
-			byte[]	target_bytes = update( source_bytes, offset, length );
+						scratch = new byte[4096];
+					}
 
-			source_buffer.position( source_buffer.limit());
+					while( length > 0 ){
 
-			target_buffer.put( target_bytes );
+						int	chunk = Math.min( length, scratch.length );
 
+						source_buffer.get( scratch, 0, chunk );
+
+						rc4_engine.processBytes( scratch, 0, chunk, scratch, 0 );
+
+						target_buffer.put( scratch, 0, chunk );
+
+						length -= chunk;
+					}
+				}
+			}
 		}catch( Throwable e ){
 
 			throw( new IOException( Debug.getNestedExceptionMessage( e )));
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.networkmanager.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RC4 that works directly on ByteBuffers. Heap buffers are processed straight from their backing
+ * arrays, direct ones are moved through a small scratch array with bulk get/put (which is a plain
+ * memory copy) and processed there, so nothing is allocated per call. Source and target may be
+ * views of the same memory, i.e. decrypting in place is fine.
+ *
+ * Not thread safe, like the rest of the cipher state each instance belongs to one direction of
+ * one connection.
+ */
+
+public class
+TransportCipherRC4
+{
+	private static final int	SCRATCH_SIZE	= 4*1024;
+
+	private final int[]		state = new int[256];
+
+	private int		x;
+	private int		y;
+
+	private byte[]	scratch;
+
+	public
+	TransportCipherRC4(
+		byte[]		key )
+	{
+		for ( int i=0;i<256;i++){
+
+			state[i] = i;
+		}
+
+		int	j = 0;
+
+		for ( int i=0;i<256;i++){
+
+			j = ( j + state[i] + ( key[ i % key.length ] & 0xff )) & 0xff;
+
+			int	temp = state[i];
+
+			state[i] = state[j];
+			state[j] = temp;
+		}
+	}
+
+	public void
+	processBytes(
+		byte[]		in,
+		int			in_offset,
+		int			length,
+		byte[]		out,
+		int			out_offset )
+	{
+		int[]	s	= state;
+		int		lx	= x;
+		int		ly	= y;
+
+		for ( int i=0;i<length;i++){
+
+			lx = ( lx + 1 ) & 0xff;
+
+			int	sx = s[lx];
+
+			ly = ( ly + sx ) & 0xff;
+
+			int	sy = s[ly];
+
+			s[lx] = sy;
+			s[ly] = sx;
+
+			out[ out_offset + i ] = (byte)( in[ in_offset + i ] ^ s[( sx + sy ) & 0xff]);
+		}
+
+		x	= lx;
+		y	= ly;
+	}
+
+		/**
+		 * Processes all remaining bytes of the source into the target, advancing both
+		 */
+
+	public void
+	process(
+		ByteBuffer		source,
+		ByteBuffer		target )
+	{
+		int	length = source.remaining();
+
+		if ( length == 0 ){
+
+			return;
+		}
+
+		if ( target.remaining() < length ){
+
+			throw( new IllegalArgumentException( "target too small: " + target.remaining() + " < " + length ));
+		}
+
+		if ( source.hasArray() && target.hasArray()){
+
+			processBytes(
+				source.array(), source.arrayOffset() + source.position(), length,
+				target.array(), target.arrayOffset() + target.position());
+
+			source.position( source.position() + length );
+			target.position( target.position() + length );
+
+		}else{
+
+			if ( scratch == null ){
+
+				scratch = new byte[ SCRATCH_SIZE ];
+			}
+
+			while( length > 0 ){
+
+				int	chunk = Math.min( length, SCRATCH_SIZE );
+
+				source.get( scratch, 0, chunk );
+
+				processBytes( scratch, 0, chunk, scratch, 0 );
+
+				target.put( scratch, 0, chunk );
+
+				length -= chunk;
+			}
+		}
+	}
+}
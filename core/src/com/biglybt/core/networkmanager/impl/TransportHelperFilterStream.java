@@ -22,6 +22,7 @@ package com.biglybt.core.networkmanager.impl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import com.biglybt.core.networkmanager.NetworkManager;
 import com.biglybt.core.util.DirectByteBuffer;
 import com.biglybt.core.util.DirectByteBufferPool;
 
@@ -31,10 +32,18 @@ public abstract class
 TransportHelperFilterStream
 	implements TransportHelperFilter
 {
+	private static final int	MAX_WRITE_BATCH	= 64*1024;
+
 	private final TransportHelper		transport;
 
 	private DirectByteBuffer	write_buffer_pending_db;
-	private ByteBuffer			write_buffer_pending_byte;
+
+		// how many of the bytes at the end of write_buffer_pending_db are still unconsumed in the
+		// caller's buffers, the ones in front of them have already been taken from the sources
+
+	private int					write_buffer_pending_unconsumed;
+
+	private int[]				read_positions	= new int[16];
 
 	protected
 	TransportHelperFilterStream(
@@ -43,12 +52,30 @@ TransportHelperFilterStream
 		transport	= _transport;
 	}
 
+		/**
+		 * Upper bound on how much is crypted for a single write. Kept to a whole number of
+		 * segments so that a large write doesn't finish with a runt packet in the middle of
+		 * the stream
+		 */
+
+	private static int
+	getWriteBatchLimit()
+	{
+		int	mss = NetworkManager.getMinMssSize();
+
+		if ( mss <= 0 ){
+
+			return( MAX_WRITE_BATCH );
+		}
+
+		return( Math.max( mss, ( MAX_WRITE_BATCH / mss ) * mss ));
+	}
+
 	@Override
 	public boolean
 	hasBufferedWrite()
 	{
 		return( write_buffer_pending_db != null ||
-				write_buffer_pending_byte != null ||
 				transport.hasDelayedWrite());
 	}
 
@@ -77,16 +104,6 @@ TransportHelperFilterStream
 	{
 			// deal with any outstanding cached crypted data first
 
-		if  ( write_buffer_pending_byte != null ){
-
-			if ( transport.write( write_buffer_pending_byte, false ) == 0 ){
-
-				return( 0 );
-			}
-
-			write_buffer_pending_byte	= null;
-		}
-
 		long	total_written = 0;
 
 		if ( write_buffer_pending_db != null ){
@@ -110,33 +127,32 @@ TransportHelperFilterStream
 			int	pending_position 	= write_buffer_pending.position();
 			int pending_limit		= write_buffer_pending.limit();
 
-			int	pending_writable = pending_limit - pending_position;
+			int	consumed = ( pending_limit - pending_position ) - write_buffer_pending_unconsumed;
 
-			if ( pending_writable > max_writable ){
+			int	pending_writable = consumed + Math.min( write_buffer_pending_unconsumed, max_writable );
 
-				pending_writable = max_writable;
-
-				write_buffer_pending.limit( pending_position + pending_writable );
-			}
+			write_buffer_pending.limit( pending_position + pending_writable );
 
 			int	written = transport.write( write_buffer_pending, false );
 
 			write_buffer_pending.limit( pending_limit );
 
-			if ( written > 0 ){
+			if ( write_buffer_pending.remaining() == 0 ){
 
-				total_written = written;
+				write_buffer_pending_db.returnToPool();
 
-				if ( write_buffer_pending.remaining() == 0 ){
+				write_buffer_pending_db	= null;
+			}
 
-					write_buffer_pending_db.returnToPool();
+				// skip the "written" bytes that are still in the source
 
-					write_buffer_pending_db	= null;
-				}
+			int skip = written - consumed;
+
+			if ( skip > 0 ){
 
-					// skip "written" bytes in the source
+				total_written = skip;
 
-				int skip = written;
+				write_buffer_pending_unconsumed -= skip;
 
 				for (int i=array_offset;i<array_offset+length;i++){
 
@@ -172,7 +188,7 @@ TransportHelperFilterStream
 				// if write came up short or we've filled the source buffer then we can't do
 				// any more
 
-			if ( total_written < pending_writable || total_written == max_writable ){
+			if ( write_buffer_pending_db != null || total_written == max_writable ){
 
 				return( total_written );
 			}
@@ -180,67 +196,143 @@ TransportHelperFilterStream
 
 			// problem - we must only crypt stuff once and when crypted it *has*
 			// to be sent (else the stream will get out of sync).
-			// so we have to turn this into single buffer operations
+			// so rather than handing the buffers down as they are we crypt as many as
+			// will fit into a single buffer and write that. this way a run of small messages
+			// goes out in one write rather than one per header/payload buffer
+
+		int	batch_limit = getWriteBatchLimit();
+
+		int	index = array_offset;
+		int	end	  = array_offset + length;
+
+		while( index < end ){
+
+			int	remaining = 0;
+
+			for (int i=index;i<end;i++){
+
+				remaining += buffers[i].remaining();
+			}
+
+			if ( remaining == 0 ){
 
-		for (int i=array_offset;i<array_offset+length;i++){
+				break;
+			}
+
+			int	batch_size = Math.min( remaining, batch_limit );
+
+			if ( batch_size == remaining && batch_size > 1 ){
+
+					// a final buffer with a single unsent byte is left for the next write so that a
+					// short write never has to hold back a buffer's first byte (see below)
+
+				for (int i=end-1;i>=index;i--){
 
-			ByteBuffer	source_buffer = buffers[i];
+					ByteBuffer	source_buffer = buffers[i];
+
+					int	size = source_buffer.remaining();
 
-			int	position 	= source_buffer.position();
-			int	limit		= source_buffer.limit();
+					if ( size > 0 ){
 
-			int	size = limit - position;
+						if ( size == 1 && source_buffer.position() == 0 ){
 
-			if ( size == 0 ){
+							batch_size--;
+						}
 
-				continue;
+						break;
+					}
+				}
 			}
 
-			DirectByteBuffer	target_buffer_db = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_NET_CRYPT,  size );
+			DirectByteBuffer	target_buffer_db = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_NET_CRYPT, batch_size );
 
 			try{
 				ByteBuffer	target_buffer = target_buffer_db.getBuffer( DirectByteBuffer.SS_NET );
 
-				cryptoOut( source_buffer, target_buffer );
+				int	batch_end	= index;
 
-				target_buffer.position( 0 );
+				int	batch_last	= index;
 
-				boolean	partial_write = false;
+				int	batch_rem	= batch_size;
 
-				for (int j=i+1;j<array_offset+length;j++){
+				while( batch_rem > 0 ){
 
-					if ( buffers[j].hasRemaining()){
+					ByteBuffer	source_buffer = buffers[batch_end];
 
-						partial_write = true;
+					int	size = source_buffer.remaining();
+
+					if ( size > 0 ){
+
+						batch_last = batch_end;
+					}
+
+					if ( size > batch_rem ){
+
+						int	limit = source_buffer.limit();
+
+						source_buffer.limit( source_buffer.position() + batch_rem );
+
+						cryptoOut( source_buffer, target_buffer );
+
+						source_buffer.limit( limit );
+
+						batch_rem = 0;
+
+					}else{
+
+						cryptoOut( source_buffer, target_buffer );
+
+						batch_rem -= size;
+
+						batch_end++;
 					}
 				}
 
-				int	written = transport.write( target_buffer, partial_write );
+				target_buffer.flip();
 
-				total_written += written;
+				int	written = transport.write( target_buffer, batch_size < remaining );
 
-				source_buffer.position( position + written );
+				if ( written < batch_size ){
 
-				if ( written < size ){
+						// the sources of the unsent bytes are left consumed. the queue then treats a
+						// message that is wholly in the pending data as sent and one that is part way
+						// through as started, so neither can be removed or have another message put
+						// in front of it before the crypted bytes go out.
+						// if this was everything we were given we keep the last byte back in its
+						// source so that the caller comes back to write the rest. the only time that
+						// can't be done is a lone byte at the start of a buffer, which is consumed
+						// like any other
 
-					write_buffer_pending_db	= target_buffer_db;
+					int	unconsumed = 0;
 
-					target_buffer_db	= null;
+					if ( batch_size == remaining ){
 
-					if ( written == 0 ){
+						ByteBuffer	last_buffer = buffers[batch_last];
 
-							// we gotta pretend at least 1 byte was written to
-							// guarantee that the caller writes the rest
+						int	last_position = last_buffer.position();
 
-						write_buffer_pending_byte = ByteBuffer.wrap(new byte[]{target_buffer.get()});
+						if ( last_position > 1 ){
 
-						source_buffer.get();
+							last_buffer.position( last_position - 1 );
 
-						total_written++;
+							unconsumed = 1;
+						}
 					}
 
+					total_written += batch_size - unconsumed;
+
+					write_buffer_pending_db			= target_buffer_db;
+					write_buffer_pending_unconsumed	= unconsumed;
+
+					target_buffer_db	= null;
+
 					break;
 				}
+
+				total_written += written;
+
+				index = batch_end;
+
 			}finally{
 
 				if ( target_buffer_db != null ){
@@ -264,64 +356,50 @@ TransportHelperFilterStream
 
 		throws IOException
 	{
-		int	total_read	= 0;
-
-		DirectByteBuffer[]	copy_db = new DirectByteBuffer[buffers.length];
-		ByteBuffer[]		copy	= new ByteBuffer[buffers.length];
-
-		try{
-			for (int i=array_offset;i<array_offset+length;i++){
+			// read straight into the caller's buffers and decrypt what arrived in place, the
+			// ciphers all work through the stream sequentially so source and target can be views
+			// of the same bytes
 
-				ByteBuffer	buffer = buffers[i];
+		if ( read_positions.length < length ){
 
-				int	size = buffer.remaining();
+			read_positions = new int[ length ];
+		}
 
-				if ( size > 0 ){
+		int[]	positions = read_positions;
 
-					copy_db[i]	= DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_NET_CRYPT, size );
+		for (int i=0;i<length;i++){
 
-					copy[i]	= copy_db[i].getBuffer( DirectByteBuffer.SS_NET );
-				}else{
+			positions[i] = buffers[array_offset+i].position();
+		}
 
-					copy[i] = ByteBuffer.allocate(0);
-				}
-			}
+		long	total_read = transport.read( buffers, array_offset, length );
 
-			total_read += transport.read( copy, array_offset, length );
+		if ( total_read > 0 ){
 
-			for (int i=array_offset;i<array_offset+length;i++){
+			for (int i=0;i<length;i++){
 
-				ByteBuffer	source_buffer	= copy[i];
+				ByteBuffer	buffer = buffers[array_offset+i];
 
-				if ( source_buffer != null ){
+				int	start	= positions[i];
+				int	end		= buffer.position();
 
-					ByteBuffer	target_buffer 	= buffers[i];
+				if ( end > start ){
 
-					int	source_position	= source_buffer.position();
+					ByteBuffer	source_buffer = buffer.duplicate();
 
-					if ( source_position > 0 ){
+					source_buffer.limit( end );
+					source_buffer.position( start );
 
-						source_buffer.flip();
+					ByteBuffer	target_buffer = source_buffer.duplicate();
 
-						cryptoIn( source_buffer, target_buffer );
-					}
+					cryptoIn( source_buffer, target_buffer );
 				}
 			}
+		}
 
-			// System.out.println( "...read " + total_read );
-
-			return( total_read );
-
-		}finally{
-
-			for (int i=0;i<copy_db.length;i++){
-
-				if ( copy_db[i] != null ){
+		// System.out.println( "...read " + total_read );
 
-					copy_db[i].returnToPool();
-				}
-			}
-		}
+		return( total_read );
 	}
 
 	@Override
@@ -34,6 +34,9 @@ import com.biglybt.core.logging.LogEvent;
 import com.biglybt.core.logging.LogIDs;
 import com.biglybt.core.logging.Logger;
 import com.biglybt.core.networkmanager.VirtualChannelSelector;
+import com.biglybt.core.stats.CoreMetrics;
+import com.biglybt.core.stats.MetricsCounter;
+import com.biglybt.core.stats.MetricsHistogram;
 import com.biglybt.core.util.*;
 
 
@@ -300,6 +303,11 @@ public class VirtualChannelSelectorImpl {
     private long last_write_select_debug;
     private long last_select_debug;
 
+    private static final MetricsHistogram select_process_time = CoreMetrics.getHistogram( CoreMetrics.MT_NET_SELECT_PROCESS_TIME );
+    private static final MetricsCounter select_keys = CoreMetrics.getCounter( CoreMetrics.MT_NET_SELECT_KEYS );
+
+    private long select_done_time;
+
     private long last_reopen_attempt = SystemTime.getMonotonousTime();
 
     public VirtualChannelSelectorImpl( VirtualChannelSelector _parent, int _interest_op, boolean _pause_after_select, boolean _randomise_keys ) {
@@ -582,6 +590,24 @@ public class VirtualChannelSelectorImpl {
 
     public int select( long timeout ) {
 
+    	select_done_time = 0;
+
+    	int count = selectSupport( timeout );
+
+    		// only the processing after the select returns, not the wait
+
+    	if ( select_done_time != 0 ){
+
+    		select_process_time.recordSince( select_done_time );
+
+    		select_keys.add( count );
+    	}
+
+    	return( count );
+    }
+
+    private int selectSupport( long timeout ) {
+
       long select_start_time = SystemTime.getCurrentTime();
       
       if( selector == null ) {
@@ -771,6 +797,8 @@ public class VirtualChannelSelectorImpl {
     	  try {  Thread.sleep( timeout );  }catch(Throwable e) { e.printStackTrace(); }
       }
 
+      select_done_time = CoreMetrics.startTimer();
+
       	// do this after the select so that any pending cancels (prior to destroy) are processed
       	// by the selector before we kill it
 
@@ -108,6 +108,13 @@ PEPeerManagerAdapter
 	public TRTrackerScraperResponse
 	getTrackerScrapeResponse();
 
+		/**
+		 * @return data bytes sent over the life of the download, including previous sessions
+		 */
+
+	public long
+	getAllTimeDataBytesSent();
+
 	public String
 	getTrackerClientExtensions();
 
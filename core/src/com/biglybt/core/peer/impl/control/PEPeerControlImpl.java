@@ -67,6 +67,8 @@ import com.biglybt.core.peermanager.unchoker.UnchokerFactory;
 import com.biglybt.core.peermanager.unchoker.UnchokerUtil;
 import com.biglybt.core.peermanager.uploadslots.UploadHelper;
 import com.biglybt.core.peermanager.uploadslots.UploadSlotManager;
+import com.biglybt.core.stats.CoreMetrics;
+import com.biglybt.core.stats.MetricsHistogram;
 import com.biglybt.core.tag.TaggableResolver;
 import com.biglybt.core.torrent.TOTorrent;
 import com.biglybt.core.torrent.TOTorrentException;
@@ -108,6 +110,10 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 	private static final int WARNINGS_LIMIT = 2;
 
+	private static final MetricsHistogram tick_time = CoreMetrics.getHistogram(CoreMetrics.MT_PEER_CONTROL_TICK_TIME);
+	private static final MetricsHistogram picker_availability_time = CoreMetrics.getHistogram(CoreMetrics.MT_PEER_PICKER_AVAILABILITY_TIME);
+	private static final MetricsHistogram picker_allocate_time = CoreMetrics.getHistogram(CoreMetrics.MT_PEER_PICKER_ALLOCATE_TIME);
+
 	private static final int CHECK_REASON_DOWNLOADED = 1;
 	private static final int CHECK_REASON_COMPLETE = 2;
 	private static final int CHECK_REASON_SCAN = 3;
@@ -343,6 +349,40 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 		public boolean isSeeding(){
 			return seeding_mode;
 		}
+
+		@Override
+		public int getMaxUploads(){
+			return adapter.getMaxUploads();
+		}
+
+		@Override
+		public int getSwarmSeeds(){
+			TRTrackerScraperResponse tsr = adapter.getTrackerScrapeResponse();
+
+			return tsr != null && tsr.isValid() ? Math.max(tsr.getSeeds(), getNbSeeds()) : getNbSeeds();
+		}
+
+		@Override
+		public int getSwarmLeechers(){
+			TRTrackerScraperResponse tsr = adapter.getTrackerScrapeResponse();
+
+			return tsr != null && tsr.isValid() ? Math.max(tsr.getPeers(), getNbPeers()) : getNbPeers();
+		}
+
+		@Override
+		public long getUploadRate(){
+			return _stats.getDataSendRate();
+		}
+
+		@Override
+		public long getTotalUploaded(){
+			return Math.max(adapter.getAllTimeDataBytesSent(), _stats.getTotalDataBytesSent());
+		}
+
+		@Override
+		public long getSize(){
+			return disk_mgr.getTotalLength();
+		}
 	};
 
 	private final PeerDatabase peer_database = PeerDatabaseFactory.createPeerDatabase();
@@ -839,6 +879,8 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 			}
 		}
 
+		long tick_start = CoreMetrics.startTimer();
+
 		try{
 			// first off update the stats so they can be used by subsequent steps
 
@@ -872,8 +914,12 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 			checkInterested(); // see if need to recheck Interested on all peers
 
+			long picker_start = CoreMetrics.startTimer();
+
 			piecePicker.updateAvailability();
 
+			picker_availability_time.recordSince(picker_start);
+
 			checkCompletionState(); // pick up changes in completion caused by dnd file changes
 
 			if(finish_in_progress != null){
@@ -917,8 +963,12 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 				checkRequests();
 
+				picker_start = CoreMetrics.startTimer();
+
 				piecePicker.allocateRequests();
 
+				picker_allocate_time.recordSince(picker_start);
+
 				checkRescan();
 				checkSpeedAndReserved();
 
@@ -936,6 +986,10 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 		}catch(Throwable e){
 
 			Debug.printStackTrace(e);
+
+		}finally{
+
+			tick_time.recordSince(tick_start);
 		}
 		mainloop_loop_count++;
 	}
@@ -2398,7 +2452,10 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 				return;
 			}
 
-			final int max_to_unchoke = adapter.getMaxUploads(); // how many simultaneous uploads we should consider
+			// how many simultaneous uploads we should consider, seeding downloads may share a global pool
+			final int max_to_unchoke = seeding_mode
+					? UploadSlotManager.getSingleton().getSeedingSlots(upload_helper, adapter.getMaxUploads())
+					: adapter.getMaxUploads();
 			final ArrayList peer_transports = peer_transports_cow;
 
 			// determine proper unchoker
@@ -6108,6 +6165,10 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 	public void generateEvidence(IndentWriter writer){
 		writer.println("PeerManager: seeding=" + seeding_mode);
 
+		if(seeding_mode){
+			writer.println("    seeding slots: " + UploadSlotManager.getSingleton().getSeedingSlotStats());
+		}
+
 		writer.println("    udp_fb=" + pending_nat_traversals.size() + ",udp_tc=" + udp_traversal_count + ",pd=["
 				+ peer_database.getString() + "]");
 
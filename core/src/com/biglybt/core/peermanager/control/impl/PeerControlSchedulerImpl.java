@@ -20,7 +20,11 @@ import java.util.Map;
 import java.util.Set;
 
 import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.logging.LogEvent;
+import com.biglybt.core.logging.LogIDs;
+import com.biglybt.core.logging.Logger;
 import com.biglybt.core.peermanager.control.PeerControlScheduler;
 import com.biglybt.core.stats.CoreStats;
 import com.biglybt.core.stats.CoreStatsProvider;
@@ -33,10 +37,25 @@ PeerControlSchedulerImpl
 {
 	private static final PeerControlSchedulerImpl[]	singletons;
 
+	private static final int	parallel_threads;
+
 	static{
 		int	num = COConfigurationManager.getIntParameter( "peercontrol.scheduler.parallelism", 1 );
 
-		if ( num < 1 ){
+		parallel_threads = COConfigurationManager.getIntParameter( ConfigKeys.Transfer.ICFG_PEERCONTROL_SCHEDULER_PARALLEL_THREADS );
+
+		if ( parallel_threads > 0 ){
+
+				// a single scheduler feeding a pool of workers replaces partitioning
+
+			if ( Logger.isEnabled()){
+
+				Logger.log( new LogEvent( LogIDs.CORE, "Peer control scheduler threads=" + parallel_threads ));
+			}
+
+			num = 1;
+
+		}else if ( num < 1 ){
 
 			num = 1;
 
@@ -74,7 +93,11 @@ PeerControlSchedulerImpl
 
 			PeerControlSchedulerImpl singleton;
 
-			if ( COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.use.priorities" )){
+			if ( parallel_threads > 0 ){
+
+				singleton = new PeerControlSchedulerParallel( parallel_threads );
+
+			}else if ( COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.use.priorities" )){
 
 				singleton = new PeerControlSchedulerPrioritised();
 
@@ -0,0 +1,697 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.control.impl;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.biglybt.core.peermanager.control.PeerControlInstance;
+import com.biglybt.core.peermanager.control.SpeedTokenDispenser;
+import com.biglybt.core.stats.CoreStats;
+import com.biglybt.core.util.AEDiagnostics;
+import com.biglybt.core.util.AEDiagnosticsEvidenceGenerator;
+import com.biglybt.core.util.AESemaphore;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.IndentWriter;
+import com.biglybt.core.util.RandomUtils;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Runs instance ticks on a work-stealing pool rather than one after another on the scheduler
+ * thread. The scheduler thread just works out which instances are due and hands them to the pool.
+ * An instance is never run concurrently with itself - if its previous tick is still in progress
+ * when the next one is due then the tick is dropped and counted as an overrun.
+ *
+ * When request limiting is active and priorities are in use the due instances are released to the
+ * pool one priority band at a time, so higher priority downloads still get first go at the
+ * download tokens as they do with the prioritised scheduler.
+ */
+
+public class
+PeerControlSchedulerParallel
+	extends PeerControlSchedulerImpl
+	implements AEDiagnosticsEvidenceGenerator
+{
+	private static final int	DIAG_MAX_INSTANCES	= 50;
+
+	private final ForkJoinPool	pool;
+
+	private Map<PeerControlInstance,instanceWrapper>	instance_map = new HashMap<>();
+
+	final List<instanceWrapper>	pending_registrations = new ArrayList<>();
+
+	private volatile long		latest_time;
+
+	private final Object	instance_lock = new Object();
+
+	private final SpeedTokenDispenserParallel tokenDispenser = new SpeedTokenDispenserParallel();
+
+	private long	next_peer_count_time 	= SystemTime.getMonotonousTime();
+	private long	next_piece_count_time 	= SystemTime.getMonotonousTime();
+
+	private volatile long		peer_count_active_time = 0;
+	private volatile long		piece_count_active_time = 0;
+
+	private volatile int[]		last_peer_count = { 0, 0 };
+	private volatile int[]		last_piece_count = { 0, 0 };
+
+	private volatile long	overrun_count;
+	private volatile long	total_late_time;
+	private volatile long	total_run_time;
+
+	protected
+	PeerControlSchedulerParallel(
+		int		threads )
+	{
+		pool = new ForkJoinPool(
+				threads,
+				new ForkJoinPool.ForkJoinWorkerThreadFactory()
+				{
+					private int	next_id;
+
+					@Override
+					public synchronized ForkJoinWorkerThread
+					newThread(
+						ForkJoinPool	pool )
+					{
+						ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( pool );
+
+						thread.setName( "PeerControlScheduler:" + next_id++ );
+
+						thread.setDaemon( true );
+
+						return( thread );
+					}
+				},
+				null,
+				true );
+
+		Set<String>	types = new HashSet<>();
+
+		types.add( CoreStats.ST_PEER_CONTROL_TICK_OVERRUN_COUNT );
+		types.add( CoreStats.ST_PEER_CONTROL_TICK_LATE_TIME );
+		types.add( CoreStats.ST_PEER_CONTROL_TICK_RUN_TIME );
+
+		CoreStats.registerProvider( types, this );
+
+		AEDiagnostics.addEvidenceGenerator( this );
+	}
+
+	@Override
+	protected void
+	schedule()
+	{
+		latest_time	= SystemTime.getMonotonousTime();
+
+		SystemTime.registerMonotonousConsumer(
+			new SystemTime.TickConsumer()
+			{
+				@Override
+				public void
+				consume( long	time )
+				{
+					boolean count_peers 	= false;
+					boolean count_pieces 	= false;
+
+					synchronized( PeerControlSchedulerParallel.this ){
+
+						if ( peer_count_active_time > 0 ){
+
+							if ( time >= next_peer_count_time ){
+
+								if ( time - peer_count_active_time > 15*1000 ){
+
+									peer_count_active_time = 0;
+
+								}else{
+									count_peers = true;
+
+									next_peer_count_time = time+900;
+								}
+							}
+						}
+
+						if ( piece_count_active_time > 0 ){
+
+							if ( time >= next_piece_count_time ){
+
+								if ( time - piece_count_active_time > 15*1000 ){
+
+									piece_count_active_time = 0;
+
+								}else{
+
+									count_pieces = true;
+
+									next_piece_count_time = time+900;
+								}
+							}
+						}
+
+						latest_time	= time;
+
+						if ( instance_map.size() > 0 || pending_registrations.size() > 0 ){
+
+							PeerControlSchedulerParallel.this.notify();
+						}
+					}
+
+					if ( count_peers || count_pieces ){
+
+						int peer_count1 = 0;
+						int peer_count2 = 0;
+
+						int piece_count1 = 0;
+						int piece_count2 = 0;
+
+						synchronized( instance_lock ){
+
+							for ( PeerControlInstance i: instance_map.keySet()){
+
+								if ( count_peers ){
+
+									int[] c = i.getPeerCount();
+
+									peer_count1 += c[0];
+									peer_count2 += c[1];
+								}
+
+								if ( count_pieces ){
+
+									int[] c = i.getPieceCount();
+
+									piece_count1 += c[0];
+									piece_count2 += c[1];
+								}
+							}
+						}
+
+						if ( count_peers ){
+							last_peer_count = new int[]{ peer_count1, peer_count2 };
+						}
+						if ( count_pieces ){
+							last_piece_count = new int[]{ piece_count1, piece_count2 };
+						}
+					}
+				}
+			});
+
+			// ordered by next tick time, only accessed by this thread
+
+		PriorityQueue<instanceWrapper>	queue =
+			new PriorityQueue<>(
+				64,
+				new Comparator<instanceWrapper>()
+				{
+					@Override
+					public int
+					compare(
+						instanceWrapper	o1,
+						instanceWrapper	o2 )
+					{
+						return( Long.compare( o1.next_tick, o2.next_tick ));
+					}
+				});
+
+		List<instanceWrapper>	due = new ArrayList<>();
+
+		long	latest_time_used	= latest_time;
+
+		while( true ){
+
+			synchronized( instance_lock ){
+
+				if ( pending_registrations.size() > 0 ){
+
+					for ( instanceWrapper inst: pending_registrations ){
+
+							// spread new instances across the period so they don't all land on the same tick
+
+						inst.next_tick = latest_time_used + RandomUtils.nextInt( SCHEDULE_PERIOD_MILLIS );
+
+						queue.add( inst );
+					}
+
+					pending_registrations.clear();
+				}
+			}
+
+			while( queue.size() > 0 && queue.peek().next_tick <= latest_time_used ){
+
+				instanceWrapper inst = queue.poll();
+
+				if ( !inst.isUnregistered()){
+
+					due.add( inst );
+				}
+			}
+
+			if ( due.size() > 0 ){
+
+				tokenDispenser.update( latest_time_used );
+
+				tokenDispenser.refill();
+
+				runDue( due );
+
+				for ( instanceWrapper inst: due ){
+
+					long	next_tick = inst.next_tick + SCHEDULE_PERIOD_MILLIS;
+
+						// if ticks hog too much time then delay to prevent massive catch-up-hammering
+
+					if ( latest_time_used - next_tick > SCHEDULE_PERIOD_MAX_CATCHUP ){
+
+						next_tick = latest_time_used + SCHEDULE_PERIOD_MILLIS;
+					}
+
+					inst.next_tick = next_tick;
+
+					queue.add( inst );
+				}
+
+				due.clear();
+			}
+
+			synchronized( this ){
+
+				if ( latest_time == latest_time_used ){
+
+					wait_count++;
+
+					try{
+						long wait_start = SystemTime.getHighPrecisionCounter();
+
+						wait( 5000 );
+
+						long wait_time 	= SystemTime.getHighPrecisionCounter() - wait_start;
+
+						total_wait_time += wait_time;
+
+					}catch( Throwable e ){
+
+						Debug.printStackTrace(e);
+					}
+
+				}else{
+
+					yield_count++;
+
+					Thread.yield();
+				}
+
+				latest_time_used	= latest_time;
+			}
+		}
+	}
+
+	private void
+	runDue(
+		List<instanceWrapper>		due )
+	{
+		if ( useWeights && tokenDispenser.isLimiting()){
+
+				// lowest priority number first, release a band at a time and give it up to
+				// a period to complete before moving on
+
+				// snapshot priorities as they can change under us
+
+			for ( instanceWrapper inst: due ){
+
+				inst.band_priority = inst.getPriority();
+			}
+
+			Collections.sort( due );
+
+			long	deadline = SystemTime.getMonotonousTime() + SCHEDULE_PERIOD_MILLIS;
+
+			int	pos = 0;
+
+			while( pos < due.size()){
+
+				int	priority = due.get( pos ).band_priority;
+
+				int	end = pos+1;
+
+				while( end < due.size() && due.get( end ).band_priority == priority ){
+
+					end++;
+				}
+
+				AESemaphore	band_sem = new AESemaphore( "PeerControlScheduler:band" );
+
+				int	submitted = 0;
+
+				for ( int i=pos;i<end;i++){
+
+					if ( submit( due.get(i), band_sem )){
+
+						submitted++;
+					}
+				}
+
+				for ( int i=0;i<submitted;i++){
+
+					long	rem = deadline - SystemTime.getMonotonousTime();
+
+					if ( rem <= 0 || !band_sem.reserve( rem )){
+
+						break;
+					}
+				}
+
+				pos = end;
+			}
+		}else{
+
+			for ( instanceWrapper inst: due ){
+
+				submit( inst, null );
+			}
+		}
+	}
+
+	private boolean
+	submit(
+		final instanceWrapper	inst,
+		final AESemaphore		done_sem )
+	{
+		if ( !inst.running.compareAndSet( false, true )){
+
+			inst.overrun();
+
+			overrun_count++;
+
+			return( false );
+		}
+
+		schedule_count++;
+
+		final long	due_time = inst.next_tick;
+
+		pool.execute(
+			new Runnable()
+			{
+				@Override
+				public void
+				run()
+				{
+					try{
+						long	start = SystemTime.getHighPrecisionCounter();
+
+						long	late = Math.max( 0, SystemTime.getMonotonousTime() - due_time );
+
+						inst.schedule();
+
+						long	elapsed = SystemTime.getHighPrecisionCounter() - start;
+
+						inst.tickComplete( late, elapsed );
+
+						synchronized( PeerControlSchedulerParallel.this ){
+
+							total_late_time	+= late;
+							total_run_time	+= elapsed/1000000;
+						}
+					}finally{
+
+						inst.running.set( false );
+
+						if ( done_sem != null ){
+
+							done_sem.release();
+						}
+					}
+				}
+			});
+
+		return( true );
+	}
+
+	@Override
+	public void
+	register(
+		PeerControlInstance	instance )
+	{
+		instanceWrapper wrapper = new instanceWrapper( instance );
+
+		synchronized( instance_lock ){
+
+			Map<PeerControlInstance,instanceWrapper>	new_map = new HashMap<>( instance_map );
+
+			new_map.put( instance, wrapper );
+
+			instance_map = new_map;
+
+			pending_registrations.add( wrapper );
+		}
+	}
+
+	@Override
+	public void
+	unregister(
+		PeerControlInstance	instance )
+	{
+		synchronized( instance_lock ){
+
+			Map<PeerControlInstance,instanceWrapper>	new_map = new HashMap<>( instance_map );
+
+			instanceWrapper wrapper = new_map.remove(instance);
+
+			if ( wrapper == null ){
+
+				Debug.out( "instance wrapper not found" );
+
+				return;
+			}
+
+			wrapper.unregister();
+
+			pending_registrations.remove( wrapper );
+
+			instance_map = new_map;
+		}
+	}
+
+	@Override
+	public SpeedTokenDispenser
+	getSpeedTokenDispenser()
+	{
+		return( tokenDispenser );
+	}
+
+	@Override
+	public void
+	updateScheduleOrdering()
+	{
+			// priorities are read afresh each time a band ordering is required
+	}
+
+	@Override
+	public int[]
+	getPeerCount()
+	{
+		peer_count_active_time = SystemTime.getMonotonousTime();
+
+		return( last_peer_count );
+	}
+
+	@Override
+	public int[]
+	getPieceCount()
+	{
+		piece_count_active_time = SystemTime.getMonotonousTime();
+
+		return( last_piece_count );
+	}
+
+	@Override
+	public void
+	updateStats(
+		Set		types,
+		Map		values )
+	{
+		super.updateStats( types, values );
+
+		if ( types.contains( CoreStats.ST_PEER_CONTROL_TICK_OVERRUN_COUNT )){
+
+			values.put( CoreStats.ST_PEER_CONTROL_TICK_OVERRUN_COUNT, Long.valueOf( overrun_count ));
+		}
+		if ( types.contains( CoreStats.ST_PEER_CONTROL_TICK_LATE_TIME )){
+
+			values.put( CoreStats.ST_PEER_CONTROL_TICK_LATE_TIME, Long.valueOf( total_late_time ));
+		}
+		if ( types.contains( CoreStats.ST_PEER_CONTROL_TICK_RUN_TIME )){
+
+			values.put( CoreStats.ST_PEER_CONTROL_TICK_RUN_TIME, Long.valueOf( total_run_time ));
+		}
+	}
+
+	@Override
+	public void
+	generate(
+		IndentWriter		writer )
+	{
+		writer.println( "Peer Control Scheduler (parallel): threads=" + pool.getParallelism() + ", active=" + pool.getActiveThreadCount() + ", steals=" + pool.getStealCount() + ", overruns=" + overrun_count );
+
+		try{
+			writer.indent();
+
+			List<instanceWrapper>	instances;
+
+			synchronized( instance_lock ){
+
+				instances = new ArrayList<>( instance_map.values());
+			}
+
+				// slowest first
+
+			Collections.sort(
+				instances,
+				new Comparator<instanceWrapper>()
+				{
+					@Override
+					public int
+					compare(
+						instanceWrapper	o1,
+						instanceWrapper	o2 )
+					{
+						return( Long.compare( o2.getAverageRunTime(), o1.getAverageRunTime()));
+					}
+				});
+
+			for ( int i=0;i<instances.size() && i < DIAG_MAX_INSTANCES;i++){
+
+				writer.println( instances.get(i).getString());
+			}
+
+			if ( instances.size() > DIAG_MAX_INSTANCES ){
+
+				writer.println( "..." );
+			}
+		}finally{
+
+			writer.exdent();
+		}
+	}
+
+	protected static class
+	instanceWrapper implements Comparable<instanceWrapper>
+	{
+		private final PeerControlInstance		instance;
+		private volatile boolean				unregistered;
+
+		final AtomicBoolean	running = new AtomicBoolean();
+
+		long				next_tick;
+		int					band_priority;
+
+		private long		ticks;
+		private long		overruns;
+
+		private long		average_run_time	= -1;	// nanos
+		private long		max_run_time;
+		private long		average_late		= -1;	// millis
+		private long		max_late;
+
+		protected
+		instanceWrapper(
+			PeerControlInstance	_instance )
+		{
+			instance = _instance;
+		}
+
+		protected void
+		unregister()
+		{
+			unregistered	= true;
+		}
+
+		protected boolean
+		isUnregistered()
+		{
+			return( unregistered );
+		}
+
+		protected int
+		getPriority()
+		{
+			return( instance.getSchedulePriority());
+		}
+
+		protected void
+		schedule()
+		{
+			try{
+				instance.schedule();
+
+			}catch( Throwable e ){
+
+				Debug.printStackTrace(e);
+			}
+		}
+
+		protected synchronized void
+		overrun()
+		{
+			overruns++;
+		}
+
+		protected synchronized void
+		tickComplete(
+			long	late,
+			long	run_time )
+		{
+			ticks++;
+
+			average_run_time 	= average_run_time<0?run_time:(( average_run_time*7 + run_time )/8 );
+			average_late		= average_late<0?late:(( average_late*7 + late )/8 );
+
+			if ( run_time > max_run_time ){
+
+				max_run_time = run_time;
+			}
+
+			if ( late > max_late ){
+
+				max_late = late;
+			}
+		}
+
+		protected synchronized long
+		getAverageRunTime()
+		{
+			return( average_run_time );
+		}
+
+		protected synchronized String
+		getString()
+		{
+			return( instance.getName() + ": ticks=" + ticks + ", overruns=" + overruns +
+					", run=" + ( average_run_time/1000 ) + "/" + ( max_run_time/1000 ) + "us" +
+					", late=" + average_late + "/" + max_late + "ms" );
+		}
+
+		@Override
+		public int compareTo(instanceWrapper o) {
+			return band_priority-o.band_priority;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.control.impl;
+
+/**
+ * Token bucket shared by instances that are scheduled concurrently, all access to the bucket
+ * is serialised.
+ */
+
+public class
+SpeedTokenDispenserParallel
+	extends SpeedTokenDispenserPrioritised
+{
+	@Override
+	public synchronized void
+	update(
+		long	newTime )
+	{
+		super.update( newTime );
+	}
+
+	@Override
+	public synchronized void
+	refill()
+	{
+		super.refill();
+	}
+
+	@Override
+	public synchronized int
+	dispense(
+		int		numberOfChunks,
+		int		chunkSize )
+	{
+		return( super.dispense( numberOfChunks, chunkSize ));
+	}
+
+	@Override
+	public synchronized void
+	returnUnusedChunks(
+		int		unused,
+		int		chunkSize )
+	{
+		super.returnUnusedChunks( unused, chunkSize );
+	}
+
+	@Override
+	public synchronized int
+	peek(
+		int		chunkSize )
+	{
+		return( super.peek( chunkSize ));
+	}
+}
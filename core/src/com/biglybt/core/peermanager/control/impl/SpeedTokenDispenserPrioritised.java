@@ -112,6 +112,10 @@ SpeedTokenDispenserPrioritised
 		bucket += unused * chunkSize;
 	}
 
+	public boolean isLimiting() {
+		return rateKiB != 0;
+	}
+
 	@Override
 	public int peek(int chunkSize) {
 		if (rateKiB != 0)
@@ -23,6 +23,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
+import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.networkmanager.Transport;
 import com.biglybt.core.peermanager.messaging.Message;
 import com.biglybt.core.peermanager.messaging.MessageException;
@@ -44,9 +47,47 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 
   private static final byte SS = DirectByteBuffer.SS_MSG;
 
+  //bulk mode reads up to this much at a time at message boundaries and decodes every message it holds,
+  //fixed-size control messages straight out of the buffer, without a pooled payload buffer each
+  private static final int BULK_READ_SIZE = 16*1024;
+
+  private static boolean bulk_read_enabled;
+
+  static{
+	  COConfigurationManager.addAndFireParameterListener(
+		  ConfigKeys.Connection.BCFG_NETWORK_BT_DECODER_BULK_READ,
+		  new ParameterListener() {
+			  @Override
+			  public void parameterChanged( String name ) {
+				  bulk_read_enabled = COConfigurationManager.getBooleanParameter( ConfigKeys.Connection.BCFG_NETWORK_BT_DECODER_BULK_READ );
+			  }
+		  });
+  }
+
+  //bulk reads are decoded completely before performStreamDecode returns so one buffer per read thread will do
+  private static final ThreadLocal<ByteBuffer> bulk_buffers = new ThreadLocal<ByteBuffer>() {
+	  @Override
+	  protected ByteBuffer initialValue() {
+		  return ByteBuffer.allocateDirect( BULK_READ_SIZE );
+	  }
+  };
+
+  //stateless messages, shared rather than created on every receipt
+  private static final Message CHOKE 			= new BTChoke( (byte)1 );
+  private static final Message UNCHOKE 			= new BTUnchoke( (byte)1 );
+  private static final Message INTERESTED 		= new BTInterested( (byte)1 );
+  private static final Message UNINTERESTED 	= new BTUninterested( (byte)1 );
+  private static final Message HAVE_ALL 		= new BTHaveAll( (byte)1 );
+  private static final Message HAVE_NONE 		= new BTHaveNone( (byte)1 );
+
   private DirectByteBuffer payload_buffer = null;
   private final DirectByteBuffer length_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, 4 );
   private final ByteBuffer[] decode_array = new ByteBuffer[] { null, length_buffer.getBuffer( SS ) };
+  private final ByteBuffer[] bulk_array = new ByteBuffer[1];
+
+  private boolean bulk_allowed = false;  //only once past the handshake, which pauses decoding
+  private ByteBuffer bulk_pending;  //bulk read bytes left undecoded by a pause
+  private volatile Transport bulk_pending_transport;
 
 
   private boolean reading_length_mode = true;
@@ -61,7 +102,7 @@ public class BTMessageDecoder implements MessageStreamDecoder {
   private volatile boolean destroyed = false;
   private volatile boolean is_paused = false;
 
-  private final ArrayList messages_last_read = new ArrayList();
+  private final ArrayList<Message> messages_last_read = new ArrayList<>();
   private int protocol_bytes_last_read = 0;
   private int data_bytes_last_read = 0;
   private int percent_complete = -1;
@@ -95,7 +136,48 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	        break;
 	      }
 
-	      int bytes_possible = preReadProcess( bytes_remaining );
+	      if( bulk_pending != null ) {  //already read (and counted) but not yet decoded
+	        ByteBuffer pending = bulk_pending;
+	        bulk_pending = null;
+	        bulk_pending_transport = null;
+	        decodeBulk( transport, pending, false );
+	        continue;
+	      }
+
+	      if( bulk_read_enabled && bulk_allowed && reading_length_mode && length_buffer.position( SS ) == 0 ) {
+	        ByteBuffer bb = bulk_buffers.get();
+	        bb.clear();
+	        bb.limit( Math.min( bytes_remaining, BULK_READ_SIZE ) );
+
+	        int bytes_possible = bb.remaining();
+
+	        bulk_array[0] = bb;
+	        try {
+	          transport.read( bulk_array, 0, 1 );
+	        }
+	        finally {
+	          bulk_array[0] = null;
+	        }
+
+	        bb.flip();
+
+	        int bytes_read = bb.remaining();
+
+	        bytes_remaining -= bytes_read;
+
+	        decodeBulk( transport, bb, true );
+
+	        if( bytes_read < bytes_possible ) {
+	          break;
+	        }
+
+	        continue;
+	      }
+
+	      //with bulk reads going, stop at the end of the payload so the next message starts a bulk read
+	      int end_buffer = !reading_length_mode && bulk_read_enabled && bulk_allowed ? 1 : 2;
+
+	      int bytes_possible = preReadProcess( bytes_remaining, end_buffer );
 
 	      if( bytes_possible < 1 ) {
 	        Debug.out( "ERROR BT: bytes_possible < 1" );
@@ -106,7 +188,7 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	        transport.read( decode_array, 1, 1 );  //only read into length buffer
 	      }
 	      else {
-	        transport.read( decode_array, 0, 2 );  //read into payload buffer, and possibly next message length
+	        transport.read( decode_array, 0, end_buffer );  //read into payload buffer, and possibly next message length
 	      }
 
 	      int bytes_read = postReadProcess();
@@ -147,7 +229,7 @@ public class BTMessageDecoder implements MessageStreamDecoder {
   public Message[] removeDecodedMessages() {
     if( messages_last_read.isEmpty() )  return null;
 
-    Message[] msgs = (Message[])messages_last_read.toArray( new Message[messages_last_read.size()] );
+    Message[] msgs = messages_last_read.toArray( new Message[messages_last_read.size()] );
 
     messages_last_read.clear();
 
@@ -215,7 +297,13 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	    }
     }
     
-    ByteBuffer unused = ByteBuffer.allocate( lbuff_read + pbuff_read );   //TODO convert to direct?
+    ByteBuffer pending = bulk_pending;
+
+    bulk_pending = null;
+
+    int pending_read = pending == null ? 0 : pending.remaining();
+
+    ByteBuffer unused = ByteBuffer.allocate( lbuff_read + pbuff_read + pending_read );   //TODO convert to direct?
 
     if ( lb != null ){
     	
@@ -235,6 +323,11 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	    	Debug.out( "hit known threading issue" );
 	    }
 	
+	    if ( pending != null ){
+
+	    	unused.put( pending );  //read after anything in the length/payload buffers
+	    }
+
 	    unused.flip();
 	
 	    lb.returnToPool();
@@ -249,7 +342,7 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 
     try{
 	    for( int i=0; i < messages_last_read.size(); i++ ) {
-	      Message msg = (Message)messages_last_read.get( i );
+	      Message msg = messages_last_read.get( i );
 	      msg.destroy();
 	    }
     }catch( RuntimeException e ){
@@ -263,7 +356,7 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 
 
 
-  private int preReadProcess( int allowed ) {
+  private int preReadProcess( int allowed, int end_buffer ) {
     if( allowed < 1 ) {
       Debug.out( "allowed < 1" );
     }
@@ -275,7 +368,7 @@ public class BTMessageDecoder implements MessageStreamDecoder {
     int start_buff = reading_length_mode ? 1 : 0;
     boolean marked = false;
 
-    for( int i = start_buff; i < 2; i++ ) {  //set buffer limits according to bytes allowed
+    for( int i = start_buff; i < end_buffer; i++ ) {  //set buffer limits according to bytes allowed
       ByteBuffer bb = decode_array[ i ];
 
       if( bb == null ) {
@@ -337,108 +430,283 @@ public class BTMessageDecoder implements MessageStreamDecoder {
       }
 
       if( !payload_buffer.hasRemaining( SS ) && !is_paused ) {  //full message received!
-        payload_buffer.position( SS, 0 );
+        messageReceived();
+      }
+      else {  //only partial received so far
+        percent_complete = (payload_buffer.position( SS ) * 100) / message_length;  //compute receive percentage
+      }
+    }
 
-        DirectByteBuffer ref_buff = payload_buffer;
-        payload_buffer = null;
 
-        if( reading_handshake_message ) {  //decode handshake
-          reading_handshake_message = false;
+    if( reading_length_mode && !destroyed ) {
+      length_buffer.limit( SS, 4 );  //ensure proper buffer limit
 
-          DirectByteBuffer handshake_data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, 68 );
-          handshake_data.putInt( SS, HANDSHAKE_FAKE_LENGTH );
-          handshake_data.put( SS, ref_buff );
-          handshake_data.flip( SS );
+      prot_bytes_read += (pre_read_start_buffer == 1) ? length_buffer.position( SS ) - pre_read_start_position : length_buffer.position( SS );
 
-          ref_buff.returnToPool();
+      if( !length_buffer.hasRemaining( SS ) ) {  //done reading the length
+        lengthReceived();
+      }
+    }
 
-          try {
-            Message handshake = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_HANDSHAKE_BYTES, handshake_data, (byte)1 );
-            messages_last_read.add( handshake );
-          }
-          catch( MessageException me ) {
-            handshake_data.returnToPool();
-            throw new IOException( "BT message decode failed: " + me.getMessage() );
-          }
+    protocol_bytes_last_read += prot_bytes_read;
+    data_bytes_last_read += data_bytes_read;
 
-          //we need to auto-pause decoding until we're told to start again externally,
-          //as we don't want to accidentally read the next message on the stream if it's an AZ-format handshake
-          pauseDecoding();
-        }
-        else {  //decode normal message
-          try {
-            messages_last_read.add(createMessage(ref_buff));
-          }
-          catch( Throwable e ) {
-            ref_buff.returnToPoolIfNotFree();
+    return prot_bytes_read + data_bytes_read;
+  }
 
-        	// maintain unexpected errors as such so they get logged later
 
-            if ( e instanceof RuntimeException ){
 
-          	  throw((RuntimeException)e );
-            }
+  private void messageReceived() throws IOException {
+    payload_buffer.position( SS, 0 );
 
-            throw new IOException( "BT message decode failed: " +e.getMessage() );
-          }
+    DirectByteBuffer ref_buff = payload_buffer;
+    payload_buffer = null;
+
+    if( reading_handshake_message ) {  //decode handshake
+      reading_handshake_message = false;
+
+      DirectByteBuffer handshake_data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, 68 );
+      handshake_data.putInt( SS, HANDSHAKE_FAKE_LENGTH );
+      handshake_data.put( SS, ref_buff );
+      handshake_data.flip( SS );
+
+      ref_buff.returnToPool();
+
+      try {
+        Message handshake = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_HANDSHAKE_BYTES, handshake_data, (byte)1 );
+        messages_last_read.add( handshake );
+      }
+      catch( MessageException me ) {
+        handshake_data.returnToPool();
+        throw new IOException( "BT message decode failed: " + me.getMessage() );
+      }
+
+      //we need to auto-pause decoding until we're told to start again externally,
+      //as we don't want to accidentally read the next message on the stream if it's an AZ-format handshake
+      pauseDecoding();
+    }
+    else {  //decode normal message
+      try {
+        messages_last_read.add(createMessage(ref_buff));
+
+        bulk_allowed = true;  //past any handshake now
+      }
+      catch( Throwable e ) {
+        ref_buff.returnToPoolIfNotFree();
+
+    	// maintain unexpected errors as such so they get logged later
+
+        if ( e instanceof RuntimeException ){
+
+      	  throw((RuntimeException)e );
         }
 
-        reading_length_mode = true;  //see if we've already read the next message's length
-        percent_complete = -1;  //reset receive percentage
+        throw new IOException( "BT message decode failed: " +e.getMessage() );
       }
-      else {  //only partial received so far
-        percent_complete = (payload_buffer.position( SS ) * 100) / message_length;  //compute receive percentage
+    }
+
+    reading_length_mode = true;  //see if we've already read the next message's length
+    percent_complete = -1;  //reset receive percentage
+  }
+
+
+
+  private void lengthReceived() throws IOException {
+    reading_length_mode = false;
+
+    length_buffer.position( SS, 0 );
+    message_length = length_buffer.getInt( SS );
+
+    length_buffer.position( SS, 0 );  //reset it for next length read
+
+    if( message_length == HANDSHAKE_FAKE_LENGTH ) {  //handshake message
+      reading_handshake_message = true;
+      message_length = 64;  //restore 'real' length
+      payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, message_length );
+    }
+    else if( message_length == 0 ) {  //keep-alive message
+      reading_length_mode = true;
+      last_received_was_keepalive = true;
+
+      try{
+        Message keep_alive = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_KEEP_ALIVE_BYTES, null, (byte)1 );
+        messages_last_read.add( keep_alive );
       }
+      catch( MessageException me ) {
+        throw new IOException( "BT message decode failed: " + me.getMessage() );
+      }
+    }
+    else if( message_length < MIN_MESSAGE_LENGTH || message_length > MAX_MESSAGE_LENGTH ) {
+      throw new IOException( "Invalid message length given for BT message decode: " + message_length );
     }
+    else {  //normal message
+      payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_PAYLOAD, message_length );
+    }
+  }
 
 
-    if( reading_length_mode && !destroyed ) {
-      length_buffer.limit( SS, 4 );  //ensure proper buffer limit
 
-      prot_bytes_read += (pre_read_start_buffer == 1) ? length_buffer.position( SS ) - pre_read_start_position : length_buffer.position( SS );
+  /**
+   * Decodes everything in a bulk read buffer. Whole fixed-size control messages are decoded in place,
+   * anything else (including the partial message the buffer ends with) is fed through the normal
+   * length/payload state so large messages continue with direct reads into their payload buffer.
+   * @param account whether the bytes still need counting as protocol/data bytes read
+   */
+  private void decodeBulk( Transport transport, ByteBuffer bb, boolean account ) throws IOException {
+    while( bb.hasRemaining() ) {
+      if( destroyed ) {
+        return;
+      }
 
-      if( !length_buffer.hasRemaining( SS ) ) {  //done reading the length
-        reading_length_mode = false;
+      if( is_paused ) {  //keep the rest until we're resumed, it's already been read off the transport
+        if( account ) {
+          protocol_bytes_last_read += bb.remaining();
+        }
+
+        ByteBuffer pending = ByteBuffer.allocate( bb.remaining() );
+        pending.put( bb );
+        pending.flip();
+
+        bulk_pending = pending;
+        bulk_pending_transport = transport;
+
+        return;
+      }
 
-        length_buffer.position( SS, 0 );
-        message_length = length_buffer.getInt( SS );
+      ByteBuffer lb = length_buffer.getBuffer( SS );
 
-        length_buffer.position( SS, 0 );  //reset it for next length read
+      if( reading_length_mode && lb.position() == 0 && bb.remaining() >= 5 ) {
+        int pos = bb.position();
+        int length = bb.getInt( pos );
 
-        if( message_length == HANDSHAKE_FAKE_LENGTH ) {  //handshake message
-          reading_handshake_message = true;
-          message_length = 64;  //restore 'real' length
-          payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, message_length );
+        if( length > 0 && length <= MAX_MESSAGE_LENGTH && bb.remaining() >= 4 + length ) {
+          Message msg = decodeFixedSize( bb, pos + 4, length );
+
+          if( msg != null ) {
+            bb.position( pos + 4 + length );
+
+            if( account ) {
+              protocol_bytes_last_read += 4 + length;
+            }
+
+            messages_last_read.add( msg );
+            continue;
+          }
         }
-        else if( message_length == 0 ) {  //keep-alive message
-          reading_length_mode = true;
-          last_received_was_keepalive = true;
+      }
+
+      int n;
+
+      if( reading_length_mode ) {
+        lb.limit( 4 );
+
+        n = copy( bb, lb );
 
-          try{
-            Message keep_alive = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_KEEP_ALIVE_BYTES, null, (byte)1 );
-            messages_last_read.add( keep_alive );
+        if( account ) {
+          protocol_bytes_last_read += n;
+        }
+
+        if( !lb.hasRemaining() ) {
+          lengthReceived();
+        }
+      }
+      else {
+        ByteBuffer pb = payload_buffer.getBuffer( SS );
+        pb.limit( message_length );
+
+        n = copy( bb, pb );
+
+        if( account ) {
+          if( BTMessageFactory.getMessageType( payload_buffer ) == Message.TYPE_DATA_PAYLOAD ) {
+            data_bytes_last_read += n;
           }
-          catch( MessageException me ) {
-            throw new IOException( "BT message decode failed: " + me.getMessage() );
+          else {
+            protocol_bytes_last_read += n;
           }
         }
-        else if( message_length < MIN_MESSAGE_LENGTH || message_length > MAX_MESSAGE_LENGTH ) {
-          throw new IOException( "Invalid message length given for BT message decode: " + message_length );
+
+        if( !pb.hasRemaining() && !is_paused ) {
+          messageReceived();
         }
-        else {  //normal message
-          payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_PAYLOAD, message_length );
+        else {
+          percent_complete = (pb.position() * 100) / message_length;
         }
       }
     }
 
-    protocol_bytes_last_read += prot_bytes_read;
-    data_bytes_last_read += data_bytes_read;
+    last_received_was_keepalive = false;  //only matters for the single length reads
+  }
 
-    return prot_bytes_read + data_bytes_read;
+
+
+  private static int copy( ByteBuffer source, ByteBuffer target ) {
+    int n = Math.min( source.remaining(), target.remaining() );
+
+    int limit = source.limit();
+    source.limit( source.position() + n );
+    target.put( source );
+    source.limit( limit );
+
+    return n;
   }
 
 
 
+  /**
+   * @return the message, or null if it isn't one of the fixed-size ones or doesn't look valid, in which
+   * case the normal decode will deal with it (and report any error)
+   */
+  private static Message decodeFixedSize( ByteBuffer bb, int pos, int length ) {
+    int payload_length = length - 1;
+
+    switch( bb.get( pos ) ) {
+      case BTMessage.SUBID_BT_CHOKE:
+        return payload_length == 0 ? CHOKE : null;
+
+      case BTMessage.SUBID_BT_UNCHOKE:
+        return payload_length == 0 ? UNCHOKE : null;
+
+      case BTMessage.SUBID_BT_INTERESTED:
+        return payload_length == 0 ? INTERESTED : null;
+
+      case BTMessage.SUBID_BT_UNINTERESTED:
+        return payload_length == 0 ? UNINTERESTED : null;
+
+      case BTMessage.SUBID_BT_HAVE_ALL:
+        return payload_length == 0 ? HAVE_ALL : null;
+
+      case BTMessage.SUBID_BT_HAVE_NONE:
+        return payload_length == 0 ? HAVE_NONE : null;
+
+      case BTMessage.SUBID_BT_HAVE: {
+        if( payload_length != 4 )  return null;
+
+        int number = bb.getInt( pos + 1 );
+
+        return number < 0 ? null : new BTHave( number, (byte)1 );
+      }
+
+      case BTMessage.SUBID_BT_REQUEST:
+      case BTMessage.SUBID_BT_CANCEL: {
+        if( payload_length != 12 )  return null;
+
+        int number = bb.getInt( pos + 1 );
+        int offset = bb.getInt( pos + 5 );
+        int len = bb.getInt( pos + 9 );
+
+        if( number < 0 || offset < 0 || len < 0 )  return null;
+
+        return bb.get( pos ) == BTMessage.SUBID_BT_REQUEST ? new BTRequest( number, offset, len, (byte)1 ) : new BTCancel( number, offset, len, (byte)1 );
+      }
+
+      default:
+        return null;
+    }
+  }
+
+
+
+
   @Override
   public void pauseDecoding() {
     is_paused = true;
@@ -448,6 +716,12 @@ public class BTMessageDecoder implements MessageStreamDecoder {
   @Override
   public void resumeDecoding() {
     is_paused = false;
+
+    Transport transport = bulk_pending_transport;
+
+    if( transport != null ) {
+      transport.setReadyForRead();  //nothing may arrive to prompt decoding what we're holding
+    }
   }
 
   // Overridden by LTMessageDecoder.
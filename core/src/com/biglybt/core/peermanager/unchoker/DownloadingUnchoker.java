@@ -34,6 +34,8 @@ public class DownloadingUnchoker implements Unchoker {
   private ArrayList<PEPeer> chokes 		= new ArrayList<>();
   private ArrayList<PEPeer> unchokes 	= new ArrayList<>();
 
+  private final UnchokerPeerSelector selector = new UnchokerPeerSelector();
+
 
   protected DownloadingUnchoker() {
     /* nothing */
@@ -60,11 +62,14 @@ public class DownloadingUnchoker implements Unchoker {
     //if not enough unchokes
     int needed = max_to_unchoke - num_unchoked;
     if( needed > 0 ) {
-      for( int i=0; i < needed; i++ ) {
-    	PEPeer peer = UnchokerUtil.getNextOptimisticPeer( all_peers, true, true );
-        if( peer == null )  break;  //no more new unchokes avail
-        to_unchoke.add( peer );
-        peer.setOptimisticUnchoke( true );
+      //pick them all in one go, picking one at a time rescans (and could repeat) peers
+      ArrayList<PEPeer> peers = UnchokerUtil.getNextOptimisticPeers( all_peers, true, true, needed, selector );
+      if( peers != null ) {
+        for( int i=0; i < peers.size(); i++ ) {
+          PEPeer peer = peers.get( i );
+          to_unchoke.add( peer );
+          peer.setOptimisticUnchoke( true );
+        }
       }
     }
 
@@ -79,7 +84,6 @@ public class DownloadingUnchoker implements Unchoker {
 
     ArrayList<PEPeer> optimistic_unchokes = new ArrayList<>();
     ArrayList<PEPeer> best_peers = new ArrayList<>();
-    long[] bests = new long[ max_to_unchoke ];  //ensure we never pick more slots than allowed to unchoke
 
 
     //get all the currently unchoked peers
@@ -115,22 +119,26 @@ public class DownloadingUnchoker implements Unchoker {
 
 
     //fill slots with peers who we are currently downloading the fastest from
+    //(ensure we never pick more slots than allowed to unchoke)
     int start_pos = best_peers.size();
+    selector.reset( max_to_unchoke - start_pos );
     for( int i=0; i < all_peers.size(); i++ ) {
       PEPeer peer = all_peers.get( i );
 
       if( peer.isInteresting() && UnchokerUtil.isUnchokable( peer, false ) && !best_peers.contains( peer ) ) {  //viable peer found
         long rate = peer.getStats().getSmoothDataReceiveRate();
         if( rate > 256 ) {  //filter out really slow peers
-          UnchokerUtil.updateLargestValueFirstSort( rate, bests, peer, best_peers, start_pos );
+          selector.offer( rate, peer );
         }
       }
     }
+    selector.drainTo( best_peers, true );
 
 
     //if we havent yet picked enough slots
     if( best_peers.size() < max_to_unchoke ) {
       start_pos = best_peers.size();
+      selector.reset( max_to_unchoke - start_pos );
 
       //fill the remaining slots with peers that we have downloaded from in the past
       for( int i=0; i < all_peers.size(); i++ ) {
@@ -140,10 +148,11 @@ public class DownloadingUnchoker implements Unchoker {
           long uploaded_ratio = peer.getStats().getTotalDataBytesSent() / (peer.getStats().getTotalDataBytesReceived() + (DiskManager.BLOCK_SIZE-1));
           //make sure we haven't already uploaded several times as much data as they've sent us
           if( uploaded_ratio <3) {
-            UnchokerUtil.updateLargestValueFirstSort( peer.getStats().getTotalDataBytesReceived(), bests, peer, best_peers, start_pos );
+            selector.offer( peer.getStats().getTotalDataBytesReceived(), peer );
           }
         }
       }
+      selector.drainTo( best_peers, true );
     }
 
 
@@ -157,19 +166,23 @@ public class DownloadingUnchoker implements Unchoker {
 
     //if we still have remaining slots
     while( best_peers.size() < max_to_unchoke ) {
-      PEPeer peer = UnchokerUtil.getNextOptimisticPeer( all_peers, true, true );  //just pick one optimistically
-      if( peer == null )  break;  //no more new unchokes avail
+      //just pick them optimistically, all the needed ones at once
+      ArrayList<PEPeer> peers = UnchokerUtil.getNextOptimisticPeers( all_peers, true, true, max_to_unchoke - best_peers.size(), selector );
+      if( peers == null )  break;  //no more new unchokes avail
 
-      if( !best_peers.contains( peer ) ) {
-        best_peers.add( peer );
-        peer.setOptimisticUnchoke( true );
-      }
-      else {
-        //we're here because the given optimistic peer is already "best", but is choked still,
-        //which means it will continually get picked by the getNextOptimisticPeer() method,
-        //and we'll loop forever if there are no other peers to choose from
-        peer.sendUnChoke();  //send unchoke immediately, so it won't get picked optimistically anymore
-      	//all_peers.remove( peer );  //remove from all_peers list, so it won't get picked optimistically anymore    //TODO
+      for( int i=0; i < peers.size(); i++ ) {
+        PEPeer peer = peers.get( i );
+
+        if( !best_peers.contains( peer ) ) {
+          best_peers.add( peer );
+          peer.setOptimisticUnchoke( true );
+        }
+        else {
+          //we're here because the given optimistic peer is already "best", but is choked still,
+          //which means it will continually get picked by the getNextOptimisticPeers() method,
+          //and we'll loop forever if there are no other peers to choose from
+          peer.sendUnChoke();  //send unchoke immediately, so it won't get picked optimistically anymore
+        }
       }
     }
 
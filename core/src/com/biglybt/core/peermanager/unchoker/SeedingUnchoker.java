@@ -20,9 +20,10 @@
 package com.biglybt.core.peermanager.unchoker;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
@@ -54,6 +55,8 @@ public class SeedingUnchoker implements Unchoker {
   private ArrayList<PEPeer> chokes 		= new ArrayList<>();
   private ArrayList<PEPeer> unchokes 	= new ArrayList<>();
 
+  private final UnchokerPeerSelector selector = new UnchokerPeerSelector();
+
 
   protected SeedingUnchoker() {
     /* nothing */
@@ -143,48 +146,75 @@ public class SeedingUnchoker implements Unchoker {
       ArrayList<PEPeer> peers_ordered_by_rate 		= new ArrayList<>();
       ArrayList<PEPeer> peers_ordered_by_uploaded 	= new ArrayList<>();
 
-      long[] rates = new long[ unchokes.size() ];  //0-initialized
-      long[] uploaded = new long[ rates.length ];  //0-initialized
-
-      //calculate factor rankings
+      //calculate reverse order by our upload rate to them
+      selector.reset( unchokes.size() );
       for( int i=0; i < unchokes.size(); i++ ) {
     	PEPeer peer = unchokes.get( i );
 
         long rate = peer.getStats().getDataSendRate();
         if( rate > 256 ) {  //filter out really slow peers
-          //calculate reverse order by our upload rate to them
-          UnchokerUtil.updateLargestValueFirstSort( rate, rates, peer, peers_ordered_by_rate, 0 );
+          selector.offer( rate, peer );
+        }
+      }
+      selector.drainTo( peers_ordered_by_rate, false );  //we want higher rates at the end
 
-          //calculate order by the total number of bytes we've uploaded to them
-          UnchokerUtil.updateLargestValueFirstSort( peer.getStats().getTotalDataBytesSent(), uploaded, peer, peers_ordered_by_uploaded, 0 );
+      //calculate order by the total number of bytes we've uploaded to them
+      selector.reset( peers_ordered_by_rate.size() );
+      for( int i=0; i < unchokes.size(); i++ ) {
+    	PEPeer peer = unchokes.get( i );
+
+        if( peer.getStats().getDataSendRate() > 256 ) {
+          selector.offer( peer.getStats().getTotalDataBytesSent(), peer );
         }
       }
+      selector.drainTo( peers_ordered_by_uploaded, true );
 
-      Collections.reverse( peers_ordered_by_rate );  //we want higher rates at the end
+      //positions in the factor rankings, rather than an indexOf scan per peer
+      Map<PEPeer,Integer> rate_positions = new IdentityHashMap<>( peers_ordered_by_rate.size() * 2 );
+      Map<PEPeer,Integer> uploaded_positions = new IdentityHashMap<>( peers_ordered_by_uploaded.size() * 2 );
+      for( int i=0; i < peers_ordered_by_rate.size(); i++ ) {
+        rate_positions.put( peers_ordered_by_rate.get( i ), i );
+      }
+      for( int i=0; i < peers_ordered_by_uploaded.size(); i++ ) {
+        uploaded_positions.put( peers_ordered_by_uploaded.get( i ), i );
+      }
 
+      //combine factor rankings to get best, keeping only what fits alongside the optimistic unchokes
       ArrayList<PEPeer> peers_ordered_by_rank = new ArrayList<>();
-      long[] ranks = new long[ peers_ordered_by_rate.size() ];
-      Arrays.fill( ranks, Long.MIN_VALUE );
-
-      //combine factor rankings to get best
+      selector.reset( Math.min( peers_ordered_by_rate.size(), max_to_unchoke - max_optimistic ));
       for( int i=0; i < unchokes.size(); i++ ) {
     	PEPeer peer = unchokes.get( i );
 
         //"better" peers have high indexes (toward the end of each list)
-        long rate_factor = peers_ordered_by_rate.indexOf( peer );
-        long uploaded_factor = peers_ordered_by_uploaded.indexOf( peer );
+        Integer rate_factor = rate_positions.get( peer );
+        Integer uploaded_factor = uploaded_positions.get( peer );
+
+        if( rate_factor == null )  continue;  //wasn't downloading fast enough, skip add so it will be choked automatically
+
+        long rank_factor = rate_factor.longValue() + ( uploaded_factor == null ? -1 : uploaded_factor.longValue());
 
-        if( rate_factor == -1 )  continue;  //wasn't downloading fast enough, skip add so it will be choked automatically
+        selector.offer( rank_factor, peer );
+      }
+      selector.drainTo( peers_ordered_by_rank, true );
 
-        long rank_factor = rate_factor + uploaded_factor;
+      Map<PEPeer,Boolean> ranked = new IdentityHashMap<>( peers_ordered_by_rank.size() * 2 );
+      for( int i=0; i < peers_ordered_by_rank.size(); i++ ) {
+        ranked.put( peers_ordered_by_rank.get( i ), Boolean.TRUE );
+      }
 
-        UnchokerUtil.updateLargestValueFirstSort( rank_factor, ranks, peer, peers_ordered_by_rank, 0 );
+      //count the drops so the replacement optimistic unchokes can be picked in one pass
+      int num_drops = 0;
+      for( int i=0; i < unchokes.size(); i++ ) {
+        if( !ranked.containsKey( unchokes.get( i ))) {
+          num_drops++;
+        }
       }
 
-      //make space for new optimistic unchokes
-      while( peers_ordered_by_rank.size() > max_to_unchoke - max_optimistic ) {
-        peers_ordered_by_rank.remove( peers_ordered_by_rank.size() - 1 );
+      ArrayList<PEPeer> optimistic_peers = null;
+      if( num_drops > 0 ) {
+        optimistic_peers = UnchokerUtil.getNextOptimisticPeers( all_peers, false, false, num_drops, selector );
       }
+      int next_optimistic = 0;
 
       //update choke list with drops and unchoke list with optimistic unchokes
       ArrayList<PEPeer> to_unchoke = new ArrayList<>();
@@ -193,11 +223,11 @@ public class SeedingUnchoker implements Unchoker {
 
         peer.setOptimisticUnchoke( false );
 
-        if( !peers_ordered_by_rank.contains( peer ) ) {  //should be choked
+        if( !ranked.containsKey( peer ) ) {  //should be choked
           //we assume that any/all chokes are to be replace by optimistics
-          PEPeer optimistic_peer = UnchokerUtil.getNextOptimisticPeer( all_peers, false, false );
+          if( optimistic_peers != null && next_optimistic < optimistic_peers.size() ) {  //only choke if we've got a peer to replace it with
+            PEPeer optimistic_peer = optimistic_peers.get( next_optimistic++ );
 
-          if( optimistic_peer != null ) {  //only choke if we've got a peer to replace it with
             chokes.add( peer );
             it.remove();
 
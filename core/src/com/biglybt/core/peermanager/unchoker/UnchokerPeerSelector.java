@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.unchoker;
+
+import java.util.ArrayList;
+
+import com.biglybt.core.peer.PEPeer;
+
+/**
+ * Bounded top-K selection of peers by a long value, backed by a binary min-heap over reusable
+ * arrays. Offering n peers costs O(n log k) rather than the O(n*k) of inserting into an ordered
+ * list, and nothing is allocated once the arrays have grown to the largest k seen.
+ *
+ * The resulting order is the same as {@link UnchokerUtil#updateLargestValueFirstSort}: largest
+ * value first with ties going to the most recently offered peer.
+ *
+ * Not thread safe, each unchoker keeps its own.
+ */
+
+public class
+UnchokerPeerSelector
+{
+	private long[]		values	= new long[16];
+	private int[]		seqs	= new int[16];
+	private PEPeer[]	peers	= new PEPeer[16];
+
+	private int		limit;
+	private int		size;
+	private int		next_seq;
+
+	/**
+	 * Start a new selection keeping at most max_selected peers
+	 */
+
+	public void
+	reset(
+		int		max_selected )
+	{
+		for ( int i=0;i<size;i++){
+
+			peers[i] = null;
+		}
+
+		limit		= Math.max( 0, max_selected );
+		size		= 0;
+		next_seq	= 0;
+	}
+
+	public void
+	offer(
+		long		value,
+		PEPeer		peer )
+	{
+		int	seq = next_seq++;
+
+		if ( size < limit ){
+
+			if ( size == values.length ){
+
+				int	new_len = Math.min( limit, size*2 );
+
+				long[]		new_values	= new long[new_len];
+				int[]		new_seqs	= new int[new_len];
+				PEPeer[]	new_peers	= new PEPeer[new_len];
+
+				System.arraycopy( values, 0, new_values, 0, size );
+				System.arraycopy( seqs, 0, new_seqs, 0, size );
+				System.arraycopy( peers, 0, new_peers, 0, size );
+
+				values	= new_values;
+				seqs	= new_seqs;
+				peers	= new_peers;
+			}
+
+			int	pos = size++;
+
+			set( pos, value, seq, peer );
+
+			siftUp( pos );
+
+		}else if ( limit > 0 && value >= values[0] ){
+
+				// the new peer always has the higher sequence so wins a tie with the smallest
+
+			set( 0, value, seq, peer );
+
+			siftDown( 0, size );
+		}
+	}
+
+	public int
+	size()
+	{
+		return( size );
+	}
+
+	/**
+	 * Adds the selected peers to the list in order and resets the selector
+	 *
+	 * @param largest_first largest value first if true, smallest first otherwise
+	 */
+
+	public void
+	drainTo(
+		ArrayList<PEPeer>	list,
+		boolean				largest_first )
+	{
+			// heapsort in place - repeatedly moving the smallest to the end leaves the array
+			// in descending order
+
+		for ( int end=size-1;end>0;end--){
+
+			swap( 0, end );
+
+			siftDown( 0, end );
+		}
+
+		list.ensureCapacity( list.size() + size );
+
+		if ( largest_first ){
+
+			for ( int i=0;i<size;i++){
+
+				list.add( peers[i] );
+			}
+		}else{
+
+			for ( int i=size-1;i>=0;i--){
+
+				list.add( peers[i] );
+			}
+		}
+
+		reset( limit );
+	}
+
+	private boolean
+	less(
+		int		a,
+		int		b )
+	{
+		return( values[a] < values[b] || ( values[a] == values[b] && seqs[a] < seqs[b] ));
+	}
+
+	private void
+	set(
+		int		pos,
+		long	value,
+		int		seq,
+		PEPeer	peer )
+	{
+		values[pos]	= value;
+		seqs[pos]	= seq;
+		peers[pos]	= peer;
+	}
+
+	private void
+	swap(
+		int		a,
+		int		b )
+	{
+		long	v = values[a];
+		int		s = seqs[a];
+		PEPeer	p = peers[a];
+
+		values[a]	= values[b];
+		seqs[a]		= seqs[b];
+		peers[a]	= peers[b];
+
+		values[b]	= v;
+		seqs[b]		= s;
+		peers[b]	= p;
+	}
+
+	private void
+	siftUp(
+		int		pos )
+	{
+		while( pos > 0 ){
+
+			int	parent = ( pos - 1 ) >>> 1;
+
+			if ( !less( pos, parent )){
+
+				break;
+			}
+
+			swap( pos, parent );
+
+			pos = parent;
+		}
+	}
+
+	private void
+	siftDown(
+		int		pos,
+		int		len )
+	{
+		while( true ){
+
+			int	child = ( pos << 1 ) + 1;
+
+			if ( child >= len ){
+
+				break;
+			}
+
+			if ( child + 1 < len && less( child + 1, child )){
+
+				child++;
+			}
+
+			if ( !less( child, pos )){
+
+				break;
+			}
+
+			swap( pos, child );
+
+			pos = child;
+		}
+	}
+}
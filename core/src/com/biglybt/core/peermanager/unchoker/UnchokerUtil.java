@@ -104,6 +104,15 @@ public class UnchokerUtil {
   }
 
   public static ArrayList<PEPeer> getNextOptimisticPeers( ArrayList<PEPeer> all_peers, boolean factor_reciprocated, boolean allow_snubbed, int num_needed ) {
+	  return( getNextOptimisticPeers( all_peers, factor_reciprocated, allow_snubbed, num_needed, null ));
+  }
+
+  /**
+   * As above but ordering by reciprocation through the supplied selector, so unchokers can
+   * reuse its arrays from round to round
+   * @param selector scratch selector, may be null
+   */
+  public static ArrayList<PEPeer> getNextOptimisticPeers( ArrayList<PEPeer> all_peers, boolean factor_reciprocated, boolean allow_snubbed, int num_needed, UnchokerPeerSelector selector ) {
     //find all potential optimistic peers
     ArrayList<PEPeer> optimistics = new ArrayList<>();
     for( int i=0; i < all_peers.size(); i++ ) {
@@ -132,9 +141,13 @@ public class UnchokerUtil {
 
     if ( factor_reciprocated ){
 
-      ArrayList<PEPeerTransport> ratioed_peers = new ArrayList<>(optimistics.size());
-      long[] ratios = new long[ optimistics.size() ];
-      Arrays.fill( ratios, Long.MIN_VALUE );
+      ArrayList<PEPeer> ratioed_peers = new ArrayList<>(optimistics.size());
+
+      if ( selector == null ){
+    	  selector = new UnchokerPeerSelector();
+      }
+
+      selector.reset( optimistics.size());
 
       //order by upload ratio
       for( int i=0; i < optimistics.size(); i++ ) {
@@ -143,9 +156,11 @@ public class UnchokerUtil {
         //score of >0 means we've uploaded more, <0 means we've downloaded more
         long score = peer.getStats().getTotalDataBytesSent() - peer.getStats().getTotalDataBytesReceived();
 
-        UnchokerUtil.updateLargestValueFirstSort( score, ratios, peer, ratioed_peers, 0 );  //higher value = worse score
+        selector.offer( score, peer );  //higher value = worse score
       }
 
+      selector.drainTo( ratioed_peers, true );
+
 	  for (int i=0;i<num_needed && ratioed_peers.size() > 0;i++ ){
 
 		  double factor = 1F / ( 0.8 + 0.2 * Math.pow( RandomUtils.nextFloat(), -1 ) );  //map to sorted list using a logistic curve
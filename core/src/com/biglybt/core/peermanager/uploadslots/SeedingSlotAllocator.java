@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.uploadslots;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
+import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.networkmanager.NetworkManager;
+import com.biglybt.core.peer.PEPeer;
+import com.biglybt.core.peermanager.unchoker.UnchokerUtil;
+import com.biglybt.core.util.AEMonitor;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Shares one pool of upload slots between all seeding downloads instead of each one unchoking
+ * up to its own limit. Every round (ten seconds, driven lazily by the peer managers asking for
+ * their limit) the pool is handed out a slot at a time to whichever download gains most from
+ * one more slot:
+ *
+ *   swarm scarcity (leechers per seed) * expected rate per slot * ratio weight / (slots held + 1)
+ *
+ * The expected rate is what the download achieved per slot last round, or the configured slot
+ * rate if it had none. Downloads that are already past their ratio goal (or that have simply
+ * uploaded more) are weighted down, slots kept from the last round get a small bonus so
+ * allocations don't churn, and downloads with waiting peers that got nothing gain weight each
+ * round so they are not starved forever. No download is given more than its own max uploads or
+ * than the number of peers wanting data.
+ *
+ * The pool is the configured slot count or, if that is zero, the upload limit divided by the
+ * slot rate. With no limit set every download keeps its own max uploads.
+ */
+
+class SeedingSlotAllocator {
+
+	private static final long ROUND_PERIOD = 10*1000;
+
+	private static final double HELD_SLOT_BONUS		= 1.25;
+	private static final double	MAX_SCARCITY		= 50;
+	private static final double OVER_GOAL_WEIGHT	= 0.25;
+	private static final int	STARVED_ROUNDS_PER_DOUBLING = 6;
+
+	private static boolean	enabled;
+	private static int		max_slots;
+	private static int		slot_rate;
+	private static float	ratio_goal;
+
+	static{
+		COConfigurationManager.addAndFireParameterListeners(
+			new String[]{
+				ConfigKeys.Transfer.BCFG_UPLOAD_SLOTS_GLOBAL_SEEDING_ENABLE,
+				ConfigKeys.Transfer.ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_MAX,
+				ConfigKeys.Transfer.ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_SLOT_KBS,
+				"Stop Ratio" },
+			new ParameterListener() {
+				@Override
+				public void parameterChanged( String name ) {
+					enabled		= COConfigurationManager.getBooleanParameter( ConfigKeys.Transfer.BCFG_UPLOAD_SLOTS_GLOBAL_SEEDING_ENABLE );
+					max_slots	= COConfigurationManager.getIntParameter( ConfigKeys.Transfer.ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_MAX );
+					slot_rate	= Math.max( 1, COConfigurationManager.getIntParameter( ConfigKeys.Transfer.ICFG_UPLOAD_SLOTS_GLOBAL_SEEDING_SLOT_KBS ))*1024;
+					ratio_goal	= COConfigurationManager.getFloatParameter( "Stop Ratio" );
+				}
+			});
+	}
+
+
+	private final Map<UploadHelper,HelperState> states = new IdentityHashMap<>();
+	private final AEMonitor states_mon = new AEMonitor( "SeedingSlotAllocator" );
+
+	private long last_round_time = -1;
+
+	private int pool_size;
+	private int pool_used;
+	private long rounds;
+	private long reallocations;
+
+
+
+	protected static boolean isEnabled() {  return enabled;  }
+
+
+	protected void registerHelper( UploadHelper helper ) {
+		try {  states_mon.enter();
+			states.put( helper, new HelperState( helper ));
+		}
+		finally {  states_mon.exit();  }
+	}
+
+
+	protected void deregisterHelper( UploadHelper helper ) {
+		try {  states_mon.enter();
+			states.remove( helper );
+		}
+		finally {  states_mon.exit();  }
+	}
+
+
+	/**
+	 * @return the number of slots the seeding download may unchoke this round, never more than max_uploads
+	 */
+	protected int getSlots( UploadHelper helper, int max_uploads ) {
+		List<HelperState> round = null;
+
+		try {  states_mon.enter();
+			long now = SystemTime.getMonotonousTime();
+
+			if( last_round_time == -1 || now - last_round_time >= ROUND_PERIOD ) {
+				last_round_time = now;
+				round = new ArrayList<>( states.values() );
+			}
+		}
+		finally {  states_mon.exit();  }
+
+		if( round != null ) {
+			//the inputs include tracker scrape lookups, so gather them before taking the monitor
+			for( HelperState state : round )  state.sample();
+
+			try {  states_mon.enter();
+				allocate( round );
+			}
+			finally {  states_mon.exit();  }
+		}
+
+		try {  states_mon.enter();
+			HelperState state = states.get( helper );
+
+			//not seen seeding yet (just registered or just completed), leave it be until the next round
+			if( state == null || !state.in_round )  return max_uploads;
+
+			return Math.min( max_uploads, state.allocated );
+		}
+		finally {  states_mon.exit();  }
+	}
+
+
+	private void allocate( List<HelperState> round ) {
+		rounds++;
+
+		List<HelperState> seeding = new ArrayList<>( round.size() );
+
+		long total_wanted = 0;
+
+		for( HelperState state : round ) {
+			if( states.get( state.helper ) != state )  continue;  //deregistered while sampling
+
+			if( state.seeding ) {
+				state.update();
+				seeding.add( state );
+				total_wanted += state.cap;
+			}
+			else {
+				state.in_round = false;
+				state.allocated = 0;
+			}
+		}
+
+		int limit_bps = NetworkManager.isSeedingOnlyUploadRate() ? NetworkManager.getMaxUploadRateBPSSeedingOnly() : NetworkManager.getMaxUploadRateBPSNormal();
+
+		long pool;
+
+		if( max_slots > 0 ) {
+			pool = max_slots;
+		}
+		else if( limit_bps > 0 ) {
+			pool = Math.max( 1, limit_bps / slot_rate );
+		}
+		else {
+			pool = total_wanted;  //nothing to share out, everyone gets what they ask for
+		}
+
+		pool_size = (int)Math.min( Integer.MAX_VALUE, pool );
+
+		//hand out slots one by one in order of the gain from the next slot
+
+		PriorityQueue<HelperState> queue = new PriorityQueue<>( Math.max( 1, seeding.size() ));
+
+		for( HelperState state : seeding ) {
+			state.next_allocated = 0;
+			if( state.cap > 0 ) {
+				state.next_gain = state.gain( 0 );
+				queue.add( state );
+			}
+		}
+
+		int remaining = pool_size;
+
+		while( remaining > 0 && !queue.isEmpty() ) {
+			HelperState state = queue.poll();
+
+			state.next_allocated++;
+			remaining--;
+
+			if( state.next_allocated < state.cap ) {
+				state.next_gain = state.gain( state.next_allocated );
+				queue.add( state );
+			}
+		}
+
+		pool_used = pool_size - remaining;
+
+		for( HelperState state : seeding ) {
+			if( state.next_allocated != state.allocated )  reallocations++;
+
+			if( state.next_allocated == 0 && state.cap > 0 ) {
+				state.starved_rounds++;
+			}
+			else {
+				state.starved_rounds = 0;
+			}
+
+			state.allocated = state.next_allocated;
+			state.in_round = true;
+		}
+	}
+
+
+	protected String getStats() {
+		try {  states_mon.enter();
+			return "enabled=" +enabled+ ", downloads=" +states.size()+ ", pool=" +pool_size+ ", used=" +pool_used+ ", rounds=" +rounds+ ", reallocations=" +reallocations;
+		}
+		finally {  states_mon.exit();  }
+	}
+
+
+
+	private static class HelperState implements Comparable<HelperState> {
+
+		private final UploadHelper helper;
+
+		private boolean in_round;
+		private int allocated;
+		private int starved_rounds;
+
+		private int cap;
+		private double unit_gain;
+
+		private int next_allocated;
+		private double next_gain;
+
+		//sampled outside the allocator's monitor each round
+
+		private boolean seeding;
+		private int wanting;
+		private int max_uploads;
+		private int swarm_seeds;
+		private int swarm_leechers;
+		private long upload_rate;
+		private long uploaded;
+		private long size;
+
+
+		private HelperState( UploadHelper _helper ) {
+			this.helper = _helper;
+		}
+
+
+		private void sample() {
+			seeding = helper.isSeeding();
+
+			if( !seeding )  return;
+
+			ArrayList<PEPeer> peers = helper.getAllPeers();
+
+			wanting = 0;
+
+			for( int i=0; i < peers.size(); i++ ) {
+				if( UnchokerUtil.isUnchokable( peers.get( i ), false ) )  wanting++;
+			}
+
+			max_uploads		= helper.getMaxUploads();
+			swarm_seeds		= helper.getSwarmSeeds();
+			swarm_leechers	= helper.getSwarmLeechers();
+			upload_rate		= helper.getUploadRate();
+			uploaded		= helper.getTotalUploaded();
+			size			= helper.getSize();
+		}
+
+
+		private void update() {
+			cap = Math.min( max_uploads, wanting );
+
+			if( cap <= 0 ) {
+				unit_gain = 0;
+				return;
+			}
+
+			double scarcity = Math.min( MAX_SCARCITY, ( swarm_leechers + 1.0 ) / ( swarm_seeds + 1.0 ));
+
+			double slot_estimate = allocated > 0 && upload_rate > 0 ? Math.max( 256, upload_rate / allocated ) : slot_rate;
+
+			double ratio = size > 0 ? (double)uploaded / size : 0;
+
+			double weight = 1 / ( 1 + ratio );
+
+			if( ratio_goal > 0 && ratio >= ratio_goal )  weight *= OVER_GOAL_WEIGHT;
+
+			double aging = 1 + (double)starved_rounds / STARVED_ROUNDS_PER_DOUBLING;
+
+			unit_gain = scarcity * slot_estimate * weight * aging;
+		}
+
+
+		private double gain( int slot ) {
+			double gain = unit_gain / ( slot + 1 );
+
+			if( slot < allocated )  gain *= HELD_SLOT_BONUS;
+
+			return gain;
+		}
+
+
+		@Override
+		public int compareTo( HelperState other ) {
+			return Double.compare( other.next_gain, next_gain );  //largest gain first
+		}
+	}
+}
@@ -58,4 +58,46 @@ public interface UploadHelper {
 	 */
 	public boolean isSeeding();
 
+
+	/**
+	 * Get the per-download upload slot limit.
+	 * @return max uploads
+	 */
+	public int getMaxUploads();
+
+
+	/**
+	 * Get the number of seeds in the swarm, from the scrape if there is one.
+	 * @return seeds
+	 */
+	public int getSwarmSeeds();
+
+
+	/**
+	 * Get the number of non-seeds in the swarm, from the scrape if there is one.
+	 * @return leechers
+	 */
+	public int getSwarmLeechers();
+
+
+	/**
+	 * Get the current data upload rate.
+	 * @return bytes per second
+	 */
+	public long getUploadRate();
+
+
+	/**
+	 * Get the data uploaded over the life of the download, not just this session.
+	 * @return bytes
+	 */
+	public long getTotalUploaded();
+
+
+	/**
+	 * Get the size of the download.
+	 * @return bytes
+	 */
+	public long getSize();
+
 }
@@ -55,6 +55,8 @@ public class UploadSlotManager {
 
 	private final UploadSessionPicker picker = new UploadSessionPicker();
 
+	private final SeedingSlotAllocator seeding_allocator = new SeedingSlotAllocator();
+
 	//init with empty slots, optimistic first in line
 	private final UploadSlot[] slots = new UploadSlot[] {	new UploadSlot( UploadSlot.TYPE_OPTIMISTIC ),  //TODO dynamic # of slots
 																												new UploadSlot( UploadSlot.TYPE_NORMAL ),
@@ -100,6 +102,8 @@ public class UploadSlotManager {
 
 
 	public void registerHelper( UploadHelper helper ) {
+		seeding_allocator.registerHelper( helper );
+
 		if( AUTO_SLOT_ENABLE ) {
 			picker.registerHelper( helper );
 		}
@@ -107,6 +111,8 @@ public class UploadSlotManager {
 
 
 	public void deregisterHelper( UploadHelper helper ) {
+		seeding_allocator.deregisterHelper( helper );
+
 		if( AUTO_SLOT_ENABLE ) {
 			picker.deregisterHelper( helper );
 		}
@@ -126,6 +132,27 @@ public class UploadSlotManager {
 
 
 
+	/**
+	 * Get the number of upload slots a seeding download may use, taking into account the
+	 * global seeding slot pool when that is enabled.
+	 * @param helper of the seeding download
+	 * @param max_uploads the download's own limit
+	 * @return slots to unchoke, at most max_uploads
+	 */
+	public int getSeedingSlots( UploadHelper helper, int max_uploads ) {
+		if( !SeedingSlotAllocator.isEnabled() )  return max_uploads;
+
+		return seeding_allocator.getSlots( helper, max_uploads );
+	}
+
+
+	public String getSeedingSlotStats() {
+		return seeding_allocator.getStats();
+	}
+
+
+
+
 	private void process() {
 
 		if( !AUTO_SLOT_ENABLE )  return;
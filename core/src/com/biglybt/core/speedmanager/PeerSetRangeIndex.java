@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.speedmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index over the IPv4 ranges of a number of peer sets. The address space is cut into the
+ * elementary segments formed by all range boundaries and each segment records which sets
+ * cover it, so finding every set containing an address is a single binary search no matter
+ * how many CIDRs the sets hold.
+ */
+
+class
+PeerSetRangeIndex
+{
+	private static final int[]	NO_SETS = {};
+
+	private static final int	SET_BITS	= 20;
+	private static final long	SET_MASK	= ( 1 << SET_BITS ) - 1;
+
+	private final long[][][]	source;
+
+		// segment i covers [starts[i], starts[i+1]), the last one runs to the end of the address space
+
+	private final long[]		starts;
+	private final int[][]		members;
+
+	PeerSetRangeIndex(
+		long[][][]		set_ranges )
+	{
+		source	= set_ranges;
+
+		int	num_events = 0;
+
+		for ( long[][] ranges: set_ranges ){
+
+			num_events += ranges.length*2;
+		}
+
+			// each event is packed as (position, is_end, set index) so a plain sort orders them,
+			// ends are at end+1 so ranges are half-open from here on
+
+		long[]	events = new long[num_events];
+
+		int	pos = 0;
+
+		for ( int i=0;i<set_ranges.length;i++ ){
+
+			for ( long[] range: set_ranges[i] ){
+
+				events[pos++] = (( range[0] << 1 ) << SET_BITS ) | i;
+				events[pos++] = (((( range[1] + 1 ) << 1 ) | 1 ) << SET_BITS ) | i;
+			}
+		}
+
+		Arrays.sort( events );
+
+		int[]	active = new int[set_ranges.length];
+
+		List<Long>	seg_starts	= new ArrayList<>();
+		List<int[]>	seg_members	= new ArrayList<>();
+
+		int	i = 0;
+
+		while( i < num_events ){
+
+			long	position = events[i] >>> ( SET_BITS + 1 );
+
+				// apply every event at this position before recording the segment that starts here
+
+			while( i < num_events && ( events[i] >>> ( SET_BITS + 1 )) == position ){
+
+				long	e = events[i];
+
+				int		set = (int)( e & SET_MASK );
+
+				if ((( e >>> SET_BITS ) & 1 ) == 0 ){
+
+					active[set]++;
+
+				}else{
+
+					active[set]--;
+				}
+
+				i++;
+			}
+
+			int	count = 0;
+
+			for ( int a: active ){
+
+				if ( a > 0 ){
+
+					count++;
+				}
+			}
+
+			int[] sets;
+
+			if ( count == 0 ){
+
+				sets = NO_SETS;
+
+			}else{
+
+				sets = new int[count];
+
+				int	k = 0;
+
+				for ( int s=0;s<active.length;s++ ){
+
+					if ( active[s] > 0 ){
+
+						sets[k++] = s;
+					}
+				}
+			}
+
+				// merge with the previous segment if nothing changed
+
+			int	num_segs = seg_members.size();
+
+			if ( num_segs > 0 && Arrays.equals( seg_members.get( num_segs-1 ), sets )){
+
+				continue;
+			}
+
+			seg_starts.add( position );
+			seg_members.add( sets );
+		}
+
+		starts	= new long[seg_starts.size()];
+		members	= new int[seg_members.size()][];
+
+		for ( int s=0;s<starts.length;s++ ){
+
+			starts[s]	= seg_starts.get( s );
+			members[s]	= seg_members.get( s );
+		}
+	}
+
+		/**
+		 * @return true if the index was built from exactly these range arrays
+		 */
+
+	boolean
+	isFor(
+		long[][][]	set_ranges )
+	{
+		if ( set_ranges.length != source.length ){
+
+			return( false );
+		}
+
+		for ( int i=0;i<set_ranges.length;i++ ){
+
+			if ( set_ranges[i] != source[i] ){
+
+				return( false );
+			}
+		}
+
+		return( true );
+	}
+
+		/**
+		 * @return indexes (ascending) of the sets with a range containing the address
+		 */
+
+	int[]
+	lookup(
+		long	address )
+	{
+		int	low		= 0;
+		int	high	= starts.length - 1;
+
+		int	found = -1;
+
+		while( low <= high ){
+
+			int	mid = ( low + high ) >>> 1;
+
+			if ( starts[mid] <= address ){
+
+				found	= mid;
+				low		= mid + 1;
+
+			}else{
+
+				high = mid - 1;
+			}
+		}
+
+		return( found==-1?NO_SETS:members[found] );
+	}
+}
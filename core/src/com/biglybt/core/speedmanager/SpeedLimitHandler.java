@@ -2207,6 +2207,8 @@ SpeedLimitHandler
 
 	private static final Object	ip_set_peer_key = new Object();
 
+	private PeerSetRangeIndex	ip_set_range_index;
+
 	private final FrequencyLimitedDispatcher check_ip_sets_limiter = new FrequencyLimitedDispatcher(
 			new AERunnable() {
 				@Override
@@ -2927,6 +2929,31 @@ SpeedLimitHandler
 			return;
 		}
 
+		PeerSetRangeIndex	range_index;
+
+		synchronized( this ){
+
+			range_index = ip_set_range_index;
+
+			if ( range_index == null || !range_index.isFor( set_ranges )){
+
+				range_index = ip_set_range_index = new PeerSetRangeIndex( set_ranges );
+			}
+		}
+
+			// whether each set applies to this download doesn't depend on the peer
+
+		boolean[]	set_applies = new boolean[sets.length];
+
+		for ( int i=0;i<sets.length;i++ ){
+
+			Set<String> set_cats_or_tags = sets[i].getCategoriesOrTags();
+
+			set_applies[i] = set_cats_or_tags == null || new HashSet<>(set_cats_or_tags).removeAll( category_or_tags );
+		}
+
+		boolean[]	range_hits = new boolean[sets.length];
+
 		for ( Peer peer: peers ){
 
 			List<RateLimiter>	rlu_tbr;
@@ -2946,104 +2973,55 @@ SpeedLimitHandler
 			}
 
 			try{
-				long[] entry = (long[])peer.getUserData( ip_set_peer_key );
+				PeerClassification	pc = (PeerClassification)peer.getUserData( ip_set_peer_key );
 
-				long	l_address;
+				if ( pc == null ){
 
-				if ( entry == null ){
+					pc = new PeerClassification( peer );
 
-					l_address = 0;
-
-					String ip = peer.getIp();
-
-					if ( !ip.contains( ":" )){
-
-						byte[] bytes = HostNameToIPResolver.hostAddressToBytes( ip );
-
-						if ( bytes != null ){
-
-							l_address = ((long)((bytes[0]<<24)&0xff000000 | (bytes[1] << 16)&0x00ff0000 | (bytes[2] << 8)&0x0000ff00 | bytes[3]&0x000000ff))&0xffffffffL;
-
-						}
-					}
-
-					entry = new long[]{ l_address };
-
-					peer.setUserData( ip_set_peer_key, entry );
-
-				}else{
-
-					l_address = entry[0];
+					peer.setUserData( ip_set_peer_key, pc );
 				}
 
+				long	l_address = pc.address;
+
 				String	peer_cc 	= null;
 				String 	peer_net	= null;
 
 				if ( has_ccs ){
 
-					String[] details = PeerUtils.getCountryDetails( peer );
-
-					if ( details != null && details.length > 0 ){
-
-						peer_cc = details[0];
-						
-					}else{
-						
-						peer_cc = "??";
-					}
+					peer_cc = pc.getCountryCode( peer );
 				}
 
 				if ( has_nets ){
 
-					peer_net = AENetworkClassifier.categoriseAddress( peer.getIp());
+					peer_net = pc.net;
 				}
 
 				Set<PeerSet>	added_to_sets = new HashSet<>();
 
 				if ( l_address != 0 ){
 
-					for ( int i=0;i<set_ranges.length;i++ ){
+					Arrays.fill( range_hits, false );
+
+					for ( int i: range_index.lookup( l_address )){
+
+						range_hits[i] = true;
+					}
 
-						long[][] ranges = set_ranges[i];
+					for ( int i=0;i<set_ranges.length;i++ ){
 
-						if ( ranges.length == 0 ){
+						if ( set_ranges[i].length == 0 || !set_applies[i] ){
 
 							continue;
 						}
 
 						PeerSet set = sets[i];
 
-						boolean is_inverse = set.isInverse();
-
-						Set<String> set_cats_or_tags = set.getCategoriesOrTags();
-
-						if ( set_cats_or_tags == null || new HashSet<>(set_cats_or_tags).removeAll( category_or_tags )){
-
-							boolean	hit = false;
-
-							for ( long[] range: ranges ){
-
-								if ( l_address >= range[0] && l_address <= range[1] ){
-
-									hit	= true;
-
-									if ( !is_inverse ){
+						if ( range_hits[i] != set.isInverse()){
 
-										addLimiters( peer_manager, peer, set, rlu_tbr, rld_tbr );
+							addLimiters( peer_manager, peer, set, rlu_tbr, rld_tbr );
 
-										added_to_sets.add( set );
-									}
-
-									break;
-								}
-							}
-
-							if ( is_inverse && !hit ){
-
-								addLimiters( peer_manager, peer, set, rlu_tbr, rld_tbr );
-
-								added_to_sets.add( set );
-							}
+							added_to_sets.add( set );
 						}
 					}
 				}
@@ -3068,9 +3046,7 @@ SpeedLimitHandler
 
 						boolean not_inverse = !set.isInverse();
 
-						Set<String> set_cats_or_tags = set.getCategoriesOrTags();
-
-						if ( set_cats_or_tags == null || new HashSet<>(set_cats_or_tags).removeAll( category_or_tags )){
+						if ( set_applies[i] ){
 
 							boolean	hit = ccs.contains( peer_cc );
 
@@ -3086,29 +3062,8 @@ SpeedLimitHandler
 
 				if ( peer_net != null ){
 
-					String	pub_peer_net 	= null;
-					String	pub_lan			= null;
-
-					if ( peer_net == AENetworkClassifier.AT_PUBLIC ){
-
-						try{
-							byte[]	address = InetAddress.getByName( peer.getIp() ).getAddress();
-
-							pub_peer_net = address.length==4?NET_IPV4:NET_IPV6;
-
-						}catch( Throwable e ){
-
-						}
-
-						if ( peer.isLANLocal()){
-
-							pub_lan = NET_LAN;
-
-						}else{
-
-							pub_lan = NET_WAN;
-						}
-					}
+					String	pub_peer_net 	= pc.pub_net;
+					String	pub_lan			= pc.pub_lan;
 
 					for ( int i=0;i<set_nets.length;i++ ){
 
@@ -3128,9 +3083,7 @@ SpeedLimitHandler
 
 						boolean not_inverse = !set.isInverse();
 
-						Set<String> set_cats_or_tags = set.getCategoriesOrTags();
-
-						if ( set_cats_or_tags == null || new HashSet<>(set_cats_or_tags).removeAll( category_or_tags )){
+						if ( set_applies[i] ){
 
 							boolean	hit = nets.contains( peer_net );
 
@@ -3177,6 +3130,98 @@ SpeedLimitHandler
 		}
 	}
 
+		/**
+		 * What we need to know about a peer to match it against peer sets. None of it changes
+		 * for the life of the peer (bar the country which may only become known later) so it
+		 * is worked out once and kept on the peer rather than redone whenever sets are checked
+		 */
+
+	private static class
+	PeerClassification
+	{
+		final long		address;
+		final String	net;
+		final String	pub_net;
+		final String	pub_lan;
+
+		private String	cc;
+
+		PeerClassification(
+			Peer		peer )
+		{
+			String ip = peer.getIp();
+
+			long	l_address = 0;
+
+			if ( !ip.contains( ":" )){
+
+				byte[] bytes = HostNameToIPResolver.hostAddressToBytes( ip );
+
+				if ( bytes != null ){
+
+					l_address = ((long)((bytes[0]<<24)&0xff000000 | (bytes[1] << 16)&0x00ff0000 | (bytes[2] << 8)&0x0000ff00 | bytes[3]&0x000000ff))&0xffffffffL;
+
+				}
+			}
+
+			address = l_address;
+
+			net = AENetworkClassifier.categoriseAddress( ip );
+
+			String	p_net	= null;
+			String	p_lan	= null;
+
+			if ( net == AENetworkClassifier.AT_PUBLIC ){
+
+				try{
+					byte[]	bytes = InetAddress.getByName( ip ).getAddress();
+
+					p_net = bytes.length==4?NET_IPV4:NET_IPV6;
+
+				}catch( Throwable e ){
+
+				}
+
+				if ( peer.isLANLocal()){
+
+					p_lan = NET_LAN;
+
+				}else{
+
+					p_lan = NET_WAN;
+				}
+			}
+
+			pub_net	= p_net;
+			pub_lan	= p_lan;
+		}
+
+		String
+		getCountryCode(
+			Peer		peer )
+		{
+			if ( cc != null ){
+
+				return( cc );
+			}
+
+			String[] details = PeerUtils.getCountryDetails( peer );
+
+			if ( details != null && details.length > 0 ){
+
+				cc = details[0];
+
+				return( cc );
+
+			}else{
+
+					// not known (yet), try again next time
+
+				return( "??" );
+			}
+		}
+	}
+
 	private void
 	peerRemoved(
 		Download	download,
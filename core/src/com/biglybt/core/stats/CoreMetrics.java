@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
+import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Registry of counters, latency histograms and gauges for the hot paths. Unlike the CoreStats
+ * providers, which work the values out when asked, these are updated in place as things happen
+ * so they can capture distributions rather than just totals.
+ *
+ * Everything is exposed through CoreStats under the metric's name (histograms as name.count,
+ * .sum, .mean, .max, .p50, .p90, .p99) and can be written out in Prometheus text format. Names
+ * all start with {@link #MT_PREFIX} so they never collide with, or get picked up by wildcard
+ * queries for, the existing CoreStats types. Things those already cover, such as disk queue
+ * lengths and byte totals, aren't duplicated here.
+ * Timing is off until "Stats Metrics Enable" is set, until then {@link #startTimer()} returns 0
+ * and recordSince does nothing so the instrumented paths don't even read the clock. The hot path
+ * counters are only updated while enabled too, gauges cost nothing until read.
+ */
+
+public class
+CoreMetrics
+{
+	public static final String MT_PREFIX						= "metrics.";
+
+		// latencies are in microseconds
+
+	public static final String MT_DISK_READ_LATENCY				= "metrics.disk.read.io.latency";
+	public static final String MT_DISK_WRITE_LATENCY			= "metrics.disk.write.io.latency";
+	public static final String MT_HASH_PIECE_LATENCY			= "metrics.hash.piece.latency";
+	public static final String MT_NET_SELECT_PROCESS_TIME		= "metrics.net.select.process.time";
+	public static final String MT_PEER_CONTROL_TICK_TIME		= "metrics.peer.control.tick.time";
+	public static final String MT_PEER_PICKER_AVAILABILITY_TIME	= "metrics.peer.picker.availability.time";
+	public static final String MT_PEER_PICKER_ALLOCATE_TIME		= "metrics.peer.picker.allocate.time";
+
+		// counters
+
+	public static final String MT_HASH_PIECE_BYTES				= "metrics.hash.piece.bytes";
+	public static final String MT_NET_SELECT_KEYS				= "metrics.net.select.keys";
+
+		// gauges
+
+	public static final String MT_HASH_QUEUE_LENGTH				= "metrics.hash.queue.length";
+
+	private static final String[]	HISTOGRAM_SUFFIXES = { ".count", ".sum", ".mean", ".max", ".p50", ".p90", ".p99" };
+
+	private static volatile boolean	enabled;
+
+	private static final Map<String,MetricsCounter>		counters	= new ConcurrentHashMap<>();
+	private static final Map<String,MetricsHistogram>	histograms	= new ConcurrentHashMap<>();
+	private static final Map<String,MetricsGauge>		gauges		= new ConcurrentHashMap<>();
+
+		// names we answer for in CoreStats, added to as metrics are created
+
+	private static final Set<String>	stats_types = Collections.newSetFromMap( new ConcurrentHashMap<String,Boolean>());
+
+	static{
+		COConfigurationManager.addAndFireParameterListener(
+			ConfigKeys.Stats.BCFG_STATS_METRICS_ENABLE,
+			new ParameterListener()
+			{
+				@Override
+				public void
+				parameterChanged(
+					String	name )
+				{
+					enabled = COConfigurationManager.getBooleanParameter( name );
+				}
+			});
+
+		CoreStats.registerProvider(
+			stats_types,
+			new CoreStatsProvider()
+			{
+				@Override
+				public void
+				updateStats(
+					Set<String>				types,
+					Map<String,Object>		values )
+				{
+					for ( Map.Entry<String,Long> entry: getSnapshot().entrySet()){
+
+						String	key = entry.getKey();
+
+						if ( types.contains( key )){
+
+							values.put( key, entry.getValue());
+						}
+					}
+				}
+			});
+	}
+
+	public static boolean
+	isEnabled()
+	{
+		return( enabled );
+	}
+
+		/**
+		 * @return a start time for {@link MetricsHistogram#recordSince(long)}, 0 if metrics are
+		 * disabled
+		 */
+
+	public static long
+	startTimer()
+	{
+		return( enabled?SystemTime.getHighPrecisionCounter():0 );
+	}
+
+	public static MetricsCounter
+	getCounter(
+		String		name )
+	{
+		MetricsCounter	counter = counters.get( name );
+
+		if ( counter == null ){
+
+			synchronized( CoreMetrics.class ){
+
+				counter = counters.get( name );
+
+				if ( counter == null ){
+
+					checkName( name );
+
+					counter = new MetricsCounter( name );
+
+					counters.put( name, counter );
+
+					stats_types.add( name );
+				}
+			}
+		}
+
+		return( counter );
+	}
+
+	public static MetricsHistogram
+	getHistogram(
+		String		name )
+	{
+		MetricsHistogram	histogram = histograms.get( name );
+
+		if ( histogram == null ){
+
+			synchronized( CoreMetrics.class ){
+
+				histogram = histograms.get( name );
+
+				if ( histogram == null ){
+
+					checkName( name );
+
+					histogram = new MetricsHistogram( name );
+
+					histograms.put( name, histogram );
+
+					for ( String suffix: HISTOGRAM_SUFFIXES ){
+
+						stats_types.add( name + suffix );
+					}
+				}
+			}
+		}
+
+		return( histogram );
+	}
+
+	public static void
+	registerGauge(
+		String			name,
+		MetricsGauge	gauge )
+	{
+		synchronized( CoreMetrics.class ){
+
+			if ( !gauges.containsKey( name )){
+
+				checkName( name );
+			}
+
+			gauges.put( name, gauge );
+
+			stats_types.add( name );
+		}
+	}
+
+	public static void
+	unregisterGauge(
+		String			name )
+	{
+		synchronized( CoreMetrics.class ){
+
+			if ( gauges.remove( name ) != null ){
+
+				stats_types.remove( name );
+			}
+		}
+	}
+
+	private static void
+	checkName(
+		String		name )
+	{
+		if ( !name.startsWith( MT_PREFIX )){
+
+			throw( new IllegalArgumentException( "Metric '" + name + "' must start with '" + MT_PREFIX + "'" ));
+		}
+
+		if ( counters.containsKey( name ) || histograms.containsKey( name ) || gauges.containsKey( name )){
+
+			throw( new IllegalArgumentException( "Metric '" + name + "' already registered with a different type" ));
+		}
+	}
+
+	public static List<MetricsCounter>
+	getCounters()
+	{
+		return( new ArrayList<>( counters.values()));
+	}
+
+	public static List<MetricsHistogram>
+	getHistograms()
+	{
+		return( new ArrayList<>( histograms.values()));
+	}
+
+	public static Map<String,MetricsGauge>
+	getGauges()
+	{
+		return( new TreeMap<>( gauges ));
+	}
+
+		/**
+		 * @return current values keyed and sorted by name, histograms flattened as described above
+		 */
+
+	public static Map<String,Long>
+	getSnapshot()
+	{
+		Map<String,Long>	result = new TreeMap<>();
+
+		for ( MetricsCounter counter: counters.values()){
+
+			result.put( counter.getName(), counter.getValue());
+		}
+
+		for ( MetricsHistogram histogram: histograms.values()){
+
+			String	name = histogram.getName();
+
+			MetricsHistogram.Snapshot	snap = histogram.getSnapshot();
+
+			result.put( name + ".count",	snap.getCount());
+			result.put( name + ".sum",		snap.getSum());
+			result.put( name + ".mean",		snap.getMean());
+			result.put( name + ".max",		snap.getMax());
+			result.put( name + ".p50",		snap.getPercentile( 50 ));
+			result.put( name + ".p90",		snap.getPercentile( 90 ));
+			result.put( name + ".p99",		snap.getPercentile( 99 ));
+		}
+
+		for ( Map.Entry<String,MetricsGauge> entry: gauges.entrySet()){
+
+			try{
+				result.put( entry.getKey(), entry.getValue().getValue());
+
+			}catch( Throwable e ){
+
+				Debug.out( e );
+			}
+		}
+
+		return( result );
+	}
+}
@@ -105,6 +105,9 @@ CoreStats
 	public static final String ST_PEER_CONTROL_YIELD_COUNT		= "peer.control.yield.count";
 	public static final String ST_PEER_CONTROL_WAIT_COUNT		= "peer.control.wait.count";
 	public static final String ST_PEER_CONTROL_WAIT_TIME		= "peer.control.wait.time";
+	public static final String ST_PEER_CONTROL_TICK_OVERRUN_COUNT	= "peer.control.tick.overrun.count";
+	public static final String ST_PEER_CONTROL_TICK_LATE_TIME		= "peer.control.tick.late.time";
+	public static final String ST_PEER_CONTROL_TICK_RUN_TIME		= "peer.control.tick.run.time";
 
 		// Peer Manager
 
@@ -122,6 +125,16 @@ CoreStats
 	public static final String ST_TRACKER_SCRAPE_COUNT		= "tracker.scrape.count";
 	public static final String ST_TRACKER_SCRAPE_TIME		= "tracker.scrape.time";
 
+		// Startup
+
+	public static final String ST_STARTUP_DOWNLOAD_COUNT				= "startup.download.count";
+	public static final String ST_STARTUP_DOWNLOAD_CACHED_COUNT			= "startup.download.cached.count";
+	public static final String ST_STARTUP_DOWNLOAD_PREFETCH_COUNT		= "startup.download.prefetch.count";
+	public static final String ST_STARTUP_DOWNLOAD_STATE_CACHE_TIME		= "startup.download.state.cache.time";
+	public static final String ST_STARTUP_DOWNLOAD_CONFIG_READ_TIME		= "startup.download.config.read.time";
+	public static final String ST_STARTUP_DOWNLOAD_LOAD_TIME			= "startup.download.load.time";
+	public static final String ST_STARTUP_DOWNLOAD_TOTAL_TIME			= "startup.download.total.time";
+
 		// xfer (persistent)
 
 	public static final String ST_XFER_UPLOADED_PROTOCOL_BYTES		= "xfer.upload.protocol.bytes.total";
@@ -196,6 +209,9 @@ CoreStats
 		{ ST_PEER_CONTROL_YIELD_COUNT,				CUMULATIVE },
 		{ ST_PEER_CONTROL_WAIT_COUNT,				CUMULATIVE },
 		{ ST_PEER_CONTROL_WAIT_TIME,				CUMULATIVE },
+		{ ST_PEER_CONTROL_TICK_OVERRUN_COUNT,		CUMULATIVE },
+		{ ST_PEER_CONTROL_TICK_LATE_TIME,			CUMULATIVE },
+		{ ST_PEER_CONTROL_TICK_RUN_TIME,			CUMULATIVE },
 
 		{ ST_PEER_MANAGER_COUNT,					POINT },
 		{ ST_PEER_MANAGER_PEER_COUNT,				POINT },
@@ -209,6 +225,14 @@ CoreStats
 		{ ST_TRACKER_SCRAPE_COUNT,					CUMULATIVE },
 		{ ST_TRACKER_SCRAPE_TIME,					CUMULATIVE },
 
+		{ ST_STARTUP_DOWNLOAD_COUNT,				POINT },
+		{ ST_STARTUP_DOWNLOAD_CACHED_COUNT,			POINT },
+		{ ST_STARTUP_DOWNLOAD_PREFETCH_COUNT,		POINT },
+		{ ST_STARTUP_DOWNLOAD_STATE_CACHE_TIME,		POINT },
+		{ ST_STARTUP_DOWNLOAD_CONFIG_READ_TIME,		POINT },
+		{ ST_STARTUP_DOWNLOAD_LOAD_TIME,			POINT },
+		{ ST_STARTUP_DOWNLOAD_TOTAL_TIME,			POINT },
+
 		{ ST_XFER_UPLOADED_PROTOCOL_BYTES,			CUMULATIVE },
 		{ ST_XFER_UPLOADED_DATA_BYTES,				CUMULATIVE },
 		{ ST_XFER_DOWNLOADED_PROTOCOL_BYTES,		CUMULATIVE },
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic counter striped over a number of cells so threads incrementing it concurrently
+ * don't all contend on the same cache line. Cells are picked by thread id and padded apart,
+ * the value is the sum of the cells so reads are slower than updates.
+ */
+
+public class
+MetricsCounter
+{
+	private static final int	PAD		= 8;	// longs per cell, keeps cells on separate cache lines
+
+	private static final int	STRIPES;
+
+	static{
+		int	cpus = Runtime.getRuntime().availableProcessors();
+
+		STRIPES = Math.min( 64, Integer.highestOneBit( Math.max( 1, cpus )*2 - 1 )*2 );
+	}
+
+	private final String			name;
+	private final AtomicLongArray	cells = new AtomicLongArray( STRIPES*PAD );
+
+	protected
+	MetricsCounter(
+		String		_name )
+	{
+		name	= _name;
+	}
+
+	public String
+	getName()
+	{
+		return( name );
+	}
+
+	public void
+	increment()
+	{
+		add( 1 );
+	}
+
+	public void
+	add(
+		long		delta )
+	{
+		int	cell = ((int)Thread.currentThread().getId() & ( STRIPES - 1 ))*PAD;
+
+		cells.addAndGet( cell, delta );
+	}
+
+	public long
+	getValue()
+	{
+		long	total = 0;
+
+		for ( int i=0;i<STRIPES;i++){
+
+			total += cells.get( i*PAD );
+		}
+
+		return( total );
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Fixed bucket histogram of non-negative values (latencies are recorded in microseconds).
+ *
+ * Buckets are log-linear in the style of HdrHistogram: values below 16 get a bucket each, above
+ * that every power of two is split into 8 equal sub-buckets, so any value is placed within 12.5%
+ * and the whole long range needs fewer than 500 buckets. Recording is a couple of shifts and one
+ * atomic add with no allocation or locking. Snapshots are not atomic across buckets, which is
+ * fine for monitoring.
+ */
+
+public class
+MetricsHistogram
+{
+	private static final int	SUB_BITS		= 3;
+	private static final int	SUB_COUNT		= 1 << SUB_BITS;
+	private static final int	LINEAR_LIMIT	= 2*SUB_COUNT;		// values below this are exact
+
+	private static final int	LINEAR_EXP		= 4;				// log2( LINEAR_LIMIT )
+
+	static final int	NUM_BUCKETS = LINEAR_LIMIT + ( 63 - LINEAR_EXP )*SUB_COUNT;
+
+	private final String			name;
+
+	private final AtomicLongArray	buckets = new AtomicLongArray( NUM_BUCKETS );
+	private final MetricsCounter	sum;
+	private final AtomicLong		max		= new AtomicLong();
+
+	protected
+	MetricsHistogram(
+		String		_name )
+	{
+		name	= _name;
+		sum		= new MetricsCounter( _name );
+	}
+
+	public String
+	getName()
+	{
+		return( name );
+	}
+
+	public void
+	record(
+		long		value )
+	{
+		if ( value < 0 ){
+
+			value = 0;
+		}
+
+		buckets.incrementAndGet( getBucket( value ));
+
+		sum.add( value );
+
+		long	m = max.get();
+
+		while( value > m && !max.compareAndSet( m, value )){
+
+			m = max.get();
+		}
+	}
+
+		/**
+		 * Records the microseconds since a start time from {@link CoreMetrics#startTimer()}, does
+		 * nothing if the timer wasn't started because metrics were disabled
+		 */
+
+	public void
+	recordSince(
+		long		start_nanos )
+	{
+		if ( start_nanos != 0 ){
+
+			record(( SystemTime.getHighPrecisionCounter() - start_nanos )/1000 );
+		}
+	}
+
+	public Snapshot
+	getSnapshot()
+	{
+		long[]	counts = new long[NUM_BUCKETS];
+
+		long	total = 0;
+
+		for ( int i=0;i<NUM_BUCKETS;i++){
+
+			long	c = buckets.get( i );
+
+			counts[i]	= c;
+			total		+= c;
+		}
+
+		return( new Snapshot( counts, total, sum.getValue(), max.get()));
+	}
+
+	static int
+	getBucket(
+		long		value )
+	{
+		if ( value < LINEAR_LIMIT ){
+
+			return((int)value );
+		}
+
+		int	exp = 63 - Long.numberOfLeadingZeros( value );
+
+		int	sub = (int)( value >>> ( exp - SUB_BITS )) & ( SUB_COUNT - 1 );
+
+		return( LINEAR_LIMIT + ( exp - LINEAR_EXP )*SUB_COUNT + sub );
+	}
+
+		/**
+		 * @return the largest value that falls in the bucket
+		 */
+
+	static long
+	getBucketUpperBound(
+		int			bucket )
+	{
+		if ( bucket < LINEAR_LIMIT ){
+
+			return( bucket );
+		}
+
+		int	exp = ( bucket - LINEAR_LIMIT )/SUB_COUNT + LINEAR_EXP;
+		int	sub = ( bucket - LINEAR_LIMIT )%SUB_COUNT;
+
+		long	width = 1L << ( exp - SUB_BITS );
+
+		long	lower = ( SUB_COUNT + sub )*width;
+
+		return( lower + ( width - 1 ));
+	}
+
+	public static class
+	Snapshot
+	{
+		private final long[]	counts;
+		private final long		count;
+		private final long		sum;
+		private final long		max;
+
+		Snapshot(
+			long[]		_counts,
+			long		_count,
+			long		_sum,
+			long		_max )
+		{
+			counts	= _counts;
+			count	= _count;
+			sum		= _sum;
+			max		= _max;
+		}
+
+		public long
+		getCount()
+		{
+			return( count );
+		}
+
+		public long
+		getSum()
+		{
+			return( sum );
+		}
+
+		public long
+		getMax()
+		{
+			return( max );
+		}
+
+		public long
+		getMean()
+		{
+			return( count==0?0:sum/count );
+		}
+
+			/**
+			 * @param percentile 0..100
+			 * @return the upper bound of the bucket holding the percentile, capped at the max seen
+			 */
+
+		public long
+		getPercentile(
+			double		percentile )
+		{
+			if ( count == 0 ){
+
+				return( 0 );
+			}
+
+			long	target = (long)Math.ceil( count*percentile/100 );
+
+			target = Math.max( 1, Math.min( count, target ));
+
+			long	seen = 0;
+
+			for ( int i=0;i<counts.length;i++){
+
+				seen += counts[i];
+
+				if ( seen >= target ){
+
+					return( Math.min( max, getBucketUpperBound( i )));
+				}
+			}
+
+			return( max );
+		}
+
+			/**
+			 * @return the number of values less than or equal to the limit, exact when the limit
+			 * is a bucket upper bound (such as 2^n-1)
+			 */
+
+		public long
+		getCountAtOrBelow(
+			long		limit )
+		{
+			long	result = 0;
+
+			for ( int i=0;i<counts.length;i++){
+
+				if ( getBucketUpperBound( i ) > limit ){
+
+					break;
+				}
+
+				result += counts[i];
+			}
+
+			return( result );
+		}
+	}
+}
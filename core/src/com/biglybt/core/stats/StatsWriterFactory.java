@@ -26,6 +26,7 @@ package com.biglybt.core.stats;
  */
 
 import com.biglybt.core.Core;
+import com.biglybt.core.stats.impl.MetricsPrometheusWriter;
 import com.biglybt.core.stats.impl.StatsWriterPeriodicImpl;
 import com.biglybt.core.stats.impl.StatsWriterStreamerImpl;
 
@@ -45,4 +46,14 @@ StatsWriterFactory
 	{
 		return( new StatsWriterStreamerImpl( core ));
 	}
+
+		/**
+		 * @return a streamer writing the CoreMetrics in Prometheus text format
+		 */
+
+	public static StatsWriterStreamer
+	createMetricsStreamer()
+	{
+		return( new MetricsPrometheusWriter());
+	}
 }
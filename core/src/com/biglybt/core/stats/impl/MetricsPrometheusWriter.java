@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.biglybt.core.stats.CoreMetrics;
+import com.biglybt.core.stats.MetricsCounter;
+import com.biglybt.core.stats.MetricsGauge;
+import com.biglybt.core.stats.MetricsHistogram;
+import com.biglybt.core.stats.StatsWriterStreamer;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileUtil;
+
+/**
+ * Writes the {@link CoreMetrics} in the Prometheus text exposition format. Names have their
+ * metrics. prefix swapped for biglybt_ and dots replaced by underscores, latency histograms are
+ * converted to seconds with cumulative buckets at powers of two microseconds.
+ */
+
+public class
+MetricsPrometheusWriter
+	implements StatsWriterStreamer
+{
+	private static final String	PREFIX	= "biglybt_";
+
+	private static final int	MAX_BUCKET_EXP	= 35;	// 2^35us is around 9.5 hours
+
+	@Override
+	public void
+	write(
+		OutputStream	output_stream )
+
+		throws IOException
+	{
+		PrintWriter	pw = new PrintWriter( new OutputStreamWriter( output_stream, "UTF-8" ));
+
+		writeSupport( pw );
+
+		pw.flush();
+
+		if ( pw.checkError()){
+
+			throw( new IOException( "Failed to write metrics" ));
+		}
+	}
+
+		/**
+		 * Writes via a temporary file and rename so a collector reading the file never sees a
+		 * partial write
+		 */
+
+	public void
+	write(
+		File		file )
+
+		throws IOException
+	{
+		File	temp = FileUtil.newFile( file.getParentFile(), file.getName() + ".tmp" );
+
+		OutputStream	os = FileUtil.newFileOutputStream( temp );
+
+		try{
+			write( os );
+
+		}finally{
+
+			os.close();
+		}
+
+		if ( file.exists() && !file.delete()){
+
+			Debug.out( "Failed to delete " + file );
+		}
+
+		if ( !temp.renameTo( file )){
+
+			throw( new IOException( "Failed to rename " + temp + " to " + file ));
+		}
+	}
+
+	private void
+	writeSupport(
+		PrintWriter		pw )
+	{
+		List<MetricsCounter>	counters = CoreMetrics.getCounters();
+
+		Collections.sort(
+			counters,
+			new Comparator<MetricsCounter>()
+			{
+				@Override
+				public int
+				compare(
+					MetricsCounter	o1,
+					MetricsCounter	o2 )
+				{
+					return( o1.getName().compareTo( o2.getName()));
+				}
+			});
+
+		for ( MetricsCounter counter: counters ){
+
+			String	name = toName( counter.getName()) + "_total";
+
+			pw.print( "# TYPE " + name + " counter\n" );
+			pw.print( name + " " + counter.getValue() + "\n" );
+		}
+
+		for ( Map.Entry<String,MetricsGauge> entry: CoreMetrics.getGauges().entrySet()){
+
+			long	value;
+
+			try{
+				value = entry.getValue().getValue();
+
+			}catch( Throwable e ){
+
+				Debug.out( e );
+
+				continue;
+			}
+
+			String	name = toName( entry.getKey());
+
+			pw.print( "# TYPE " + name + " gauge\n" );
+			pw.print( name + " " + value + "\n" );
+		}
+
+		List<MetricsHistogram>	histograms = CoreMetrics.getHistograms();
+
+		Collections.sort(
+			histograms,
+			new Comparator<MetricsHistogram>()
+			{
+				@Override
+				public int
+				compare(
+					MetricsHistogram	o1,
+					MetricsHistogram	o2 )
+				{
+					return( o1.getName().compareTo( o2.getName()));
+				}
+			});
+
+		for ( MetricsHistogram histogram: histograms ){
+
+			String	name = toName( histogram.getName()) + "_seconds";
+
+			MetricsHistogram.Snapshot	snap = histogram.getSnapshot();
+
+			pw.print( "# TYPE " + name + " histogram\n" );
+
+				// 2^n-1 is always a bucket upper bound so these counts are exact
+
+			for ( int exp=0;exp<=MAX_BUCKET_EXP;exp++){
+
+				long	limit = ( 1L << exp ) - 1;
+
+				pw.print( name + "_bucket{le=\"" + toSeconds( limit ) + "\"} " + snap.getCountAtOrBelow( limit ) + "\n" );
+			}
+
+			pw.print( name + "_bucket{le=\"+Inf\"} " + snap.getCount() + "\n" );
+			pw.print( name + "_sum " + toSeconds( snap.getSum()) + "\n" );
+			pw.print( name + "_count " + snap.getCount() + "\n" );
+		}
+	}
+
+	private static String
+	toName(
+		String		metric )
+	{
+		if ( metric.startsWith( CoreMetrics.MT_PREFIX )){
+
+			metric = metric.substring( CoreMetrics.MT_PREFIX.length());
+		}
+
+		StringBuilder	sb = new StringBuilder( PREFIX.length() + metric.length());
+
+		sb.append( PREFIX );
+
+		for ( int i=0;i<metric.length();i++){
+
+			char	c = metric.charAt( i );
+
+			if (( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || c == '_' ){
+
+				sb.append( c );
+
+			}else{
+
+				sb.append( '_' );
+			}
+		}
+
+		return( sb.toString());
+	}
+
+	private static String
+	toSeconds(
+		long		micros )
+	{
+		return( String.valueOf( micros/1000000.0 ));
+	}
+}
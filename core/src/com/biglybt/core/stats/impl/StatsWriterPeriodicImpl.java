@@ -25,9 +25,11 @@ import java.io.File;
 import com.biglybt.core.Core;
 import com.biglybt.core.config.COConfigurationListener;
 import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.logging.LogEvent;
 import com.biglybt.core.logging.LogIDs;
 import com.biglybt.core.logging.Logger;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.stats.StatsWriterPeriodic;
 import com.biglybt.core.util.*;
 
@@ -53,6 +55,7 @@ StatsWriterPeriodicImpl
 	private int				config_period;
 	private String			config_dir;
 	private String			config_file;
+	private String			config_metrics_file;
 
 	public static synchronized StatsWriterPeriodic create(Core _core) {
 		synchronized (StatsWriterPeriodicImpl.class)
@@ -100,6 +103,8 @@ StatsWriterPeriodicImpl
 
 		config_file		= COConfigurationManager.getStringParameter( "Stats File" ).trim();
 
+		config_metrics_file	= COConfigurationManager.getStringParameter( ConfigKeys.Stats.SCFG_STATS_METRICS_FILE ).trim();
+
 		if(config_enabled)
 		{
 			long targetFrequency = 1000 * (config_period < DEFAULT_SLEEP_PERIOD ? config_period : DEFAULT_SLEEP_PERIOD);
@@ -162,6 +167,25 @@ StatsWriterPeriodicImpl
 			}catch( Throwable e ){
 				Logger.log(new LogEvent(LOGID, "Stats Logging fails", e));
 			}
+
+				// metrics go alongside in Prometheus text format, e.g. for a node_exporter textfile collector
+
+			if ( !config_metrics_file.isEmpty() && CoreMetrics.isEnabled()){
+
+				try{
+					File metrics_file = FileUtil.newFile( config_metrics_file );
+
+					if ( !metrics_file.isAbsolute()){
+
+						metrics_file = FileUtil.newFile( config_dir.isEmpty() ? File.separator : config_dir, config_metrics_file );
+					}
+
+					new MetricsPrometheusWriter().write( metrics_file );
+
+				}catch( Throwable e ){
+					Logger.log(new LogEvent(LOGID, "Metrics Logging fails", e));
+				}
+			}
 		}
 	}
 
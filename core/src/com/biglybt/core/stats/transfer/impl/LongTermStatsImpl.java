@@ -29,6 +29,7 @@ import com.biglybt.core.Core;
 import com.biglybt.core.CoreComponent;
 import com.biglybt.core.CoreLifecycleAdapter;
 import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.dht.DHT;
 import com.biglybt.core.dht.transport.DHTTransportStats;
@@ -103,6 +104,8 @@ LongTermStatsImpl
 
 	private DayCache			day_cache;
 
+	private LongTermStatsSeries	series;
+
 	private static final int MONTH_CACHE_MAX = 3;
 
 	private final Map<String,MonthCache>	month_cache_map =
@@ -192,6 +195,40 @@ LongTermStatsImpl
 				}
 			});
 
+		COConfigurationManager.addParameterListener(
+			ConfigKeys.Stats.BCFG_LONG_TERM_STATS_SERIES_ENABLE,
+			new ParameterListener()
+			{
+				@Override
+				public void
+				parameterChanged(
+					String name)
+				{
+					if ( destroyed ){
+
+						COConfigurationManager.removeParameterListener( name, this );
+
+						return;
+					}
+
+					synchronized( LongTermStatsImpl.this ){
+
+						if ( COConfigurationManager.getBooleanParameter( name )){
+
+							if ( active ){
+
+								openSeries();
+							}
+						}else{
+
+								// anything from now on isn't in the series so it can't be resumed
+
+							closeSeries( true );
+						}
+					}
+				}
+			});
+
 	    _core.addLifecycleListener(
 	        	new CoreLifecycleAdapter()
 	        	{
@@ -274,6 +311,8 @@ LongTermStatsImpl
 				writer = null;
 			}
 
+			closeSeries( true );
+
 			File[] files = stats_dir.listFiles();
 
 outer:
@@ -366,6 +405,15 @@ outer:
 
 			active = true;
 
+			if ( COConfigurationManager.getBooleanParameter( ConfigKeys.Stats.BCFG_LONG_TERM_STATS_SERIES_ENABLE )){
+
+				openSeries();
+
+			}else{
+
+				closeSeries( true );
+			}
+
 			long[] snap = stats.getLastSnapshot();
 
 			ss_d_received 	= gm_stats.getTotalDataBytesReceived();
@@ -449,6 +497,8 @@ outer:
 
 			active = false;
 
+			closeSeries( false );
+
 			if ( event != null ){
 
 				event.cancel();
@@ -570,6 +620,19 @@ outer:
 							day_cache.addRecord( now_mins, diffs );
 						}
 					}
+
+					if ( series != null ){
+
+						try{
+							series.add( now_mins, diffs );
+
+						}catch( Throwable e ){
+
+							Debug.out( "Failed to write long term stats series", e );
+
+							closeSeries( true );
+						}
+					}
 				}
 
 				if ( record_type != RT_SESSION_STATS ){
@@ -783,6 +846,152 @@ outer:
 		Date				start_date,
 		Date				end_date,
 		RecordAccepter		accepter )
+	{
+		synchronized( this ){
+
+			if ( series != null ){
+
+					// whatever the series covers comes from there, anything before it from the text files
+
+				long	series_start = series.getStartMinute()*MIN_IN_MILLIS;
+
+				long	start_millis	= start_date.getTime();
+				long	end_millis 		= Math.min( end_date.getTime(), SystemTime.getCurrentTime());
+
+				if ( end_millis >= series_start ){
+
+					try{
+						long[] result = new long[STAT_ENTRY_COUNT];
+
+						long	from_min	= ( Math.max( start_millis, series_start ) + MIN_IN_MILLIS - 1 )/MIN_IN_MILLIS;
+						long	to_min		= end_millis/MIN_IN_MILLIS;
+
+						series.getTotals( from_min, to_min, result, accepter );
+
+						if ( start_millis < series_start ){
+
+							long[] older = getTextUsageInPeriod( start_date, new Date( series_start - 1 ), accepter );
+
+							for ( int i=0;i<STAT_ENTRY_COUNT;i++){
+
+								result[i] += older[i];
+							}
+						}
+
+						return( result );
+
+					}catch( Throwable e ){
+
+						Debug.out( "Failed to read long term stats series", e );
+
+						closeSeries( true );
+					}
+				}
+			}
+
+			return( getTextUsageInPeriod( start_date, end_date, accepter ));
+		}
+	}
+
+	private void
+	openSeries()
+	{
+		if ( series != null ){
+
+			return;
+		}
+
+		try{
+			series = new LongTermStatsSeries( stats_dir, SystemTime.getCurrentTime()/MIN_IN_MILLIS, getLatestTextWriteTime());
+
+		}catch( Throwable e ){
+
+			Debug.out( "Failed to open long term stats series", e );
+
+			LongTermStatsSeries.delete( stats_dir );
+		}
+	}
+
+	private void
+	closeSeries(
+		boolean		delete )
+	{
+		if ( series != null ){
+
+			series.close();
+
+			series = null;
+		}
+
+		if ( delete ){
+
+			LongTermStatsSeries.delete( stats_dir );
+		}
+	}
+
+		/**
+		 * @return modification time of the latest day file, 0 if none
+		 */
+
+	private long
+	getLatestTextWriteTime()
+	{
+		File	dir = stats_dir;
+
+			// yyyy, MM, dd.dat all sort as strings
+
+		for ( int level=0;level<3;level++){
+
+			File[] files = dir.listFiles();
+
+			if ( files == null ){
+
+				return( 0 );
+			}
+
+			File	latest = null;
+
+			for ( File file: files ){
+
+				String	name = file.getName();
+
+				boolean	wanted;
+
+				if ( level == 0 ){
+
+					wanted = name.length() == 4 && Character.isDigit( name.charAt(0)) && file.isDirectory();
+
+				}else if ( level == 1 ){
+
+					wanted = name.length() == 2 && Character.isDigit( name.charAt(0)) && file.isDirectory();
+
+				}else{
+
+					wanted = name.length() == 6 && name.endsWith( ".dat" ) && Character.isDigit( name.charAt(0));
+				}
+
+				if ( wanted && ( latest == null || name.compareTo( latest.getName()) > 0 )){
+
+					latest = file;
+				}
+			}
+
+			if ( latest == null ){
+
+				return( 0 );
+			}
+
+			dir = latest;
+		}
+
+		return( dir.lastModified());
+	}
+
+	private long[]
+	getTextUsageInPeriod(
+		Date				start_date,
+		Date				end_date,
+		RecordAccepter		accepter )
 	{
 		boolean	enable_caching = accepter == null;
 
@@ -0,0 +1,787 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats.transfer.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.biglybt.core.stats.transfer.LongTermStats.RecordAccepter;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileUtil;
+
+/**
+ * Binary copy of the long term stats kept alongside the text day files, so that range queries
+ * don't have to parse text.
+ *
+ * Each UTC day with activity gets a fixed size yyyy/MM/dd.lts holding one column of per-minute
+ * values for each stat, and each month a yyyy/MM/month.lts with the same columns pre-summed by
+ * hour, by day and for the whole month. Values are only ever added to, and a query sums whole
+ * months, days and hours from the rollups and only touches the minute columns for the partial
+ * hours at either end. Reads and writes are positional channel operations and nothing is
+ * mapped, so the files can be removed as soon as the series is closed, Windows included.
+ *
+ * The minute columns are the record, the rollups are derived from them: each minute is written
+ * and forced before the rollups are updated and the last minute advanced. If that is cut short
+ * the rollups of the months around the last minute are rebuilt from the minute data on resume.
+ *
+ * The series only covers time since it was started, recorded in series.lts along with the last
+ * minute written. Older data, or anything written while the series was off, is still only in the
+ * text files; LongTermStatsImpl splits queries at the series start accordingly.
+ */
+
+class
+LongTermStatsSeries
+{
+	static final int	COLUMNS			= 6;
+
+	private static final int	MINS_PER_DAY	= 24*60;
+	private static final int	MAX_DAYS		= 31;
+	private static final int	MAX_HOURS		= MAX_DAYS*24;
+
+	private static final int	HEADER_SIZE		= 16;
+
+	private static final int	DAY_MAGIC		= 0x4C545344;	// LTSD
+	private static final int	MONTH_MAGIC		= 0x4C54534D;	// LTSM
+	private static final int	SERIES_MAGIC	= 0x4C545353;	// LTSS
+	private static final int	VERSION			= 1;
+
+	private static final long	DAY_FILE_SIZE	= HEADER_SIZE + (long)COLUMNS*MINS_PER_DAY*8;
+
+	private static final long	HOURS_OFFSET	= HEADER_SIZE;
+	private static final long	DAYS_OFFSET		= HOURS_OFFSET + (long)COLUMNS*MAX_HOURS*8;
+	private static final long	MONTH_OFFSET	= DAYS_OFFSET + (long)COLUMNS*MAX_DAYS*8;
+	private static final long	MONTH_FILE_SIZE	= MONTH_OFFSET + COLUMNS*8;
+
+	private static final long	SERIES_START_POS	= 8;
+	private static final long	SERIES_LAST_POS		= 16;
+	private static final long	SERIES_FILE_SIZE	= 24;
+
+		// minutes after the last one recorded that may have been part written when resuming
+
+	private static final int	RESUME_MARGIN	= 10;
+
+	private static final String	SERIES_FILE		= "series.lts";
+	private static final String	MONTH_FILE		= "month.lts";
+
+	private final File		stats_dir;
+
+	private final long		start_min;
+
+	private RandomAccessFile	series_raf;
+
+	private long				day_file_day	= -1;
+	private RandomAccessFile	day_raf;
+
+	private long				month_file_day	= -1;	// epoch day of the 1st of the month
+	private RandomAccessFile	month_raf;
+
+	private final ByteBuffer	scratch	= ByteBuffer.allocate( 8 );
+
+		/**
+		 * Continues the existing series if there is one that was written up to the given time,
+		 * otherwise starts a new one from now_min
+		 *
+		 * @param latest_other_write	last time anything was recorded in the text files, 0 if unknown
+		 */
+
+	LongTermStatsSeries(
+		File		_stats_dir,
+		long		now_min,
+		long		latest_other_write )
+
+		throws IOException
+	{
+		stats_dir	= _stats_dir;
+
+		File	file = FileUtil.newFile( stats_dir, SERIES_FILE );
+
+		long	existing_start 	= -1;
+		long	existing_last	= -1;
+
+		if ( file.exists()){
+
+			RandomAccessFile raf = new RandomAccessFile( file, "r" );
+
+			try{
+				if ( 	raf.length() == SERIES_FILE_SIZE &&
+						raf.readInt() == SERIES_MAGIC &&
+						raf.readInt() == VERSION ){
+
+					long	start	= raf.readLong();
+					long	last	= raf.readLong();
+
+						// if the text files were written to after the series stopped (series turned
+						// off, older version run) there's a gap so start again
+
+					if ( latest_other_write <= ( last + 5 )*60*1000 && start <= now_min ){
+
+						existing_start 	= start;
+						existing_last	= last;
+					}
+				}
+			}finally{
+
+				raf.close();
+			}
+		}
+
+		stats_dir.mkdirs();
+
+		series_raf = new RandomAccessFile( file, "rw" );
+
+		if ( existing_start == -1 ){
+
+			start_min	= now_min;
+
+			series_raf.setLength( 0 );
+			series_raf.writeInt( SERIES_MAGIC );
+			series_raf.writeInt( VERSION );
+			series_raf.writeLong( start_min );
+			series_raf.writeLong( now_min );
+
+		}else{
+
+			start_min	= existing_start;
+
+				// the minute after the last one recorded may have been cut short part way through
+				// its rollup updates so rebuild those months from the minute data
+
+			long	last_day	= existing_last / MINS_PER_DAY;
+			long	next_day	= Math.max( existing_last, Math.min( now_min, existing_last + RESUME_MARGIN )) / MINS_PER_DAY;
+
+			LocalDate	last_date	= LocalDate.ofEpochDay( last_day );
+			LocalDate	next_date	= LocalDate.ofEpochDay( next_day );
+
+			rebuildRollups( last_date );
+
+			if ( next_date.getYear() != last_date.getYear() || next_date.getMonthValue() != last_date.getMonthValue()){
+
+				rebuildRollups( next_date );
+			}
+		}
+	}
+
+	long
+	getStartMinute()
+	{
+		return( start_min );
+	}
+
+	void
+	add(
+		long		min,
+		long[]		values )
+
+		throws IOException
+	{
+		boolean	all_zero = true;
+
+		for ( long v: values ){
+
+			if ( v != 0 ){
+
+				all_zero = false;
+			}
+		}
+
+		if ( !all_zero ){
+
+			long	day				= min / MINS_PER_DAY;
+			int		min_of_day		= (int)( min % MINS_PER_DAY );
+
+			LocalDate	date = LocalDate.ofEpochDay( day );
+
+			FileChannel	day_channel 	= getDayFile( day, date ).getChannel();
+			FileChannel	month_channel	= getMonthFile( day, date ).getChannel();
+
+			int	day_of_month	= date.getDayOfMonth() - 1;
+			int	hour_of_month	= day_of_month*24 + min_of_day/60;
+
+				// the minutes first and on disk, the rollups can always be rebuilt from them
+
+			for ( int c=0;c<COLUMNS;c++){
+
+				long	v = values[c];
+
+				if ( v != 0 ){
+
+					addLong( day_channel, HEADER_SIZE + ((long)c*MINS_PER_DAY + min_of_day )*8, v );
+				}
+			}
+
+			day_channel.force( false );
+
+			for ( int c=0;c<COLUMNS;c++){
+
+				long	v = values[c];
+
+				if ( v != 0 ){
+
+					addLong( month_channel, HOURS_OFFSET + ((long)c*MAX_HOURS + hour_of_month )*8, v );
+					addLong( month_channel, DAYS_OFFSET + ((long)c*MAX_DAYS + day_of_month )*8, v );
+					addLong( month_channel, MONTH_OFFSET + c*8, v );
+				}
+			}
+		}
+
+		scratch.clear();
+		scratch.putLong( 0, min );
+
+		series_raf.getChannel().write( scratch, SERIES_LAST_POS );
+	}
+
+		/**
+		 * Recomputes the hour, day and month totals of the given date's month from its day files
+		 */
+
+	private void
+	rebuildRollups(
+		LocalDate	date )
+
+		throws IOException
+	{
+		int	days = date.lengthOfMonth();
+
+		long[]	hours	= new long[COLUMNS*MAX_HOURS];
+		long[]	totals	= new long[COLUMNS*MAX_DAYS];
+		long[]	month	= new long[COLUMNS];
+
+		boolean	found = false;
+
+		for ( int d=0;d<days;d++){
+
+			File	file = getDayFileName( date.withDayOfMonth( d+1 ));
+
+			FileChannel	channel = openForRead( file, DAY_FILE_SIZE );
+
+			if ( channel == null ){
+
+				continue;
+			}
+
+			found = true;
+
+			try{
+				long[]	mins = readLongs( channel, HEADER_SIZE, COLUMNS*MINS_PER_DAY );
+
+				for ( int c=0;c<COLUMNS;c++){
+
+					for ( int i=0;i<MINS_PER_DAY;i++){
+
+						long	v = mins[c*MINS_PER_DAY + i];
+
+						hours[c*MAX_HOURS + d*24 + i/60]	+= v;
+						totals[c*MAX_DAYS + d]				+= v;
+						month[c]							+= v;
+					}
+				}
+			}finally{
+
+				channel.close();
+			}
+		}
+
+		File	month_file = getMonthFileName( date );
+
+		if ( !found && !month_file.exists()){
+
+			return;
+		}
+
+		ByteBuffer	buffer = ByteBuffer.allocate((int)( MONTH_FILE_SIZE - HOURS_OFFSET ));
+
+		for ( long v: hours ){
+
+			buffer.putLong( v );
+		}
+
+		for ( long v: totals ){
+
+			buffer.putLong( v );
+		}
+
+		for ( long v: month ){
+
+			buffer.putLong( v );
+		}
+
+		buffer.flip();
+
+		RandomAccessFile	raf = openFile( month_file, MONTH_MAGIC, MONTH_FILE_SIZE );
+
+		try{
+			FileChannel	channel = raf.getChannel();
+
+			long	pos = HOURS_OFFSET;
+
+			while( buffer.hasRemaining()){
+
+				pos += channel.write( buffer, pos );
+			}
+
+			channel.force( false );
+
+		}finally{
+
+			raf.close();
+		}
+	}
+
+		/**
+		 * Adds the totals for the minutes from_min to to_min inclusive
+		 */
+
+	void
+	getTotals(
+		long				from_min,
+		long				to_min,
+		long[]				result,
+		RecordAccepter		accepter )
+
+		throws IOException
+	{
+		long	m = Math.max( from_min, start_min );
+
+			// files opened for this query only, nothing is held open between queries
+
+		Map<File,FileChannel>	channels = new HashMap<>();
+
+		try{
+			while( m <= to_min ){
+
+				long	day			= m / MINS_PER_DAY;
+				int		min_of_day	= (int)( m % MINS_PER_DAY );
+
+				LocalDate	date = LocalDate.ofEpochDay( day );
+
+				long	remaining = to_min - m + 1;
+
+				if ( accepter == null ){
+
+					if ( min_of_day == 0 && remaining >= MINS_PER_DAY ){
+
+						FileChannel	month_channel = getChannel( channels, getMonthFileName( date ), MONTH_FILE_SIZE );
+
+						int	month_mins = date.lengthOfMonth()*MINS_PER_DAY;
+
+						if ( date.getDayOfMonth() == 1 && remaining >= month_mins ){
+
+							if ( month_channel != null ){
+
+								addColumns( month_channel, MONTH_OFFSET, 1, result );
+							}
+
+							m += month_mins;
+
+						}else{
+
+							if ( month_channel != null ){
+
+								addColumns( month_channel, DAYS_OFFSET + ( date.getDayOfMonth() - 1 )*8, MAX_DAYS, result );
+							}
+
+							m += MINS_PER_DAY;
+						}
+
+						continue;
+					}
+
+					if ( min_of_day % 60 == 0 && remaining >= 60 ){
+
+						FileChannel	month_channel = getChannel( channels, getMonthFileName( date ), MONTH_FILE_SIZE );
+
+						if ( month_channel != null ){
+
+							int	hour_of_month = ( date.getDayOfMonth() - 1 )*24 + min_of_day/60;
+
+							addColumns( month_channel, HOURS_OFFSET + hour_of_month*8, MAX_HOURS, result );
+						}
+
+						m += 60;
+
+						continue;
+					}
+				}
+
+					// minute by minute to the end of the hour (or day if filtering records)
+
+				int	run_end = accepter==null?( min_of_day/60 + 1 )*60:MINS_PER_DAY;
+
+				run_end = (int)Math.min( run_end, min_of_day + remaining );
+
+				int	run = run_end - min_of_day;
+
+				FileChannel	day_channel = getChannel( channels, getDayFileName( date ), DAY_FILE_SIZE );
+
+				if ( day_channel != null ){
+
+					long[][]	cols = new long[COLUMNS][];
+
+					for ( int c=0;c<COLUMNS;c++){
+
+						cols[c] = readLongs( day_channel, HEADER_SIZE + ((long)c*MINS_PER_DAY + min_of_day )*8, run );
+					}
+
+					for ( int i=0;i<run;i++){
+
+						if ( accepter != null ){
+
+							boolean	empty = true;
+
+							for ( int c=0;c<COLUMNS;c++){
+
+								if ( cols[c][i] != 0 ){
+
+									empty = false;
+
+									break;
+								}
+							}
+
+							if ( empty || !accepter.acceptRecord(( day*MINS_PER_DAY + min_of_day + i )*60*1000 )){
+
+								continue;
+							}
+						}
+
+						for ( int c=0;c<COLUMNS;c++){
+
+							result[c] += cols[c][i];
+						}
+					}
+				}
+
+				m += run;
+			}
+		}finally{
+
+			for ( FileChannel channel: channels.values()){
+
+				if ( channel != null ){
+
+					try{
+						channel.close();
+
+					}catch( Throwable e ){
+					}
+				}
+			}
+		}
+	}
+
+	void
+	close()
+	{
+		day_raf		= closeFile( day_raf );
+		month_raf	= closeFile( month_raf );
+		series_raf	= closeFile( series_raf );
+
+		day_file_day	= -1;
+		month_file_day	= -1;
+	}
+
+	static void
+	delete(
+		File		stats_dir )
+	{
+		File	file = FileUtil.newFile( stats_dir, SERIES_FILE );
+
+		if ( file.exists() && !file.delete()){
+
+			Debug.out( "Failed to delete " + file );
+		}
+	}
+
+	private RandomAccessFile
+	getDayFile(
+		long		day,
+		LocalDate	date )
+
+		throws IOException
+	{
+		if ( day_raf == null || day_file_day != day ){
+
+			day_raf = closeFile( day_raf );
+
+			day_raf			= openFile( getDayFileName( date ), DAY_MAGIC, DAY_FILE_SIZE );
+			day_file_day	= day;
+		}
+
+		return( day_raf );
+	}
+
+	private RandomAccessFile
+	getMonthFile(
+		long		day,
+		LocalDate	date )
+
+		throws IOException
+	{
+		long	month_day = day - ( date.getDayOfMonth() - 1 );
+
+		if ( month_raf == null || month_file_day != month_day ){
+
+			month_raf = closeFile( month_raf );
+
+			month_raf		= openFile( getMonthFileName( date ), MONTH_MAGIC, MONTH_FILE_SIZE );
+			month_file_day	= month_day;
+		}
+
+		return( month_raf );
+	}
+
+	private File
+	getDayFileName(
+		LocalDate	date )
+	{
+		return( FileUtil.newFile( stats_dir, getYear( date ), getMonth( date ), pad( date.getDayOfMonth()) + ".lts" ));
+	}
+
+	private File
+	getMonthFileName(
+		LocalDate	date )
+	{
+		return( FileUtil.newFile( stats_dir, getYear( date ), getMonth( date ), MONTH_FILE ));
+	}
+
+	private static String
+	getYear(
+		LocalDate	date )
+	{
+		return( String.valueOf( date.getYear()));
+	}
+
+	private static String
+	getMonth(
+		LocalDate	date )
+	{
+		return( pad( date.getMonthValue()));
+	}
+
+	private static String
+	pad(
+		int		i )
+	{
+		return( i<10?( "0" + i ):String.valueOf( i ));
+	}
+
+	private RandomAccessFile
+	openFile(
+		File		file,
+		int			magic,
+		long		size )
+
+		throws IOException
+	{
+		boolean	created = !file.exists();
+
+		if ( created ){
+
+			file.getParentFile().mkdirs();
+		}
+
+		RandomAccessFile	raf = new RandomAccessFile( file, "rw" );
+
+		try{
+			if ( created ){
+
+				raf.writeInt( magic );
+				raf.writeInt( VERSION );
+				raf.setLength( size );
+
+			}else if ( raf.length() != size || raf.readInt() != magic || raf.readInt() != VERSION ){
+
+				throw( new IOException( "Invalid stats series file " + file ));
+			}
+
+			return( raf );
+
+		}catch( IOException e ){
+
+			raf.close();
+
+			throw( e );
+		}
+	}
+
+	private static RandomAccessFile
+	closeFile(
+		RandomAccessFile	raf )
+	{
+		if ( raf != null ){
+
+			try{
+				raf.close();
+
+			}catch( Throwable e ){
+
+				Debug.out( e );
+			}
+		}
+
+		return( null );
+	}
+
+	private void
+	addLong(
+		FileChannel		channel,
+		long			pos,
+		long			delta )
+
+		throws IOException
+	{
+		scratch.clear();
+
+		if ( channel.read( scratch, pos ) != 8 ){
+
+			throw( new IOException( "Short read" ));
+		}
+
+		long	value = scratch.getLong( 0 ) + delta;
+
+		scratch.clear();
+		scratch.putLong( 0, value );
+
+		if ( channel.write( scratch, pos ) != 8 ){
+
+			throw( new IOException( "Short write" ));
+		}
+	}
+
+	private static FileChannel
+	getChannel(
+		Map<File,FileChannel>	channels,
+		File					file,
+		long					size )
+
+		throws IOException
+	{
+		if ( channels.containsKey( file )){
+
+			return( channels.get( file ));
+		}
+
+		FileChannel	channel = openForRead( file, size );
+
+		channels.put( file, channel );
+
+		return( channel );
+	}
+
+		/**
+		 * @return a read channel on the file, null if it doesn't exist yet
+		 */
+
+	private static FileChannel
+	openForRead(
+		File		file,
+		long		size )
+
+		throws IOException
+	{
+		if ( !file.exists()){
+
+			return( null );
+		}
+
+		RandomAccessFile	raf = new RandomAccessFile( file, "r" );
+
+		if ( raf.length() != size ){
+
+			raf.close();
+
+			throw( new IOException( "Invalid stats series file " + file ));
+		}
+
+		return( raf.getChannel());
+	}
+
+		/**
+		 * Adds one value from each column, columns being stride values apart
+		 */
+
+	private static void
+	addColumns(
+		FileChannel		channel,
+		long			pos,
+		int				stride,
+		long[]			result )
+
+		throws IOException
+	{
+		ByteBuffer	buffer = ByteBuffer.allocate( 8 );
+
+		for ( int c=0;c<COLUMNS;c++){
+
+			buffer.clear();
+
+			readFully( channel, buffer, pos + (long)c*stride*8 );
+
+			result[c] += buffer.getLong( 0 );
+		}
+	}
+
+	private static long[]
+	readLongs(
+		FileChannel		channel,
+		long			pos,
+		int				count )
+
+		throws IOException
+	{
+		ByteBuffer	buffer = ByteBuffer.allocate( count*8 );
+
+		readFully( channel, buffer, pos );
+
+		buffer.flip();
+
+		long[]	result = new long[count];
+
+		buffer.asLongBuffer().get( result );
+
+		return( result );
+	}
+
+	private static void
+	readFully(
+		FileChannel		channel,
+		ByteBuffer		buffer,
+		long			pos )
+
+		throws IOException
+	{
+		while( buffer.hasRemaining()){
+
+			int	len = channel.read( buffer, pos );
+
+			if ( len <= 0 ){
+
+				throw( new IOException( "Short read" ));
+			}
+
+			pos += len;
+		}
+	}
+}
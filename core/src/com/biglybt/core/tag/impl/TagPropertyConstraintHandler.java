@@ -112,6 +112,8 @@ TagPropertyConstraintHandler
 				download.setUserData( DM_FILE_NAMES_SELECTED, null );
 				download.setUserData( DM_FILE_EXTS_SELECTED, null );
 				download.setUserData( DM_FILE_PATHS_SELECTED, null );
+				
+				filesChanged( download );
 			}
 		};
 		
@@ -126,6 +128,8 @@ TagPropertyConstraintHandler
 			{
 				download.setUserData( DM_FILE_PATHS, null );
 				download.setUserData( DM_FILE_PATHS_SELECTED, null );
+				
+				filesChanged( download );
 			};	
 		};
 		
@@ -468,6 +472,7 @@ TagPropertyConstraintHandler
 						new TimerEventPerformer() {
 
 							int tick_count = 0;
+							int sweep_count = 0;
 							
 							@Override
 							public void
@@ -584,7 +589,13 @@ TagPropertyConstraintHandler
 								
 									apply_history.clear();
 
-									apply();
+										// constraints that only read things we get told about changing are
+										// re-evaluated as events arrive, so they only need the occasional
+										// safety-net sweep
+									
+									sweep_count++;
+									
+									apply( sweep_count % SWEEP_ALL_TICKS != 0 );
 									
 								}else{
 									
@@ -632,6 +643,62 @@ TagPropertyConstraintHandler
 		}
 	}
 
+	private void
+	addFreqLimPending(
+		DownloadManager			dm,
+		List<TagConstraint>		cons )
+	{
+		synchronized( freq_lim_pending ){
+
+			List<TagConstraint> existing = freq_lim_pending.get( dm );
+			
+			if ( existing == null ){
+				
+				freq_lim_pending.put( dm, cons );
+				
+			}else{
+				
+				for ( TagConstraint con: cons ){
+					
+					if ( !existing.contains( con )){
+						
+						existing.add( con );
+					}
+				}
+			}
+		}
+
+		freq_lim_dispatcher.dispatch();
+	}
+	
+	private void
+	filesChanged(
+		DownloadManager		dm )
+	{
+		List<TagConstraint>	interesting = new ArrayList<>();
+
+		synchronized( constrained_tags ){
+
+			if ( !initialised ){
+
+				return;
+			}
+
+			for ( TagConstraint tc: constrained_tags.values()){
+
+				if ( tc.readsFiles()){
+
+					interesting.add( tc );
+				}
+			}
+		}
+
+		if ( interesting.size() > 0 ){
+
+			addFreqLimPending( dm, interesting );
+		}
+	}
+	
 	private void
 	checkFreqLimUpdates()
 	{
@@ -687,12 +754,7 @@ TagPropertyConstraintHandler
 
 			DownloadManager dm = PluginCoreUtils.unwrap( download );
 
-			synchronized( freq_lim_pending ){
-
-				freq_lim_pending.put( dm, interesting );
-			}
-
-			freq_lim_dispatcher.dispatch();
+			addFreqLimPending( dm, interesting );
 		}
 	}
 
@@ -843,7 +905,7 @@ TagPropertyConstraintHandler
 	private void
 	apply(
 		final DownloadManager				dm,
-		Tag									related_tag,
+		final Tag							related_tag,
 		boolean								auto,
 		boolean								is_new )
 	{
@@ -881,7 +943,12 @@ TagPropertyConstraintHandler
 
 					for ( TagConstraint con: cons ){
 
-						con.apply( dm, is_new );
+							// a change in membership of a tag only matters to constraints that read it
+
+						if ( related_tag == null || con.readsTag( related_tag )){
+						
+							con.apply( dm, is_new );
+						}
 					}
 				}
 			});
@@ -993,8 +1060,11 @@ TagPropertyConstraintHandler
 			});
 	}
 	
+	private static final int	SWEEP_ALL_TICKS	= 10;
+	
 	private void
-	apply()
+	apply(
+		final boolean	periodic_only )
 	{
 		synchronized( constrained_tags ){
 
@@ -1022,6 +1092,11 @@ TagPropertyConstraintHandler
 
 					for ( TagConstraint con: cons ){
 
+						if ( periodic_only && !con.needsPeriodicCheck()){
+							
+							continue;
+						}
+						
 						con.apply( dms );
 					}
 				}
@@ -1099,6 +1174,13 @@ TagPropertyConstraintHandler
 		private Set<Tag>		dependent_on_tags;
 		private boolean			dependent_on_peer_sets;
 		
+			// what the compiled expression reads, so we know what changes need it re-evaluating
+
+		private Set<Tag>		reads_tags;
+		private boolean			reads_any_tag;
+		private boolean			reads_files;
+		private boolean			needs_periodic;
+		
 		private boolean			must_check_dependencies;
 		
 		private Average			activity_average = Average.getInstance( 1000, 60 );
@@ -1171,7 +1253,7 @@ TagPropertyConstraintHandler
 			
 			if ( Constants.IS_CVS_VERSION ){
 				
-				result +=  ", " + "DS=" + depends_on_download_state + ", DL=" + depends_on_level;
+				result +=  ", " + "DS=" + depends_on_download_state + ", DL=" + depends_on_level + ", P=" + needs_periodic;
 			}
 			
 			return( result );
@@ -1244,6 +1326,30 @@ TagPropertyConstraintHandler
 			return( depends_on_download_state );
 		}			
 		
+		private boolean
+		readsTag(
+			Tag		t )
+		{
+			return( t == tag || reads_any_tag || ( reads_tags != null && reads_tags.contains( t )));
+		}
+		
+		private boolean
+		readsFiles()
+		{
+			return( reads_files );
+		}
+		
+			/**
+			 * @return true if the constraint reads something that can change without us being told
+			 * (running stats, time, non-manual tags...) and so must be re-evaluated periodically
+			 */
+		
+		private boolean
+		needsPeriodicCheck()
+		{
+			return( needs_periodic );
+		}
+		
 		private ConstraintExpr
 		compileStart(
 			String						str,
@@ -1811,6 +1917,21 @@ TagPropertyConstraintHandler
 							if ( kw_details != null ){
 								
 								depends_on_level = Math.max( depends_on_level, kw_details[1] );
+								
+								int kw = kw_details[0];
+								
+								if ( kw_details[1] != DEP_STATIC || kw == KW_NAME || kw == KW_SAVE_PATH || kw == KW_SAVE_FOLDER ){
+									
+										// renames and moves aren't notified to us
+									
+									needs_periodic = true;
+									
+								}else if ( 	kw == KW_FILE_NAMES || kw == KW_FILE_NAMES_SELECTED || 
+											kw == KW_FILE_EXTS || kw == KW_FILE_EXTS_SELECTED ||
+											kw == KW_FILE_PATHS || kw == KW_FILE_PATHS_SELECTED ){
+									
+									reads_files = true;
+								}
 							}
 						}
 					}
@@ -2485,6 +2606,22 @@ TagPropertyConstraintHandler
 								
 								TagType tt = t.getTagType();
 								
+								if ( reads_tags == null ){
+									
+									reads_tags = new HashSet<Tag>();
+								}
+								
+								reads_tags.add( t );
+								
+									// we only hear about membership changes of manual tags, peer sets are
+									// checked by the timer
+								
+								if ( 	tt.getTagType() != TagType.TT_DOWNLOAD_MANUAL &&
+										tt.getTagType() != TagType.TT_PEER_IPSET ){
+									
+									needs_periodic = true;
+								}
+								
 								if ( 	tt.hasTagTypeFeature( TagFeature.TF_PROPERTIES ) ||
 										tt.getTagType() == TagType.TT_PEER_IPSET ){
 									
@@ -2780,6 +2917,51 @@ TagPropertyConstraintHandler
 					throw( new RuntimeException( "Invalid parameters for function '" + func_name + "': " + params_expr.getString()));
 
 				}
+				
+				switch( fn_type ){
+				
+						// driven by tag events, download state events or fixed for the download
+					
+					case FT_HAS_TAG:
+					case FT_IS_PRIVATE:
+					case FT_IS_MAGNET:
+					case FT_IS_COMPLETE:
+					case FT_IS_CHECKING:
+					case FT_IS_STOPPED:
+					case FT_IS_ERROR:
+					case FT_IS_PAUSED:
+						
+						// pure functions of their arguments
+						
+					case FT_GE:
+					case FT_GT:
+					case FT_LE:
+					case FT_LT:
+					case FT_EQ:
+					case FT_NEQ:
+					case FT_CONTAINS:
+					case FT_MATCHES:
+					case FT_LOWERCASE:
+					case FT_HOURS_TO_SECS:
+					case FT_DAYS_TO_SECS:
+					case FT_WEEKS_TO_SECS:
+					case FT_SET_COLOURS:{
+						
+						break;
+					}
+					case FT_HAS_TAG_GROUP:
+					case FT_JAVASCRIPT:{
+						
+						reads_any_tag	= true;
+						needs_periodic	= true;
+						
+						break;
+					}
+					default:{
+						
+						needs_periodic = true;
+					}
+				}
 			}
 
 			@Override
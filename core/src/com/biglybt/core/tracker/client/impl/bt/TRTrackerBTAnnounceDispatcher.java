@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.tracker.client.impl.bt;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
+import com.biglybt.core.util.AEDiagnostics;
+import com.biglybt.core.util.AEDiagnosticsEvidenceGenerator;
+import com.biglybt.core.util.AEMonitor;
+import com.biglybt.core.util.IndentWriter;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Shared per-tracker-host gate for announces from all downloads. Each host gets a start slot
+ * booked at least the configured spacing after the previous one, so that a mass start is spread
+ * out rather than hitting the tracker (and our NAT table) all at once, and the number of announces
+ * in flight to the host at any one time is capped.
+ *
+ * Announcers book a slot, wait for it via their timer event and then call startAnnounce. If the
+ * host is at its concurrency limit they retry shortly afterwards, keeping the slot they already
+ * have.
+ */
+
+public class
+TRTrackerBTAnnounceDispatcher
+{
+	protected static final int	BUSY_RETRY_MILLIS	= 1000;
+
+	private static int	max_per_host;
+	private static int	spacing_millis;
+
+	private static final Map<String,HostState>	host_states = new HashMap<>();
+
+	private static final AEMonitor	class_mon	= new AEMonitor( "TRTrackerBTAnnounceDispatcher" );
+
+	static{
+		COConfigurationManager.addAndFireParameterListeners(
+			new String[]{
+				ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_CONCURRENT_ANNOUNCE_PER_HOST,
+				ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_ANNOUNCE_SPACING_PER_HOST,
+			},
+			(name)->{
+				max_per_host	= COConfigurationManager.getIntParameter( ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_CONCURRENT_ANNOUNCE_PER_HOST );
+				spacing_millis	= COConfigurationManager.getIntParameter( ConfigKeys.Tracker.ICFG_TRACKER_CLIENT_ANNOUNCE_SPACING_PER_HOST );
+			});
+
+		AEDiagnostics.addEvidenceGenerator(
+			new AEDiagnosticsEvidenceGenerator()
+			{
+				@Override
+				public void
+				generate(
+					IndentWriter		writer )
+				{
+					writer.println( "Announce Dispatcher: max/host=" + max_per_host + ", spacing=" + spacing_millis );
+
+					try{
+						writer.indent();
+
+						long	now = SystemTime.getMonotonousTime();
+
+						try{
+							class_mon.enter();
+
+							for ( Map.Entry<String,HostState> entry: host_states.entrySet()){
+
+								HostState	hs = entry.getValue();
+
+								writer.println( entry.getKey() + ": active=" + hs.active + ", booked=" + Math.max( 0, hs.next_slot - now ) + "ms, deferred=" + hs.busy_deferrals );
+							}
+						}finally{
+
+							class_mon.exit();
+						}
+					}finally{
+
+						writer.exdent();
+					}
+				}
+			});
+	}
+
+	protected static boolean
+	isEnabled()
+	{
+		return( max_per_host > 0 || spacing_millis > 0 );
+	}
+
+		/**
+		 * @return the monotonous time at which the caller may start its announce
+		 */
+
+	protected static long
+	bookSlot(
+		String		host )
+	{
+		long	now = SystemTime.getMonotonousTime();
+
+		try{
+			class_mon.enter();
+
+			HostState	hs = host_states.get( host );
+
+			if ( hs == null ){
+
+				hs = new HostState();
+
+				host_states.put( host, hs );
+			}
+
+			long	slot = Math.max( now, hs.next_slot );
+
+			hs.next_slot = slot + Math.max( 0, spacing_millis );
+
+			return( slot );
+
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+		/**
+		 * @return true if the announce can go ahead, in which case endAnnounce must be called
+		 * when it completes. false if the host already has the maximum number in flight
+		 */
+
+	protected static boolean
+	startAnnounce(
+		String		host )
+	{
+		try{
+			class_mon.enter();
+
+			HostState	hs = host_states.get( host );
+
+			if ( hs == null ){
+
+				hs = new HostState();
+
+				host_states.put( host, hs );
+			}
+
+			if ( max_per_host > 0 && hs.active >= max_per_host ){
+
+				hs.busy_deferrals++;
+
+				return( false );
+			}
+
+			hs.active++;
+
+			return( true );
+
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+	protected static void
+	endAnnounce(
+		String		host )
+	{
+		long	now = SystemTime.getMonotonousTime();
+
+		try{
+			class_mon.enter();
+
+			HostState	hs = host_states.get( host );
+
+			if ( hs != null ){
+
+				hs.active--;
+			}
+
+				// tidy up hosts that have nothing going on
+
+			Iterator<HostState>	it = host_states.values().iterator();
+
+			while( it.hasNext()){
+
+				HostState	state = it.next();
+
+				if ( state.active <= 0 && state.next_slot < now ){
+
+					it.remove();
+				}
+			}
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+	private static class
+	HostState
+	{
+		int		active;
+		long	next_slot;
+		long	busy_deferrals;
+	}
+}
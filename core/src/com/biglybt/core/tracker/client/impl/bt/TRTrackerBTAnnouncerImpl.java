@@ -313,6 +313,7 @@ TRTrackerBTAnnouncerImpl
 	private static boolean tcpAnnounceEnabled;
 	private static boolean udpAnnounceEnabled;
 	private static boolean udpProbeEnabled;
+	private static boolean http_keep_alive;
 
     static{
 	  	PRUDPTrackerCodecs.registerCodecs();
@@ -322,7 +323,8 @@ TRTrackerBTAnnouncerImpl
 	  			"Tracker Client Numwant Limit",
 	  			"Tracker Client Enable TCP",
 	  			"Server Enable UDP",
-	  			"Tracker UDP Probe Enable"
+	  			"Tracker UDP Probe Enable",
+	  			ConfigKeys.Tracker.BCFG_TRACKER_CLIENT_HTTP_KEEP_ALIVE
 	  			},
 	  		new ParameterListener()
 	  		{
@@ -334,6 +336,7 @@ TRTrackerBTAnnouncerImpl
 					tcpAnnounceEnabled = COConfigurationManager.getBooleanParameter("Tracker Client Enable TCP");
 	  				udpAnnounceEnabled = COConfigurationManager.getBooleanParameter("Server Enable UDP");
 					udpProbeEnabled  = COConfigurationManager.getBooleanParameter("Tracker UDP Probe Enable");
+					http_keep_alive	= COConfigurationManager.getBooleanParameter( ConfigKeys.Tracker.BCFG_TRACKER_CLIENT_HTTP_KEEP_ALIVE );
 	  			}
 	  		});
     }
@@ -351,6 +354,8 @@ TRTrackerBTAnnouncerImpl
 	private TimerEvent				current_timer_event;
 	private TimerEventPerformer		timer_event_action;
 
+	private long					announce_slot;
+
 	protected int				tracker_state 			= TRTrackerAnnouncer.TS_INITIALISED;
 	private String				tracker_status_str		= "";
 	private TRTrackerAnnouncerResponseImpl	last_response			= null;
@@ -508,11 +513,41 @@ TRTrackerBTAnnouncerImpl
 					return;
 				}
 				
+				String	dispatch_host = null;
+
+				if ( !stopped && TRTrackerBTAnnounceDispatcher.isEnabled()){
+
+					String	host = getPrimaryAnnounceHost();
+
+					if ( host != null ){
+
+						long	delay = getDispatchDelay( host );
+
+						if ( delay > 0 ){
+
+							deferTimerEvent( this_event, this, delay );
+
+							return;
+						}
+
+						dispatch_host = host;
+					}
+				}
+
 				long	secs_to_wait = getErrorRetryInterval();
 
 				try{
 
-					secs_to_wait = requestUpdateSupport();
+					try{
+						secs_to_wait = requestUpdateSupport();
+
+					}finally{
+
+						if ( dispatch_host != null ){
+
+							TRTrackerBTAnnounceDispatcher.endAnnounce( dispatch_host );
+						}
+					}
 
 					if ( tracker_state != TRTrackerAnnouncer.TS_STOPPED ){
 						
@@ -589,6 +624,93 @@ TRTrackerBTAnnouncerImpl
 					"Tracker Announcer Created using url : " + trackerURLListToString()));
   }
 
+		/**
+		 * @return 0 if the announce to the host can go ahead now (and endAnnounce must be called
+		 * on completion), otherwise the millis to wait before trying again
+		 */
+
+	private long
+	getDispatchDelay(
+		String		host )
+	{
+		if ( announce_slot == 0 ){
+
+			announce_slot = TRTrackerBTAnnounceDispatcher.bookSlot( host );
+		}
+
+		long	delay = announce_slot - SystemTime.getMonotonousTime();
+
+		if ( delay > 0 ){
+
+			return( delay );
+		}
+
+		if ( !TRTrackerBTAnnounceDispatcher.startAnnounce( host )){
+
+				// keep the slot we have, we're at the front of the queue when the host frees up
+
+			return( TRTrackerBTAnnounceDispatcher.BUSY_RETRY_MILLIS/2 + RandomUtils.nextInt( TRTrackerBTAnnounceDispatcher.BUSY_RETRY_MILLIS ));
+		}
+
+		announce_slot = 0;
+
+		return( 0 );
+	}
+
+	private void
+	deferTimerEvent(
+		TimerEvent				this_event,
+		TimerEventPerformer		performer,
+		long					delay )
+	{
+		try{
+			this_mon.enter();
+
+			if ( this_event.isCancelled() || destroyed ){
+
+				return;
+			}
+
+				// someone may have already scheduled another, leave theirs in place
+
+			if ( 	current_timer_event != null &&
+					current_timer_event != this_event &&
+					!current_timer_event.isCancelled()){
+
+				return;
+			}
+
+			current_timer_event = tracker_timer.addEvent( SystemTime.getCurrentTime() + delay, performer );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	private String
+	getPrimaryAnnounceHost()
+	{
+		try{
+			List<List<URL>>	lists = trackerUrlLists;
+
+			if ( lists != null && !lists.isEmpty()){
+
+				List<URL>	urls = lists.get(0);
+
+				if ( !urls.isEmpty()){
+
+					return( urls.get(0).getHost());
+				}
+			}
+		}catch( Throwable e ){
+
+				// list can be re-ordered by an announce in progress, not worth locking for
+		}
+
+		return( null );
+	}
+
 	public void
 	cloneFrom(
 		TRTrackerBTAnnouncerImpl	other )
@@ -1860,7 +1982,17 @@ TRTrackerBTAnnouncerImpl
  			con.setRequestProperty("User-Agent", user_agent );
  		}
 
- 		con.setRequestProperty("Connection", "close" );
+			// without a proxy let the JRE keep the connection alive for the next announce to this
+			// tracker, from us or any other download
+
+ 		boolean	keep_alive = http_keep_alive && proxy == null;
+
+ 		boolean	reply_complete = false;
+
+ 		if ( !keep_alive ){
+
+ 			con.setRequestProperty("Connection", "close" );
+ 		}
 
  		// some trackers support gzip encoding of replies
 
@@ -2010,6 +2142,8 @@ TRTrackerBTAnnouncerImpl
  					}
  				}
 
+ 				reply_complete = true;
+
  				if (Logger.isEnabled())
 					Logger.log(new LogEvent(torrent, LOGID, "Tracker Announcer ["
 							+ lastUsedUrl + "] has received : " + message));
@@ -2046,7 +2180,13 @@ TRTrackerBTAnnouncerImpl
  				}
  			}
  		}finally{
- 			con.disconnect();
+
+ 				// the connection is only good for re-use if the reply was read fully
+
+ 			if ( !keep_alive || failure_reason != null || !reply_complete ){
+
+ 				con.disconnect();
+ 			}
  		}
 
  		return( failure_reason );
@@ -2084,21 +2224,37 @@ TRTrackerBTAnnouncerImpl
 
  			InetSocketAddress destination = new InetSocketAddress(reqUrl.getHost(),reqUrl.getPort()==-1?80:reqUrl.getPort());
 
- 			handler = handler.openSession( destination );
+ 			PRUDPPacketHandler session = handler.openSession( destination );
+
+ 				// connection ids can be shared with other requests unless we have a private session
+
+ 			boolean	reusable = session == handler;
+
+ 			handler = session;
+
+ 			boolean	stale_retry_done = false;
 
  			try{
 
 	 			for (int retry_loop=0;retry_loop<PRUDPPacketTracker.DEFAULT_RETRY_COUNT;retry_loop++){
 
+	 				PRUDPPacketReplyConnect connect_reply = null;
+	 				boolean					cached_connection = false;
+
 	 				try{
 
-			 			PRUDPPacket connect_request = new PRUDPPacketRequestConnect();
+			 			PRUDPPacket reply = reusable?TRTrackerBTUDPConnectionCache.getCachedConnection( destination, timeout ):null;
+
+			 			cached_connection = reply != null;
 
-			 			PRUDPPacket reply = handler.sendAndReceive( auth, connect_request, destination, timeout );
+			 			if ( reply == null ){
+
+			 				reply = TRTrackerBTUDPConnectionCache.connect( handler, auth, destination, timeout, reusable );
+			 			}
 
 			 			if ( reply.getAction() == PRUDPPacketTracker.ACT_REPLY_CONNECT ){
 
-			 				PRUDPPacketReplyConnect connect_reply = (PRUDPPacketReplyConnect)reply;
+			 				connect_reply = (PRUDPPacketReplyConnect)reply;
 
 			 				long	my_connection = connect_reply.getConnectionId();
 
@@ -2213,8 +2369,12 @@ TRTrackerBTAnnouncerImpl
 									getLongURLParam( url_str, "uploaded" ));
 			 				}
 
+			 				long	request_start = SystemTime.getMonotonousTime();
+
 			 				reply = handler.sendAndReceive( auth, request, destination );
 
+			 				TRTrackerBTUDPConnectionCache.requestComplete( destination, SystemTime.getMonotonousTime() - request_start );
+
 			 				if ( reply.getAction() == PRUDPPacketTracker.ACT_REPLY_ANNOUNCE ){
 
 			 					if ( auth != null ){
@@ -2290,17 +2450,47 @@ TRTrackerBTAnnouncerImpl
 
 			 				failure_reason = ((PRUDPPacketReplyError)reply).getMessage();
 
+			 				TRTrackerBTUDPConnectionCache.requestError( destination );
+
+			 					// the tracker may have dropped a connection id that we still thought valid,
+			 					// have one more go with a fresh one
+
+			 				if ( cached_connection && !stale_retry_done ){
+
+			 					stale_retry_done = true;
+
+			 					TRTrackerBTUDPConnectionCache.invalidate( destination, connect_reply );
+
+			 					retry_loop--;
+			 				}
 			 			}else{
 
 			 				failure_reason = ((PRUDPPacketReplyError)reply).getMessage();
 			 			}
 			 		}catch( PRUDPPacketHandlerException e ){
 
+			 			if ( connect_reply != null ){
+
+			 				TRTrackerBTUDPConnectionCache.requestFailed( destination, e );
+
+			 				TRTrackerBTUDPConnectionCache.invalidate( destination, connect_reply );
+			 			}
+
 			 			if ( e.getMessage() == null ||
 							!e.getMessage().contains("timed out")){
 
 			 				throw( e );
 			 			}
+
+			 				// trackers generally ignore requests with an unknown connection id so a timeout
+			 				// on a cached one is worth a retry with a fresh connect
+
+			 			if ( cached_connection && !stale_retry_done ){
+
+			 				stale_retry_done = true;
+
+			 				retry_loop--;
+			 			}
 			 		}
 	 			}
 	 		}finally{
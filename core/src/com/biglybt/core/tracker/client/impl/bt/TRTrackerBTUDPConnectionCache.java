@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.tracker.client.impl.bt;
+
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.biglybt.core.tracker.protocol.udp.PRUDPPacketReplyConnect;
+import com.biglybt.core.tracker.protocol.udp.PRUDPPacketRequestConnect;
+import com.biglybt.core.tracker.protocol.udp.PRUDPPacketTracker;
+import com.biglybt.core.util.AEDiagnostics;
+import com.biglybt.core.util.AEDiagnosticsEvidenceGenerator;
+import com.biglybt.core.util.AEMonitor;
+import com.biglybt.core.util.AESemaphore;
+import com.biglybt.core.util.IndentWriter;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.net.udp.uc.PRUDPPacket;
+import com.biglybt.net.udp.uc.PRUDPPacketHandler;
+import com.biglybt.net.udp.uc.PRUDPPacketHandlerException;
+import com.biglybt.net.udp.uc.PRUDPPacketHandlerTimeoutException;
+
+/**
+ * Per-tracker UDP connection ids shared by all announces and scrapes. BEP 15 allows a client to
+ * use a connection id for up to one minute after receiving it, so concurrent requests from
+ * different downloads to the same tracker can all go out on one id instead of each doing its own
+ * connect round-trip. When a connect is already in progress other requests for the same tracker
+ * wait for its result rather than starting another.
+ *
+ * Also keeps per-tracker request latency and failure counts for diagnostics.
+ */
+
+public class
+TRTrackerBTUDPConnectionCache
+{
+	public static final long	CONNECTION_ID_VALIDITY	= 60*1000;
+
+		// stop handing out an id a little before the tracker expires it, a request sent right at
+		// the end of the minute would otherwise arrive too late after network delay and clock skew
+
+	private static final long	CONNECTION_ID_REUSE_LIMIT	= CONNECTION_ID_VALIDITY - 5*1000;
+
+	private static final int	MAX_TRACKERS			= 256;
+
+	private static final Map<String,TrackerEntry>	trackers =
+		new LinkedHashMap<String,TrackerEntry>(MAX_TRACKERS,0.75f,true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean
+			removeEldestEntry(
+		   		Map.Entry<String,TrackerEntry> eldest)
+			{
+				return size() > MAX_TRACKERS;
+			}
+		};
+
+	private static final AEMonitor	class_mon	= new AEMonitor( "TRTrackerBTUDPConnectionCache" );
+
+	static{
+		AEDiagnostics.addEvidenceGenerator(
+			new AEDiagnosticsEvidenceGenerator()
+			{
+				@Override
+				public void
+				generate(
+					IndentWriter		writer )
+				{
+					writer.println( "UDP Tracker Connections" );
+
+					try{
+						writer.indent();
+
+						for ( TrackerEntry entry: getEntries()){
+
+							writer.println( entry.getString());
+						}
+					}finally{
+
+						writer.exdent();
+					}
+				}
+			});
+	}
+
+	private static String
+	getKey(
+		InetSocketAddress	destination )
+	{
+		return( destination.getHostString() + ":" + destination.getPort());
+	}
+
+	protected static TrackerEntry
+	getEntry(
+		InetSocketAddress	destination )
+	{
+		String	key = getKey( destination );
+
+		try{
+			class_mon.enter();
+
+			TrackerEntry	entry = trackers.get( key );
+
+			if ( entry == null ){
+
+				entry = new TrackerEntry( key );
+
+				trackers.put( key, entry );
+			}
+
+			return( entry );
+
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+	protected static List<TrackerEntry>
+	getEntries()
+	{
+		try{
+			class_mon.enter();
+
+			return( new ArrayList<>( trackers.values()));
+
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+		/**
+		 * Returns a connect reply cached from an earlier connect that is still within its validity
+		 * window, waiting for any connect already in progress to the tracker to complete. If null is
+		 * returned the caller must connect with reusable set so that the outcome is recorded
+		 */
+
+	protected static PRUDPPacketReplyConnect
+	getCachedConnection(
+		InetSocketAddress			destination,
+		long						max_wait )
+	{
+		return( getEntry( destination ).getCachedConnection( max_wait ));
+	}
+
+		/**
+		 * Connects to the tracker, returning the connect reply or the tracker's error reply
+		 * @param reusable false if the handler is a one-off session (e.g. via a SOCKS proxy) in which case
+		 * connection ids can't be shared with other requests
+		 */
+
+	protected static PRUDPPacket
+	connect(
+		PRUDPPacketHandler			handler,
+		PasswordAuthentication		auth,
+		InetSocketAddress			destination,
+		long						timeout,
+		boolean						reusable )
+
+		throws PRUDPPacketHandlerException
+	{
+		TrackerEntry	entry = getEntry( destination );
+
+		boolean	ok = false;
+
+		PRUDPPacketReplyConnect	result = null;
+
+		try{
+			long	start = SystemTime.getMonotonousTime();
+
+			PRUDPPacket reply;
+
+			try{
+				reply = handler.sendAndReceive( auth, new PRUDPPacketRequestConnect(), destination, timeout );
+
+			}catch( PRUDPPacketHandlerException e ){
+
+				entry.requestFailed( e );
+
+				throw( e );
+			}
+
+			entry.connectComplete( SystemTime.getMonotonousTime() - start );
+
+			ok = true;
+
+			if ( reply.getAction() == PRUDPPacketTracker.ACT_REPLY_CONNECT ){
+
+				result = (PRUDPPacketReplyConnect)reply;
+
+			}else{
+
+				entry.requestError();
+			}
+
+			return( reply );
+
+		}finally{
+
+			if ( reusable ){
+
+				entry.setConnection( ok?result:null );
+			}
+		}
+	}
+
+		/**
+		 * Called when a request using the connection id failed in a way that might be down to the
+		 * tracker no longer recognising it so that the next request connects afresh
+		 */
+
+	protected static void
+	invalidate(
+		InetSocketAddress			destination,
+		PRUDPPacketReplyConnect		connection )
+	{
+		getEntry( destination ).invalidate( connection );
+	}
+
+	protected static void
+	requestComplete(
+		InetSocketAddress			destination,
+		long						elapsed )
+	{
+		getEntry( destination ).requestComplete( elapsed );
+	}
+
+	protected static void
+	requestFailed(
+		InetSocketAddress			destination,
+		Throwable					error )
+	{
+		getEntry( destination ).requestFailed( error );
+	}
+
+	protected static void
+	requestError(
+		InetSocketAddress			destination )
+	{
+		getEntry( destination ).requestError();
+	}
+
+	protected static class
+	TrackerEntry
+	{
+		private final String		key;
+
+		private PRUDPPacketReplyConnect		connection;
+		private long						connection_time;
+
+		private AESemaphore					connect_sem;
+
+		private long	connects;
+		private long	connect_reuses;
+		private long	requests;
+		private long	timeouts;
+		private long	errors;
+
+		private long	average_latency	= -1;
+		private long	max_latency;
+
+		private
+		TrackerEntry(
+			String		_key )
+		{
+			key	= _key;
+		}
+
+			/**
+			 * @return a still valid connection or null, in which case the caller must connect and then
+			 * call setConnection with the outcome
+			 */
+
+		private PRUDPPacketReplyConnect
+		getCachedConnection(
+			long		max_wait )
+		{
+			AESemaphore	sem;
+
+			synchronized( this ){
+
+				PRUDPPacketReplyConnect	result = getValidConnection();
+
+				if ( result != null ){
+
+					return( result );
+				}
+
+				if ( connect_sem == null ){
+
+						// we're the one doing the connect
+
+					connect_sem = new AESemaphore( "UDPConnect:" + key );
+
+					return( null );
+				}
+
+				sem = connect_sem;
+			}
+
+			sem.reserve( max_wait );
+
+			synchronized( this ){
+
+				PRUDPPacketReplyConnect	result = getValidConnection();
+
+				if ( result == null && connect_sem == null ){
+
+						// the other connect failed, we'll do our own
+
+					connect_sem = new AESemaphore( "UDPConnect:" + key );
+				}
+
+				return( result );
+			}
+		}
+
+		private PRUDPPacketReplyConnect
+		getValidConnection()
+		{
+			if ( connection != null ){
+
+				if ( SystemTime.getMonotonousTime() - connection_time < CONNECTION_ID_REUSE_LIMIT ){
+
+					connect_reuses++;
+
+					return( connection );
+				}
+
+				connection = null;
+			}
+
+			return( null );
+		}
+
+		private void
+		setConnection(
+			PRUDPPacketReplyConnect		_connection )
+		{
+			AESemaphore	sem;
+
+			synchronized( this ){
+
+				if ( _connection != null ){
+
+					connection		= _connection;
+					connection_time	= SystemTime.getMonotonousTime();
+				}
+
+				sem = connect_sem;
+
+				connect_sem = null;
+			}
+
+			if ( sem != null ){
+
+				sem.releaseForever();
+			}
+		}
+
+		private synchronized void
+		invalidate(
+			PRUDPPacketReplyConnect		_connection )
+		{
+			if ( connection == _connection ){
+
+				connection = null;
+			}
+		}
+
+		private synchronized void
+		connectComplete(
+			long		elapsed )
+		{
+			connects++;
+
+			updateLatency( elapsed );
+		}
+
+		private synchronized void
+		requestComplete(
+			long		elapsed )
+		{
+			requests++;
+
+			updateLatency( elapsed );
+		}
+
+		private synchronized void
+		requestFailed(
+			Throwable	error )
+		{
+			if ( error instanceof PRUDPPacketHandlerTimeoutException ){
+
+				timeouts++;
+
+			}else{
+
+				errors++;
+			}
+		}
+
+		private synchronized void
+		requestError()
+		{
+			errors++;
+		}
+
+		private void
+		updateLatency(
+			long		elapsed )
+		{
+			if ( average_latency < 0 ){
+
+				average_latency = elapsed;
+
+			}else{
+
+				average_latency = ( average_latency*7 + elapsed )/8;
+			}
+
+			if ( elapsed > max_latency ){
+
+				max_latency = elapsed;
+			}
+		}
+
+		public synchronized long
+		getAverageLatency()
+		{
+			return( average_latency );
+		}
+
+		public synchronized long
+		getTimeoutCount()
+		{
+			return( timeouts );
+		}
+
+		protected synchronized String
+		getString()
+		{
+			long	age = connection==null?-1:(SystemTime.getMonotonousTime() - connection_time );
+
+			return( key + ": connects=" + connects + ", reuses=" + connect_reuses + ", requests=" + requests +
+					", timeouts=" + timeouts + ", errors=" + errors +
+					", latency=" + average_latency + "/" + max_latency + "ms" +
+					", id_age=" + age );
+		}
+	}
+}
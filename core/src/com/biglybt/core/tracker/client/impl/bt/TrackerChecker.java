@@ -18,8 +18,10 @@
 package com.biglybt.core.tracker.client.impl.bt;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.biglybt.core.config.COConfigurationManager;
@@ -336,163 +338,165 @@ public class TrackerChecker implements AEDiagnosticsEvidenceGenerator, SystemTim
 		runScrapes();
 	}
 
-  /** Loop indefinitely, waiting for the next scrape, and scraping.
+  /** Single timer for all trackers: each run starts a grouped scrape on every idle tracker
+   *  that has a hash due and then sleeps until the earliest remaining due time.
    */
 
-	TRTrackerBTScraperResponseImpl oldResponse;
-
   private void
   runScrapes()
   {
-	  TRTrackerBTScraperResponseImpl nextResponseScraping = checkForNextScrape();
-
-	  if (Logger.isEnabled() && nextResponseScraping != oldResponse && nextResponseScraping != null ) {
-		  Logger.log(new LogEvent(
-				  TorrentUtils.getDownloadManager(nextResponseScraping.getHash()),
-				  LOGID,
-				  LogEvent.LT_INFORMATION,
-				  "Next scrape will be "
-						  + nextResponseScraping.getURL()
-						  + " in "
-						  + ((nextResponseScraping.getNextScrapeStartTime() - SystemTime.getCurrentTime())/1000)
-						  + " sec,type="
-						  + (nextResponseScraping.getTrackerStatus().getSupportsMultipeHashScrapes()
-								  ? "multi" : "single")
-						  + ",active="+nextResponseScraping.getTrackerStatus().getNumActiveScrapes()));
-	  }
+	  long	now = SystemTime.getCurrentTime();
 
+	  List<TRTrackerBTScraperResponseImpl>	due = new ArrayList<>();
 
-	  long delay;
+	  long	next_due = checkForDueScrapes( now, due );
 
-	  if (nextResponseScraping == null) {
+	  for ( TRTrackerBTScraperResponseImpl response: due ){
 
-		  delay = 60000; // nothing going on, recheck in a min
+		  TrackerStatus	ts = response.getTrackerStatus();
 
-	  } else {
+		  if (Logger.isEnabled()) {
+			  Logger.log(new LogEvent(
+					  TorrentUtils.getDownloadManager(response.getHash()),
+					  LOGID,
+					  LogEvent.LT_INFORMATION,
+					  "Scraping " + response.getURL()
+							  + ",type=" + (ts.getSupportsMultipeHashScrapes() ? "multi" : "single")
+							  + ",limit=" + ts.getGroupScrapeLimit()));
+		  }
 
-		  long scrape_time = nextResponseScraping.getNextScrapeStartTime();
+		  try{
+			  	// async, this just groups the hashes and queues the scrape
 
-		  long time_to_scrape = scrape_time - SystemTime.getCurrentTime()
-				  + SystemTime.TIME_GRANULARITY_MILLIS;
+			  ts.updateSingleHash( response.getHash(), false );
 
-		  if (time_to_scrape <= 0) {
+		  }catch( Throwable e ){
 
-			  if (nextResponseScraping.getTrackerStatus().getNumActiveScrapes() > 0) {
-				  // check if done scraping every 2 seconds, if no other
-				  // scrapes are scheduled.  If other scrapes are sceduled,
-				  // we would have got them from checkForNextScrape()
-				  delay = 2000;
-			  } else {
+			  Debug.printStackTrace(e);
 
-				  try {
-					  nextResponseScraping.getTrackerStatus().updateSingleHash(
-							  nextResponseScraping.getHash(), false);
+			  next_due = Math.min( next_due, now + 30000 );
+		  }
+	  }
 
-					  delay = 0; // pick up next scrape fairly quickly
+	  long delay;
 
-				  } catch (Throwable e) {
+	  if ( next_due == Long.MAX_VALUE ){
 
-					  Debug.printStackTrace(e);
+		  delay = 60000; // nothing going on, recheck in a min
 
-					  delay = 30000;
-				  }
-			  }
-		  } else {
+	  }else{
 
-			  delay = time_to_scrape;
+		  delay = next_due - now + SystemTime.TIME_GRANULARITY_MILLIS;
 
-			  if (delay > 30000) {
-				  delay = 30000; // don't sleep too long in case new hashes are added etc.
-			  }
+		  if ( delay < 0 ){
+
+			  delay = 0;
+
+		  }else if ( delay > 30000 ){
+
+			  delay = 30000; // don't sleep too long in case new hashes are added etc.
 		  }
 	  }
 
-	  nextScrapeCheckOn = SystemTime.getCurrentTime() + delay;
-	  oldResponse = nextResponseScraping;
+	  nextScrapeCheckOn = now + delay;
 
 	  if ( !Logger.isClosingTakingTooLong()){
-  			
+
 		  tracker_timer.addEvent(nextScrapeCheckOn, this);
 	  }
-	}
+  }
 
-  /** Finds the torrent that will be needing a scrape next.
+  /** Finds, for each tracker without a scrape in progress, the earliest hash that is due for
+   *  scraping. Trackers that are still busy are re-checked every couple of seconds while they
+   *  have something due.
    *
+   *  @return the time at which the next check is required, Long.MAX_VALUE if nothing is pending
    */
 
-  private TRTrackerBTScraperResponseImpl
-  checkForNextScrape()
+  private long
+  checkForDueScrapes(
+	long									now,
+	List<TRTrackerBTScraperResponseImpl>	due )
   {
-		// search for the next scrape
+	  long	next_due = Long.MAX_VALUE;
 
-		long earliestBlocked = Long.MAX_VALUE;
-		TRTrackerBTScraperResponseImpl earliestBlockedResponse = null;
-		long earliestNonBlocked = Long.MAX_VALUE;
-		TRTrackerBTScraperResponseImpl earliestNonBlockedResponse = null;
+	  try {
+		  trackers_mon.enter();
 
-		try {
-			trackers_mon.enter();
+		  Iterator iter = trackers.values().iterator();
 
-			Iterator iter = trackers.values().iterator();
+		  while (iter.hasNext()) {
 
-			while (iter.hasNext()) {
+			  TrackerStatus ts = (TrackerStatus) iter.next();
 
-				TrackerStatus ts = (TrackerStatus) iter.next();
+			  if (!ts.isTrackerScrapeUrlValid()) {
+				  continue;
+			  }
 
-				if (!ts.isTrackerScrapeUrlValid()) {
-					continue;
-				}
+			  long 							earliest 			= Long.MAX_VALUE;
+			  TRTrackerBTScraperResponseImpl	earliest_response	= null;
 
-				boolean hasActiveScrapes = ts.getNumActiveScrapes() > 0;
+			  Map hashmap = ts.getHashes();
 
-				Map hashmap = ts.getHashes();
+			  try {
+				  ts.getHashesMonitor().enter();
 
-				try {
-					ts.getHashesMonitor().enter();
+				  Iterator iterHashes = hashmap.values().iterator();
 
-					Iterator iterHashes = hashmap.values().iterator();
+				  while (iterHashes.hasNext()) {
 
-					while (iterHashes.hasNext()) {
+					  TRTrackerBTScraperResponseImpl response = (TRTrackerBTScraperResponseImpl) iterHashes.next();
 
-						TRTrackerBTScraperResponseImpl response = (TRTrackerBTScraperResponseImpl) iterHashes.next();
+					  if (response.getStatus() != TRTrackerScraperResponse.ST_SCRAPING) {
 
-						if (response.getStatus() != TRTrackerScraperResponse.ST_SCRAPING) {
-							long nextScrapeStartTime = response.getNextScrapeStartTime();
+						  long nextScrapeStartTime = response.getNextScrapeStartTime();
 
-							if (hasActiveScrapes) {
-								if (nextScrapeStartTime < earliestBlocked) {
-									earliestBlocked = nextScrapeStartTime;
-									earliestBlockedResponse = response;
-								}
-							} else {
-								if (nextScrapeStartTime < earliestNonBlocked) {
-									earliestNonBlocked = nextScrapeStartTime;
-									earliestNonBlockedResponse = response;
-								}
-							}
-						}
-					}
-				} finally {
+						  if ( nextScrapeStartTime < earliest ){
 
-					ts.getHashesMonitor().exit();
-				}
-			}
-		} finally {
+							  earliest 			= nextScrapeStartTime;
+							  earliest_response	= response;
+						  }
+					  }
+				  }
+			  } finally {
 
-			trackers_mon.exit();
-		}
+				  ts.getHashesMonitor().exit();
+			  }
 
-		boolean hasEarlierBlockedScrape = earliestBlocked != Long.MAX_VALUE
-				&& earliestBlocked < earliestNonBlocked;
-		// If the earlist non-blocked scrape is still 2 seconds away,
-		// return the blocked scrape with in hopes that it gets unblocked soon
-		if (hasEarlierBlockedScrape
-				&& earliestNonBlocked - SystemTime.getCurrentTime() > 2000) {
-			return earliestBlockedResponse;
-		} else {
-			return earliestNonBlockedResponse;
-		}
-	}
+			  if ( earliest_response == null ){
+
+				  continue;
+			  }
+
+			  if ( ts.getNumActiveScrapes() > 0 ){
+
+					// check if done scraping every 2 seconds
+
+				  next_due = Math.min( next_due, Math.max( earliest, now + 2000 ));
+
+			  }else if ( earliest <= now ){
+
+				  due.add( earliest_response );
+
+			  }else{
+
+				  next_due = Math.min( next_due, earliest );
+			  }
+		  }
+	  } finally {
+
+		  trackers_mon.exit();
+	  }
+
+	  if ( !due.isEmpty()){
+
+		  	// pick up whatever remains on these trackers once the scrapes are under way
+
+		  next_due = Math.min( next_due, now + 2000 );
+	  }
+
+	  return( next_due );
+  }
 
 
   	@Override
@@ -34,6 +34,9 @@ public class TrackerLoadTester {
 
   private static final String trackerUrl = "http://localhost:6969/announce";
 
+  protected TrackerLoadTester() {
+  }
+
   public TrackerLoadTester(int nbTorrents,int nbClientsPerTorrent) {
     for(int i = 0 ; i < nbTorrents ; i++) {
       byte[] hash = generate20BytesHash(i);
@@ -69,7 +72,7 @@ public class TrackerLoadTester {
     }
   }
 
-  private byte[] generate20BytesHash(int iter) {
+  protected byte[] generate20BytesHash(int iter) {
     byte[] result = new byte[20];
     int pos = 0;
     while(iter > 0) {
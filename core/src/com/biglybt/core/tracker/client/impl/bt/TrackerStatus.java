@@ -79,6 +79,11 @@ public class TrackerStatus {
 	private final static int		GROUP_SCRAPES_MS				= 60 * 15 * 1000;
 	private final static int		GROUP_SCRAPES_LIMIT				= 20;
 
+		/**
+		 * 28 + 16 + 70*20 -> IPv4/udp packet size of 1444 , that should go through most lines unfragmented
+		 */
+	private final static int		UDP_SCRAPES_LIMIT				= 70;
+
 	private static boolean tcpScrapeEnabled;
 	private static boolean udpScrapeEnabled;
 	private static boolean udpProbeEnabled;
@@ -146,6 +151,11 @@ public class TrackerStatus {
 
   private boolean bSingleHashScrapes = false;
 
+  private final boolean			udp_tracker;
+
+  	/** most recent min_request_interval reported by the tracker, 0 if none */
+  private volatile int			min_request_interval_secs;
+
   protected final AEMonitor hashes_mon 	= new AEMonitor( "TrackerStatus:hashes" );
   private final TrackerChecker checker;
 
@@ -163,6 +173,8 @@ public class TrackerStatus {
 
     az_tracker = TRTrackerUtils.isAZTracker( tracker_url );
 
+    udp_tracker = tracker_url.getProtocol().equalsIgnoreCase( "udp" );
+
     bSingleHashScrapes	= COConfigurationManager.getBooleanParameter( "Tracker Client Scrape Single Only" );
 
     String trackerUrl	= tracker_url.toString();
@@ -305,43 +317,87 @@ public class TrackerStatus {
 	    	responsesToUpdate.add(response);
 
 	    		// Go through hashes and pick out other scrapes that are "close to" wanting a new scrape.
+	    		// The earliest due are taken first so that a full scrape always carries the hashes
+	    		// most in need of it. If the tracker enforces a min request interval then anything
+	    		// due within that period is pulled in as well as a separate scrape for it would only
+	    		// have to wait anyway
 
 		    if (!bSingleHashScrapes){
 
-		    	try{
-		    	  hashes_mon.enter();
+		    	int	limit = getGroupScrapeLimit();
 
-			      Iterator iterHashes = hashes.values().iterator();
+		    	long	window = Math.max( GROUP_SCRAPES_MS, min_request_interval_secs*1000L );
 
-			      	// if we hit trackers with excessive scrapes they respond in varying fashions - from no reply
-			      	// to returning 414 to whatever. Rather than hit trackers with large payloads that they then
-			      	// reject we limit to MULTI_SCRAPE_LIMIT in one go
+		    		// one-sided and relative to now - only hashes already due or due within the window
+		    		// join, being close to the main hash's next time (either side of it) isn't enough
 
-			      while( iterHashes.hasNext() && responsesToUpdate.size() < GROUP_SCRAPES_LIMIT ){
+		    	long	latest_due = SystemTime.getCurrentTime() + window;
 
-			        TRTrackerScraperResponseImpl r = (TRTrackerScraperResponseImpl)iterHashes.next();
+		    	List<TRTrackerScraperResponseImpl>	candidates = new ArrayList<>();
 
-			        if ( !r.getHash().equals( hash )) {
+		    		// next scrape times can change under us, sort on a snapshot of them
 
-			          long lTimeDiff = Math.abs(lMainNextScrapeStartTime - r.getNextScrapeStartTime());
+		    	final Map<TRTrackerScraperResponseImpl,Long>	candidate_times = new IdentityHashMap<>();
 
-			          if (lTimeDiff <= GROUP_SCRAPES_MS && r.getStatus() != TRTrackerScraperResponse.ST_SCRAPING) {
+		    	try{
+		    	  hashes_mon.enter();
+
+			      for ( TRTrackerScraperResponseImpl r: hashes.values()){
+
+			    	  if ( r != response ){
 
-			    	    	r.setStatus(TRTrackerScraperResponse.ST_SCRAPING,
-			    						MessageText.getString(SS + "scraping.queued"));
-			      			if (Logger.isEnabled()) {
-			    					Logger.log(new LogEvent(TorrentUtils.getDownloadManager(r.getHash()), LOGID,
-			    						"TrackerStatus:" + scrapeURL + ": setting to scraping via group scrape"));
-			      			}
+			    		  long	next_time = r.getNextScrapeStartTime();
 
-			            responsesToUpdate.add(r);
-			          }
-			        }
+			    		  if (next_time <= latest_due && r.getStatus() != TRTrackerScraperResponse.ST_SCRAPING) {
+
+			    			  candidates.add( r );
+
+			    			  candidate_times.put( r, next_time );
+			    		  }
+			    	  }
 			      }
 		      }finally{
 
 		      	hashes_mon.exit();
 		      }
+
+		    	if ( candidates.size() > limit - 1 ){
+
+		    		Collections.sort(
+		    			candidates,
+		    			new Comparator<TRTrackerScraperResponseImpl>()
+		    			{
+		    				@Override
+		    				public int
+		    				compare(
+		    					TRTrackerScraperResponseImpl	r1,
+		    					TRTrackerScraperResponseImpl	r2 )
+		    				{
+		    					return( Long.compare( candidate_times.get( r1 ), candidate_times.get( r2 )));
+		    				}
+		    			});
+		    	}
+
+		    		// if we hit trackers with excessive scrapes they respond in varying fashions - from no reply
+		    		// to returning 414 to whatever. Rather than hit trackers with large payloads that they then
+		    		// reject we limit the number in one go
+
+		    	for ( TRTrackerScraperResponseImpl r: candidates ){
+
+		    		if ( responsesToUpdate.size() >= limit ){
+
+		    			break;
+		    		}
+
+		    		r.setStatus(TRTrackerScraperResponse.ST_SCRAPING,
+		    				MessageText.getString(SS + "scraping.queued"));
+		    		if (Logger.isEnabled()) {
+		    			Logger.log(new LogEvent(TorrentUtils.getDownloadManager(r.getHash()), LOGID,
+		    					"TrackerStatus:" + scrapeURL + ": setting to scraping via group scrape"));
+		    		}
+
+		    		responsesToUpdate.add(r);
+		    	}
 			}
 
 		    runScrapes(responsesToUpdate,  force, async);
@@ -498,9 +554,7 @@ public class TrackerStatus {
 
 						one_of_the_hashes = hash;
 
-							// 28 + 16 + 70*20 -> IPv4/udp packet size of 1444 , that should go through most lines unfragmented
-
-						if ( hashesForUDP.size() < 70 ){
+						if ( hashesForUDP.size() < UDP_SCRAPES_LIMIT ){
 
 							hashesForUDP.add(hash);
 							responsesForUDP.add( response );
@@ -669,8 +723,10 @@ public class TrackerStatus {
 					if (mapFlags != null) {
 						Long longScrapeValue = (Long) mapFlags
 								.get("min_request_interval");
-						if (longScrapeValue != null)
+						if (longScrapeValue != null){
 							iMinRequestInterval = longScrapeValue.intValue();
+							min_request_interval_secs = Math.max( 0, iMinRequestInterval );
+						}
 						// Tracker owners want this log entry
 						if (Logger.isEnabled())
 							Logger.log(new LogEvent(LOGID,
@@ -1562,28 +1618,46 @@ public class TrackerStatus {
 
 		InetSocketAddress destination = new InetSocketAddress(reqUrl.getHost(),reqUrl.getPort()==-1?80:reqUrl.getPort());
 
-		handler = handler.openSession( destination );
+		PRUDPPacketHandler session = handler.openSession( destination );
+
+		boolean	reusable = session == handler;
+
+		handler = session;
+
+		boolean	stale_retry_done = false;
 
 		try{
 			String	failure_reason = null;
 
 			for (int retry_loop=0;retry_loop<PRUDPPacketTracker.DEFAULT_RETRY_COUNT;retry_loop++){
 
+				PRUDPPacketReplyConnect connect_reply = null;
+				boolean					cached_connection = false;
+
 				try{
-					PRUDPPacket connect_request = new PRUDPPacketRequestConnect();
+					PRUDPPacket reply = reusable?TRTrackerBTUDPConnectionCache.getCachedConnection( destination, PRUDPPacket.DEFAULT_UDP_TIMEOUT ):null;
+
+					cached_connection = reply != null;
 
-					PRUDPPacket reply = handler.sendAndReceive( auth, connect_request, destination );
+					if ( reply == null ){
+
+						reply = TRTrackerBTUDPConnectionCache.connect( handler, auth, destination, PRUDPPacket.DEFAULT_UDP_TIMEOUT, reusable );
+					}
 
 					if ( reply.getAction() == PRUDPPacketTracker.ACT_REPLY_CONNECT ){
 
-						PRUDPPacketReplyConnect connect_reply = (PRUDPPacketReplyConnect)reply;
+						connect_reply = (PRUDPPacketReplyConnect)reply;
 
 						long	my_connection = connect_reply.getConnectionId();
 
 						PRUDPPacketRequestScrape scrape_request = new PRUDPPacketRequestScrape( my_connection, hashes );
 
+						long	request_start = SystemTime.getMonotonousTime();
+
 						reply = handler.sendAndReceive( auth, scrape_request, destination );
 
+						TRTrackerBTUDPConnectionCache.requestComplete( destination, SystemTime.getMonotonousTime() - request_start );
+
 						if ( reply.getAction() == PRUDPPacketTracker.ACT_REPLY_SCRAPE ){
 
 							auth_ok	= true;
@@ -1666,6 +1740,21 @@ public class TrackerStatus {
 
 							failure_reason = ((PRUDPPacketReplyError)reply).getMessage();
 
+							TRTrackerBTUDPConnectionCache.requestError( destination );
+
+							if ( cached_connection && !stale_retry_done ){
+
+									// might be down to a connection id the tracker has since dropped
+
+								stale_retry_done = true;
+
+								TRTrackerBTUDPConnectionCache.invalidate( destination, connect_reply );
+
+								retry_loop--;
+
+								continue;
+							}
+
 							if (Logger.isEnabled())
 									Logger.log(new LogEvent(LOGID, LogEvent.LT_ERROR,
 											"Response from scrape interface "+ reqUrl +" : " + failure_reason));
@@ -1685,12 +1774,29 @@ public class TrackerStatus {
 
 				}catch( PRUDPPacketHandlerException e ){
 
+					if ( connect_reply != null ){
+
+						TRTrackerBTUDPConnectionCache.requestFailed( destination, e );
+
+						TRTrackerBTUDPConnectionCache.invalidate( destination, connect_reply );
+					}
+
 					if ( e.getMessage() == null || !e.getMessage().contains("timed out")){
 
 						throw( e );
 					}
 
 					failure_reason	= "Timeout";
+
+						// trackers generally ignore requests with an unknown connection id so a timeout
+						// on a cached one is worth a retry with a fresh connect
+
+					if ( cached_connection && !stale_retry_done ){
+
+						stale_retry_done = true;
+
+						retry_loop--;
+					}
 				}
 			}
 
@@ -1818,7 +1924,29 @@ public class TrackerStatus {
 	protected String
 	getString()
 	{
-	  return( tracker_url + ", " + scrapeURL + ", multi-scrape=" + !bSingleHashScrapes );
+	  return( tracker_url + ", " + scrapeURL + ", multi-scrape=" + !bSingleHashScrapes + ", min_interval=" + min_request_interval_secs );
+	}
+
+		/**
+		 * UDP scrapes are bounded by what fits in one unfragmented packet, HTTP ones by what
+		 * trackers will accept in a URL
+		 */
+
+	protected int
+	getGroupScrapeLimit()
+	{
+		if ( bSingleHashScrapes ){
+
+			return( 1 );
+		}
+
+		return( udp_tracker?UDP_SCRAPES_LIMIT:GROUP_SCRAPES_LIMIT );
+	}
+
+	protected int
+	getMinRequestIntervalSecs()
+	{
+		return( min_request_interval_secs );
 	}
 
 	public int getNumActiveScrapes() {
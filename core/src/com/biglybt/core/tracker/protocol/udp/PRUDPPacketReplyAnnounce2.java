@@ -43,6 +43,10 @@ PRUDPPacketReplyAnnounce2
 	protected int[]		addresses;
 	protected short[]	ports;
 
+	protected byte[]	compact_peers;
+	protected int		compact_peers_offset;
+	protected int		compact_peers_length;
+
 	public
 	PRUDPPacketReplyAnnounce2(
 		int			trans_id )
@@ -104,18 +108,69 @@ PRUDPPacketReplyAnnounce2
 		ports		= _ports;
 	}
 
+		/**
+		 * Sets the peers from their 6 byte compact form (address then port) which is written
+		 * as-is when serialised
+		 */
+
+	public void
+	setCompactPeers(
+		byte[]		_compact_peers,
+		int			_offset,
+		int			_length )
+	{
+		compact_peers			= _compact_peers;
+		compact_peers_offset	= _offset;
+		compact_peers_length	= _length;
+		addresses				= null;
+		ports					= null;
+	}
+
 	public int[]
 	getAddresses()
 	{
+		if ( addresses == null && compact_peers != null ){
+
+			decodeCompactPeers();
+		}
+
 		return( addresses );
 	}
 
 	public short[]
 	getPorts()
 	{
+		if ( ports == null && compact_peers != null ){
+
+			decodeCompactPeers();
+		}
+
 		return( ports );
 	}
 
+	protected void
+	decodeCompactPeers()
+	{
+		int[]	_addresses 	= new int[compact_peers_length/BYTES_PER_ENTRY];
+		short[]	_ports		= new short[_addresses.length];
+
+		int	pos = compact_peers_offset;
+
+		for (int i=0;i<_addresses.length;i++){
+
+			_addresses[i] =
+				((compact_peers[pos]&0xff)<<24) | ((compact_peers[pos+1]&0xff)<<16) |
+				((compact_peers[pos+2]&0xff)<<8) | (compact_peers[pos+3]&0xff);
+
+			_ports[i] = (short)(((compact_peers[pos+4]&0xff)<<8) | (compact_peers[pos+5]&0xff));
+
+			pos += BYTES_PER_ENTRY;
+		}
+
+		ports		= _ports;
+		addresses	= _addresses;
+	}
+
 	public int
 	getLeechers()
 	{
@@ -141,7 +196,11 @@ PRUDPPacketReplyAnnounce2
 		os.writeInt( leechers );
 		os.writeInt( seeders );
 
-		if ( addresses != null ){
+		if ( compact_peers != null ){
+
+			os.write( compact_peers, compact_peers_offset, compact_peers_length );
+
+		}else if ( addresses != null ){
 
 			for (int i=0;i<addresses.length;i++){
 
@@ -159,7 +218,7 @@ PRUDPPacketReplyAnnounce2
 				"[interval="+interval+
 				",leechers="+leechers+
 				",seeders="+seeders+
-				",addresses="+addresses.length+"]");
+				",addresses="+getAddresses().length+"]");
 	}
 }
 
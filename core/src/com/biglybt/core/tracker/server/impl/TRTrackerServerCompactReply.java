@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.tracker.server.impl;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.biglybt.core.tracker.server.TRTrackerServerPeer;
+
+/**
+ * Builds plain compact (BEP 23) announce replies directly as bencoded bytes from the
+ * peers' pre-encoded 6/18 byte entries, avoiding the per-peer maps used by the general
+ * export. Instances are owned by a torrent and must only be used under its monitor as
+ * the scratch buffers are reused across announces.
+ */
+
+public class
+TRTrackerServerCompactReply
+{
+	private static final byte[]	KEY_COMPLETE		= "8:complete".getBytes();
+	private static final byte[]	KEY_DOWNLOADED		= "10:downloaded".getBytes();
+	private static final byte[]	KEY_INCOMPLETE		= "10:incomplete".getBytes();
+	private static final byte[]	KEY_INTERVAL		= "8:interval".getBytes();
+	private static final byte[]	KEY_MIN_INTERVAL	= "12:min interval".getBytes();
+	private static final byte[]	KEY_PEERS			= "5:peers".getBytes();
+	private static final byte[]	KEY_PEERS6			= "6:peers6".getBytes();
+
+	private final Random	random;
+
+	private byte[]	v4_entries	= new byte[64*6];
+	private byte[]	v6_entries	= new byte[16*18];
+
+	private int		v4_pos;
+	private int		v6_pos;
+
+	private final byte[]	number_buffer = new byte[20];
+
+	private int[]	indexes	= new int[0];
+	private int		index_count;
+
+	protected
+	TRTrackerServerCompactReply(
+		Random		_random )
+	{
+		random	= _random;
+	}
+
+		/**
+		 * Selects up to num_want distinct peers at random with a partial Fisher-Yates shuffle
+		 * of an index array and encodes the reply. Timed out peers are skipped rather than
+		 * removed, the periodic timeout check will deal with them.
+		 * @return reply map that decodes its entries on demand, see {@link replyMap}
+		 */
+
+	protected replyMap
+	export(
+		List<TRTrackerServerPeerImpl>	peer_list,
+		TRTrackerServerPeerImpl			requesting_peer,
+		boolean							include_seeds,
+		int								num_want,
+		long							now,
+		long							interval,
+		long							min_interval,
+		long							complete,
+		long							incomplete,
+		long							downloaded )
+	{
+		v4_pos	= 0;
+		v6_pos	= 0;
+
+		int	peer_list_size = peer_list.size();
+
+		if ( num_want > 0 && peer_list_size > 0 ){
+
+				// any permutation is a valid starting point for the shuffle so the index
+				// array is only reset when the list size changes
+
+			if ( index_count != peer_list_size ){
+
+				if ( indexes.length < peer_list_size ){
+
+					indexes = new int[peer_list_size];
+				}
+
+				for ( int i=0;i<peer_list_size;i++){
+
+					indexes[i] = i;
+				}
+
+				index_count = peer_list_size;
+			}
+
+			int	added	= 0;
+
+			for ( int i=0;i<peer_list_size && added < num_want;i++){
+
+				int	swap	= i + random.nextInt( peer_list_size - i );
+				int	index	= indexes[swap];
+
+				indexes[swap]	= indexes[i];
+				indexes[i]		= index;
+
+				TRTrackerServerPeerImpl	peer = peer_list.get( index );
+
+				if ( 	peer == null ||
+						peer == requesting_peer ||
+						now > peer.getTimeout() ||
+						peer.getTCPPort() == 0 ||
+						peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED ||
+						( !include_seeds && peer.isSeed())){
+
+					continue;
+				}
+
+				byte[]	entry = peer.getCompactEntry();
+
+				if ( entry == null ){
+
+					continue;
+				}
+
+				if ( entry.length == 6 ){
+
+					if ( v4_pos + 6 > v4_entries.length ){
+
+						byte[]	temp = new byte[v4_entries.length*2];
+
+						System.arraycopy( v4_entries, 0, temp, 0, v4_pos );
+
+						v4_entries = temp;
+					}
+
+					System.arraycopy( entry, 0, v4_entries, v4_pos, 6 );
+
+					v4_pos += 6;
+
+				}else{
+
+					if ( v6_pos + 18 > v6_entries.length ){
+
+						byte[]	temp = new byte[v6_entries.length*2];
+
+						System.arraycopy( v6_entries, 0, temp, 0, v6_pos );
+
+						v6_entries = temp;
+					}
+
+					System.arraycopy( entry, 0, v6_entries, v6_pos, 18 );
+
+					v6_pos += 18;
+				}
+
+				added++;
+			}
+		}
+
+			// same rule as the general export: "peers" is omitted only when we have
+			// nothing but IPv6 peers
+
+		boolean	send_v4 = v4_pos > 0 || v6_pos == 0;
+		boolean	send_v6	= v6_pos > 0;
+
+		int	size =
+			2 +
+			KEY_COMPLETE.length 	+ numberLength( complete ) +
+			KEY_DOWNLOADED.length 	+ numberLength( downloaded ) +
+			KEY_INCOMPLETE.length 	+ numberLength( incomplete ) +
+			KEY_INTERVAL.length 	+ numberLength( interval ) +
+			KEY_MIN_INTERVAL.length	+ numberLength( min_interval );
+
+		if ( send_v4 ){
+
+			size += KEY_PEERS.length + stringLength( v4_pos );
+		}
+
+		if ( send_v6 ){
+
+			size += KEY_PEERS6.length + stringLength( v6_pos );
+		}
+
+		byte[]	data = new byte[size];
+
+		int	pos = 0;
+
+		data[pos++] = 'd';
+
+			// keys must be written in sorted order
+
+		pos = writeNumber( data, pos, KEY_COMPLETE, complete );
+		pos = writeNumber( data, pos, KEY_DOWNLOADED, downloaded );
+		pos = writeNumber( data, pos, KEY_INCOMPLETE, incomplete );
+		pos = writeNumber( data, pos, KEY_INTERVAL, interval );
+		pos = writeNumber( data, pos, KEY_MIN_INTERVAL, min_interval );
+
+		int	peers_offset	= -1;
+		int	peers6_offset	= -1;
+
+		if ( send_v4 ){
+
+			pos = writeString( data, pos, KEY_PEERS, v4_entries, v4_pos );
+
+			peers_offset = pos - v4_pos;
+		}
+
+		if ( send_v6 ){
+
+			pos = writeString( data, pos, KEY_PEERS6, v6_entries, v6_pos );
+
+			peers6_offset = pos - v6_pos;
+		}
+
+		data[pos++] = 'e';
+
+		return(
+			new replyMap(
+				data, interval, min_interval, complete, incomplete, downloaded,
+				peers_offset, v4_pos, peers6_offset, v6_pos ));
+	}
+
+	private int
+	writeNumber(
+		byte[]		data,
+		int			pos,
+		byte[]		key,
+		long		value )
+	{
+		System.arraycopy( key, 0, data, pos, key.length );
+
+		pos += key.length;
+
+		data[pos++] = 'i';
+
+		pos = writeDigits( data, pos, value );
+
+		data[pos++] = 'e';
+
+		return( pos );
+	}
+
+	private int
+	writeString(
+		byte[]		data,
+		int			pos,
+		byte[]		key,
+		byte[]		value,
+		int			value_len )
+	{
+		System.arraycopy( key, 0, data, pos, key.length );
+
+		pos += key.length;
+
+		pos = writeDigits( data, pos, value_len );
+
+		data[pos++] = ':';
+
+		System.arraycopy( value, 0, data, pos, value_len );
+
+		return( pos + value_len );
+	}
+
+	private int
+	writeDigits(
+		byte[]		data,
+		int			pos,
+		long		value )
+	{
+		if ( value < 0 ){
+
+			data[pos++] = '-';
+
+			value = -value;
+		}
+
+		int	num = 0;
+
+		do{
+			number_buffer[num++] = (byte)( '0' + ( value % 10 ));
+
+			value /= 10;
+
+		}while( value > 0 );
+
+		while( num > 0 ){
+
+			data[pos++] = number_buffer[--num];
+		}
+
+		return( pos );
+	}
+
+	private static int
+	digitCount(
+		long		value )
+	{
+		int	len = value<0?2:1;
+
+		value = Math.abs( value );
+
+		while( value >= 10 ){
+
+			value /= 10;
+
+			len++;
+		}
+
+		return( len );
+	}
+
+	private static int
+	numberLength(
+		long		value )
+	{
+		return( digitCount( value ) + 2 );	// i...e
+	}
+
+	private static int
+	stringLength(
+		int			len )
+	{
+		return( digitCount( len ) + 1 + len );	// len:bytes
+	}
+
+		/**
+		 * An encoded reply that only builds its map form if something asks for it. Keys starting
+		 * with "_" (the processors' cached encodings) are held separately and don't affect the
+		 * content. Once the content might have been changed {@link #getEncoded()} returns null
+		 * and the map has to be encoded as normal.
+		 */
+
+	public static class
+	replyMap
+		extends AbstractMap<String,Object>
+	{
+		private final byte[]	data;
+
+		private final long		interval;
+		private final long		min_interval;
+		private final long		complete;
+		private final long		incomplete;
+		private final long		downloaded;
+
+		private final int		peers_offset;
+		private final int		peers_length;
+		private final int		peers6_offset;
+		private final int		peers6_length;
+
+		private Map<String,Object>	decoded;
+		private Map<String,Object>	internal;
+
+		protected
+		replyMap(
+			byte[]		_data,
+			long		_interval,
+			long		_min_interval,
+			long		_complete,
+			long		_incomplete,
+			long		_downloaded,
+			int			_peers_offset,
+			int			_peers_length,
+			int			_peers6_offset,
+			int			_peers6_length )
+		{
+			data			= _data;
+			interval		= _interval;
+			min_interval	= _min_interval;
+			complete		= _complete;
+			incomplete		= _incomplete;
+			downloaded		= _downloaded;
+			peers_offset	= _peers_offset;
+			peers_length	= _peers_length;
+			peers6_offset	= _peers6_offset;
+			peers6_length	= _peers6_length;
+		}
+
+			/**
+			 * @return the bencoded reply or null if the content may have been changed
+			 */
+
+		public synchronized byte[]
+		getEncoded()
+		{
+			return( decoded==null?data:null );
+		}
+
+		public long
+		getInterval()
+		{
+			return( interval );
+		}
+
+		public long
+		getComplete()
+		{
+			return( complete );
+		}
+
+		public long
+		getIncomplete()
+		{
+			return( incomplete );
+		}
+
+			/**
+			 * The IPv4 peers are held in their compact form within the encoded reply
+			 */
+
+		public int
+		getPeersOffset()
+		{
+			return( peers_offset );
+		}
+
+		public int
+		getPeersLength()
+		{
+			return( peers_length );
+		}
+
+		protected int
+		getPeerCount()
+		{
+			return( peers_length/6 + peers6_length/18 );
+		}
+
+		@Override
+		public synchronized Object
+		get(
+			Object		key )
+		{
+			if ( isInternal( key )){
+
+				return( internal==null?null:internal.get( key ));
+			}
+
+			if ( decoded != null ){
+
+				return( decoded.get( key ));
+			}
+
+			return( getOriginal( key ));
+		}
+
+		@Override
+		public synchronized boolean
+		containsKey(
+			Object		key )
+		{
+			return( get( key ) != null );
+		}
+
+		@Override
+		public synchronized Object
+		put(
+			String		key,
+			Object		value )
+		{
+			if ( isInternal( key )){
+
+				if ( internal == null ){
+
+					internal = new HashMap<>();
+				}
+
+				return( internal.put( key, value ));
+			}
+
+			return( decode().put( key, value ));
+		}
+
+		@Override
+		public synchronized Object
+		remove(
+			Object		key )
+		{
+			if ( isInternal( key )){
+
+				return( internal==null?null:internal.remove( key ));
+			}
+
+			return( decode().remove( key ));
+		}
+
+			/**
+			 * Hands out the decoded content. As that can be changed through the entries the
+			 * encoded form is no longer used afterwards
+			 */
+
+		@Override
+		public synchronized Set<Map.Entry<String,Object>>
+		entrySet()
+		{
+			return( decode().entrySet());
+		}
+
+		private Map<String,Object>
+		decode()
+		{
+			if ( decoded == null ){
+
+				Map<String,Object>	map = new HashMap<>();
+
+				String[]	keys = { "interval", "min interval", "complete", "incomplete", "downloaded", "peers", "peers6" };
+
+				for ( String key: keys ){
+
+					Object	value = getOriginal( key );
+
+					if ( value != null ){
+
+						map.put( key, value );
+					}
+				}
+
+				decoded = map;
+			}
+
+			return( decoded );
+		}
+
+		private Object
+		getOriginal(
+			Object		key )
+		{
+			if ( "interval".equals( key )){
+
+				return( Long.valueOf( interval ));
+
+			}else if ( "min interval".equals( key )){
+
+				return( Long.valueOf( min_interval ));
+
+			}else if ( "complete".equals( key )){
+
+				return( Long.valueOf( complete ));
+
+			}else if ( "incomplete".equals( key )){
+
+				return( Long.valueOf( incomplete ));
+
+			}else if ( "downloaded".equals( key )){
+
+				return( Long.valueOf( downloaded ));
+
+			}else if ( "peers".equals( key )){
+
+				return( peers_offset<0?null:Arrays.copyOfRange( data, peers_offset, peers_offset + peers_length ));
+
+			}else if ( "peers6".equals( key )){
+
+				return( peers6_offset<0?null:Arrays.copyOfRange( data, peers6_offset, peers6_offset + peers6_length ));
+			}
+
+			return( null );
+		}
+
+		private static boolean
+		isInternal(
+			Object		key )
+		{
+			return( key instanceof String && ((String)key).startsWith( "_" ));
+		}
+	}
+}
@@ -309,7 +309,9 @@ TRTrackerServerFactoryImpl
 
 			InetSocketAddress	local_address = null;	// TODO
 
-			processRequest(input_header, lowercase_input_header, url_path, local_address, remote_address, announce_and_scrape_only, false, is, os, async );
+			boolean keep_alive = processRequest(input_header, lowercase_input_header, url_path, local_address, remote_address, announce_and_scrape_only, isKeepAliveRequested(), is, os, async );
+
+			setKeepAlive( keep_alive );
 
 			return( os );
 		}
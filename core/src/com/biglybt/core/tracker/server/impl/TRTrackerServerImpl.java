@@ -29,6 +29,7 @@ import com.biglybt.core.Core;
 import com.biglybt.core.CoreFactory;
 import com.biglybt.core.config.COConfigurationListener;
 import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.ipfilter.IpFilter;
 import com.biglybt.core.ipfilter.IpFilterManagerFactory;
@@ -51,6 +52,7 @@ TRTrackerServerImpl
 	public static int		announce_cache_period		= TRTrackerServer.DEFAULT_ANNOUNCE_CACHE_PERIOD;
 	public static int		scrape_cache_period			= TRTrackerServer.DEFAULT_SCRAPE_CACHE_PERIOD;
 	public static int		announce_cache_threshold	= TRTrackerServer.DEFAULT_ANNOUNCE_CACHE_PEER_THRESHOLD;
+	public static boolean	compact_reply_enable		= true;
 	public static int		max_seed_retention			= 0;
 	public static int		seed_limit					= 0;
 	public static boolean	full_scrape_enable			= true;
@@ -203,6 +205,8 @@ TRTrackerServerImpl
 
 		announce_cache_threshold = COConfigurationManager.getIntParameter( "Tracker Announce Cache Min Peers", TRTrackerServer.DEFAULT_ANNOUNCE_CACHE_PEER_THRESHOLD );
 
+		compact_reply_enable = COConfigurationManager.getBooleanParameter( ConfigKeys.Tracker.BCFG_TRACKER_ANNOUNCE_COMPACT_REPLY_ENABLE );
+
 		max_seed_retention = COConfigurationManager.getIntParameter( "Tracker Max Seeds Retained", 0 );
 
 		seed_limit = COConfigurationManager.getIntParameter( "Tracker Max Seeds", 0 );
@@ -291,6 +295,12 @@ TRTrackerServerImpl
 		return( announce_cache_threshold );
 	}
 
+	protected static boolean
+	isCompactReplyEnabled()
+	{
+		return( compact_reply_enable );
+	}
+
 	protected static int
 	getMaxSeedRetention()
 	{
@@ -1328,6 +1338,12 @@ TRTrackerServerImpl
 		request_listeners.removeElement(l);
 	}
 
+	public boolean
+	hasRequestListeners()
+	{
+		return( request_listeners.size() > 0 );
+	}
+
 	@Override
 	public void
 	close()
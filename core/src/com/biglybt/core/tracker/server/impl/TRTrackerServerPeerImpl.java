@@ -67,6 +67,8 @@ TRTrackerServerPeerImpl
 	private DHTNetworkPosition	network_position;
 	private Object				user_data;
 
+	private byte[]				compact_entry;
+
 	protected
 	TRTrackerServerPeerImpl(
 		HashWrapper			_peer_id,
@@ -236,6 +238,8 @@ TRTrackerServerPeerImpl
 		ip_str 		= new String( ip );
 		ip_bytes	= null;
 
+		compact_entry	= null;
+
 		HostNameToIPResolver.addResolverRequest( ip_str, this );
 
 			// a port of 0 is taken to mean that the client can't/won't receive incoming
@@ -271,6 +275,8 @@ TRTrackerServerPeerImpl
 			ip_str 		= address.getHostAddress();
 
 			ip_bytes	= address.getAddress();
+
+			compact_entry	= null;
 		}
 	}
 
@@ -371,6 +377,41 @@ TRTrackerServerPeerImpl
 		return( ip_bytes );
 	}
 
+		/**
+		 * Compact form of the peer's address and TCP port as returned in announce replies - 6 bytes
+		 * for IPv4, 18 for IPv6. Cached until the address or port changes.
+		 * @return null if the address hasn't been resolved
+		 */
+
+	protected byte[]
+	getCompactEntry()
+	{
+		byte[]	entry = compact_entry;
+
+		if ( entry == null ){
+
+			byte[]	bytes = ip_bytes;
+
+			if ( bytes == null ){
+
+				return( null );
+			}
+
+			int	len = bytes.length;
+
+			entry = new byte[len+2];
+
+			System.arraycopy( bytes, 0, entry, 0, len );
+
+			entry[len]		= (byte)(tcp_port>>8);
+			entry[len+1]	= (byte)(tcp_port&0xff);
+
+			compact_entry = entry;
+		}
+
+		return( entry );
+	}
+
 	@Override
 	public int
 	getTCPPort()
@@ -78,6 +78,7 @@ TRTrackerServerTorrentImpl
 	private final Map				lightweight_seed_map	= new HashMap();
 
 	private int				seed_count;
+	private int				biased_seed_count;
 	private int				removed_count;
 
 	private int				ip_override_count;
@@ -88,9 +89,14 @@ TRTrackerServerTorrentImpl
 
 	private long			last_scrape_calc_time;
 	private Map				last_scrape;
+	private long			last_scrape_complete;
+	private long			last_scrape_incomplete;
+	private long			last_scrape_downloaded;
 
 	private final LinkedHashMap		announce_cache	= new LinkedHashMap();
 
+	private TRTrackerServerCompactReply	compact_reply;
+
 	private final TRTrackerServerTorrentStatsImpl	stats;
 
 	private final List			listeners	= new ArrayList();
@@ -197,6 +203,11 @@ TRTrackerServerTorrentImpl
 							}
 
 							biased_peers.add( peer );
+
+							if ( peer.isSeed()){
+
+								biased_seed_count++;
+							}
 						}
 					}catch( Throwable e ){
 					}
@@ -613,6 +624,11 @@ TRTrackerServerTorrentImpl
 				if (!(event_type == TRTrackerServerTorrentPeerListener.ET_STOPPED || was_seed || !is_seed )){
 
 					seed_count++;
+
+					if ( peer.isBiased()){
+
+						biased_seed_count++;
+					}
 				}
 
 					// report event *after* updating totals above so listeners get a valid initial
@@ -979,14 +995,16 @@ TRTrackerServerTorrentImpl
 				Debug.out(" TRTrackerServerTorrent::removePeer: peer_reuse_map doesn't contain peer");
 			}
 
-			if ( biased_peers != null ){
-
-				biased_peers.remove( peer );
-			}
+			boolean	was_biased = biased_peers != null && biased_peers.remove( peer );
 
 			if ( peer.isSeed()){
 
 				seed_count--;
+
+				if ( was_biased ){
+
+					biased_seed_count--;
+				}
 			}
 
 			removed_count++;
@@ -1034,6 +1052,8 @@ TRTrackerServerTorrentImpl
 				}
 			}
 
+			updateBiasedSeedCount();
+
 			if ( queued_peers != null ){
 
 				it = queued_peers.iterator();
@@ -1292,6 +1312,43 @@ TRTrackerServerTorrentImpl
 				add_to_cache	= true;
 			}
 
+				// plain compact replies with nothing peer-specific to add can be written
+				// directly from the peers' pre-encoded entries
+
+			if ( 	compact_mode == COMPACT_MODE_NORMAL &&
+					crypto_level == TRTrackerServerPeer.CRYPTO_NONE &&
+					TRTrackerServerImpl.isCompactReplyEnabled() &&
+					explicit_limited_peers == null &&
+					explicit_biased_peers == null &&
+					explicit_manual_biased_peers == null &&
+					biased_peers == null &&
+					remove_ips == null &&
+					(!nat_warning) &&
+					preprocess_map.size() == 0 &&
+					( queued_peers == null || queued_peers.isEmpty() || !include_seeds || seed_count >= 3 ) &&
+					!TRTrackerServerNATChecker.getSingleton().isEnabled()){
+
+				if ( compact_reply == null ){
+
+					compact_reply = new TRTrackerServerCompactReply( random );
+				}
+
+				TRTrackerServerCompactReply.replyMap	root =
+					compact_reply.export(
+						peer_list, requesting_peer, include_seeds,
+						num_want>total_peers?total_peers:num_want,
+						now, interval, min_interval,
+						getSeedCountForScrape( requester_is_biased ),
+						getLeecherCount(),
+						stats.getCompletedCount());
+
+				if ( add_to_cache ){
+
+					announce_cache.put( new Integer((root.getPeerCount()+9)/10), new announceCacheEntry( root, send_peer_ids, compact_mode ));
+				}
+
+				return( root );
+			}
 
 			LinkedList	rep_peers = new LinkedList();
 
@@ -2343,9 +2400,6 @@ TRTrackerServerTorrentImpl
 			  return( last_scrape );
 			}
 
-			last_scrape 			= new TreeMap();
-			last_scrape_calc_time	= now;
-
 			boolean requester_is_biased;
 
 			Set bp = server.getBiasedPeers();
@@ -2359,9 +2413,32 @@ TRTrackerServerTorrentImpl
 				requester_is_biased = bp.contains( ip_address );
 			}
 
-			last_scrape.put( "complete", new Long( getSeedCountForScrape( requester_is_biased )));
-			last_scrape.put( "incomplete", new Long( getLeecherCount()));
-			last_scrape.put( "downloaded", new Long(stats.getCompletedCount()));
+				// the counts are all maintained as peers come, go and complete so this is
+				// cheap, a new map is only needed when one of them has changed
+
+			long	complete	= getSeedCountForScrape( requester_is_biased );
+			long	incomplete	= getLeecherCount();
+			long	downloaded	= stats.getCompletedCount();
+
+			last_scrape_calc_time	= now;
+
+			if ( 	last_scrape != null &&
+					last_scrape_complete == complete &&
+					last_scrape_incomplete == incomplete &&
+					last_scrape_downloaded == downloaded ){
+
+				return( last_scrape );
+			}
+
+			last_scrape_complete	= complete;
+			last_scrape_incomplete	= incomplete;
+			last_scrape_downloaded	= downloaded;
+
+			last_scrape 			= new TreeMap();
+
+			last_scrape.put( "complete", Long.valueOf( complete ));
+			last_scrape.put( "incomplete", Long.valueOf( incomplete ));
+			last_scrape.put( "downloaded", Long.valueOf( downloaded ));
 
 			return( last_scrape );
 
@@ -2423,6 +2500,8 @@ TRTrackerServerTorrentImpl
 			bad_NAT_count	= new_bad_NAT_count;
 			seed_count		= new_seed_count;
 
+			updateBiasedSeedCount();
+
 			if ( removed_count > 1000 ){
 
 				removed_count = 0;
@@ -2536,21 +2615,9 @@ TRTrackerServerTorrentImpl
 
 		if ( biased_peers != null && !requester_is_biased ){
 
-			int	bpc = 0;
-
-			Iterator it = biased_peers.iterator();
-
-			while( it.hasNext()){
-
-				TRTrackerServerPeerImpl bp = (TRTrackerServerPeerImpl)it.next();
+			int	bpc = biased_seed_count;
 
-				if ( bp.isSeed()){
-
-					seeds--;
-
-					bpc++;
-				}
-			}
+			seeds -= bpc;
 
 			if ( seeds < 0 ){
 
@@ -2577,6 +2644,30 @@ TRTrackerServerTorrentImpl
 		return( seeds );
 	}
 
+		/**
+		 * Recounts the biased seeds after the biased set changes and alongside the periodic seed
+		 * recount, otherwise the count is maintained as peers come, go and complete
+		 */
+
+	private void
+	updateBiasedSeedCount()
+	{
+		int	count = 0;
+
+		if ( biased_peers != null ){
+
+			for (int i=0;i<biased_peers.size();i++){
+
+				if (((TRTrackerServerPeerImpl)biased_peers.get(i)).isSeed()){
+
+					count++;
+				}
+			}
+		}
+
+		biased_seed_count = count;
+	}
+
 	protected int
 	getLeecherCount()
 	{
@@ -33,6 +33,7 @@ import com.biglybt.core.internat.MessageText;
 import com.biglybt.core.tracker.server.TRTrackerServerException;
 import com.biglybt.core.tracker.server.TRTrackerServerPeer;
 import com.biglybt.core.tracker.server.TRTrackerServerRequest;
+import com.biglybt.core.tracker.server.impl.TRTrackerServerCompactReply;
 import com.biglybt.core.tracker.server.impl.TRTrackerServerImpl;
 import com.biglybt.core.tracker.server.impl.TRTrackerServerPeerImpl;
 import com.biglybt.core.tracker.server.impl.TRTrackerServerProcessor;
@@ -65,6 +66,20 @@ TRTrackerServerProcessorTCP
 			"Connection: close" + NL +
 			"Content-Length: ").getBytes();
 
+	protected static final byte[]	HTTP_RESPONSE_START_KEEP_ALIVE = (
+		"HTTP/1.1 200 OK" + NL +
+		"Content-Type: text/html" + NL +
+		"Server: " + Constants.BIGLYBT_NAME + " " + Constants.BIGLYBT_VERSION + NL +
+		"Connection: keep-alive" + NL +
+		"Content-Length: ").getBytes();
+
+	protected static final byte[]	HTTP_RESPONSE_XML_START_KEEP_ALIVE = (
+			"HTTP/1.1 200 OK" + NL +
+			"Content-Type: text/xml; charset=\"utf-8\"" + NL +
+			"Server: " + Constants.BIGLYBT_NAME + " " + Constants.BIGLYBT_VERSION + NL +
+			"Connection: keep-alive" + NL +
+			"Content-Length: ").getBytes();
+
 	protected static final byte[]	HTTP_RESPONSE_END_GZIP 		= (NL + "Content-Encoding: gzip" + NL + NL).getBytes();
 	protected static final byte[]	HTTP_RESPONSE_END_NOGZIP 	= (NL + NL).getBytes();
 
@@ -120,6 +135,27 @@ TRTrackerServerProcessorTCP
 		return( server );
 	}
 
+		/**
+		 * Whether successful announce/scrape replies may leave the connection open when the
+		 * client permits it. Only worthwhile where an idle connection doesn't tie up a thread.
+		 */
+
+	protected boolean
+	canKeepAliveTrackerRequests()
+	{
+		return( false );
+	}
+
+		/**
+		 * Whether external (non-tracker) request handlers get to see and decide keep-alive
+		 */
+
+	protected boolean
+	canKeepAliveExternalRequests()
+	{
+		return( true );
+	}
+
 	protected boolean
 	processRequest(
 		String				input_header,
@@ -141,6 +177,8 @@ TRTrackerServerProcessorTCP
 
 		boolean compact_enabled = server.isCompactEnabled();
 
+		boolean keep_alive_reply = false;
+
 		try{
 			Map	root = null;
 
@@ -220,11 +258,13 @@ TRTrackerServerProcessorTCP
 							return( false );
 						}
 
-						boolean[] ka = new boolean[]{ keep_alive };
+						boolean	external_keep_alive = canKeepAliveExternalRequests();
+
+						boolean[] ka = new boolean[]{ keep_alive && external_keep_alive };
 
 						if ( handleExternalRequest( local_address, remote_address, user, str, input_header, is, os, async, ka )){
 
-							return( ka[0] );
+							return( ka[0] && external_keep_alive );
 						}
 					}
 
@@ -736,6 +776,8 @@ TRTrackerServerProcessorTCP
 
 			setTaskState( "writing response" );
 
+			keep_alive_reply = keep_alive && canKeepAliveTrackerRequests();
+
 			byte[]	data;
 			byte[]	header_start;
 
@@ -758,13 +800,25 @@ TRTrackerServerProcessorTCP
 
 				data			= xml.toString().getBytes("UTF-8" );
 
-				header_start = HTTP_RESPONSE_XML_START;
+				header_start = keep_alive_reply?HTTP_RESPONSE_XML_START_KEEP_ALIVE:HTTP_RESPONSE_XML_START;
 
 			}else{
 					// cache both plain and gzip encoded data for possible reuse
 
 				data 		= (byte[])root.get( "_data" );
 
+				if ( data == null && root instanceof TRTrackerServerCompactReply.replyMap ){
+
+						// plain compact replies come ready encoded unless post-processing changed them
+
+					data = ((TRTrackerServerCompactReply.replyMap)root).getEncoded();
+
+					if ( data != null ){
+
+						root.put( "_data", data );
+					}
+				}
+
 				if ( data == null ){
 
 					data = BEncoder.encode( root );
@@ -793,7 +847,7 @@ TRTrackerServerProcessorTCP
 					root.put( "_data", data );
 				}
 
-				header_start = HTTP_RESPONSE_START;
+				header_start = keep_alive_reply?HTTP_RESPONSE_START_KEEP_ALIVE:HTTP_RESPONSE_START;
 			}
 
 			if ( gzip_reply ){
@@ -857,7 +911,7 @@ TRTrackerServerProcessorTCP
 			os.flush();
 		}
 
-		return( false );
+		return( keep_alive_reply );
 	}
 
 	protected String
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.logging.LogAlert;
 import com.biglybt.core.logging.LogEvent;
@@ -58,6 +59,8 @@ TRNonBlockingServer
 
 	private static final int CLOSE_DELAY			= 5*1000;
 
+	private static final int MAX_READ_CONTINUATION_ROUNDS	= 64;
+
 	private static int SELECT_LOOP_TIME;
 
 	static{
@@ -79,8 +82,16 @@ TRNonBlockingServer
 
 	private TRNonBlockingServerProcessorFactory	processor_factory;
 
-	private final VirtualChannelSelector read_selector;
-	private final VirtualChannelSelector write_selector;
+	private final VirtualChannelSelector[]	read_selectors;
+	private final Thread[]					read_threads;
+	private final VirtualChannelSelector	write_selector;
+
+		// keep-alive connections waiting for their read selector's thread to carry on reading,
+		// one list per read selector, guarded by this_mon
+
+	private final List<List<TRNonBlockingServerProcessor>>	read_continuations;
+
+	private int		next_read_selector;
 
 	private 	  List			connections_to_close 		= new ArrayList();
 
@@ -105,6 +116,9 @@ TRNonBlockingServer
 
 	private boolean immediate_close = COConfigurationManager.getBooleanParameter( "Tracker TCP NonBlocking Immediate Close" );
 
+	private final boolean keep_alive_enabled	= COConfigurationManager.getBooleanParameter( ConfigKeys.Tracker.BCFG_TRACKER_TCP_NON_BLOCKING_KEEP_ALIVE );
+	private final boolean inline_processing		= COConfigurationManager.getBooleanParameter( ConfigKeys.Tracker.BCFG_TRACKER_TCP_NON_BLOCKING_INLINE_PROCESSING );
+
 	private volatile boolean	closed;
 
 	public
@@ -135,7 +149,19 @@ TRNonBlockingServer
 
 		processor_factory	= _processor_factory;
 
-		read_selector	 	= new VirtualChannelSelector( _name + ":" + _port, VirtualChannelSelector.OP_READ, false );
+		int	num_read_selectors = Math.max( 1, COConfigurationManager.getIntParameter( ConfigKeys.Tracker.ICFG_TRACKER_TCP_NON_BLOCKING_SELECT_THREADS ));
+
+		read_selectors 		= new VirtualChannelSelector[num_read_selectors];
+		read_threads		= new Thread[num_read_selectors];
+		read_continuations	= new ArrayList<>( num_read_selectors );
+
+		for ( int i=0;i<num_read_selectors;i++){
+
+			read_selectors[i] 	= new VirtualChannelSelector( _name + ":" + _port, VirtualChannelSelector.OP_READ, false );
+
+			read_continuations.add( new ArrayList<TRNonBlockingServerProcessor>());
+		}
+
 		write_selector 		= new VirtualChannelSelector( _name + ":" + _port, VirtualChannelSelector.OP_WRITE, true );
 
 		boolean	ok = false;
@@ -173,20 +199,27 @@ TRNonBlockingServer
 				setPort( accept_server.getPort());
 			}
 
-			AEThread	read_thread =
-				new AEThread( "TRTrackerServer:readSelector")
-				{
-					@Override
-					public void
-					runSupport()
+			for ( int i=0;i<read_selectors.length;i++){
+
+				final VirtualChannelSelector read_selector = read_selectors[i];
+
+				AEThread	read_thread =
+					new AEThread( "TRTrackerServer:readSelector" + (i==0?"":(":" + i )))
 					{
-						selectLoop( read_selector );
-					}
-				};
+						@Override
+						public void
+						runSupport()
+						{
+							selectLoop( read_selector );
+						}
+					};
+
+				read_thread.setDaemon(true);
 
-			read_thread.setDaemon(true);
+				read_threads[i] = read_thread;
 
-			read_thread.start();
+				read_thread.start();
+			}
 
 			AEThread	write_thread =
 				new AEThread( "TRTrackerServer:writeSelector")
@@ -248,6 +281,18 @@ TRNonBlockingServer
 		return( current_bind_ip );
 	}
 
+	public boolean
+	isKeepAliveEnabled()
+	{
+		return( keep_alive_enabled );
+	}
+
+	public boolean
+	isInlineProcessingEnabled()
+	{
+		return( inline_processing );
+	}
+
 	public void
 	setImmediateClose(
 		boolean	immediate )
@@ -255,20 +300,55 @@ TRNonBlockingServer
 		immediate_close = immediate;
 	}
 
+	private int
+	getReadSelectorIndex(
+		VirtualChannelSelector	selector )
+	{
+		for ( int i=0;i<read_selectors.length;i++){
+
+			if ( read_selectors[i] == selector ){
+
+				return( i );
+			}
+		}
+
+		return( -1 );
+	}
+
+		/**
+		 * @return true if we're running on the thread that services the given read selector
+		 */
+
+	protected boolean
+	isReadSelectorThread(
+		VirtualChannelSelector	selector )
+	{
+		int	index = getReadSelectorIndex( selector );
+
+		return( index != -1 && read_threads[index] == Thread.currentThread());
+	}
+
 	protected void
 	selectLoop(
       VirtualChannelSelector	selector )
 	{
 		long	last_time	= 0;
 
+		int		read_index	= getReadSelectorIndex( selector );
+
 		while( !closed ){
 
 			try{
 				selector.select( SELECT_LOOP_TIME );
 
+				if ( read_index != -1 ){
+
+					processReadContinuations( read_index );
+				}
+
 					// only use one selector to trigger the timeouts!
 
-				if ( selector == read_selector ){
+				if ( selector == read_selectors[0] ){
 
 					long	now = SystemTime.getCurrentTime();
 
@@ -298,11 +378,19 @@ TRNonBlockingServer
     {
         final TRNonBlockingServerProcessor processor = processor_factory.create( this, channel );
 
+        final VirtualChannelSelector read_selector;
+
         int	num_processors;
 
         try{
         	this_mon.enter();
 
+        	read_selector = read_selectors[ next_read_selector ];
+
+        	next_read_selector = ( next_read_selector + 1 ) % read_selectors.length;
+
+        	processor.setReadSelector( read_selector );
+
         	total_connections++;
 
         	processors.add( processor );
@@ -348,6 +436,12 @@ TRNonBlockingServer
 		        					read_selector.pauseSelects( sc );
 		        				}
 
+		        					// selects are paused so it is now safe to hand off the request, once
+		        					// a keep-alive reply is written readyToRead brings us back here on
+		        					// the read selector's thread
+
+		        				processor.dispatchPendingRequest();
+
 		        			}else if ( read_result < 0 ) {  //a read error occured
 
 		        				removeAndCloseConnection( processor );
@@ -437,7 +531,11 @@ TRNonBlockingServer
 
 		            			if ( processor.getKeepAlive()){
 
-		            				processor.getReadListener().selectSuccess( read_selector, sc, null );
+		            					// don't read the next request from here, this might be the write
+		            					// selector or a thread that processed the previous request inline
+		            					// and a run of pipelined requests would recurse a level per request
+
+		            				readyToRead( processor );
 
 		            			}else{
 
@@ -481,6 +579,72 @@ TRNonBlockingServer
 		write_listener.selectSuccess( write_selector, processor.getSocketChannel(), null );
     }
 
+    	/**
+    	 * Hands a keep-alive connection whose reply has been written back to its read selector's
+    	 * thread. Any pipelined request already buffered is picked up from there, otherwise the
+    	 * read listener resumes selects to wait for the next one
+    	 */
+
+    protected void
+	readyToRead(
+		TRNonBlockingServerProcessor	processor )
+    {
+    	int	index = getReadSelectorIndex( processor.getReadSelector());
+
+    	try{
+    		this_mon.enter();
+
+    		read_continuations.get( index ).add( processor );
+
+    	}finally{
+
+    		this_mon.exit();
+    	}
+    }
+
+    private void
+	processReadContinuations(
+		int		index )
+    {
+    	VirtualChannelSelector	read_selector = read_selectors[index];
+
+    		// a reply written inline re-queues its connection straight away, keep going while that
+    		// happens as an idle select always runs for its full timeout and a pipelined request would
+    		// otherwise wait that long. Bounded so a busy pipelining connection can't starve the others
+
+    	for ( int round=0;round<MAX_READ_CONTINUATION_ROUNDS;round++ ){
+
+	    	List<TRNonBlockingServerProcessor>	pending;
+
+	    	try{
+	    		this_mon.enter();
+
+	    		pending = read_continuations.get( index );
+
+	    		if ( pending.isEmpty()){
+
+	    			return;
+	    		}
+
+	    		read_continuations.set( index, new ArrayList<TRNonBlockingServerProcessor>());
+
+	    	}finally{
+
+	    		this_mon.exit();
+	    	}
+
+	    	for ( TRNonBlockingServerProcessor processor: pending ){
+
+	    		SocketChannel	sc = processor.getSocketChannel();
+
+	    		if ( sc.isOpen()){
+
+	    			processor.getReadListener().selectSuccess( read_selector, sc, null );
+	    		}
+	    	}
+    	}
+    }
+
     protected void
     removeAndCloseConnection(
     	TRNonBlockingServerProcessor	processor )
@@ -492,7 +656,7 @@ TRNonBlockingServer
 
         	if ( processors.remove( processor )){
 
-        		read_selector.cancel( processor.getSocketChannel() );
+        		processor.getReadSelector().cancel( processor.getSocketChannel() );
         		write_selector.cancel( processor.getSocketChannel() );
 
         		if ( immediate_close ){
@@ -559,7 +723,7 @@ TRNonBlockingServer
 
         		if ( now - processor.getStartTime() > PROCESSING_GET_LIMIT && !processor.areTimeoutsDisabled()){
 
-        			read_selector.cancel( processor.getSocketChannel() );
+        			processor.getReadSelector().cancel( processor.getSocketChannel() );
         			write_selector.cancel( processor.getSocketChannel() );
 
         			connections_to_close.add( processor );
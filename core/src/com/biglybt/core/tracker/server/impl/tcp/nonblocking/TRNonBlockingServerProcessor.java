@@ -57,6 +57,7 @@ TRNonBlockingServerProcessor
 	  
 	private final SocketChannel				socket_channel;
 
+	private VirtualChannelSelector							read_selector;
 	private VirtualChannelSelector.VirtualSelectorListener 	read_listener;
 	private VirtualChannelSelector.VirtualSelectorListener 	write_listener;
 
@@ -71,6 +72,9 @@ TRNonBlockingServerProcessor
 	private ByteBuffer					write_buffer;
 
 	private boolean						keep_alive;
+	private boolean						keep_alive_requested;
+
+	private boolean						request_pending;
 
 	protected
 	TRNonBlockingServerProcessor(
@@ -88,6 +92,19 @@ TRNonBlockingServerProcessor
 		// System.out.println( "create: " + System.currentTimeMillis());
 	}
 
+	protected void
+	setReadSelector(
+		VirtualChannelSelector		rs )
+	{
+		read_selector	= rs;
+	}
+
+	protected VirtualChannelSelector
+	getReadSelector()
+	{
+		return( read_selector );
+	}
+
 	protected void
 	setReadListener(
 		VirtualChannelSelector.VirtualSelectorListener		rl )
@@ -136,7 +153,7 @@ TRNonBlockingServerProcessor
 
 					post_data_buffer.flip();
 
-					getServer().runProcessor( this );
+					requestReady();
 
 					return( 0 );
 
@@ -150,29 +167,37 @@ TRNonBlockingServerProcessor
 			}
 		}
 
-		if ( read_buffer.remaining() == 0 ){
+		try{
+				// with keep-alive a client may pipeline requests so the next one might
+				// already be sitting in the buffer
+
+			if ( read_buffer.position() > 0 && checkForRequest()){
 
-			int	capacity = read_buffer.capacity();
+				return( 0 );
+			}
 
-			if ( capacity == READ_BUFFER_LIMIT ){
+			if ( read_buffer.remaining() == 0 ){
 
-				return( -1 );
+				int	capacity = read_buffer.capacity();
 
-			}else{
+				if ( capacity == READ_BUFFER_LIMIT ){
 
-				read_buffer.position(0);
+					return( -1 );
+
+				}else{
+
+					read_buffer.position(0);
 
-				byte[]	data = new byte[capacity];
+					byte[]	data = new byte[capacity];
 
-				read_buffer.get( data );
+					read_buffer.get( data );
 
-				read_buffer = ByteBuffer.allocate( capacity + READ_BUFFER_INCREMENT );
+					read_buffer = ByteBuffer.allocate( capacity + READ_BUFFER_INCREMENT );
 
-				read_buffer.put( data );
+					read_buffer.put( data );
+				}
 			}
-		}
 
-		try{
 			int	len = socket_channel.read( read_buffer );
 
 			// System.out.println( "read op[" + len + "]: " + System.currentTimeMillis());
@@ -187,135 +212,231 @@ TRNonBlockingServerProcessor
 				return( 2 );	// no progress
 			}
 
-			byte[]	data = read_buffer.array();
+			return( checkForRequest()?0:1 );
 
-			int array_offset		= read_buffer.arrayOffset();
-			int	array_position 		= array_offset + read_buffer.position();
+		}catch( IOException e ){
 
-			for (int i=array_offset;i<=array_position-4;i++){
+			return( -1 );
+		}
+	}
 
-				if ( 	data[i]   == CR &&
-						data[i+1] == FF &&
-						data[i+2] == CR &&
-						data[i+3] == FF ){
+		/**
+		 * Looks for a complete request header in the read buffer, leaving any bytes that follow it
+		 * in the buffer for the next request
+		 * @return true if the request is complete and has been dispatched
+		 */
 
-					int	header_end 		= i + 4;
-					int	header_length 	= header_end - array_offset;
+	private boolean
+	checkForRequest()
 
-					request_header 		= new String( data, array_offset, header_length );
-					lc_request_header 	= request_header.toLowerCase();
+		throws IOException
+	{
+		byte[]	data = read_buffer.array();
 
-					int	rem = array_position - header_end;
+		int array_offset		= read_buffer.arrayOffset();
+		int	array_position 		= array_offset + read_buffer.position();
 
-					if ( rem == 0 ){
+		for (int i=array_offset;i<=array_position-4;i++){
 
-						read_buffer = ByteBuffer.allocate( READ_BUFFER_INITIAL );
+			if ( 	data[i]   == CR &&
+					data[i+1] == FF &&
+					data[i+2] == CR &&
+					data[i+3] == FF ){
 
-					}else{
+				int	header_end 		= i + 4;
+				int	header_length 	= header_end - array_offset;
 
-						read_buffer = ByteBuffer.allocate( rem + READ_BUFFER_INCREMENT );
+				request_header 		= new String( data, array_offset, header_length );
+				lc_request_header 	= request_header.toLowerCase();
 
-						read_buffer.put( data, header_end, rem );
-					}
+				keep_alive_requested	= isKeepAliveRequested( lc_request_header );
 
-					post_data_buffer = null;
+				int	rem = array_position - header_end;
 
-					int	pos1 = lc_request_header.indexOf( "content-length" );
+				if ( rem == 0 ){
 
-					if ( pos1 == -1 ){
+					read_buffer = ByteBuffer.allocate( READ_BUFFER_INITIAL );
 
-						if ( 	lc_request_header.contains( "transfer-encoding" ) &&
-								lc_request_header.contains( "chunked" )){
+				}else{
 
-							Debug.out( "Chunked transfer-encoding not supported!!!!" );
-						}
-					}else{
+					read_buffer = ByteBuffer.allocate( rem + READ_BUFFER_INCREMENT );
 
-						int pos2 = lc_request_header.indexOf( NL, pos1 );
+					read_buffer.put( data, header_end, rem );
+				}
 
-						String entry;
+				post_data_buffer = null;
 
-						if ( pos2 == -1 ){
+				int	pos1 = lc_request_header.indexOf( "content-length" );
 
-							entry = lc_request_header.substring( pos1 );
+				if ( pos1 == -1 ){
 
-						}else{
+					if ( 	lc_request_header.contains( "transfer-encoding" ) &&
+							lc_request_header.contains( "chunked" )){
 
-							entry = lc_request_header.substring( pos1, pos2 );
-						}
+						Debug.out( "Chunked transfer-encoding not supported!!!!" );
+					}
+				}else{
 
-						int	pos = entry.indexOf(':');
+					int pos2 = lc_request_header.indexOf( NL, pos1 );
 
-						if ( pos != -1 ){
+					String entry;
 
-							int content_length = 0;
+					if ( pos2 == -1 ){
 
-							try{
-								content_length = Integer.parseInt( entry.substring( pos+1 ).trim());
+						entry = lc_request_header.substring( pos1 );
 
-							}catch( Throwable e ){
-							}
+					}else{
 
-							if ( content_length > 0 ){
+						entry = lc_request_header.substring( pos1, pos2 );
+					}
 
-								if ( content_length > MAX_POST ){
+					int	pos = entry.indexOf(':');
 
-									throw( new IOException( "content-length too large, max=" + MAX_POST ));
-								}
+					if ( pos != -1 ){
+
+						int content_length = 0;
 
-								post_data_buffer = ByteBuffer.allocate( content_length );
+						try{
+							content_length = Integer.parseInt( entry.substring( pos+1 ).trim());
 
-								int buffer_position = read_buffer.position();
+						}catch( Throwable e ){
+						}
+
+						if ( content_length > 0 ){
+
+							if ( content_length > MAX_POST ){
+
+								throw( new IOException( "content-length too large, max=" + MAX_POST ));
+							}
+
+							post_data_buffer = ByteBuffer.allocate( content_length );
+
+							int buffer_position = read_buffer.position();
 
-								if ( buffer_position > 0 ){
+							if ( buffer_position > 0 ){
 
-									byte[] already_read = new byte[Math.min( buffer_position, content_length )];
+								byte[] already_read = new byte[Math.min( buffer_position, content_length )];
 
-									read_buffer.flip();
+								read_buffer.flip();
 
-									read_buffer.get( already_read );
+								read_buffer.get( already_read );
 
-									byte[] xrem = new byte[ read_buffer.remaining()];
+								byte[] xrem = new byte[ read_buffer.remaining()];
 
-									read_buffer.get( xrem );
+								read_buffer.get( xrem );
 
-									read_buffer = ByteBuffer.allocate( xrem.length + READ_BUFFER_INCREMENT );
+								read_buffer = ByteBuffer.allocate( xrem.length + READ_BUFFER_INCREMENT );
 
-									read_buffer.put( xrem );
+								read_buffer.put( xrem );
 
-									post_data_buffer.put( already_read );
+								post_data_buffer.put( already_read );
 
-									if ( post_data_buffer.remaining() == 0 ){
+								if ( post_data_buffer.remaining() == 0 ){
 
-										getServer().runProcessor( this );
+									requestReady();
 
-										return( 0 );
-									}
+									return( true );
 								}
 							}
 						}
 					}
+				}
 
-					if ( post_data_buffer == null ){
+				if ( post_data_buffer == null ){
 
-						// System.out.println( "read done: " + System.currentTimeMillis());
+					// System.out.println( "read done: " + System.currentTimeMillis());
 
-						getServer().runProcessor( this );
+					requestReady();
 
-						return( 0 );
+					return( true );
 
-					}else{
+				}else{
 
-						return( 1 );
-					}
+					return( false );
 				}
 			}
+		}
+
+		return( false );
+	}
 
-			return( 1 );
+	private static boolean
+	isKeepAliveRequested(
+		String		lc_header )
+	{
+		int	line_end = lc_header.indexOf( NL );
 
-		}catch( IOException e ){
+		boolean	http_1_1 = line_end != -1 && lc_header.substring( 0, line_end ).trim().endsWith( "http/1.1" );
 
-			return( -1 );
+		int	pos = lc_header.indexOf( NL + "connection:" );
+
+		if ( pos == -1 ){
+
+			return( http_1_1 );
+		}
+
+		int	value_end = lc_header.indexOf( NL, pos + 2 );
+
+		String	value = lc_header.substring( pos + 13, value_end==-1?lc_header.length():value_end );
+
+		if ( value.contains( "close" )){
+
+			return( false );
+
+		}else if ( value.contains( "keep-alive" )){
+
+			return( true );
+		}
+
+		return( http_1_1 );
+	}
+
+		/**
+		 * Marks the request as ready for processing. The actual hand-off is done by the read
+		 * listener via dispatchPendingRequest once it has paused selects on the channel, otherwise
+		 * a fast reply on a keep-alive connection could resume selects before they were paused
+		 */
+
+	private void
+	requestReady()
+	{
+		request_pending = true;
+	}
+
+		/**
+		 * Announces and scrapes are normally answered directly on the read selector thread that
+		 * read them rather than being handed off to the server's thread pool. Anywhere else (the
+		 * initial read on the accept thread for example) the pool is used. Request and
+		 * authentication listeners run plugin code that may block, when there are any the
+		 * pool is used so a slow listener can't stall every connection on the selector
+		 */
+
+	protected void
+	dispatchPendingRequest()
+	{
+		if ( request_pending ){
+
+			request_pending = false;
+
+			TRNonBlockingServer	nb_server = (TRNonBlockingServer)getServer();
+
+			if ( 	nb_server.isInlineProcessingEnabled() &&
+					nb_server.isReadSelectorThread( read_selector ) &&
+					!nb_server.hasRequestListeners() &&
+					!nb_server.hasExternalAuthorisation() &&
+					( lc_request_header.startsWith( "get /announce?" ) || lc_request_header.startsWith( "get /scrape?" ))){
+
+					// not running on a pool worker, don't report state against one left over from
+					// an earlier request on this connection
+
+				worker = null;
+
+				runSupport();
+
+			}else{
+
+				nb_server.runProcessor( this );
+			}
 		}
 	}
 
@@ -505,6 +626,34 @@ TRNonBlockingServerProcessor
 		return( keep_alive );
 	}
 
+		/**
+		 * @return true if the client asked for the connection to be kept open (explicitly or
+		 * by default for HTTP/1.1) and the server has keep-alive enabled
+		 */
+
+	protected boolean
+	isKeepAliveRequested()
+	{
+		return( keep_alive_requested && ((TRNonBlockingServer)getServer()).isKeepAliveEnabled());
+	}
+
+	@Override
+	protected boolean
+	canKeepAliveTrackerRequests()
+	{
+		return( true );
+	}
+
+		// external requests have always been answered with the connection closed here, their
+		// handlers (web pages, plugins) aren't written with pipelining in mind
+
+	@Override
+	protected boolean
+	canKeepAliveExternalRequests()
+	{
+		return( false );
+	}
+
 	protected void
 	setKeepAlive(
 		boolean	k )
@@ -540,6 +689,10 @@ TRNonBlockingServerProcessor
 			// reset timer at end of current request ready for the next one
 
 			start_time	= SystemTime.getCurrentTime();
+
+				// discard any unconsumed post data so it isn't mistaken for the next request
+
+			post_data_buffer	= null;
 		}
 	}
 
@@ -40,6 +40,7 @@ import com.biglybt.core.tracker.protocol.PRHelpers;
 import com.biglybt.core.tracker.protocol.udp.*;
 import com.biglybt.core.tracker.server.TRTrackerServerPeer;
 import com.biglybt.core.tracker.server.TRTrackerServerRequest;
+import com.biglybt.core.tracker.server.impl.TRTrackerServerCompactReply;
 import com.biglybt.core.tracker.server.impl.TRTrackerServerPeerImpl;
 import com.biglybt.core.tracker.server.impl.TRTrackerServerProcessor;
 import com.biglybt.core.tracker.server.impl.TRTrackerServerTorrentImpl;
@@ -593,7 +594,7 @@ TRTrackerServerProcessorUDP
 				server, "", root_out, peer_out,
 				request_type,
 				(byte[][])hashbytes.toArray(new byte[0][0]), null, null,
-				peer_id, false, TRTrackerServerTorrentImpl.COMPACT_MODE_NONE, key, // currently no "no_peer_id" / "compact" in the packet and anyway they aren't returned / key
+				peer_id, false, TRTrackerServerTorrentImpl.COMPACT_MODE_NORMAL, key, // no "no_peer_id" / "compact" in the packet, the reply format is compact anyway / key
 				event, false,
 				port,
 				0, 0,
@@ -609,59 +610,65 @@ TRTrackerServerProcessorUDP
 
 		if ( request_type == TRTrackerServerRequest.RT_ANNOUNCE ){
 
-			if ( PRUDPPacketTracker.VERSION == 1 ){
-				PRUDPPacketReplyAnnounce reply = new PRUDPPacketReplyAnnounce(request.getTransactionId());
+			int		interval;
+			int		seeders;
+			int		leechers;
+			byte[]	peers;
+			int		peers_offset;
+			int		peers_length;
 
-				reply.setInterval(((Long)root.get("interval")).intValue());
+			if ( 	root instanceof TRTrackerServerCompactReply.replyMap &&
+					((TRTrackerServerCompactReply.replyMap)root).getEncoded() != null ){
 
-				List	peers = (List)root.get("peers");
+					// plain compact reply, take the peers straight out of its encoded form
 
-				int[]	addresses 	= new int[peers.size()];
-				short[]	ports		= new short[addresses.length];
+				TRTrackerServerCompactReply.replyMap	compact_reply = (TRTrackerServerCompactReply.replyMap)root;
 
-				for (int i=0;i<addresses.length;i++){
+				interval	= (int)compact_reply.getInterval();
+				seeders		= (int)compact_reply.getComplete();
+				leechers	= (int)compact_reply.getIncomplete();
 
-					Map	peer = (Map)peers.get(i);
+				peers			= compact_reply.getEncoded();
+				peers_offset	= compact_reply.getPeersOffset();
+				peers_length	= compact_reply.getPeersLength();
 
-					addresses[i] 	= PRHelpers.addressToInt(new String((byte[])peer.get("ip")));
+				if ( peers_offset < 0 ){
 
-					ports[i]		= (short)((Long)peer.get("port")).shortValue();
+					peers_offset	= 0;
+					peers_length	= 0;
 				}
-
-				reply.setPeers( addresses, ports );
-
-				return( new Object[]{ reply, torrent });
-
 			}else{
 
-				PRUDPPacketReplyAnnounce2 reply = new PRUDPPacketReplyAnnounce2(request.getTransactionId());
+				interval	= ((Long)root.get("interval")).intValue();
 
-				reply.setInterval(((Long)root.get("interval")).intValue());
+					// announce replies always carry the current scrape details
 
-				boolean	local_scrape = client_ip_address.equals( "127.0.0.1" );
+				seeders 	= ((Long)root.get("complete")).intValue();
+				leechers 	= ((Long)root.get("incomplete")).intValue();
 
-				Map scrape_details = torrent.exportScrapeToMap( "", client_ip_address,!local_scrape );
+				peers			= getCompactPeers( root );
+				peers_offset	= 0;
+				peers_length	= peers.length;
+			}
 
-				int	seeders 	= ((Long)scrape_details.get("complete")).intValue();
-				int leechers 	= ((Long)scrape_details.get("incomplete")).intValue();
+			if ( PRUDPPacketTracker.VERSION == 1 ){
+				PRUDPPacketReplyAnnounce reply = new PRUDPPacketReplyAnnounce(request.getTransactionId());
 
-				reply.setLeechersSeeders(leechers,seeders);
+				reply.setInterval( interval );
 
-				List	peers = (List)root.get("peers");
+				reply.setCompactPeers( peers, peers_offset, peers_length );
 
-				int[]	addresses 	= new int[peers.size()];
-				short[]	ports		= new short[addresses.length];
+				return( new Object[]{ reply, torrent });
 
-				for (int i=0;i<addresses.length;i++){
+			}else{
 
-					Map	peer = (Map)peers.get(i);
+				PRUDPPacketReplyAnnounce2 reply = new PRUDPPacketReplyAnnounce2(request.getTransactionId());
 
-					addresses[i] 	= PRHelpers.addressToInt(new String((byte[])peer.get("ip")));
+				reply.setInterval( interval );
 
-					ports[i]		= (short)((Long)peer.get("port")).shortValue();
-				}
+				reply.setLeechersSeeders(leechers,seeders);
 
-				reply.setPeers( addresses, ports );
+				reply.setCompactPeers( peers, peers_offset, peers_length );
 
 				return( new Object[]{ reply, torrent });
 			}
@@ -754,6 +761,19 @@ TRTrackerServerProcessorUDP
 		}
 	}
 
+		/**
+		 * The UDP protocol only supports IPv4 peers so any "peers6" entry is ignored
+		 */
+
+	protected byte[]
+	getCompactPeers(
+		Map		root )
+	{
+		byte[]	peers = (byte[])root.get( "peers" );
+
+		return( peers==null?new byte[0]:peers );
+	}
+
 	protected static class
 	connectionData
 	{
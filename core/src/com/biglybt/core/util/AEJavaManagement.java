@@ -30,6 +30,8 @@ AEJavaManagement
 	private static ThreadStuff	thread_stuff;
 	private static MemoryStuff	memory_stuff;
 
+	private static final CopyOnWriteList<MemoryLowListener>	memory_low_listeners = new CopyOnWriteList<>();
+
 	public static void
 	initialise()
 	{
@@ -127,6 +129,42 @@ AEJavaManagement
 		return( memory_stuff.getMaxHeapMB());
 	}
 
+		/**
+		 * Listeners are told when the heap is still short after a collection so that they can drop
+		 * anything they can rebuild. Called on the JVM's notification thread so must be quick
+		 */
+
+	public static void
+	addMemoryLowListener(
+		MemoryLowListener		l )
+	{
+		memory_low_listeners.add( l );
+	}
+
+	public static void
+	removeMemoryLowListener(
+		MemoryLowListener		l )
+	{
+		memory_low_listeners.remove( l );
+	}
+
+	public static void
+	fireMemoryLow(
+		long		available,
+		long		max )
+	{
+		for ( MemoryLowListener l: memory_low_listeners ){
+
+			try{
+				l.memoryLow( available, max );
+
+			}catch( Throwable e ){
+
+				Debug.out( e );
+			}
+		}
+	}
+
 	public static  long
 	getJVMLongOption(
 		String[]	options,
@@ -302,4 +340,13 @@ AEJavaManagement
 		public long
 		getMaxHeapMB();
 	}
+
+	public interface
+	MemoryLowListener
+	{
+		public void
+		memoryLow(
+			long		available,
+			long		max );
+	}
 }
@@ -32,10 +32,18 @@ import java.util.List;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.stats.CoreMetrics;
+import com.biglybt.core.stats.MetricsCounter;
+import com.biglybt.core.stats.MetricsGauge;
+import com.biglybt.core.stats.MetricsHistogram;
 
 public class
 ConcurrentHasher
 {
+		// before the singleton as its constructor starts the hashing threads
+
+	private static final MetricsHistogram		hash_latency	= CoreMetrics.getHistogram( CoreMetrics.MT_HASH_PIECE_LATENCY );
+	private static final MetricsCounter			hash_bytes		= CoreMetrics.getCounter( CoreMetrics.MT_HASH_PIECE_BYTES );
 
 	protected static final ConcurrentHasher		singleton	= new ConcurrentHasher();
 
@@ -100,6 +108,26 @@ ConcurrentHasher
 
 		final ThreadPool pool	= new ThreadPool( "ConcurrentHasher", 64 );
 
+		CoreMetrics.registerGauge(
+			CoreMetrics.MT_HASH_QUEUE_LENGTH,
+			new MetricsGauge()
+			{
+				@Override
+				public long
+				getValue()
+				{
+					try{
+						requests_mon.enter();
+
+						return( requests.size());
+
+					}finally{
+
+						requests_mon.exit();
+					}
+				}
+			});
+
 		new AEThread2("ConcurrentHasher:scheduler", true )
 		{
 			@Override
@@ -169,6 +197,8 @@ ConcurrentHasher
 								public void
 								runSupport()
 								{
+									long	start = CoreMetrics.startTimer();
+
 									try{
 										if ( v1_hasher != null ){
 										
@@ -178,6 +208,14 @@ ConcurrentHasher
 											req.run( v2_hasher );
 										}
 									}finally{
+
+										if ( start != 0 ){
+
+											hash_latency.recordSince( start );
+
+											hash_bytes.add( req.getSize());
+										}
+
 										try{
 											requests_mon.enter();
 
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer/single-consumer queue. Producers claim a slot with a CAS on the
+ * tail sequence and publish it by advancing the slot's sequence number, the consumer only ever reads
+ * published slots so no locking is needed on either side and nothing is allocated per element.
+ *
+ * offer fails when the ring is full, callers are expected to have some fallback (e.g. a locked
+ * overflow path). poll must only be called by one thread at a time - callers that share the consumer
+ * role must serialise calls themselves.
+ */
+
+public class
+MPSCRingBuffer<T>
+{
+	private final int							mask;
+	private final AtomicReferenceArray<T>		buffer;
+	private final AtomicLongArray				sequences;
+
+	private final AtomicLong	tail	= new AtomicLong();
+	private volatile long		head;
+
+	public
+	MPSCRingBuffer(
+		int		min_capacity )
+	{
+		int	capacity = 2;
+
+		while( capacity < min_capacity ){
+
+			capacity <<= 1;
+		}
+
+		mask		= capacity - 1;
+		buffer		= new AtomicReferenceArray<>( capacity );
+		sequences	= new AtomicLongArray( capacity );
+
+		for ( int i=0;i<capacity;i++){
+
+			sequences.set( i, i );
+		}
+	}
+
+	public int
+	getCapacity()
+	{
+		return( mask + 1 );
+	}
+
+		/**
+		 * @return false if the ring is full
+		 */
+
+	public boolean
+	offer(
+		T		item )
+	{
+		while( true ){
+
+			long	pos = tail.get();
+
+			int		index = (int)( pos & mask );
+
+			long	diff = sequences.get( index ) - pos;
+
+			if ( diff == 0 ){
+
+				if ( tail.compareAndSet( pos, pos+1 )){
+
+					buffer.lazySet( index, item );
+
+					sequences.set( index, pos+1 );
+
+					return( true );
+				}
+			}else if ( diff < 0 ){
+
+				return( false );
+			}
+		}
+	}
+
+		/**
+		 * @return the next element or null if there is none published. A producer that has claimed
+		 * but not yet published a slot also yields null, later elements will be returned once it has
+		 */
+
+	public T
+	poll()
+	{
+		long	pos = head;
+
+		int		index = (int)( pos & mask );
+
+		if ( sequences.get( index ) != pos+1 ){
+
+			return( null );
+		}
+
+		T	item = buffer.get( index );
+
+		buffer.lazySet( index, null );
+
+		sequences.set( index, pos + mask + 1 );
+
+		head = pos+1;
+
+		return( item );
+	}
+
+	public boolean
+	isEmpty()
+	{
+		return( tail.get() == head );
+	}
+
+	public int
+	size()
+	{
+		return((int)Math.max( 0, tail.get() - head ));
+	}
+}
@@ -40,7 +40,10 @@ ThreadPoolTask
 	setTaskState(
 		String		state )
 	{
-		worker.setState( state );
+		if ( worker != null ){
+
+			worker.setState( state );
+		}
 	}
 
 	public String
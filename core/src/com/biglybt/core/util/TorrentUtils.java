@@ -23,6 +23,8 @@ package com.biglybt.core.util;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
@@ -34,6 +36,7 @@ import com.biglybt.core.CoreFactory;
 import com.biglybt.core.category.Category;
 import com.biglybt.core.category.CategoryManager;
 import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.disk.DiskManagerFactory;
 import com.biglybt.core.download.DownloadManager;
@@ -3138,6 +3141,144 @@ TorrentUtils
 
 	static final Map	torrent_delegates = new WeakHashMap();
 
+		// compact mode: inactive torrents drop their pieces straight away and keep them in a flat
+		// side file next to the torrent so restoring them doesn't need the whole torrent decoding
+		// again. Torrents holding pieces are tracked so that, when memory is short, the least recently
+		// used can be dropped until the pieces held are halved. Recency is each delegate's (volatile)
+		// last read time so reads don't touch the shared set, only restores and discards do
+
+	private static final String	PIECES_FILE_SUFFIX	= ".pieces";
+	private static final int	PIECES_FILE_MAGIC	= 0x50435331;	// "PCS1"
+	private static final int	PIECES_MIN_IDLE		= 10*1000;
+
+	static volatile boolean		compact_inactive;
+
+	static final Map<torrentDelegate,Boolean>	pieces_held = new IdentityHashMap<>();
+
+	static{
+		COConfigurationManager.addAndFireParameterListener(
+			ConfigKeys.File.BCFG_TORRENT_COMPACT_INACTIVE,
+			new ParameterListener() {
+				@Override
+				public void
+				parameterChanged(
+					String _name)
+				{
+					compact_inactive = COConfigurationManager.getBooleanParameter( ConfigKeys.File.BCFG_TORRENT_COMPACT_INACTIVE );
+
+					if ( !compact_inactive ){
+
+						synchronized( pieces_held ){
+
+							for ( torrentDelegate td: pieces_held.keySet()){
+
+								td.pieces_tracked = false;
+							}
+
+							pieces_held.clear();
+						}
+					}
+				}
+			});
+
+		AEJavaManagement.addMemoryLowListener(
+			new AEJavaManagement.MemoryLowListener()
+			{
+				@Override
+				public void
+				memoryLow(
+					long		available,
+					long		max )
+				{
+					if ( compact_inactive ){
+
+						dispatcher.dispatch(
+							new AERunnable()
+							{
+								@Override
+								public void
+								runSupport()
+								{
+									discardLeastRecentlyUsedPieces();
+								}
+							});
+					}
+				}
+			});
+	}
+
+	static void
+	discardLeastRecentlyUsedPieces()
+	{
+		long	now = SystemTime.getCurrentTime();
+
+		List<torrentDelegate>	held;
+
+			// must not hold the set's lock while discarding as that takes the torrent's monitor
+
+		synchronized( pieces_held ){
+
+			held = new ArrayList<>( pieces_held.keySet());
+		}
+
+			// read times keep moving so sort on a snapshot of them
+
+		final Map<torrentDelegate,Long>	read_times = new IdentityHashMap<>();
+
+		long	total_bytes = 0;
+
+		for ( torrentDelegate td: held ){
+
+			read_times.put( td, td.last_pieces_read_time );
+
+			total_bytes += td.pieces_bytes;
+		}
+
+		Collections.sort(
+			held,
+			new Comparator<torrentDelegate>()
+			{
+				@Override
+				public int
+				compare(
+					torrentDelegate o1,
+					torrentDelegate o2 )
+				{
+					return( Long.compare( read_times.get( o1 ), read_times.get( o2 )));
+				}
+			});
+
+			// halve what's held each time memory runs low rather than dropping the lot
+
+		long	target_bytes = total_bytes/2;
+
+		for ( torrentDelegate td: held ){
+
+			if ( total_bytes <= target_bytes || now - read_times.get( td ) < PIECES_MIN_IDLE ){
+
+				break;
+			}
+
+			long	bytes = td.pieces_bytes;
+
+			td.discardPieces( now, true );
+
+			total_bytes -= bytes;
+		}
+	}
+
+	public static void
+	deletePiecesFile(
+		File		torrent_file )
+	{
+		File	pieces_file = FileUtil.newFile( torrent_file.getParentFile(), torrent_file.getName() + PIECES_FILE_SUFFIX );
+
+		if ( pieces_file.exists()){
+
+			pieces_file.delete();
+		}
+	}
+
 	static{
 		SimpleTimer.addPeriodicEvent(
 			"TorrentUtils:pieceDiscard",
@@ -3205,7 +3346,14 @@ TorrentUtils
 
 		private boolean			fluff_dirty;
 
-		private long			last_pieces_read_time	= SystemTime.getCurrentTime();
+		volatile long			last_pieces_read_time	= SystemTime.getCurrentTime();
+
+			// whether in pieces_held and the approximate size of the pieces it covers, guarded by pieces_held
+
+		volatile boolean		pieces_tracked;
+		long					pieces_bytes;
+
+		private boolean			pieces_file_ok;
 
 		private URL							url_mod_last_pre;
 		private URL							url_mod_last_post;
@@ -3234,6 +3382,11 @@ TorrentUtils
 		setDiscardFluff(
 			boolean	discard )
 		{
+			if ( discard && compact_inactive ){
+
+				discardPieces( SystemTime.getCurrentTime(), true );
+			}
+
 			if ( discard && !torrentFluffKeyset.isEmpty() ){
 
 				//System.out.println( "Discarded fluff for " + new String(getName()));
@@ -3510,11 +3663,26 @@ TorrentUtils
 
 							// System.out.println( "clearing pieces for '" + new String(getName()) + "'");
 
+							if ( compact_inactive ){
+
+								writePiecesFile();
+							}
+
 							delegate.setPieces( null );
 						}finally{
 
 							getMonitor().exit();
 						}
+
+						if ( pieces_tracked ){
+
+							synchronized( pieces_held ){
+
+								pieces_held.remove( this );
+
+								pieces_tracked = false;
+							}
+						}
 					}
 				}catch( Throwable e ){
 
@@ -3550,9 +3718,195 @@ TorrentUtils
 				}
 			}
 
+				// only lock when starting to track, reads of pieces already held just update the time
+
+			if ( compact_inactive && res != null && !pieces_tracked ){
+
+				synchronized( pieces_held ){
+
+					if ( !pieces_tracked && compact_inactive ){
+
+						pieces_bytes = res.length==0?0:(long)res.length*res[0].length;
+
+						pieces_held.put( this, Boolean.TRUE );
+
+						pieces_tracked = true;
+					}
+				}
+			}
+
 			return( res );
 		}
 
+		private File
+		getPiecesFile()
+		{
+			return( FileUtil.newFile( file.getParentFile(), file.getName() + PIECES_FILE_SUFFIX ));
+		}
+
+			/**
+			 * monitor must be held. Pieces never change for a given torrent so the file is only
+			 * written if it isn't there already
+			 */
+
+		private void
+		writePiecesFile()
+		{
+			if ( pieces_file_ok ){
+
+				return;
+			}
+
+			File	pieces_file = getPiecesFile();
+
+			if ( pieces_file.exists()){
+
+				pieces_file_ok = true;
+
+				return;
+			}
+
+			try{
+				byte[][]	pieces = delegate.getPieces();
+
+				if ( pieces == null || pieces.length == 0 ){
+
+					return;
+				}
+
+				int	piece_len = pieces[0].length;
+
+				for ( byte[] piece: pieces ){
+
+					if ( piece == null || piece.length != piece_len ){
+
+						return;
+					}
+				}
+
+				ByteBuffer	buffer = ByteBuffer.allocate( 12 + pieces.length*piece_len );
+
+				buffer.putInt( PIECES_FILE_MAGIC );
+				buffer.putInt( pieces.length );
+				buffer.putInt( piece_len );
+
+				for ( byte[] piece: pieces ){
+
+					buffer.put( piece );
+				}
+
+				File	temp = FileUtil.newFile( pieces_file.getParentFile(), pieces_file.getName() + ".tmp" );
+
+				try( FileOutputStream fos = FileUtil.newFileOutputStream( temp )){
+
+					fos.write( buffer.array());
+
+						// as with the other torrent writes, make sure it's on disk before it replaces anything
+
+					fos.getFD().sync();
+				}
+
+				boolean	renamed = temp.renameTo( pieces_file );
+
+				if ( !renamed ){
+
+						// rename failures are usually transient on Windows, retry once
+
+					Thread.sleep( 50 );
+
+					renamed = temp.renameTo( pieces_file );
+				}
+
+				if ( renamed ){
+
+					pieces_file_ok = true;
+
+				}else{
+
+					temp.delete();
+				}
+			}catch( Throwable e ){
+
+				Debug.out( "Failed to write pieces for " + file, e );
+			}
+		}
+
+			/**
+			 * monitor must be held
+			 * @return the pieces or null if the side file is missing or doesn't match the torrent
+			 */
+
+		private byte[][]
+		readPiecesFile()
+		{
+			File	pieces_file = getPiecesFile();
+
+			if ( !pieces_file.exists()){
+
+				pieces_file_ok = false;
+
+				return( null );
+			}
+
+			try( FileInputStream fis = FileUtil.newFileInputStream( pieces_file )){
+
+					// not mapped as a mapping keeps the file locked on Windows until the buffer
+					// is collected and these must be deletable along with the download
+
+				FileChannel	channel = fis.getChannel();
+
+				long	size = channel.size();
+
+				if ( size < 12 || size > Integer.MAX_VALUE ){
+
+					throw( new IOException( "invalid size" ));
+				}
+
+				ByteBuffer	buffer = ByteBuffer.allocate((int)size );
+
+				while( buffer.hasRemaining()){
+
+					if ( channel.read( buffer ) < 0 ){
+
+						throw( new IOException( "truncated" ));
+					}
+				}
+
+				buffer.flip();
+
+				int	magic		= buffer.getInt();
+				int	num			= buffer.getInt();
+				int	piece_len	= buffer.getInt();
+
+				if ( 	magic != PIECES_FILE_MAGIC ||
+						num != delegate.getNumberOfPieces() ||
+						piece_len <= 0 ||
+						size != 12 + (long)num*piece_len ){
+
+					throw( new IOException( "invalid header" ));
+				}
+
+				byte[][]	pieces = new byte[num][piece_len];
+
+				for ( byte[] piece: pieces ){
+
+					buffer.get( piece );
+				}
+
+				pieces_file_ok = true;
+
+				return( pieces );
+
+			}catch( Throwable e ){
+
+				pieces_file_ok = false;
+
+				pieces_file.delete();
+
+				return( null );
+			}
+		}
+
 		/**
 		 * monitor must be held before calling me
 		 * @param do_pieces
@@ -3586,11 +3940,25 @@ TorrentUtils
 	   			do_fluff = false;
 	   		}
 
-	   		if ( do_pieces || do_fluff ){
+	   		boolean	read_pieces = do_pieces;
+
+	   		if ( read_pieces && compact_inactive ){
+
+	   			byte[][]	pieces = readPiecesFile();
+
+	   			if ( pieces != null ){
+
+	   				delegate.setPieces( pieces );
+
+	   				read_pieces = false;
+	   			}
+	   		}
+
+	   		if ( read_pieces || do_fluff ){
 
 		   		TOTorrent	temp = readFromFile( file, false );
 
-		   		if ( do_pieces ){
+		   		if ( read_pieces ){
 
 		   			byte[][] res	= temp.getPieces();
 
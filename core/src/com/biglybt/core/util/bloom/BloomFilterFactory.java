@@ -59,6 +59,34 @@ BloomFilterFactory
 		return( new BloomFilterAddOnly( filter_size ));
 	}
 
+		/**
+		 * Counting filter with the same 4 bits per entry as createAddRemove4Bit but with each
+		 * key's counters kept within one cache line and derived from a single hash, so cheaper
+		 * to query. Counters saturate rather than wrap. Size as above.
+		 */
+
+	public static BloomFilter
+	createBlockedAddRemove4Bit(
+		int		filter_size )
+	{
+		return( new BloomFilterBlocked4Bit( filter_size ));
+	}
+
+		/**
+		 * Creates a cuckoo filter holding 16 bit fingerprints, around 0.012% false-positives.
+		 * Note that this is sized by expected entries, not 10 * expected entries as above -
+		 * each entry takes between 18 and 36 bits depending on how close max_entries is to
+		 * a power of two. Removal is exact for keys that were added.
+		 * @param max_entries expected maximum number of entries
+		 */
+
+	public static BloomFilter
+	createCuckoo(
+		int		max_entries )
+	{
+		return( new BloomFilterCuckoo( max_entries ));
+	}
+
 	public static BloomFilter
 	createRotating(
 		BloomFilter		basis,
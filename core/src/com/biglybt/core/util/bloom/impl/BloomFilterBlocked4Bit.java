@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util.bloom.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.biglybt.core.util.bloom.BloomFilter;
+
+/**
+ * Counting bloom filter with 4 bit counters where all of a key's counters live in one 64 byte
+ * block (128 counters held in eight longs, so a single cache line) and are taken from one 64 bit
+ * hash of the key. A lookup costs one hash and one cache miss rather than a miss per counter.
+ *
+ * Counters stick at 15 once reached so that removing keys can never clear a counter other keys
+ * still depend on.
+ */
+
+public class
+BloomFilterBlocked4Bit
+	extends BloomFilterImpl
+{
+	private static final int	HASH_NUM		= 5;
+
+	private static final int	BLOCK_LONGS		= 8;
+	private static final int	BLOCK_COUNTERS	= BLOCK_LONGS*16;
+
+	private final long[]		map;
+	private final int			num_blocks;
+
+	public
+	BloomFilterBlocked4Bit(
+		int		_max_entries )
+	{
+		super( _max_entries );
+
+		num_blocks = ( getMaxEntries() + BLOCK_COUNTERS - 1 ) / BLOCK_COUNTERS;
+
+		map	= new long[num_blocks*BLOCK_LONGS];
+	}
+
+	public
+	BloomFilterBlocked4Bit(
+		Map<String,Object>		x )
+	{
+		super( x );
+
+		byte[]	bytes = (byte[])x.get( "map" );
+
+		map = new long[bytes.length/8];
+
+		for ( int i=0;i<map.length;i++){
+
+			long	l = 0;
+
+			for ( int j=0;j<8;j++){
+
+				l = ( l << 8 ) | ( bytes[i*8+j] & 0xff );
+			}
+
+			map[i] = l;
+		}
+
+		num_blocks = map.length / BLOCK_LONGS;
+	}
+
+	@Override
+	protected void
+	serialiseToMap(
+		Map<String,Object>		x )
+	{
+		super.serialiseToMap( x );
+
+		byte[]	bytes = new byte[map.length*8];
+
+		for ( int i=0;i<map.length;i++){
+
+			long	l = map[i];
+
+			for ( int j=7;j>=0;j--){
+
+				bytes[i*8+j] = (byte)l;
+
+				l >>>= 8;
+			}
+		}
+
+		x.put( "map", bytes );
+	}
+
+	@Override
+	public BloomFilter
+	getReplica()
+	{
+		return( new BloomFilterBlocked4Bit( getMaxEntries()));
+	}
+
+		/**
+		 * The block is picked from the top half of the key's hash, the counters within it from
+		 * seven bit slices of a remix of the hash
+		 */
+
+	private int
+	getBlockBase(
+		long		hash )
+	{
+		return((int)((( hash >>> 32 ) * num_blocks ) >>> 32 ) * BLOCK_COUNTERS );
+	}
+
+	private static long
+	getPositions(
+		long		hash )
+	{
+		return( mix64( hash + 0x9e3779b97f4a7c15L ));
+	}
+
+	@Override
+	public int
+	add(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int		base 		= getBlockBase( hash );
+		long	positions	= getPositions( hash );
+
+		int	count = 0xffff;
+
+		for ( int i=0;i<HASH_NUM;i++){
+
+			int	v = incValue( base + ((int)positions & 0x7f ));
+
+			positions >>>= 7;
+
+			if ( v < count ){
+
+				count = v;
+			}
+		}
+
+		if ( count == 0 ){
+
+			entryAdded();
+		}
+
+		return( trimValue( count + 1 ));
+	}
+
+	@Override
+	public int
+	remove(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int		base 		= getBlockBase( hash );
+		long	positions	= getPositions( hash );
+
+		int	count = 0xffff;
+
+		for ( int i=0;i<HASH_NUM;i++){
+
+			int	v = decValue( base + ((int)positions & 0x7f ));
+
+			positions >>>= 7;
+
+			if ( v < count ){
+
+				count = v;
+			}
+		}
+
+		if ( count == 1 ){
+
+			entryRemoved();
+		}
+
+		return( trimValue( count - 1 ));
+	}
+
+	@Override
+	public int
+	count(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int		base 		= getBlockBase( hash );
+		long	positions	= getPositions( hash );
+
+		int	count = 0xffff;
+
+		for ( int i=0;i<HASH_NUM;i++){
+
+			int	v = getValue( base + ((int)positions & 0x7f ));
+
+			positions >>>= 7;
+
+			if ( v < count ){
+
+				count = v;
+			}
+		}
+
+		return( count );
+	}
+
+	@Override
+	public boolean
+	contains(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int		base 		= getBlockBase( hash );
+		long	positions	= getPositions( hash );
+
+		for ( int i=0;i<HASH_NUM;i++){
+
+			if ( getValue( base + ((int)positions & 0x7f )) == 0 ){
+
+				return( false );
+			}
+
+			positions >>>= 7;
+		}
+
+		return( true );
+	}
+
+	@Override
+	protected int
+	trimValue(
+		int	value )
+	{
+		if ( value < 0 ){
+			return( 0 );
+		}else if ( value > 15 ){
+			return( 15 );
+		}else{
+			return( value );
+		}
+	}
+
+	@Override
+	protected int
+	getValue(
+		int		index )
+	{
+		return((int)( map[index>>>4] >>> (( index & 0x0f ) << 2 )) & 0x0f );
+	}
+
+	@Override
+	protected int
+	incValue(
+		int		index )
+	{
+		int	original_value = getValue( index );
+
+		if ( original_value < 15 ){
+
+			map[index>>>4] += 1L << (( index & 0x0f ) << 2 );
+		}
+
+		return( original_value );
+	}
+
+	@Override
+	protected int
+	decValue(
+		int		index )
+	{
+		int	original_value = getValue( index );
+
+			// saturated counters stay put as we no longer know how many keys are using them
+
+		if ( original_value > 0 && original_value < 15 ){
+
+			map[index>>>4] -= 1L << (( index & 0x0f ) << 2 );
+		}
+
+		return( original_value );
+	}
+
+	@Override
+	public void
+	clear()
+	{
+		Arrays.fill( map, 0 );
+
+		super.clear();
+	}
+}
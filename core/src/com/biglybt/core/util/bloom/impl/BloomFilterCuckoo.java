@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util.bloom.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.core.util.bloom.BloomFilter;
+
+/**
+ * Cuckoo filter: each key is reduced to a 16 bit fingerprint stored in one of two buckets of
+ * four, the second bucket being derivable from the first and the fingerprint alone so entries
+ * can be moved between them without the original key. Both buckets are a single long each and
+ * are searched four lanes at a time, so a lookup is one hash and at most two memory reads.
+ *
+ * Unlike the counting bloom filters remove only ever takes away the one fingerprint, so the
+ * false positive rate (about 8 in 65536) doesn't degrade with churn. Adding the same key again
+ * stores another copy, count() returns the number of copies.
+ *
+ * The filter is sized for max_entries at around 90% occupancy. If it does fill up, fingerprints
+ * that can't be placed after a bounded number of moves go into a small fixed stash. Once that is
+ * full too the filter is saturated: it reports every key as present, so there are still no false
+ * negatives but it is no longer any use until cleared - size it properly!
+ */
+
+public class
+BloomFilterCuckoo
+	implements BloomFilter
+{
+	private static final int	BUCKET_SIZE		= 4;
+	private static final int	MAX_KICKS		= 500;
+	private static final int	STASH_SIZE		= 64;
+
+	private static final long	LANES			= 0x0001000100010001L;
+	private static final long	LANE_HIGHS		= 0x8000800080008000L;
+
+	private final int			max_entries;
+
+	private final long[]		buckets;
+	private final int			mask;
+
+	private int					entry_count;
+
+		// overflow stash, allocated on first use and never grown
+
+	private long[]				stash_keys;
+	private int[]				stash_counts;
+	private int					stash_used;
+
+	private boolean				saturated;
+
+	private int					kick_seed	= 0x2545f491;
+
+	private long				start_time = SystemTime.getMonotonousTime();
+
+	public
+	BloomFilterCuckoo(
+		int		_max_entries )
+	{
+		max_entries	= Math.max( 1, _max_entries );
+
+		int	needed = (int)Math.ceil( max_entries / ( BUCKET_SIZE * 0.9 ));
+
+		int	num_buckets = Integer.highestOneBit( needed );
+
+		if ( num_buckets < needed ){
+
+			num_buckets <<= 1;
+		}
+
+		buckets	= new long[num_buckets];
+		mask	= num_buckets - 1;
+	}
+
+	public
+	BloomFilterCuckoo(
+		Map<String,Object>		x )
+	{
+		max_entries = ((Long)x.get( "_max" )).intValue();
+
+		entry_count = ((Long)x.get( "_count" )).intValue();
+
+		byte[]	bytes = (byte[])x.get( "map" );
+
+		buckets = new long[bytes.length/8];
+
+		for ( int i=0;i<buckets.length;i++){
+
+			long	l = 0;
+
+			for ( int j=0;j<8;j++){
+
+				l = ( l << 8 ) | ( bytes[i*8+j] & 0xff );
+			}
+
+			buckets[i] = l;
+		}
+
+		mask = buckets.length - 1;
+
+		List<?>	list = (List<?>)x.get( "overflow" );
+
+		if ( list != null ){
+
+			for ( int i=0;i<list.size()-1;i+=2){
+
+				addToStash(((Number)list.get(i)).longValue(), ((Number)list.get(i+1)).intValue());
+			}
+		}
+
+		Long	sat = (Long)x.get( "saturated" );
+
+		if ( sat != null && sat.longValue() != 0 ){
+
+			saturated = true;
+		}
+	}
+
+	@Override
+	public Map<String,Object>
+	serialiseToMap()
+	{
+		Map<String,Object>	x = new HashMap<>();
+
+		String	cla = getClass().getName();
+
+		if ( cla.startsWith( BloomFilterImpl.MY_PACKAGE )){
+
+			cla = cla.substring( BloomFilterImpl.MY_PACKAGE.length());
+		}
+
+		x.put( "_impl", cla );
+
+		x.put( "_max", Long.valueOf( max_entries ));
+		x.put( "_count", Long.valueOf( entry_count ));
+
+		byte[]	bytes = new byte[buckets.length*8];
+
+		for ( int i=0;i<buckets.length;i++){
+
+			long	l = buckets[i];
+
+			for ( int j=7;j>=0;j--){
+
+				bytes[i*8+j] = (byte)l;
+
+				l >>>= 8;
+			}
+		}
+
+		x.put( "map", bytes );
+
+		if ( stash_used > 0 ){
+
+			List<Long>	list = new ArrayList<>( stash_used*2 );
+
+			for ( int i=0;i<stash_used;i++){
+
+				list.add( stash_keys[i] );
+				list.add( Long.valueOf( stash_counts[i] ));
+			}
+
+			x.put( "overflow", list );
+		}
+
+		if ( saturated ){
+
+			x.put( "saturated", Long.valueOf( 1 ));
+		}
+
+		return( x );
+	}
+
+	@Override
+	public BloomFilter
+	getReplica()
+	{
+		return( new BloomFilterCuckoo( max_entries ));
+	}
+
+	private static int
+	getFingerprint(
+		long		hash )
+	{
+		int	fp = (int)hash & 0xffff;
+
+			// zero marks an empty slot
+
+		return( fp==0?1:fp );
+	}
+
+	private int
+	getIndex(
+		long		hash )
+	{
+		return((int)( hash >>> 32 ) & mask );
+	}
+
+	private int
+	getAltIndex(
+		int		index,
+		int		fp )
+	{
+		return(( index ^ ( fp * 0x5bd1e995 )) & mask );
+	}
+
+	private static boolean
+	hasFingerprint(
+		long		bucket,
+		int			fp )
+	{
+			// a lane of x is zero where the fingerprint matches, test all four at once
+
+		long	x = bucket ^ ( fp * LANES );
+
+		return((( x - LANES ) & ~x & LANE_HIGHS ) != 0 );
+	}
+
+	private static int
+	countFingerprint(
+		long		bucket,
+		int			fp )
+	{
+		int	count = 0;
+
+		for ( int i=0;i<BUCKET_SIZE;i++){
+
+			if (((int)( bucket >>> ( i << 4 )) & 0xffff ) == fp ){
+
+				count++;
+			}
+		}
+
+		return( count );
+	}
+
+	private boolean
+	insert(
+		int		index,
+		int		fp )
+	{
+		long	bucket = buckets[index];
+
+		for ( int i=0;i<BUCKET_SIZE;i++){
+
+			int	shift = i << 4;
+
+			if ((( bucket >>> shift ) & 0xffff ) == 0 ){
+
+				buckets[index] = bucket | ((long)fp << shift );
+
+				return( true );
+			}
+		}
+
+		return( false );
+	}
+
+	private boolean
+	delete(
+		int		index,
+		int		fp )
+	{
+		long	bucket = buckets[index];
+
+		for ( int i=0;i<BUCKET_SIZE;i++){
+
+			int	shift = i << 4;
+
+			if (((int)( bucket >>> shift ) & 0xffff ) == fp ){
+
+				buckets[index] = bucket & ~( 0xffffL << shift );
+
+				return( true );
+			}
+		}
+
+		return( false );
+	}
+
+	private void
+	relocate(
+		int		index,
+		int		fp )
+	{
+		for ( int kick=0;kick<MAX_KICKS;kick++){
+
+			kick_seed ^= kick_seed << 13;
+			kick_seed ^= kick_seed >>> 17;
+			kick_seed ^= kick_seed << 5;
+
+			int	shift = ( kick_seed & ( BUCKET_SIZE - 1 )) << 4;
+
+			long	bucket = buckets[index];
+
+			int	victim = (int)( bucket >>> shift ) & 0xffff;
+
+			buckets[index] = ( bucket & ~( 0xffffL << shift )) | ((long)fp << shift );
+
+			fp		= victim;
+			index	= getAltIndex( index, fp );
+
+			if ( insert( index, fp )){
+
+				return;
+			}
+		}
+
+		addToStash( getOverflowKey( index, fp ), 1 );
+	}
+
+	private void
+	addToStash(
+		long		key,
+		int			count )
+	{
+		if ( stash_keys == null ){
+
+			stash_keys		= new long[STASH_SIZE];
+			stash_counts	= new int[STASH_SIZE];
+		}
+
+		for ( int i=0;i<stash_used;i++){
+
+			if ( stash_keys[i] == key ){
+
+				stash_counts[i] += count;
+
+				return;
+			}
+		}
+
+		if ( stash_used < STASH_SIZE ){
+
+			stash_keys[stash_used]		= key;
+			stash_counts[stash_used]	= count;
+
+			stash_used++;
+
+		}else if ( !saturated ){
+
+				// a fingerprint has been dropped, from now on we can't say no to anything
+
+			saturated = true;
+
+			Debug.out( "Cuckoo filter saturated: " + getString());
+		}
+	}
+
+	private void
+	removeFromStash(
+		long		key )
+	{
+		for ( int i=0;i<stash_used;i++){
+
+			if ( stash_keys[i] == key ){
+
+				if ( --stash_counts[i] == 0 ){
+
+					stash_used--;
+
+					stash_keys[i]	= stash_keys[stash_used];
+					stash_counts[i]	= stash_counts[stash_used];
+				}
+
+				return;
+			}
+		}
+	}
+
+	private long
+	getOverflowKey(
+		int		index,
+		int		fp )
+	{
+		return(((long)Math.min( index, getAltIndex( index, fp )) << 16 ) | fp );
+	}
+
+	private int
+	getOverflowCount(
+		int		index,
+		int		fp )
+	{
+		if ( stash_used == 0 ){
+
+			return( 0 );
+		}
+
+		long	key = getOverflowKey( index, fp );
+
+		for ( int i=0;i<stash_used;i++){
+
+			if ( stash_keys[i] == key ){
+
+				return( stash_counts[i] );
+			}
+		}
+
+		return( 0 );
+	}
+
+	private int
+	count(
+		int		i1,
+		int		i2,
+		int		fp )
+	{
+		int	count = countFingerprint( buckets[i1], fp );
+
+		if ( i2 != i1 ){
+
+			count += countFingerprint( buckets[i2], fp );
+		}
+
+		return( count + getOverflowCount( i1, fp ));
+	}
+
+	@Override
+	public int
+	add(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int	fp	= getFingerprint( hash );
+		int	i1	= getIndex( hash );
+		int	i2	= getAltIndex( i1, fp );
+
+		int	count = count( i1, i2, fp );
+
+		if ( !( insert( i1, fp ) || insert( i2, fp ))){
+
+			relocate( (kick_seed&1)==0?i1:i2, fp );
+		}
+
+		if ( count == 0 ){
+
+			entry_count++;
+		}
+
+		return( count + 1 );
+	}
+
+	@Override
+	public int
+	remove(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int	fp	= getFingerprint( hash );
+		int	i1	= getIndex( hash );
+		int	i2	= getAltIndex( i1, fp );
+
+		int	count = count( i1, i2, fp );
+
+		if ( count == 0 ){
+
+			return( 0 );
+		}
+
+		if ( !( delete( i1, fp ) || delete( i2, fp ))){
+
+			removeFromStash( getOverflowKey( i1, fp ));
+		}
+
+		if ( count == 1 && entry_count > 0 ){
+
+			entry_count--;
+		}
+
+		return( count - 1 );
+	}
+
+	@Override
+	public boolean
+	contains(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int	fp	= getFingerprint( hash );
+		int	i1	= getIndex( hash );
+
+		if ( hasFingerprint( buckets[i1], fp )){
+
+			return( true );
+		}
+
+		int	i2 = getAltIndex( i1, fp );
+
+		if ( hasFingerprint( buckets[i2], fp )){
+
+			return( true );
+		}
+
+		return( saturated || getOverflowCount( i1, fp ) > 0 );
+	}
+
+	@Override
+	public int
+	count(
+		byte[]		value )
+	{
+		long	hash = hash64( value );
+
+		int	fp	= getFingerprint( hash );
+		int	i1	= getIndex( hash );
+
+		int	count = count( i1, getAltIndex( i1, fp ), fp );
+
+		return( count==0&&saturated?1:count );
+	}
+
+	private static long
+	hash64(
+		byte[]		value )
+	{
+		return( BloomFilterImpl.hash64( value ));
+	}
+
+	@Override
+	public int
+	getEntryCount()
+	{
+		return( entry_count );
+	}
+
+	@Override
+	public int
+	getSize()
+	{
+		return( buckets.length * BUCKET_SIZE );
+	}
+
+	@Override
+	public void
+	clear()
+	{
+		Arrays.fill( buckets, 0 );
+
+		stash_used	= 0;
+		saturated	= false;
+
+		entry_count = 0;
+
+		start_time = SystemTime.getMonotonousTime();
+	}
+
+	@Override
+	public long
+	getStartTimeMono()
+	{
+		return( start_time );
+	}
+
+	@Override
+	public String
+	getString()
+	{
+		int	overflowed = 0;
+
+		for ( int i=0;i<stash_used;i++){
+
+			overflowed += stash_counts[i];
+		}
+
+		return( "ent=" + entry_count + ",max=" + max_entries + ",slots=" + getSize() + ",overflow=" + overflowed + ( saturated?",saturated":"" ));
+	}
+}
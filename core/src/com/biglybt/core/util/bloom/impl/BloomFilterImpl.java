@@ -73,13 +73,13 @@ BloomFilterImpl
 		}
 
 		try{
-			Class<BloomFilterImpl> cla = (Class<BloomFilterImpl>)Class.forName( impl );
+			Class<?> cla = Class.forName( impl );
 
-			Constructor<BloomFilterImpl> cons = cla.getDeclaredConstructor( Map.class );
+			Constructor<?> cons = cla.getDeclaredConstructor( Map.class );
 
 			cons.setAccessible( true );
 
-			return( cons.newInstance( map ));
+			return((BloomFilter)cons.newInstance( map ));
 
 		}catch( Throwable e ){
 
@@ -204,7 +204,7 @@ BloomFilterImpl
 
 		if ( count == 0 ){
 
-			entry_count++;
+			entryAdded();
 		}
 
 			// count is the smallest val found *before* incrementing
@@ -232,9 +232,9 @@ BloomFilterImpl
 			}
 		}
 
-		if ( count == 1 && entry_count > 0 ){
+		if ( count == 1 ){
 
-			entry_count--;
+			entryRemoved();
 		}
 
 			// count is the value BEFORE dec, decrease one further
@@ -242,6 +242,21 @@ BloomFilterImpl
 		return( trimValue( count - 1 ));
 	}
 
+	protected void
+	entryAdded()
+	{
+		entry_count++;
+	}
+
+	protected void
+	entryRemoved()
+	{
+		if ( entry_count > 0 ){
+
+			entry_count--;
+		}
+	}
+
 	protected int
 	count(
 		int		value )
@@ -378,6 +393,73 @@ BloomFilterImpl
 		return( res );
 	}
 
+		/**
+		 * 64 bit hash of the data (murmur3 style mixing, eight bytes at a time) for the filters
+		 * that derive all of their positions from a single hash rather than the functions above
+		 */
+
+	protected static long
+	hash64(
+		byte[]		data )
+	{
+		final long	c1 = 0x87c37b91114253d5L;
+		final long	c2 = 0x4cf5ad432745937fL;
+
+		int		len = data.length;
+
+		long	h = 0x51f7ac81L ^ ( len * c2 );
+
+		int	pos = 0;
+
+		while( pos + 8 <= len ){
+
+			long	k =
+				(data[pos]&0xffL) 			| (data[pos+1]&0xffL)<<8 	|
+				(data[pos+2]&0xffL)<<16 	| (data[pos+3]&0xffL)<<24 	|
+				(data[pos+4]&0xffL)<<32 	| (data[pos+5]&0xffL)<<40 	|
+				(data[pos+6]&0xffL)<<48 	| (data[pos+7]&0xffL)<<56;
+
+			k *= c1;
+			k = Long.rotateLeft( k, 31 );
+			k *= c2;
+
+			h ^= k;
+			h = Long.rotateLeft( h, 27 )*5 + 0x52dce729;
+
+			pos += 8;
+		}
+
+		if ( pos < len ){
+
+			long	k = 0;
+
+			for ( int shift=0;pos<len;pos++,shift+=8){
+
+				k |= (data[pos]&0xffL)<<shift;
+			}
+
+			k *= c1;
+			k = Long.rotateLeft( k, 31 );
+			k *= c2;
+
+			h ^= k;
+		}
+
+		return( mix64( h ));
+	}
+
+	protected static long
+	mix64(
+		long	h )
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		return( h );
+	}
 
 	/*
 	protected int
@@ -49,6 +49,8 @@ AEMemoryMonitor
 
 	private static final long MB = 1024*1024;
 
+	private static final long LOW_MEMORY_DIVISOR = 4;
+
 	private static long	max_heap_mb;
 
 	public
@@ -127,6 +129,13 @@ AEMemoryMonitor
 
 							long	mb = (avail+MB-1)/(MB);
 
+								// give caches a chance to shrink well before we get to warning the user
+
+							if ( avail < max/LOW_MEMORY_DIVISOR ){
+
+								AEJavaManagement.fireMemoryLow( avail, max );
+							}
+
 							if ( mb <= 4 ){
 
 								synchronized( this ){
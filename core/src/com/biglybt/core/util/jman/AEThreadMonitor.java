@@ -64,6 +64,8 @@ AEThreadMonitor
 	private final ThreadMXBean	thread_bean;
 
 	private final LinkedList<String>	memory_history	= new LinkedList<>();
+
+	private AEThreadSampler		sampler;
 	
 	{
 		// store in local variable first, so we can have thread_bean final
@@ -127,6 +129,17 @@ AEThreadMonitor
 	{
 		AEDiagnostics.addWeakEvidenceGenerator(this);
 
+		if ( thread_bean != null ){
+
+			try{
+				sampler = new AEThreadSampler( thread_bean );
+
+			}catch( Throwable e ){
+
+				Debug.out( e );
+			}
+		}
+
 		AEThread2	thread =
 			new AEThread2( "AEThreadMonitor" )
 			{
@@ -446,5 +459,10 @@ AEThreadMonitor
 	@Override
 	public void generate(IndentWriter writer) {
 		dumpThreads( writer );
+
+		if ( sampler != null ){
+
+			sampler.generate( writer );
+		}
 	}
 }
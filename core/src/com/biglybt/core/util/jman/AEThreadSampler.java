@@ -0,0 +1,550 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util.jman;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ConfigKeys;
+import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.util.AEDiagnostics;
+import com.biglybt.core.util.AESemaphore;
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.IndentWriter;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Sampling profiler for the busy core threads. While enabled the stacks of threads whose names
+ * start with one of the configured prefixes are sampled periodically and merged into a call tree
+ * rooted at the thread name. Only RUNNABLE samples go into the tree, the other states are just
+ * counted. Note that a thread blocked in native I/O (a selector waiting in select for example)
+ * still shows as RUNNABLE, such stacks are easy to spot at the top of the tree.
+ *
+ * The tree is capped at MAX_NODES nodes and MAX_DEPTH frames, samples that would grow it further
+ * are charged to the deepest node already present so memory stays bounded however long it runs.
+ * The profile is reset each time sampling is enabled and is written with the diagnostics
+ * evidence, along with a file of folded stacks (thread;frame;...;frame count) that can be fed
+ * straight into flamegraph.pl or speedscope.
+ */
+
+class
+AEThreadSampler
+{
+	private static final int	MAX_DEPTH				= 64;
+	private static final int	MAX_NODES				= 20000;
+	private static final int	THREAD_REFRESH_PERIOD	= 5*1000;
+	private static final int	MIN_PERIOD				= 10;
+	private static final int	TOP_FRAMES				= 25;
+
+	private static final String	FOLDED_FILE	= "ThreadSamples.folded";
+
+	private final ThreadMXBean		bean;
+
+	private final AESemaphore		wake_sem	= new AESemaphore( "AEThreadSampler" );
+
+	private volatile boolean		enabled;
+	private volatile int			period;
+	private volatile String[]		prefixes	= {};
+
+	private boolean				running;
+
+		// everything below is guarded by this
+
+	private Node				root;
+	private int					node_count;
+	private long				start_time;
+	private long				sample_count;
+	private long				runnable_count;
+	private long				truncated_count;
+	private long				sample_nanos;
+	private final Map<String,long[]>	state_counts	= new HashMap<>();
+
+	AEThreadSampler(
+		ThreadMXBean		_bean )
+	{
+		bean	= _bean;
+
+		COConfigurationManager.addAndFireParameterListeners(
+			new String[]{
+				ConfigKeys.Logging.BCFG_LOGGER_PROFILER_ENABLE,
+				ConfigKeys.Logging.ICFG_LOGGER_PROFILER_PERIOD,
+				ConfigKeys.Logging.SCFG_LOGGER_PROFILER_THREADS },
+			new ParameterListener()
+			{
+				@Override
+				public void
+				parameterChanged(
+					String	name )
+				{
+					period = Math.max( MIN_PERIOD, COConfigurationManager.getIntParameter( ConfigKeys.Logging.ICFG_LOGGER_PROFILER_PERIOD ));
+
+					String[]	bits = COConfigurationManager.getStringParameter( ConfigKeys.Logging.SCFG_LOGGER_PROFILER_THREADS ).split( "," );
+
+					List<String>	p = new ArrayList<>();
+
+					for ( String bit: bits ){
+
+						bit = bit.trim();
+
+						if ( !bit.isEmpty()){
+
+							p.add( bit );
+						}
+					}
+
+					prefixes = p.toArray( new String[p.size()]);
+
+					setEnabled( COConfigurationManager.getBooleanParameter( ConfigKeys.Logging.BCFG_LOGGER_PROFILER_ENABLE ));
+				}
+			});
+	}
+
+	private void
+	setEnabled(
+		boolean		_enabled )
+	{
+		synchronized( this ){
+
+			if ( _enabled == enabled ){
+
+				return;
+			}
+
+			enabled = _enabled;
+
+			if ( !enabled ){
+
+				wake_sem.release();
+
+				return;
+			}
+
+			root			= new Node( null );
+			node_count		= 1;
+			start_time		= SystemTime.getCurrentTime();
+			sample_count	= 0;
+			runnable_count	= 0;
+			truncated_count	= 0;
+			sample_nanos	= 0;
+
+			state_counts.clear();
+
+			if ( running ){
+
+				return;
+			}
+
+			running = true;
+		}
+
+		new AEThread2( "AEThreadSampler", true )
+		{
+			@Override
+			public void
+			run()
+			{
+				sampleLoop();
+			}
+		}.start();
+	}
+
+	private void
+	sampleLoop()
+	{
+		long[]		ids				= {};
+		long		last_refresh	= -1;
+
+		try{
+			while( true ){
+
+				synchronized( this ){
+
+					if ( !enabled ){
+
+						running = false;
+
+						return;
+					}
+				}
+
+				long	now = SystemTime.getMonotonousTime();
+
+				if ( last_refresh == -1 || now - last_refresh >= THREAD_REFRESH_PERIOD ){
+
+					last_refresh = now;
+
+					ids = getSampledThreads();
+				}
+
+				if ( ids.length > 0 ){
+
+					long	start = SystemTime.getHighPrecisionCounter();
+
+					ThreadInfo[]	infos = bean.getThreadInfo( ids, MAX_DEPTH );
+
+					long	elapsed = SystemTime.getHighPrecisionCounter() - start;
+
+					synchronized( this ){
+
+						sample_nanos += elapsed;
+
+						for ( ThreadInfo info: infos ){
+
+							if ( info != null ){
+
+								addSample( info );
+							}
+						}
+					}
+				}
+
+				wake_sem.reserve( period );
+			}
+		}catch( Throwable e ){
+
+			synchronized( this ){
+
+				running = false;
+				enabled	= false;
+			}
+
+			Debug.out( "Thread sampling failed", e );
+		}
+	}
+
+	private long[]
+	getSampledThreads()
+	{
+		String[]	p = prefixes;
+
+		long[]	all = bean.getAllThreadIds();
+
+		ThreadInfo[]	infos = bean.getThreadInfo( all );
+
+		long[]	result = new long[all.length];
+
+		int	num = 0;
+
+		for ( ThreadInfo info: infos ){
+
+			if ( info == null ){
+
+				continue;
+			}
+
+			String	name = info.getThreadName();
+
+			for ( String prefix: p ){
+
+				if ( name.startsWith( prefix )){
+
+					result[num++] = info.getThreadId();
+
+					break;
+				}
+			}
+		}
+
+		long[]	trimmed = new long[num];
+
+		System.arraycopy( result, 0, trimmed, 0, num );
+
+		return( trimmed );
+	}
+
+	private void
+	addSample(
+		ThreadInfo		info )
+	{
+		sample_count++;
+
+		String	state = info.getThreadState().toString();
+
+		long[]	count = state_counts.get( state );
+
+		if ( count == null ){
+
+			count = new long[1];
+
+			state_counts.put( state, count );
+		}
+
+		count[0]++;
+
+		if ( info.getThreadState() != Thread.State.RUNNABLE ){
+
+			return;
+		}
+
+		runnable_count++;
+
+		StackTraceElement[]	stack = info.getStackTrace();
+
+		Node	node = root.getChild( info.getThreadName(), this );
+
+		if ( node == null ){
+
+			truncated_count++;
+
+			return;
+		}
+
+			// the stack is leaf first
+
+		for ( int i=stack.length-1;i>=0;i--){
+
+			StackTraceElement	elt = stack[i];
+
+			Node	child = node.getChild( elt.getClassName() + "." + elt.getMethodName(), this );
+
+			if ( child == null ){
+
+				truncated_count++;
+
+				break;
+			}
+
+			node = child;
+		}
+
+		node.self++;
+	}
+
+	void
+	generate(
+		IndentWriter	writer )
+	{
+		writer.println( "Thread Sampler" );
+
+		try{
+			writer.indent();
+
+			List<String>	folded = new ArrayList<>();
+
+			synchronized( this ){
+
+				writer.println( "enabled=" + enabled + ", period=" + period + "ms, threads=" + String.join( ",", prefixes ));
+
+				if ( root == null ){
+
+					return;
+				}
+
+				long	elapsed = SystemTime.getCurrentTime() - start_time;
+
+				writer.println(
+					"samples=" + sample_count + ", runnable=" + runnable_count + ", states=" + getStateSummary() +
+					", nodes=" + node_count + ", truncated=" + truncated_count + ", elapsed=" + elapsed/1000 + "s" +
+					", sample cost=" + ( sample_nanos/1000000 ) + "ms" );
+
+				Map<String,long[]>	self_by_frame = new HashMap<>();
+
+				root.collect( new StringBuilder(), folded, self_by_frame );
+
+				List<Map.Entry<String,long[]>>	frames = new ArrayList<>( self_by_frame.entrySet());
+
+				Collections.sort(
+					frames,
+					new Comparator<Map.Entry<String,long[]>>()
+					{
+						@Override
+						public int
+						compare(
+							Map.Entry<String,long[]>	o1,
+							Map.Entry<String,long[]>	o2 )
+						{
+							return( Long.compare( o2.getValue()[0], o1.getValue()[0] ));
+						}
+					});
+
+				writer.println( "Top frames (self samples)" );
+
+				try{
+					writer.indent();
+
+					for ( int i=0;i<Math.min( TOP_FRAMES, frames.size());i++){
+
+						Map.Entry<String,long[]>	entry = frames.get( i );
+
+						long	self = entry.getValue()[0];
+
+						writer.println( entry.getKey() + ": " + self + " (" + ( runnable_count==0?0:( 100*self/runnable_count )) + "%)" );
+					}
+				}finally{
+
+					writer.exdent();
+				}
+			}
+
+			File	file = FileUtil.newFile( AEDiagnostics.getLogDir(), FOLDED_FILE );
+
+			PrintWriter	pw = null;
+
+			try{
+				pw = new PrintWriter( FileUtil.newFileOutputStream( file ));
+
+				for ( String line: folded ){
+
+					pw.println( line );
+				}
+
+				writer.println( "Folded stacks written to " + file );
+
+			}catch( Throwable e ){
+
+				writer.println( "Failed to write " + file + ": " + Debug.getNestedExceptionMessage( e ));
+
+			}finally{
+
+				if ( pw != null ){
+
+					pw.close();
+				}
+			}
+		}finally{
+
+			writer.exdent();
+		}
+	}
+
+	private String
+	getStateSummary()
+	{
+		StringBuilder	sb = new StringBuilder();
+
+		for ( Map.Entry<String,long[]> entry: state_counts.entrySet()){
+
+			if ( sb.length() > 0 ){
+
+				sb.append( "/" );
+			}
+
+			sb.append( entry.getKey()).append( "=" ).append( entry.getValue()[0] );
+		}
+
+		return( sb.toString());
+	}
+
+	private static class
+	Node
+	{
+		private final String		frame;
+
+		private Map<String,Node>	children;
+		private long				self;
+
+		Node(
+			String		_frame )
+		{
+			frame	= _frame;
+		}
+
+			/**
+			 * @return the child for the frame, created if the node limit allows, null otherwise
+			 */
+
+		Node
+		getChild(
+			String				child_frame,
+			AEThreadSampler		sampler )
+		{
+			if ( children == null ){
+
+				children = new HashMap<>( 4 );
+			}
+
+			Node	child = children.get( child_frame );
+
+			if ( child == null ){
+
+				if ( sampler.node_count >= MAX_NODES ){
+
+					return( null );
+				}
+
+				sampler.node_count++;
+
+				child = new Node( child_frame );
+
+				children.put( child_frame, child );
+			}
+
+			return( child );
+		}
+
+		void
+		collect(
+			StringBuilder			path,
+			List<String>			folded,
+			Map<String,long[]>		self_by_frame )
+		{
+			int	path_len = path.length();
+
+			if ( frame != null ){
+
+				if ( path_len > 0 ){
+
+					path.append( ';' );
+				}
+
+				path.append( frame.replace( ';', ':' ).replace( ' ', '_' ));
+			}
+
+			if ( self > 0 ){
+
+				folded.add( path + " " + self );
+
+				if ( frame != null ){
+
+					long[]	count = self_by_frame.get( frame );
+
+					if ( count == null ){
+
+						count = new long[1];
+
+						self_by_frame.put( frame, count );
+					}
+
+					count[0] += self;
+				}
+			}
+
+			if ( children != null ){
+
+				for ( Node child: children.values()){
+
+					child.collect( path, folded, self_by_frame );
+				}
+			}
+
+			path.setLength( path_len );
+		}
+	}
+}
@@ -882,7 +882,7 @@ PRUDPPacketHandlerImpl
 				// don't change the text of this message, it's used elsewhere
 
 			try{
-				request.setException(new PRUDPPacketHandlerException("timed out"));
+				request.setException(new PRUDPPacketHandlerTimeoutException());
 
 			}catch( Throwable e ){
 
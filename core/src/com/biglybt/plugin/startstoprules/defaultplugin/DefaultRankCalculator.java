@@ -46,7 +46,7 @@ import com.biglybt.pifimpl.local.PluginCoreUtils;
  * @created Dec 13, 2005
  *
  */
-public class DefaultRankCalculator implements DownloadManagerStateAttributeListener, Comparable {
+public class DefaultRankCalculator implements DownloadManagerStateAttributeListener, Comparable, SeedingRankIndex.SortKeyed<DefaultRankCalculator> {
 	/** All of the First Priority rules must match */
 	public static final int FIRSTPRIORITY_ALL = 0;
 
@@ -245,6 +245,15 @@ public class DefaultRankCalculator implements DownloadManagerStateAttributeListe
 	// modified by a listener in StartStopRulesDefaultPlugin
 	boolean lastScrapeResultOk = false;
 
+	// sort key as last captured for the SeedingRankIndex, only touched by the index
+
+	private boolean	keyFirstPriority;
+	private boolean	keyComplete;
+	private int		keySeedingRank;
+	private int		keyPeers;
+	private int		keyShareRatio;
+	private int		keyPosition;
+
 	/**
 	 * Default Initializer
 	 *
@@ -368,6 +377,82 @@ public class DefaultRankCalculator implements DownloadManagerStateAttributeListe
 				+ "iTimed_MinSeedingTimeWithPeers") * 1000;
 	}
 
+	/**
+	 * Snapshot the values {@link #compareTo(Object)} looks at so that an index can be kept in
+	 * order without them changing under it
+	 *
+	 * @return true if any of them changed since the last capture
+	 */
+	@Override
+	public boolean captureSortKey() {
+		boolean fp = bIsFirstPriority;
+		boolean complete = dl.isComplete();
+		int sr = dl.getSeedingRank();
+		int peers = lastModifiedScrapeResultPeers;
+		int shareRatio = lastModifiedShareRatio;
+		int position = dl.getPosition();
+
+		boolean changed = fp != keyFirstPriority || complete != keyComplete
+				|| sr != keySeedingRank || peers != keyPeers
+				|| shareRatio != keyShareRatio || position != keyPosition;
+
+		keyFirstPriority = fp;
+		keyComplete = complete;
+		keySeedingRank = sr;
+		keyPeers = peers;
+		keyShareRatio = shareRatio;
+		keyPosition = position;
+
+		return changed;
+	}
+
+	/**
+	 * Same ordering as {@link #compareTo(Object)} but using the captured sort keys
+	 */
+	@Override
+	public int compareSortKey(DefaultRankCalculator dlData) {
+		if (dlData.keyFirstPriority && !keyFirstPriority)
+			return 1;
+		if (!dlData.keyFirstPriority && keyFirstPriority)
+			return -1;
+
+		if (dlData.keyComplete && !keyComplete)
+			return -1;
+		if (!dlData.keyComplete && keyComplete)
+			return 1;
+
+		if (iRankType == StartStopRulesDefaultPlugin.RANK_NONE) {
+			return keyPosition - dlData.keyPosition;
+		}
+
+		int value = dlData.keySeedingRank - keySeedingRank;
+		if (value != 0)
+			return value;
+
+		if (iRankType != StartStopRulesDefaultPlugin.RANK_TIMED) {
+			if (bPreferLargerSwarms)
+				value = dlData.keyPeers - keyPeers;
+			else
+				value = keyPeers - dlData.keyPeers;
+			if (value != 0)
+				return value;
+
+			value = keyShareRatio - dlData.keyShareRatio;
+			if (value != 0)
+				return value;
+		}
+
+		return keyPosition - dlData.keyPosition;
+	}
+
+	/**
+	 * Changes whenever the configuration that {@link #compareSortKey(DefaultRankCalculator)}
+	 * depends on changes
+	 */
+	static int getSortKeyMode() {
+		return (iRankType << 1) | (bPreferLargerSwarms ? 1 : 0);
+	}
+
 	/** Sort first by SeedingRank Descending, then by Position Ascending.
 	 */
 	@Override
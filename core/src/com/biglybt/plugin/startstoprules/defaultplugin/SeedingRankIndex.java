@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.plugin.startstoprules.defaultplugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Keeps the rank calculators in process() order (FP, incomplete before complete, seeding rank,
+ * swarm size, share ratio, position) without resorting everything each cycle.
+ *
+ * Each entry's sort key is captured when it is (re)positioned so the list stays consistent even
+ * though the live values move about. Every cycle all the keys are re-captured, which is cheap next
+ * to sorting, and only those that actually changed are pulled out and binary inserted. Large
+ * batches, a change in rank type/swarm preference, and a periodic safety net fall back to a full
+ * sort.
+ */
+
+class SeedingRankIndex<T extends SeedingRankIndex.SortKeyed<T>> {
+	private static final long REBUILD_PERIOD = 10 * 60 * 1000;
+
+	interface SortKeyed<T> {
+		/**
+		 * Snapshot the values the ordering depends on
+		 *
+		 * @return true if any of them changed since the last capture
+		 */
+		boolean captureSortKey();
+
+		/**
+		 * Compares the captured values only
+		 */
+		int compareSortKey(T other);
+	}
+
+	private final Comparator<T> keyComparator = new Comparator<T>() {
+		@Override
+		public int compare(T o1, T o2) {
+			return o1.compareSortKey(o2);
+		}
+	};
+
+	private final T[] emptyArray;
+
+	private final Map<T, Boolean> members = new IdentityHashMap<>();
+
+	private final Map<T, Boolean> indexed = new IdentityHashMap<>();
+
+	private final List<T> sorted = new ArrayList<>();
+
+	private final List<T> pendingAdds = new ArrayList<>();
+
+	private boolean pendingRemoves;
+
+	private T[] sortedArray;
+
+	private int sortKeyMode = Integer.MIN_VALUE;
+
+	private long lastRebuildMono;
+
+	// stats
+
+	private long fullSorts;
+
+	private long incrementalUpdates;
+
+	private long totalMoved;
+
+	SeedingRankIndex(T[] emptyArray) {
+		this.emptyArray = emptyArray;
+	}
+
+	synchronized void add(T rankObj) {
+		if (members.put(rankObj, Boolean.TRUE) == null && !indexed.containsKey(rankObj)) {
+			pendingAdds.add(rankObj);
+		}
+	}
+
+	synchronized void remove(T rankObj) {
+		if (members.remove(rankObj) != null) {
+			pendingRemoves = true;
+		}
+	}
+
+	synchronized int size() {
+		return members.size();
+	}
+
+	/**
+	 * @param mode changes whenever the configuration compareSortKey depends on changes
+	 * @return the entries in order. The array is shared between calls while nothing changes,
+	 * callers must not modify it
+	 */
+	synchronized T[] getSorted(int mode) {
+		long now = SystemTime.getMonotonousTime();
+
+		boolean rebuild = mode != sortKeyMode || now - lastRebuildMono > REBUILD_PERIOD
+				|| sortedArray == null;
+
+		List<T> moved = new ArrayList<>();
+
+		if (!rebuild) {
+			// any key input can change without the rank changing (swarm counts, share ratio,
+			// first priority) so check them all rather than relying on callers to say
+
+			for (T rankObj : sorted) {
+				if (members.containsKey(rankObj) && rankObj.captureSortKey()) {
+					moved.add(rankObj);
+				}
+			}
+
+			rebuild = moved.size() + pendingAdds.size() > (members.size() >> 3) + 16;
+		}
+
+		if (rebuild) {
+			sortKeyMode = mode;
+			lastRebuildMono = now;
+
+			sorted.clear();
+			indexed.clear();
+
+			for (T rankObj : members.keySet()) {
+				rankObj.captureSortKey();
+				sorted.add(rankObj);
+				indexed.put(rankObj, Boolean.TRUE);
+			}
+
+			Collections.sort(sorted, keyComparator);
+
+			pendingAdds.clear();
+			pendingRemoves = false;
+
+			fullSorts++;
+
+			sortedArray = sorted.toArray(emptyArray);
+
+			return sortedArray;
+		}
+
+		boolean changed = false;
+
+		if (pendingRemoves || !moved.isEmpty()) {
+			// single pass to drop removed entries and lift out the ones that need repositioning
+
+			Map<T, Boolean> lift = new IdentityHashMap<>();
+
+			for (T rankObj : moved) {
+				lift.put(rankObj, Boolean.TRUE);
+			}
+
+			for (Iterator<T> it = sorted.iterator(); it.hasNext();) {
+				T rankObj = it.next();
+
+				if (lift.containsKey(rankObj)) {
+					it.remove();
+				} else if (!members.containsKey(rankObj)) {
+					it.remove();
+					indexed.remove(rankObj);
+				}
+			}
+
+			pendingRemoves = false;
+
+			for (T rankObj : moved) {
+				insert(rankObj);
+			}
+
+			totalMoved += moved.size();
+
+			changed = true;
+		}
+
+		if (!pendingAdds.isEmpty()) {
+			for (T rankObj : pendingAdds) {
+				if (members.containsKey(rankObj) && !indexed.containsKey(rankObj)) {
+					rankObj.captureSortKey();
+					insert(rankObj);
+					indexed.put(rankObj, Boolean.TRUE);
+				}
+			}
+
+			pendingAdds.clear();
+
+			changed = true;
+		}
+
+		if (changed) {
+			incrementalUpdates++;
+
+			sortedArray = sorted.toArray(emptyArray);
+		}
+
+		return sortedArray;
+	}
+
+	private void insert(T rankObj) {
+		int pos = Collections.binarySearch(sorted, rankObj, keyComparator);
+
+		if (pos < 0) {
+			pos = -(pos + 1);
+		}
+
+		sorted.add(pos, rankObj);
+	}
+
+	synchronized String getStats() {
+		return "size=" + members.size() + ", full sorts=" + fullSorts
+				+ ", incremental updates=" + incrementalUpdates + ", entries moved="
+				+ totalMoved;
+	}
+}
@@ -143,10 +143,10 @@ public class StartStopRulesDefaultPlugin implements Plugin,
 	private static Map<Download, DefaultRankCalculator> downloadDataMap = Collections.synchronizedMap(new HashMap<Download, DefaultRankCalculator>());
 
 	/**
-	 * this is used to reduce the number of comperator invocations
-	 * by keeping a mostly sorted copy around, must be nulled whenever the map is changed
+	 * downloadDataMap's values kept in process() order, updated incrementally from the
+	 * calculators whose sort key changed rather than resorted every cycle
 	 */
-	private volatile DefaultRankCalculator[] sortedArrayCache;
+	private final SeedingRankIndex<DefaultRankCalculator> rankIndex = new SeedingRankIndex<>(new DefaultRankCalculator[0]);
 
 	private volatile boolean closingDown;
 
@@ -798,8 +798,8 @@ public class StartStopRulesDefaultPlugin implements Plugin,
 			} else {
 				dlData = new DefaultRankCalculator(StartStopRulesDefaultPlugin.this,
 						download);
-				sortedArrayCache = null;
 				downloadDataMap.put(download, dlData);
+				rankIndex.add(dlData);
 				download.addListener(download_listener);
 				download.addTrackerListener(download_tracker_listener, false);
 				download.addActivationListener(download_activation_listener);
@@ -829,7 +829,7 @@ public class StartStopRulesDefaultPlugin implements Plugin,
 				dlData.getCoreDownloadObject().getDownloadState().removeListener(
 						download_state_attribute_listener, DownloadManagerState.AT_TRANSIENT_FLAGS, DownloadManagerStateAttributeListener.WRITTEN );
 
-				sortedArrayCache = null;
+				rankIndex.remove(dlData);
 				dlData.destroy();
 			}
 
@@ -1553,16 +1553,10 @@ public class StartStopRulesDefaultPlugin implements Plugin,
 				processTotalZeroRecalcs++;
 			}
 
-			// pull the data into a local array, so we don't have to lock/synchronize
-			DefaultRankCalculator[] dlDataArray;
-			if(sortedArrayCache != null && sortedArrayCache.length == downloadDataMap.size()) {
-				dlDataArray = sortedArrayCache;
-			} else {
-				synchronized (downloadDataMap) {
-					dlDataArray = sortedArrayCache = downloadDataMap.values().toArray(
-							new DefaultRankCalculator[downloadDataMap.size()]);
-				}
-			}
+			// Sort: SeedingRank Desc, Position Desc
+			// The index only repositions the calculators whose sort key changed.
+			// The array is shared, don't modify it
+			DefaultRankCalculator[] dlDataArray = rankIndex.getSorted(DefaultRankCalculator.getSortKeyMode());
 
 			TotalsStats totals = new TotalsStats(dlDataArray);
 
@@ -1586,9 +1580,6 @@ public class StartStopRulesDefaultPlugin implements Plugin,
 				};
 			}
 
-			// Sort: SeedingRank Desc, Position Desc
-			Arrays.sort(dlDataArray);
-			
 			ProcessVars vars = new ProcessVars();
 
 			Map<TagFeatureRateLimit,ProcessTagVars>	tvarsMap = new IdentityHashMap<>();
@@ -3085,6 +3076,7 @@ public class StartStopRulesDefaultPlugin implements Plugin,
 				}
 				writer.println("Avg # recalcs per process cycle: "
 						+ (processTotalRecalcs / processCount));
+				writer.println("rank index: " + rankIndex.getStats());
 				if (processTotalZeroRecalcs > 0) {
 					writer.println("# process cycle with 0 recalcs: "
 							+ processTotalZeroRecalcs);